@@ -16,6 +16,9 @@
 
 package org.opencb.biodata.formats.drug.drugbank;
 
+import org.opencb.biodata.formats.drug.drugbank.v43jaxb.DrugType;
+import org.opencb.biodata.formats.io.XmlRecordIterator;
+
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -23,17 +26,19 @@ import javax.xml.bind.Unmarshaller;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Created by mbleda on 25/09/15.
  */
 public class DrugBankParser {
 
-    public final static String DRUGBANK_CONTEXT_v43 = "org.opencb.commons.biodata.drug.drugbank.v43jaxb";
+    public final static String DRUGBANK_CONTEXT_v43 = "org.opencb.biodata.formats.drug.drugbank.v43jaxb";
 
     public static void saveXMLInfo(Object obj, String filename) throws FileNotFoundException, JAXBException {
         JAXBContext jaxbContext;
-        jaxbContext = JAXBContext.newInstance(DRUGBANK_CONTEXT_v43);
+        jaxbContext = XmlRecordIterator.getJAXBContext(DRUGBANK_CONTEXT_v43);
         Marshaller marshaller = jaxbContext.createMarshaller();
         marshaller.marshal(obj, new FileOutputStream(filename));
     }
@@ -45,9 +50,21 @@ public class DrugBankParser {
      */
     public static Object loadXMLInfo(String filename) throws JAXBException {
         Object obj = null;
-        JAXBContext jaxbContext = JAXBContext.newInstance(DRUGBANK_CONTEXT_v43);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(DRUGBANK_CONTEXT_v43);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
         obj =  unmarshaller.unmarshal(new File(filename));
         return obj;
     }
+
+    /**
+     * Streams the drugs of a DrugBank XML file, one at a time, without loading the whole document.
+     *
+     * @param filename  DrugBank XML file, can be gzipped
+     * @return  Drug iterator, must be closed
+     * @throws JAXBException    If the JAXB context can not be created
+     * @throws IOException      If the file can not be opened
+     */
+    public static XmlRecordIterator<DrugType> iterator(String filename) throws JAXBException, IOException {
+        return new XmlRecordIterator<>(Paths.get(filename), DRUGBANK_CONTEXT_v43, "drug", DrugType.class);
+    }
 }
@@ -16,7 +16,6 @@
 
 package org.opencb.biodata.formats.gaf;
 
-import org.apache.commons.collections4.keyvalue.MultiKey;
 import org.opencb.biodata.formats.obo.OboParser;
 import org.opencb.biodata.models.core.AnnotationEvidence;
 import org.opencb.biodata.models.core.FeatureOntologyTermAnnotation;
@@ -28,9 +27,28 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * GAF parser. Lines are tokenized in chunks, in parallel if requested, and feature ids, GO ids, evidence codes,
+ * qualifiers and references are interned as dictionary ints. Annotations are then merged by (feature, term) with
+ * primitive long keys, and only turned into model objects at the end.
+ */
 public class GafParser {
 
+    private static final int CHUNK_SIZE = 50000;
+
+    // Number of lines per chunk
+    private final int chunkSize;
+
+    public GafParser() {
+        this(CHUNK_SIZE);
+    }
+
+    GafParser(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
     /**
      * Assumes OBO file is next to the GAF file. If this is not true, the annotation will only include term
      * ids. If you want term names, put the OBO file (go-basic.obo) in the same directory as the GAF.
@@ -52,83 +70,118 @@ public class GafParser {
      * @throws IOException if file can't be read
      */
     public Map<String, List<FeatureOntologyTermAnnotation>> parseGaf(Path gaf, Path oboFile) throws IOException {
+        return parseGaf(gaf, oboFile, 1);
+    }
+
+    /**
+     * @param gaf go annotation file
+     * @param oboFile location of go-basic obo. if this is NULL, it is looked for next to the GAF file
+     * @param numThreads number of threads tokenizing the GAF lines
+     * @return map from feature (e.g. transcript or protein) to the list of annotations
+     * @throws IOException if file can't be read
+     */
+    public Map<String, List<FeatureOntologyTermAnnotation>> parseGaf(Path gaf, Path oboFile, int numThreads) throws IOException {
 
         // if oboFile isn't specified, try to guess.
-        if (oboFile == null) {
-            gaf.getParent().getParent().resolve("go-basic.obo");
+        if (oboFile == null && gaf.toAbsolutePath().getParent() != null) {
+            oboFile = gaf.toAbsolutePath().getParent().resolve("go-basic.obo");
         }
         Map<String, String> goTerms = indexGO(oboFile);
 
-        // protein + term --> evidence code + qualifier --> publications
-        Map<MultiKey, Map<MultiKey, Set<String>>> transcriptTermToAnnotation = new HashMap();
-        BufferedReader bufferedReader = FileUtils.newBufferedReader(gaf);
-        String line = null;
-        while ((line = bufferedReader.readLine()) != null) {
-            if (line.startsWith("!")) {
-                continue;
+        Dictionary dictionary = new Dictionary();
+        AnnotationIndex index = new AnnotationIndex();
+
+        ExecutorService executor = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        try (BufferedReader bufferedReader = FileUtils.newBufferedReader(gaf)) {
+            Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.startsWith("!")) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    submit(lines, dictionary, index, executor, pending, numThreads);
+                    lines = new ArrayList<>(chunkSize);
+                }
             }
-            String[] array = line.split("\t", -1); // keep trailing empty Strings
-            if (array.length < 13) {
-                throw new IllegalArgumentException("Not enough elements (should be > 13 not "
-                        + array.length + ") in line: " + line);
-            }
-
-            String dbObjectId = array[1]; // eg protein, transcript
-            String goId = array[4];
-            String qualifier = array[3];
-            String evidenceCode = array[6];
-            String pubmeds = array[5];
-            Set<String> publications = new HashSet(Arrays.asList(pubmeds.split(",")));
-
-            MultiKey featureTermMultiKey = new MultiKey(dbObjectId, goId);
-            MultiKey codeQualifierMultiKey = new MultiKey(evidenceCode, qualifier);
-
-            Map<MultiKey, Set<String>> codeToPublications = transcriptTermToAnnotation.get(featureTermMultiKey);
-
-            // new protein + term pair
-            if (codeToPublications == null) {
-                codeToPublications = new HashMap<>();
-                codeToPublications.put(codeQualifierMultiKey, publications);
-                transcriptTermToAnnotation.put(featureTermMultiKey, codeToPublications);
-            } else {
-                // we've seen this protein + term before
-                Set<String> alreadySeenPublications = codeToPublications.get(codeQualifierMultiKey);
-                // new evidence code + qualifier
-                if (alreadySeenPublications == null) {
-                    alreadySeenPublications = new HashSet<>();
+            submit(lines, dictionary, index, executor, pending, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        return index.toAnnotations(dictionary, goTerms);
+    }
+
+    /**
+     * Tokenize the chunk, in the executor if any, and merge the parsed chunks in order until at most maxPending are left.
+     */
+    private void submit(List<String> lines, Dictionary dictionary, AnnotationIndex index, ExecutorService executor,
+                        Deque<Future<ParsedChunk>> pending, int maxPending) throws InterruptedException, ExecutionException {
+        if (executor == null) {
+            index.add(parseChunk(lines, dictionary));
+            return;
+        }
+        if (!lines.isEmpty()) {
+            pending.add(executor.submit(() -> parseChunk(lines, dictionary)));
+        }
+        while (pending.size() > maxPending) {
+            index.add(pending.poll().get());
+        }
+    }
+
+    private static ParsedChunk parseChunk(List<String> lines, Dictionary dictionary) {
+        ParsedChunk chunk = new ParsedChunk(lines.size());
+        int[] tabs = new int[7];
+        for (String line : lines) {
+            // Single pass over the line: position of the first tabs, and total number of columns
+            int numColumns = 1;
+            for (int i = line.indexOf('\t'); i >= 0; i = line.indexOf('\t', i + 1)) {
+                if (numColumns <= tabs.length) {
+                    tabs[numColumns - 1] = i;
                 }
-                alreadySeenPublications.addAll(publications);
-                codeToPublications.put(codeQualifierMultiKey, alreadySeenPublications);
-                // annotations.computeIfAbsent(dbObjectId, k -> new ArrayList<>()).add(featureOntologyTermAnnotation);
-            }
-        }
-        Map<String, List<FeatureOntologyTermAnnotation>> annotations = new HashMap<>();
-
-        // for every protein + term
-        for (Map.Entry<MultiKey, Map<MultiKey, Set<String>>> entry : transcriptTermToAnnotation.entrySet()) {
-            MultiKey featureTermMultiKey = entry.getKey();
-            String dbObjectId = featureTermMultiKey.getKeys()[0].toString();
-            String goId = featureTermMultiKey.getKeys()[1].toString();
-            String goName = goTerms.get(goId);
-            Map<MultiKey, Set<String>> codeToPublications = entry.getValue();
-            List<AnnotationEvidence> evidenceList = new ArrayList<>();
-            // for this protein + term, every evidence code + qualifier pair
-            for (Map.Entry<MultiKey, Set<String>> evidenceEntry : codeToPublications.entrySet()) {
-                MultiKey codeQualifierMultiKey = evidenceEntry.getKey();
-                String evidenceCode = codeQualifierMultiKey.getKeys()[0].toString();
-                String qualifier = codeQualifierMultiKey.getKeys()[1].toString();
-                if (qualifier.isEmpty()) {
-                    qualifier = null;
+                numColumns++;
+            }
+            if (numColumns < 13) {
+                throw new IllegalArgumentException("Not enough elements (should be > 13 not "
+                        + numColumns + ") in line: " + line);
+            }
+
+            // eg protein, transcript
+            chunk.features[chunk.size] = dictionary.intern(line.substring(tabs[0] + 1, tabs[1]));
+            chunk.qualifiers[chunk.size] = dictionary.intern(line.substring(tabs[2] + 1, tabs[3]));
+            chunk.terms[chunk.size] = dictionary.intern(line.substring(tabs[3] + 1, tabs[4]));
+            chunk.codes[chunk.size] = dictionary.intern(line.substring(tabs[5] + 1, tabs[6]));
+
+            // Comma separated references, as String.split trailing empty references are discarded
+            int referencesEnd = tabs[5];
+            while (referencesEnd > tabs[4] + 1 && line.charAt(referencesEnd - 1) == ',') {
+                referencesEnd--;
+            }
+            int start = tabs[4] + 1;
+            while (true) {
+                int comma = line.indexOf(',', start);
+                int end = comma < 0 || comma > referencesEnd ? referencesEnd : comma;
+                chunk.addReference(dictionary.intern(line.substring(start, end)));
+                if (end == referencesEnd) {
+                    break;
                 }
-                Set<String> publications = evidenceEntry.getValue();
-                AnnotationEvidence annotationEvidence = new AnnotationEvidence(evidenceCode, publications, qualifier);
-                evidenceList.add(annotationEvidence);
+                start = end + 1;
             }
-            FeatureOntologyTermAnnotation featureOntologyTermAnnotation = new FeatureOntologyTermAnnotation(goId, goName, "GO", null,
-                    evidenceList);
-            annotations.computeIfAbsent(dbObjectId, k -> new ArrayList<>()).add(featureOntologyTermAnnotation);
+            chunk.endLine();
         }
-        return annotations;
+        return chunk;
     }
 
     private Map<String, String> indexGO(Path oboFile) throws IOException {
@@ -146,5 +199,204 @@ public class GafParser {
         return idToName;
     }
 
-}
+    /**
+     * Thread safe string to int dictionary. Values must only be read back once all the strings have been interned.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                synchronized (this) {
+                    id = ids.get(value);
+                    if (id == null) {
+                        id = values.size();
+                        values.add(value);
+                        ids.put(value, id);
+                    }
+                }
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+    }
+
+    /**
+     * GAF lines of a chunk as dictionary ints.
+     */
+    private static class ParsedChunk {
+        private final int[] features;
+        private final int[] terms;
+        private final int[] codes;
+        private final int[] qualifiers;
+        // References of line i are references[referenceOffsets[i]] to references[referenceOffsets[i + 1]]
+        private final int[] referenceOffsets;
+        private int[] references;
+        private int numReferences;
+        private int size;
+
+        ParsedChunk(int capacity) {
+            features = new int[capacity];
+            terms = new int[capacity];
+            codes = new int[capacity];
+            qualifiers = new int[capacity];
+            referenceOffsets = new int[capacity + 1];
+            references = new int[capacity * 2];
+        }
+
+        void addReference(int reference) {
+            if (numReferences == references.length) {
+                references = Arrays.copyOf(references, references.length * 2);
+            }
+            references[numReferences++] = reference;
+        }
+
+        void endLine() {
+            size++;
+            referenceOffsets[size] = numReferences;
+        }
+    }
+
+    /**
+     * Evidences of one (feature, term) pair, i.e. a linked list of (evidence code, qualifier) with their references.
+     */
+    private static class Evidence {
+        private final int code;
+        private final int qualifier;
+        private int[] references = new int[2];
+        private int numReferences;
+        private Evidence next;
+
+        Evidence(int code, int qualifier) {
+            this.code = code;
+            this.qualifier = qualifier;
+        }
+
+        void addReference(int reference) {
+            for (int i = 0; i < numReferences; i++) {
+                if (references[i] == reference) {
+                    return;
+                }
+            }
+            if (numReferences == references.length) {
+                references = Arrays.copyOf(references, numReferences * 2);
+            }
+            references[numReferences++] = reference;
+        }
+    }
+
+    /**
+     * (feature, term) to evidences, open addressing on the packed long key.
+     */
+    private static class AnnotationIndex {
+        private long[] keys = new long[1 << 16];
+        private int[] slots = new int[1 << 16];
+        private int size;
+        // Evidences of each (feature, term) pair, in order of appearance
+        private final List<Evidence> evidences = new ArrayList<>();
+        private final List<Long> pairs = new ArrayList<>();
 
+        AnnotationIndex() {
+            Arrays.fill(slots, -1);
+        }
+
+        void add(ParsedChunk chunk) {
+            for (int i = 0; i < chunk.size; i++) {
+                int pair = getOrAdd(((long) chunk.features[i] << 32) | (chunk.terms[i] & 0xFFFFFFFFL));
+                Evidence evidence = evidences.get(pair);
+                Evidence last = null;
+                while (evidence != null && (evidence.code != chunk.codes[i] || evidence.qualifier != chunk.qualifiers[i])) {
+                    last = evidence;
+                    evidence = evidence.next;
+                }
+                if (evidence == null) {
+                    evidence = new Evidence(chunk.codes[i], chunk.qualifiers[i]);
+                    if (last == null) {
+                        evidences.set(pair, evidence);
+                    } else {
+                        last.next = evidence;
+                    }
+                }
+                for (int r = chunk.referenceOffsets[i]; r < chunk.referenceOffsets[i + 1]; r++) {
+                    evidence.addReference(chunk.references[r]);
+                }
+            }
+        }
+
+        private int getOrAdd(long key) {
+            int mask = keys.length - 1;
+            int position = (int) (mix(key) & mask);
+            while (slots[position] >= 0) {
+                if (keys[position] == key) {
+                    return slots[position];
+                }
+                position = (position + 1) & mask;
+            }
+            keys[position] = key;
+            slots[position] = size;
+            evidences.add(null);
+            pairs.add(key);
+            size++;
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new long[oldKeys.length * 2];
+            slots = new int[oldSlots.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldSlots[i] >= 0) {
+                    int position = (int) (mix(oldKeys[i]) & mask);
+                    while (slots[position] >= 0) {
+                        position = (position + 1) & mask;
+                    }
+                    keys[position] = oldKeys[i];
+                    slots[position] = oldSlots[i];
+                }
+            }
+        }
+
+        private static long mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return key ^ (key >>> 32);
+        }
+
+        Map<String, List<FeatureOntologyTermAnnotation>> toAnnotations(Dictionary dictionary, Map<String, String> goTerms) {
+            Map<String, List<FeatureOntologyTermAnnotation>> annotations = new HashMap<>();
+            // for every protein + term
+            for (int pair = 0; pair < size; pair++) {
+                long key = pairs.get(pair);
+                String dbObjectId = dictionary.get((int) (key >>> 32));
+                String goId = dictionary.get((int) key);
+                List<AnnotationEvidence> evidenceList = new ArrayList<>();
+                // for this protein + term, every evidence code + qualifier pair
+                for (Evidence evidence = evidences.get(pair); evidence != null; evidence = evidence.next) {
+                    String qualifier = dictionary.get(evidence.qualifier);
+                    if (qualifier.isEmpty()) {
+                        qualifier = null;
+                    }
+                    Set<String> publications = new HashSet<>();
+                    for (int r = 0; r < evidence.numReferences; r++) {
+                        publications.add(dictionary.get(evidence.references[r]));
+                    }
+                    evidenceList.add(new AnnotationEvidence(dictionary.get(evidence.code), publications, qualifier));
+                }
+                FeatureOntologyTermAnnotation featureOntologyTermAnnotation = new FeatureOntologyTermAnnotation(goId,
+                        goTerms.get(goId), "GO", null, evidenceList);
+                annotations.computeIfAbsent(dbObjectId, k -> new ArrayList<>()).add(featureOntologyTermAnnotation);
+            }
+            return annotations;
+        }
+    }
+}
@@ -21,12 +21,21 @@ import org.opencb.commons.utils.FileUtils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 
@@ -42,8 +51,11 @@ public class BeanReader<T> {
     @SuppressWarnings("rawtypes")
     private Constructor constructor;
     private String commentLines;
+    // Built once from the constructor and the separator, see getParser()
+    private LineParser<T> parser;
 
     private static final String COMMENT_CHARACTER = "#";
+    private static final int PARALLEL_BATCH_SIZE = 10000;
 
 //    public BeanReader(String filename, Class<T> c) throws IOException, SecurityException, NoSuchMethodException {
 //        this(new File(filename), c);
@@ -145,6 +157,66 @@ public class BeanReader<T> {
         return records;
     }
 
+    /**
+     * Read all the remaining records, parsing batches of lines in parallel. Records are returned in file order.
+     *
+     * @param numThreads    Number of threads parsing lines
+     * @return  List of records
+     * @throws IOException  If the file can not be read, or any line can not be parsed
+     */
+    public List<T> readAll(int numThreads) throws IOException {
+        LineParser<T> lineParser;
+        try {
+            lineParser = getParser();
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+        if (lineParser == null) {
+            return new ArrayList<>();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<List<T>>> futures = new ArrayList<>();
+            List<String> lines = new ArrayList<>(PARALLEL_BATCH_SIZE);
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith(COMMENT_CHARACTER)) {
+                    lines.add(line);
+                    if (lines.size() == PARALLEL_BATCH_SIZE) {
+                        futures.add(executor.submit(parseTask(lineParser, lines)));
+                        lines = new ArrayList<>(PARALLEL_BATCH_SIZE);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                futures.add(executor.submit(parseTask(lineParser, lines)));
+            }
+
+            List<T> records = new ArrayList<>();
+            for (Future<List<T>> future : futures) {
+                records.addAll(future.get());
+            }
+            return records;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> Callable<List<T>> parseTask(LineParser<T> lineParser, List<String> lines) {
+        return () -> {
+            List<T> records = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                records.add(lineParser.parse(line));
+            }
+            return records;
+        };
+    }
+
     public List<T> readAllForced() throws IOException {
         List<T> records = new ArrayList<>();
         String line;
@@ -171,27 +243,146 @@ public class BeanReader<T> {
     }
 
 
-    @SuppressWarnings("unchecked")
     private T stringLineToObject(String line) throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        LineParser<T> lineParser = getParser();
+        if (lineParser == null || line == null) {
+            return null;
+        }
+        return lineParser.parse(line);
+    }
+
+    private LineParser<T> getParser() throws IllegalAccessException {
         if (constructor == null) {
             return null;
         }
-        if (line != null) {
-            String[] fields = line.split(separator, -1);
-            Object[] obj = new Object[fields.length];
-            if (argsClass == null) {
-                argsClass = constructor.getParameterTypes();
+        if (parser == null) {
+            parser = new LineParser<>(constructor, separator);
+        }
+        return parser;
+    }
+
+    /**
+     * Line to bean parser, built once per reader. Field converters and the constructor are resolved to method handles or
+     * lambdas up front, and lines are tokenized without regular expressions when the separator is a single character.
+     * Parsers are stateless, so they can be shared by several threads.
+     *
+     * Field values are still boxed, primitive ones included, as the constructor is invoked with an array of arguments.
+     * As with {@link Constructor#newInstance}, any exception thrown by a field converter or by the bean constructor is
+     * wrapped in an {@link InvocationTargetException}.
+     */
+    private static final class LineParser<T> {
+
+        private final MethodHandle constructorHandle;
+        private final Function<String, Object>[] converters;
+        private final char separatorChar;
+        private final Pattern separatorPattern;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        LineParser(Constructor constructor, String separator) throws IllegalAccessException {
+            Class[] parameterTypes = constructor.getParameterTypes();
+            this.constructorHandle = MethodHandles.publicLookup().unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            this.converters = new Function[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                converters[i] = converter(parameterTypes[i]);
             }
-            try {
+            if (separator.length() == 1 && ".$|()[{^?*+\\".indexOf(separator.charAt(0)) < 0) {
+                this.separatorChar = separator.charAt(0);
+                this.separatorPattern = null;
+            } else {
+                this.separatorChar = 0;
+                this.separatorPattern = Pattern.compile(separator);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T parse(String line) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+            Object[] args = new Object[converters.length];
+            if (separatorPattern == null) {
+                int start = 0;
+                int numFields = 0;
+                while (true) {
+                    int end = line.indexOf(separatorChar, start);
+                    String field = end < 0 ? line.substring(start) : line.substring(start, end);
+                    if (numFields == args.length) {
+                        throw new IllegalArgumentException("Expected " + args.length + " fields in line: " + line);
+                    }
+                    args[numFields] = convert(numFields, field);
+                    numFields++;
+                    if (end < 0) {
+                        break;
+                    }
+                    start = end + 1;
+                }
+                if (numFields != args.length) {
+                    throw new IllegalArgumentException("Expected " + args.length + " fields in line: " + line);
+                }
+            } else {
+                String[] fields = separatorPattern.split(line, -1);
+                if (fields.length != args.length) {
+                    throw new IllegalArgumentException("Expected " + args.length + " fields in line: " + line);
+                }
                 for (int i = 0; i < fields.length; i++) {
-                    obj[i] = argsClass[i].getConstructor(String.class).newInstance(fields[i]);
+                    args[i] = convert(i, fields[i]);
                 }
-                return (T) constructor.newInstance(obj);
-            } catch (SecurityException | NoSuchMethodException e) {
-                e.printStackTrace();
             }
+
+            try {
+                return (T) (Object) constructorHandle.invokeExact(args);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        private Object convert(int i, String field) throws InvocationTargetException {
+            try {
+                return converters[i].apply(field);
+            } catch (RuntimeException e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        private static Function<String, Object> converter(Class type) throws IllegalAccessException {
+            if (type == String.class) {
+                return field -> field;
+            } else if (type == Integer.class || type == int.class) {
+                return Integer::valueOf;
+            } else if (type == Long.class || type == long.class) {
+                return Long::valueOf;
+            } else if (type == Double.class || type == double.class) {
+                return Double::valueOf;
+            } else if (type == Float.class || type == float.class) {
+                return Float::valueOf;
+            } else if (type == Short.class || type == short.class) {
+                return Short::valueOf;
+            } else if (type == Byte.class || type == byte.class) {
+                return Byte::valueOf;
+            } else if (type == Boolean.class || type == boolean.class) {
+                return Boolean::valueOf;
+            }
+
+            // Any other class with a public String constructor
+            MethodHandle stringConstructor;
+            try {
+                stringConstructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class, String.class))
+                        .asType(MethodType.methodType(Object.class, String.class));
+            } catch (NoSuchMethodException e) {
+                return field -> {
+                    throw new IllegalArgumentException("Class " + type.getName() + " has no String constructor");
+                };
+            }
+            return field -> {
+                try {
+                    return stringConstructor.invokeExact(field);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalArgumentException(e);
+                }
+            };
         }
-        return null;
     }
 
     private String getFirstLineUncommented() throws IOException {
@@ -228,6 +419,7 @@ public class BeanReader<T> {
     @SuppressWarnings("rawtypes")
     public BeanReader<T> setConstructor(Constructor constructor) {
         this.constructor = constructor;
+        this.parser = null;
         if (constructor != null) {
             argsClass = constructor.getParameterTypes();
         }
@@ -258,6 +450,7 @@ public class BeanReader<T> {
 
     public BeanReader<T> setSeparator(String separator) {
         this.separator = separator;
+        this.parser = null;
         return this;
     }
 
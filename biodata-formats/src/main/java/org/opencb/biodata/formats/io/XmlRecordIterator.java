@@ -0,0 +1,177 @@
+package org.opencb.biodata.formats.io;
+
+import org.opencb.commons.utils.FileUtils;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader of large XML documents made of many records, e.g. UniProt entries or ClinVar variation archives.
+ *
+ * The document is walked with StAX and only one record element is unmarshalled at a time into its JAXB type, so the
+ * memory needed does not depend on the size of the document.
+ *
+ * @param <T> JAXB type of the record elements
+ */
+public class XmlRecordIterator<T> implements Iterator<T>, Closeable {
+
+    private static final Map<String, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final InputStream inputStream;
+    private final XMLStreamReader xmlStreamReader;
+    private final Unmarshaller unmarshaller;
+    private final String recordElement;
+    private final Class<T> recordClass;
+
+    private T next;
+
+    /**
+     * @param path          XML file, can be gzipped
+     * @param contextPath   JAXB context path, see {@link #getJAXBContext(String)}
+     * @param recordElement Local name of the record elements
+     * @param recordClass   JAXB type of the record elements
+     * @throws IOException      If the file can not be opened
+     * @throws JAXBException    If the JAXB context can not be created
+     */
+    public XmlRecordIterator(Path path, String contextPath, String recordElement, Class<T> recordClass)
+            throws IOException, JAXBException {
+        this(FileUtils.newInputStream(path), contextPath, recordElement, recordClass);
+    }
+
+    public XmlRecordIterator(InputStream inputStream, String contextPath, String recordElement, Class<T> recordClass)
+            throws IOException, JAXBException {
+        this.inputStream = inputStream;
+        this.recordElement = recordElement;
+        this.recordClass = recordClass;
+        this.unmarshaller = getJAXBContext(contextPath).createUnmarshaller();
+        try {
+            this.xmlStreamReader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * JAXB contexts are expensive to create and thread safe, so they are created once per context path.
+     *
+     * @param contextPath   JAXB context path, i.e. the package of the JAXB classes
+     * @return  JAXB context
+     * @throws JAXBException    If the JAXB context can not be created
+     */
+    public static JAXBContext getJAXBContext(String contextPath) throws JAXBException {
+        JAXBContext jaxbContext = CONTEXTS.get(contextPath);
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(contextPath);
+            CONTEXTS.putIfAbsent(contextPath, jaxbContext);
+        }
+        return jaxbContext;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Read all the records, handing each of them to a pool of workers. Records are unmarshalled in the calling thread, in
+     * order, but the consumer may process them in any order. Returns when all the records have been consumed.
+     *
+     * @param numThreads    Number of worker threads
+     * @param consumer      Record consumer, must be thread safe
+     * @throws ExecutionException   If the consumer failed for any record
+     * @throws InterruptedException If interrupted while waiting for the workers
+     */
+    public void forEach(int numThreads, Consumer<? super T> consumer) throws ExecutionException, InterruptedException {
+        if (numThreads <= 1) {
+            forEachRemaining(consumer);
+            return;
+        }
+
+        // Bounded queue, the reader thread processes the records itself when the workers fall behind
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(numThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        try {
+            while (error.get() == null && hasNext()) {
+                T record = next();
+                executor.execute(() -> {
+                    try {
+                        consumer.accept(record);
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        if (error.get() != null) {
+            throw new ExecutionException(error.get());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xmlStreamReader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private T readNext() {
+        try {
+            while (xmlStreamReader.hasNext()) {
+                if (xmlStreamReader.getEventType() == XMLStreamConstants.START_ELEMENT
+                        && recordElement.equals(xmlStreamReader.getLocalName())) {
+                    // Leaves the reader right after the end of the record element
+                    return unmarshaller.unmarshal(xmlStreamReader, recordClass).getValue();
+                }
+                xmlStreamReader.next();
+            }
+            return null;
+        } catch (XMLStreamException | JAXBException e) {
+            throw new IllegalStateException("Error reading '" + recordElement + "' XML element", e);
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Do not fetch external DTDs, e.g. PubMed files declare one
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -17,10 +17,6 @@
 package org.opencb.biodata.formats.obo;
 
 import org.apache.commons.lang3.StringUtils;
-import org.obolibrary.oboformat.model.Frame;
-import org.obolibrary.oboformat.model.OBODoc;
-import org.obolibrary.oboformat.model.Xref;
-import org.obolibrary.oboformat.parser.OBOFormatParser;
 import org.opencb.biodata.models.core.OntologyTerm;
 import org.opencb.commons.utils.FileUtils;
 
@@ -30,6 +26,10 @@ import java.nio.file.Path;
 import java.util.*;
 
 
+/**
+ * Streaming OBO parser. Only [Term] frames are read, line by line, so no document model of the whole ontology is kept
+ * in memory.
+ */
 public class OboParser {
 
     private Map<String, OntologyTerm> oboTerms;
@@ -43,64 +43,137 @@ public class OboParser {
     }
 
     public List<OntologyTerm> parseOBO(BufferedReader bufferedReader, String ontologyName) throws IOException {
-        OBOFormatParser parser = new OBOFormatParser();
-        OBODoc oboDoc = parser.parse(bufferedReader);
-        Collection<Frame> frames = oboDoc.getTermFrames();
         oboTerms = new LinkedHashMap<>();
-        for (Frame frame : frames) {
-            String oboId = frame.getId();
-            OntologyTerm ontologyTerm = getOntologyTerm(oboId);
-            if (StringUtils.isNotEmpty(ontologyName)) {
-                ontologyTerm.setSource(ontologyName);
+        boolean inTerm = false;
+        OntologyTerm ontologyTerm = null;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '!') {
+                continue;
+            }
+            if (line.charAt(0) == '[') {
+                // New frame: [Term], [Typedef], [Instance]
+                inTerm = line.equals("[Term]");
+                ontologyTerm = null;
+                continue;
+            }
+            if (!inTerm) {
+                continue;
             }
-            for (String tag : frame.getTags()) {
-                switch(tag) {
-                    case "name":
-                        ontologyTerm.setName((String) frame.getTagValue(tag));
-                        break;
-                    case "def":
-                        ontologyTerm.setDescription((String) frame.getTagValue(tag));
-                        break;
-                    case "namespace":
-                        ontologyTerm.setNamespace((String) frame.getTagValue(tag));
-                        break;
-                    case "xref":
-                        List<String> existingXrefs = ontologyTerm.getXrefs();
-                        Collection<Object> xrefs = frame.getTagValues(tag);
-                        for (Object xref : xrefs) {
-                            existingXrefs.add(((Xref) xref).getIdref());
-                        }
-                        ontologyTerm.setXrefs(existingXrefs);
-                        break;
-                    case "comment":
-                        ontologyTerm.setComment((String) frame.getTagValue(tag));
-                        break;
-                    case "synonym":
-                        List<String> existingSynonyms = ontologyTerm.getSynonyms();
-                        Collection<Object> synonyms = frame.getTagValues(tag);
-                        for (Object synonym : synonyms) {
-                            existingSynonyms.add(String.valueOf(synonym));
-                        }
-                        ontologyTerm.setSynonyms(existingSynonyms);
-                        break;
-                    case "is_a":
-                        List<String> existingParents = ontologyTerm.getParents();
-                        Collection<Object> parents = frame.getTagValues(tag);
-                        for (Object parent : parents) {
-                            existingParents.add(String.valueOf(parent));
-                            addChild(String.valueOf(parent), oboId);
-                        }
-                        ontologyTerm.setParents(existingParents);
-                        break;
-                    default:
-                        // new tag we don't parse ignore
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String tag = line.substring(0, colon);
+            String value = line.substring(colon + 1).trim();
+            if (tag.equals("id")) {
+                ontologyTerm = getOntologyTerm(unquotedValue(value));
+                if (StringUtils.isNotEmpty(ontologyName)) {
+                    ontologyTerm.setSource(ontologyName);
                 }
+                continue;
+            }
+            if (ontologyTerm == null) {
+                // Tags before the id are not expected
+                continue;
+            }
+            switch (tag) {
+                case "name":
+                    ontologyTerm.setName(unquotedValue(value));
+                    break;
+                case "def":
+                    ontologyTerm.setDescription(quotedValue(value));
+                    break;
+                case "namespace":
+                    ontologyTerm.setNamespace(unquotedValue(value));
+                    break;
+                case "xref":
+                    ontologyTerm.getXrefs().add(firstToken(unquotedValue(value)));
+                    break;
+                case "comment":
+                    ontologyTerm.setComment(unquotedValue(value));
+                    break;
+                case "synonym":
+                    ontologyTerm.getSynonyms().add(quotedValue(value));
+                    break;
+                case "is_a":
+                    String parent = firstToken(unquotedValue(value));
+                    ontologyTerm.getParents().add(parent);
+                    addChild(parent, ontologyTerm.getId());
+                    break;
+                default:
+                    // new tag we don't parse ignore
             }
-
         }
         return new ArrayList<>(oboTerms.values());
     }
 
+    /**
+     * Value of a tag with a quoted string, e.g. def or synonym, without the trailing scope, type or references.
+     */
+    private static String quotedValue(String value) {
+        if (value.isEmpty() || value.charAt(0) != '"') {
+            return unquotedValue(value);
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                break;
+            } else if (c == '\\' && i + 1 < value.length()) {
+                sb.append(unescape(value.charAt(++i)));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Value of a tag without the trailing "! comment" or "{qualifiers}", and with the escaped characters resolved.
+     */
+    private static String unquotedValue(String value) {
+        StringBuilder sb = null;
+        int end = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length()).append(value, 0, i);
+                }
+                sb.append(unescape(value.charAt(++i)));
+                continue;
+            }
+            if (c == '!' || (c == '{' && value.charAt(value.length() - 1) == '}')) {
+                end = i;
+                break;
+            }
+            if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? value.substring(0, end).trim() : sb.toString().trim();
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'W':
+                return ' ';
+            default:
+                return c;
+        }
+    }
+
+    private static String firstToken(String value) {
+        int space = value.indexOf(' ');
+        return space < 0 ? value : value.substring(0, space);
+    }
+
     private void addChild(String parentId, String childId) {
         OntologyTerm parentTerm = getOntologyTerm(parentId);
         List<String> children = parentTerm.getChildren();
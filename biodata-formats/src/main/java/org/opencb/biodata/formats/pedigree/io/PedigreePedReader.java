@@ -75,52 +75,78 @@ public class PedigreePedReader implements PedigreeReader {
     @Override
     public List<Pedigree> read() {
         String line;
-        Individual ind, father, mother;
-        String[] fields;
-        String sampleId, familyId, fatherId, motherId, sex, phenotype;
-        Set<Individual> family;
-        String[] auxFields = null;
 
         try {
             while ((line = reader.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    this.parseHeader(line);
-                } else {
-                    fields = line.split("\t", -1);
-                    familyId = fields[0];
-                    sampleId = fields[1];
-                    fatherId = fields[2];
-                    motherId = fields[3];
-                    sex = fields[4];
-                    phenotype = fields[5];
-
-                    if (fields.length > 6) {
-                        auxFields = Arrays.copyOfRange(fields, 6, fields.length);
-                    }
-
-                    family = ped.getFamily(familyId);
-                    if (family == null) {
-                        family = new TreeSet<>();
-                        ped.addFamily(familyId, family);
-                    }
-
-                    ind = new Individual(sampleId, familyId, null, null, sex, phenotype, auxFields);
-                    ind.setFatherId(fatherId);
-                    ind.setMotherId(motherId);
-                    ped.addIndividual(ind);
-                    family.add(ind);
-
-
-                }
+                parseLine(line, ped);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        linkParents(ped);
+        return Arrays.asList(ped);
+    }
+
+    /**
+     * Read the next individuals of the file, for bulk loads of large PED files. Parents are linked only if they are in
+     * the same batch, otherwise just their ids are set.
+     *
+     * @param batchSize Number of individuals
+     * @return A pedigree with the next individuals, or an empty list at the end of the file
+     */
+    @Override
+    public List<Pedigree> read(int batchSize) {
+        Pedigree batch = new Pedigree();
+        batch.setFields(ped.getFields());
+        String line;
+        try {
+            while (batch.getIndividuals().size() < batchSize && (line = reader.readLine()) != null) {
+                parseLine(line, batch);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (batch.getIndividuals().isEmpty()) {
+            return Collections.emptyList();
+        }
+        linkParents(batch);
+        return Collections.singletonList(batch);
+    }
 
-        for (Map.Entry<String, Individual> entry : ped.getIndividuals().entrySet()) {
+    private void parseLine(String line, Pedigree pedigree) {
+        if (line.startsWith("#")) {
+            this.parseHeader(line);
+            return;
+        }
+        String[] fields = line.split("\t", -1);
+        String familyId = fields[0];
+        String sampleId = fields[1];
+        String[] auxFields = null;
+
+        if (fields.length > 6) {
+            auxFields = Arrays.copyOfRange(fields, 6, fields.length);
+        }
+
+        Set<Individual> family = pedigree.getFamily(familyId);
+        if (family == null) {
+            family = new TreeSet<>();
+            pedigree.addFamily(familyId, family);
+        }
+
+        Individual ind = new Individual(sampleId, familyId, null, null, fields[4], fields[5], auxFields);
+        ind.setFatherId(fields[2]);
+        ind.setMotherId(fields[3]);
+        pedigree.addIndividual(ind);
+        family.add(ind);
+    }
+
+    private static void linkParents(Pedigree pedigree) {
+        Individual ind, father, mother;
+        for (Map.Entry<String, Individual> entry : pedigree.getIndividuals().entrySet()) {
             ind = entry.getValue();
-            father = ped.getIndividual(ind.getFatherId());
-            mother = ped.getIndividual(ind.getMotherId());
+            father = pedigree.getIndividual(ind.getFatherId());
+            mother = pedigree.getIndividual(ind.getMotherId());
 
             ind.setFather(father);
             ind.setMother(mother);
@@ -133,13 +159,6 @@ public class PedigreePedReader implements PedigreeReader {
 
             }
         }
-        
-        return Arrays.asList(ped);
-    }
-
-    @Override
-    public List<Pedigree> read(int batchSize) {
-        return null;
     }
 
     private void parseHeader(String lineHeader) {
@@ -0,0 +1,220 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.pedigree.io;
+
+import java.sql.*;
+import java.util.*;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads pedigrees from a SQLite database written by {@link PedigreePedSqliteWriter}.
+ *
+ * Families can be read one at a time with {@link #readFamily(String)}, using the family index, or all of them in batches
+ * of families with {@link #read(int)}, so the whole database never needs to be in memory.
+ *
+ * Database errors are logged and thrown as {@link IllegalStateException}.
+ */
+public class PedigreePedSqliteReader implements PedigreeReader {
+
+    private static final String COLUMNS = "sample, family, father, mother, sex, phenotype";
+    private static final int SQLITE_OPEN_READONLY = 1;
+
+    private String dbName;
+    private Connection con;
+    private PreparedStatement familyStmt;
+
+    // Cursor over all the individuals, ordered by family, for read(int)
+    private Statement allStmt;
+    private ResultSet allResultSet;
+    private boolean allRead;
+
+    private final Logger logger = LoggerFactory.getLogger(PedigreePedSqliteReader.class);
+
+    public PedigreePedSqliteReader(String dbName) {
+        this.dbName = dbName;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            // The SQLite driver does not allow changing the read-only flag of an open connection
+            Properties properties = new Properties();
+            properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+            con = DriverManager.getConnection("jdbc:sqlite:" + dbName, properties);
+            familyStmt = con.prepareStatement("SELECT " + COLUMNS + " FROM pedigree WHERE family = ? ORDER BY id_pedigree;");
+        } catch (ClassNotFoundException | SQLException e) {
+            throw error("Unable to open pedigree database " + dbName, e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            if (allResultSet != null) {
+                allResultSet.close();
+                allStmt.close();
+            }
+            familyStmt.close();
+            con.close();
+        } catch (SQLException e) {
+            throw error("Unable to close pedigree database " + dbName, e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    /**
+     * @return A single pedigree with all the families
+     */
+    @Override
+    public List<Pedigree> read() {
+        Pedigree pedigree = new Pedigree();
+        try (Statement stmt = con.createStatement();
+             ResultSet resultSet = stmt.executeQuery("SELECT " + COLUMNS + " FROM pedigree ORDER BY id_pedigree;")) {
+            while (resultSet.next()) {
+                addIndividual(pedigree, resultSet);
+            }
+        } catch (SQLException e) {
+            throw error("Unable to read pedigree database " + dbName, e);
+        }
+        linkParents(pedigree);
+        return Collections.singletonList(pedigree);
+    }
+
+    /**
+     * Read the next families, in family order.
+     *
+     * @param batchSize Number of families
+     * @return One pedigree per family, empty when all the families have been read
+     */
+    @Override
+    public List<Pedigree> read(int batchSize) {
+        List<Pedigree> pedigrees = new ArrayList<>(batchSize);
+        try {
+            if (allResultSet == null) {
+                allStmt = con.createStatement();
+                allResultSet = allStmt.executeQuery("SELECT " + COLUMNS + " FROM pedigree ORDER BY family, id_pedigree;");
+                allRead = !allResultSet.next();
+            }
+            while (!allRead && pedigrees.size() < batchSize) {
+                Pedigree pedigree = new Pedigree();
+                String family = allResultSet.getString(2);
+                do {
+                    addIndividual(pedigree, allResultSet);
+                    allRead = !allResultSet.next();
+                } while (!allRead && Objects.equals(family, allResultSet.getString(2)));
+                linkParents(pedigree);
+                pedigrees.add(pedigree);
+            }
+        } catch (SQLException e) {
+            throw error("Unable to read pedigree database " + dbName, e);
+        }
+        return pedigrees;
+    }
+
+    /**
+     * @param familyId Family
+     * @return Pedigree with the individuals of the family, or null if there is no such family
+     * @throws SQLException If the database can not be queried
+     */
+    public Pedigree readFamily(String familyId) throws SQLException {
+        Pedigree pedigree = new Pedigree();
+        familyStmt.setString(1, familyId);
+        try (ResultSet resultSet = familyStmt.executeQuery()) {
+            while (resultSet.next()) {
+                addIndividual(pedigree, resultSet);
+            }
+        }
+        if (pedigree.getIndividuals().isEmpty()) {
+            return null;
+        }
+        linkParents(pedigree);
+        return pedigree;
+    }
+
+    /**
+     * @param familyIds Families
+     * @return Pedigree with the individuals of all the families found
+     * @throws SQLException If the database can not be queried
+     */
+    public Pedigree readFamilies(Collection<String> familyIds) throws SQLException {
+        Pedigree pedigree = new Pedigree();
+        for (String familyId : familyIds) {
+            familyStmt.setString(1, familyId);
+            try (ResultSet resultSet = familyStmt.executeQuery()) {
+                while (resultSet.next()) {
+                    addIndividual(pedigree, resultSet);
+                }
+            }
+        }
+        linkParents(pedigree);
+        return pedigree;
+    }
+
+    private IllegalStateException error(String message, Exception e) {
+        logger.error("{}: {}", message, e.getMessage(), e);
+        return new IllegalStateException(message, e);
+    }
+
+    private static void addIndividual(Pedigree pedigree, ResultSet resultSet) throws SQLException {
+        String familyId = resultSet.getString(2);
+        Individual ind = new Individual(resultSet.getString(1), familyId, null, null, resultSet.getString(5),
+                resultSet.getString(6), null);
+        ind.setFatherId(resultSet.getString(3));
+        ind.setMotherId(resultSet.getString(4));
+
+        Set<Individual> family = pedigree.getFamily(familyId);
+        if (family == null) {
+            family = new TreeSet<>();
+            pedigree.addFamily(familyId, family);
+        }
+        pedigree.addIndividual(ind);
+        family.add(ind);
+    }
+
+    private static void linkParents(Pedigree pedigree) {
+        for (Individual ind : pedigree.getIndividuals().values()) {
+            Individual father = pedigree.getIndividual(ind.getFatherId());
+            Individual mother = pedigree.getIndividual(ind.getMotherId());
+            ind.setFather(father);
+            ind.setMother(mother);
+            if (mother != null) {
+                mother.addChild(ind);
+            }
+            if (father != null) {
+                father.addChild(ind);
+            }
+        }
+    }
+}
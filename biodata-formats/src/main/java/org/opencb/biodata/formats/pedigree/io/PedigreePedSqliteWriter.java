@@ -25,16 +25,31 @@ import java.util.Map;
 import org.opencb.biodata.models.pedigree.Individual;
 import org.opencb.biodata.models.pedigree.Pedigree;
 
+/**
+ * Writes pedigrees into a SQLite database, see {@link PedigreePedSqliteReader}.
+ *
+ * Individuals are inserted with a single prepared statement in JDBC batches, and committed once per written batch of
+ * pedigrees. The database runs in WAL mode, and the indexes on sample and family are created in {@link #post()}, after
+ * the bulk load.
+ */
 public class PedigreePedSqliteWriter implements PedigreeWriter {
 
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
     private String dbName;
     private Connection con;
     private Statement stmt;
     private PreparedStatement pstmt;
+    private int batchSize;
 
 
     public PedigreePedSqliteWriter(String dbName) {
+        this(dbName, DEFAULT_BATCH_SIZE);
+    }
+
+    public PedigreePedSqliteWriter(String dbName, int batchSize) {
         this.dbName = dbName;
+        this.batchSize = batchSize;
         stmt = null;
         pstmt = null;
     }
@@ -45,6 +60,10 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
         try {
             Class.forName("org.sqlite.JDBC");
             con = DriverManager.getConnection("jdbc:sqlite:" + dbName);
+            try (Statement pragmas = con.createStatement()) {
+                pragmas.execute("PRAGMA journal_mode=WAL;");
+                pragmas.execute("PRAGMA synchronous=NORMAL;");
+            }
             con.setAutoCommit(false);
 
         } catch (ClassNotFoundException | SQLException e) {
@@ -60,6 +79,9 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
     public boolean close() {
 
         try {
+            if (pstmt != null) {
+                pstmt.close();
+            }
             con.close();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -89,6 +111,8 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
             stmt.close();
 
             con.commit();
+
+            pstmt = con.prepareStatement("INSERT INTO pedigree (sample, family, father, mother, sex, phenotype) VALUES(?,?,?,?,?,?);");
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             res = false;
@@ -104,8 +128,9 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
         try {
 
             stmt = con.createStatement();
-            stmt.execute("CREATE INDEX pedigree_sample_idx ON pedigree(sample);");
-            stmt.execute("CREATE INDEX pedigree_family_idx ON pedigree(family);");
+            // The UNIQUE constraint already indexes the samples, this index is kept for existing databases
+            stmt.execute("CREATE INDEX IF NOT EXISTS pedigree_sample_idx ON pedigree(sample);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS pedigree_family_idx ON pedigree(family);");
             stmt.close();
             con.commit();
 
@@ -119,45 +144,74 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
     }
 
     @Override
-    public boolean write(List batch) {
-        return false;
+    public boolean write(List<Pedigree> batch) {
+        boolean res = true;
+        try {
+            for (Pedigree pedigree : batch) {
+                addIndividuals(pedigree);
+            }
+            pstmt.executeBatch();
+            con.commit();
+        } catch (SQLException e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            rollback();
+            res = false;
+        }
+        return res;
     }
 
     @Override
     public boolean write(Pedigree data) {
-
-        Map<String, Individual> individuals = data.getIndividuals();
-        Individual ind;
         boolean res = true;
-
-        String sql = "INSERT INTO pedigree (sample, family, father, mother, sex, phenotype) VALUES(?,?,?,?,?,?);";
-
         try {
-            pstmt = con.prepareStatement(sql);
-            for (Map.Entry<String, Individual> entry : individuals.entrySet()) {
-                ind = entry.getValue();
-                pstmt.setString(1, ind.getId());
-                pstmt.setString(2, ind.getFamily());
-                pstmt.setString(3, (ind.getFather() != null) ? ind.getFather().getId() : "0");
-                pstmt.setString(4, (ind.getMother() != null) ? ind.getMother().getId() : "0");
-
-                pstmt.setString(5, ind.getSex());
-                pstmt.setString(6, ind.getPhenotype());
-
-                pstmt.execute();
-
-            }
-
-            pstmt.close();
+            addIndividuals(data);
+            pstmt.executeBatch();
             con.commit();
-
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
+            rollback();
             res = false;
         }
 
         return res;
     }
 
+    private void addIndividuals(Pedigree data) throws SQLException {
+        int pending = 0;
+        for (Map.Entry<String, Individual> entry : data.getIndividuals().entrySet()) {
+            Individual ind = entry.getValue();
+            pstmt.setString(1, ind.getId());
+            pstmt.setString(2, ind.getFamily());
+            pstmt.setString(3, parentId(ind.getFather(), ind.getFatherId()));
+            pstmt.setString(4, parentId(ind.getMother(), ind.getMotherId()));
+            pstmt.setString(5, ind.getSex());
+            pstmt.setString(6, ind.getPhenotype());
+            pstmt.addBatch();
+
+            if (++pending == batchSize) {
+                pstmt.executeBatch();
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * Parents not in the pedigree, e.g. read in another batch, are written by id.
+     */
+    private static String parentId(Individual parent, String parentId) {
+        if (parent != null) {
+            return parent.getId();
+        }
+        return parentId != null ? parentId : "0";
+    }
+
+    private void rollback() {
+        try {
+            pstmt.clearBatch();
+            con.rollback();
+        } catch (SQLException e) {
+            System.err.println(e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
 
 }
@@ -16,6 +16,9 @@
 
 package org.opencb.biodata.formats.protein.uniprot;
 
+import org.opencb.biodata.formats.io.XmlRecordIterator;
+import org.opencb.biodata.formats.protein.uniprot.v202003jaxb.Entry;
+
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
@@ -23,6 +26,8 @@ import javax.xml.bind.Unmarshaller;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Created by imedina on 25/09/15.
@@ -33,7 +38,7 @@ public class UniProtParser {
 
     public static void saveXMLInfo(Object obj, String filename) throws FileNotFoundException, JAXBException {
         JAXBContext jaxbContext;
-        jaxbContext = JAXBContext.newInstance(UNIPROT_CONTEXT);
+        jaxbContext = XmlRecordIterator.getJAXBContext(UNIPROT_CONTEXT);
         Marshaller marshaller = jaxbContext.createMarshaller();
         marshaller.marshal(obj, new FileOutputStream(filename));
     }
@@ -46,7 +51,7 @@ public class UniProtParser {
      */
     public static Object loadXMLInfo(String filename) throws JAXBException {
         Object obj = null;
-        JAXBContext jaxbContext = JAXBContext.newInstance(UNIPROT_CONTEXT);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(UNIPROT_CONTEXT);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
         obj = unmarshaller.unmarshal(new File(filename));
         return obj;
@@ -60,9 +65,21 @@ public class UniProtParser {
      */
     public static Object loadXMLInfo(String filename, String uniprotVersion) throws JAXBException {
         Object obj = null;
-        JAXBContext jaxbContext = JAXBContext.newInstance(uniprotVersion);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(uniprotVersion);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
         obj = unmarshaller.unmarshal(new File(filename));
         return obj;
     }
+
+    /**
+     * Streams the entries of a UniProt XML file, one at a time, without loading the whole document.
+     *
+     * @param filename  UniProt XML file, can be gzipped
+     * @return  Entry iterator, must be closed
+     * @throws JAXBException    If the JAXB context can not be created
+     * @throws IOException      If the file can not be opened
+     */
+    public static XmlRecordIterator<Entry> iterator(String filename) throws JAXBException, IOException {
+        return new XmlRecordIterator<>(Paths.get(filename), UNIPROT_CONTEXT, "entry", Entry.class);
+    }
 }
@@ -1,10 +1,14 @@
 package org.opencb.biodata.formats.pubmed;
 
+import org.opencb.biodata.formats.io.XmlRecordIterator;
+import org.opencb.biodata.formats.pubmed.v233jaxb.PubmedArticle;
+
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.zip.GZIPInputStream;
 
 public class PubMedParser {
@@ -14,7 +18,7 @@ public class PubMedParser {
 
     public static void saveXMLInfo(Object obj, String filename) throws FileNotFoundException, JAXBException {
         JAXBContext jaxbContext;
-        jaxbContext = JAXBContext.newInstance(PUBMED_CONTEXT);
+        jaxbContext = XmlRecordIterator.getJAXBContext(PUBMED_CONTEXT);
         Marshaller marshaller = jaxbContext.createMarshaller();
         marshaller.marshal(obj, new FileOutputStream(filename));
     }
@@ -29,7 +33,7 @@ public class PubMedParser {
         System.setProperty("javax.xml.accessExternalDTD", "all");
 
         Object obj = null;
-        JAXBContext jaxbContext = JAXBContext.newInstance(PUBMED_CONTEXT);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(PUBMED_CONTEXT);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
 
         if (filename.endsWith("gz")) {
@@ -43,4 +47,17 @@ public class PubMedParser {
 
         return obj;
     }
+
+    /**
+     * Streams the articles of a PubMed XML file, one at a time, without loading the whole document. Book articles are
+     * skipped.
+     *
+     * @param filename  PubMed XML file, can be gzipped
+     * @return  Article iterator, must be closed
+     * @throws JAXBException    If the JAXB context can not be created
+     * @throws IOException      If the file can not be opened
+     */
+    public static XmlRecordIterator<PubmedArticle> iterator(String filename) throws JAXBException, IOException {
+        return new XmlRecordIterator<>(Paths.get(filename), PUBMED_CONTEXT, "PubmedArticle", PubmedArticle.class);
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.sequence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Random access to the sequences of a reference genome file.
+ *
+ * Implementations must be thread safe, reads of different regions may be done concurrently.
+ */
+public interface GenomeSequenceReader extends Closeable {
+
+    /**
+     * @return Names of the sequences, in file order
+     */
+    List<String> getSequenceNames();
+
+    /**
+     * @param sequenceName  Sequence name, e.g. chromosome
+     * @return Length of the sequence, or -1 if the sequence does not exist
+     */
+    int getLength(String sequenceName);
+
+    /**
+     * Read a region of a sequence.
+     *
+     * @param sequenceName  Sequence name, e.g. chromosome
+     * @param start         Start of the region, 1-based
+     * @param end           End of the region, 1-based and inclusive. Must not be greater than the sequence length
+     * @return Bases of the region
+     * @throws IOException  If the sequence does not exist or the file can not be read
+     */
+    String read(String sequenceName, int start, int end) throws IOException;
+
+}
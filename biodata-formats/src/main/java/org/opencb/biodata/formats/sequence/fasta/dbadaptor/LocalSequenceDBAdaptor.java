@@ -0,0 +1,197 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.sequence.fasta.dbadaptor;
+
+import org.opencb.biodata.formats.sequence.GenomeSequenceReader;
+import org.opencb.biodata.formats.sequence.fasta.io.IndexedFastaReader;
+import org.opencb.biodata.formats.sequence.twobit.TwoBitReader;
+import org.opencb.biodata.models.core.GenomeSequenceChunk;
+import org.opencb.biodata.models.core.Region;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sequence DB adaptor serving the sequences from a local reference genome file, either a FASTA file indexed with samtools
+ * faidx or a UCSC .2bit file.
+ *
+ * The genome is read in fixed size chunks kept in an LRU cache, so nearby queries, e.g. from the variants of a sorted VCF,
+ * read the file only once. The species of the queries is ignored, the file is expected to contain a single genome.
+ */
+public class LocalSequenceDBAdaptor extends SequenceDBAdaptor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CHUNKS = 256;
+
+    private final Path genomePath;
+    private final int chunkSize;
+    private final Map<String, GenomeSequenceChunk> cache;
+
+    private GenomeSequenceReader reader;
+
+    public LocalSequenceDBAdaptor(Path genomePath) {
+        this(genomePath, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * @param genomePath    FASTA file with a .fai index next to it, or .2bit file
+     * @param chunkSize     Number of bases read at once
+     * @param maxChunks     Maximum number of chunks kept in memory
+     */
+    public LocalSequenceDBAdaptor(Path genomePath, int chunkSize, int maxChunks) {
+        this.genomePath = genomePath;
+        this.chunkSize = chunkSize;
+        this.cache = new LinkedHashMap<String, GenomeSequenceChunk>(maxChunks * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, GenomeSequenceChunk> eldest) {
+                return size() > maxChunks;
+            }
+        };
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (genomePath.toString().endsWith(".2bit")) {
+            reader = new TwoBitReader(genomePath);
+        } else {
+            reader = new IndexedFastaReader(genomePath);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public String getSequence(Region region) throws IOException {
+        String chromosome = region.getChromosome();
+        int length = reader.getLength(chromosome);
+        if (length < 0) {
+            throw new IOException("Sequence '" + chromosome + "' not found in " + genomePath);
+        }
+        // As the remote service, regions are truncated to the sequence bounds
+        int start = Math.max(1, region.getStart());
+        int end = Math.min(length, region.getEnd());
+        if (end < start) {
+            return "";
+        }
+
+        int firstChunk = (start - 1) / chunkSize;
+        int lastChunk = (end - 1) / chunkSize;
+        if (firstChunk == lastChunk) {
+            GenomeSequenceChunk chunk = getChunk(chromosome, firstChunk, length);
+            return chunk.getSequence().substring(start - chunk.getStart(), end - chunk.getStart() + 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start + 1);
+        for (int i = firstChunk; i <= lastChunk; i++) {
+            GenomeSequenceChunk chunk = getChunk(chromosome, i, length);
+            sb.append(chunk.getSequence(), Math.max(start, chunk.getStart()) - chunk.getStart(),
+                    Math.min(end, chunk.getEnd()) - chunk.getStart() + 1);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getSequence(Region region, String species) throws IOException {
+        return getSequence(region);
+    }
+
+    /**
+     * Get the sequences of many regions at once. Regions are sorted, and overlapping or adjacent regions are merged
+     * and read only once.
+     *
+     * @param regions   Regions to query
+     * @return Sequences, in the same order as the regions
+     * @throws IOException  If any sequence can not be read
+     */
+    @Override
+    public List<String> getSequences(List<Region> regions) throws IOException {
+        Integer[] order = new Integer[regions.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> regions.get(i).getChromosome())
+                .thenComparingInt(i -> regions.get(i).getStart()));
+
+        String[] sequences = new String[regions.size()];
+        int i = 0;
+        while (i < order.length) {
+            // Merge the following regions overlapping or adjacent to the current span
+            Region first = regions.get(order[i]);
+            int spanStart = first.getStart();
+            int spanEnd = first.getEnd();
+            int j = i + 1;
+            while (j < order.length) {
+                Region next = regions.get(order[j]);
+                if (!next.getChromosome().equals(first.getChromosome()) || next.getStart() > spanEnd + 1) {
+                    break;
+                }
+                spanEnd = Math.max(spanEnd, next.getEnd());
+                j++;
+            }
+
+            String span = getSequence(new Region(first.getChromosome(), spanStart, spanEnd));
+            // Span after truncation to the sequence bounds
+            int truncatedStart = Math.max(1, spanStart);
+            for (int k = i; k < j; k++) {
+                Region region = regions.get(order[k]);
+                int from = Math.min(span.length(), Math.max(0, region.getStart() - truncatedStart));
+                int to = Math.min(span.length(), Math.max(from, region.getEnd() - truncatedStart + 1));
+                sequences[order[k]] = span.substring(from, to);
+            }
+            i = j;
+        }
+        return Arrays.asList(sequences);
+    }
+
+    private GenomeSequenceChunk getChunk(String chromosome, int chunkIndex, int length) throws IOException {
+        String chunkId = chromosome + "_" + chunkIndex;
+        GenomeSequenceChunk chunk;
+        synchronized (cache) {
+            chunk = cache.get(chunkId);
+        }
+        if (chunk == null) {
+            // Read out of the lock, two threads may read the same chunk but the reader does not block
+            int start = chunkIndex * chunkSize + 1;
+            int end = Math.min(length, start + chunkSize - 1);
+            chunk = new GenomeSequenceChunk(chromosome, chunkId, start, end, reader.read(chromosome, start, end));
+            synchronized (cache) {
+                cache.put(chunkId, chunk);
+            }
+        }
+        return chunk;
+    }
+
+    public Path getGenomePath() {
+        return genomePath;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
@@ -23,6 +23,8 @@ import org.opencb.biodata.models.core.Region;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by jacobo on 14/08/14.
@@ -45,4 +47,19 @@ public abstract class SequenceDBAdaptor {
     abstract public String getSequence(Region region) throws IOException;
     abstract public String getSequence(Region region, String species) throws IOException;
 
+    /**
+     * Get the sequences of many regions at once. Implementations may reorder and merge the requests.
+     *
+     * @param regions   Regions to query
+     * @return Sequences, in the same order as the regions
+     * @throws IOException  If any sequence can not be read
+     */
+    public List<String> getSequences(List<Region> regions) throws IOException {
+        List<String> sequences = new ArrayList<>(regions.size());
+        for (Region region : regions) {
+            sequences.add(getSequence(region));
+        }
+        return sequences;
+    }
+
 }
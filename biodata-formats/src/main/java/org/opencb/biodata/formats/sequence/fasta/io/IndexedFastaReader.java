@@ -0,0 +1,153 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.sequence.fasta.io;
+
+import org.opencb.biodata.formats.sequence.GenomeSequenceReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Random access reader of an uncompressed FASTA file indexed with samtools faidx, i.e. with a .fai file next to it.
+ *
+ * Regions are read with positional reads on a single file channel, so the reader can be shared between threads.
+ */
+public class IndexedFastaReader implements GenomeSequenceReader {
+
+    private final FileChannel channel;
+    private final Map<String, FaiEntry> index;
+
+    private static class FaiEntry {
+        private final int length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineWidth;
+
+        FaiEntry(int length, long offset, int lineBases, int lineWidth) {
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        long position(int position0) {
+            return offset + (long) (position0 / lineBases) * lineWidth + position0 % lineBases;
+        }
+    }
+
+    public IndexedFastaReader(Path fastaFile) throws IOException {
+        this(fastaFile, Paths.get(fastaFile.toAbsolutePath() + ".fai"));
+    }
+
+    public IndexedFastaReader(Path fastaFile, Path faiFile) throws IOException {
+        if (fastaFile.toString().endsWith(".gz")) {
+            throw new IOException("Compressed FASTA file '" + fastaFile + "' is not supported");
+        }
+        if (!Files.exists(faiFile)) {
+            throw new IOException("FASTA file '" + fastaFile + "' is not indexed, missing '" + faiFile + "'");
+        }
+        this.index = readIndex(faiFile);
+        this.channel = FileChannel.open(fastaFile, StandardOpenOption.READ);
+    }
+
+    private static Map<String, FaiEntry> readIndex(Path faiFile) throws IOException {
+        Map<String, FaiEntry> index = new LinkedHashMap<>();
+        try (BufferedReader bufferedReader = Files.newBufferedReader(faiFile, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new IOException("Invalid FASTA index line: " + line);
+                }
+                index.put(fields[0], new FaiEntry(Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    @Override
+    public int getLength(String sequenceName) {
+        FaiEntry entry = index.get(sequenceName);
+        return entry == null ? -1 : entry.length;
+    }
+
+    @Override
+    public String read(String sequenceName, int start, int end) throws IOException {
+        FaiEntry entry = getEntry(sequenceName, start, end);
+        if (end < start) {
+            return "";
+        }
+        long from = entry.position(start - 1);
+        long to = entry.position(end - 1) + 1;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of FASTA file reading " + sequenceName + ":" + start + "-" + end);
+            }
+        }
+
+        // Remove the line terminators
+        byte[] bytes = buffer.array();
+        int length = 0;
+        for (byte b : bytes) {
+            if (b != '\n' && b != '\r') {
+                bytes[length++] = b;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private FaiEntry getEntry(String sequenceName, int start, int end) throws IOException {
+        FaiEntry entry = index.get(sequenceName);
+        if (entry == null) {
+            throw new IOException("Sequence '" + sequenceName + "' not found in FASTA index");
+        }
+        if (start < 1 || end > entry.length) {
+            throw new IOException("Region " + sequenceName + ":" + start + "-" + end + " out of sequence bounds [1, "
+                    + entry.length + "]");
+        }
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
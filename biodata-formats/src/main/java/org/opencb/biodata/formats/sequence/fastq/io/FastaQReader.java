@@ -135,12 +135,11 @@ public class FastaQReader extends AbstractFormatReader<FastQ> {
         return fasta;
     }
 
+    /**
+     * Number of records in the file, counted with a {@link FastqBatchReader} so this reader is not consumed.
+     */
     public int size() throws IOException, FileFormatException {
-        int size = 0;
-        while (this.read() != null) {
-            size++;
-        }
-        return size;
+        return (int) FastqBatchReader.count(path);
     }
 
     @Override
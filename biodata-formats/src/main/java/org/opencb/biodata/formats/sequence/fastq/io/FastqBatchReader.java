@@ -0,0 +1,210 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import org.opencb.biodata.formats.io.FileFormatException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Byte level FASTQ reader filling reusable {@link FastqRecordBatch}es.
+ *
+ * Lines are scanned directly in a byte buffer, no String, StringBuilder or FastQ object is created per record.
+ * Gzipped files, either multi-member or BGZF, are decompressed on a separate thread. Multi-line sequences are
+ * supported, as in {@link FastaQReader}.
+ */
+public class FastqBatchReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream inputStream;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    // Current line, excluding line terminators
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+
+    public FastqBatchReader(Path path) throws IOException {
+        this(open(path));
+    }
+
+    public FastqBatchReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream inputStream = Files.newInputStream(path);
+        if (path.toFile().getName().endsWith(".gz")) {
+            // GZIPInputStream reads all the members of the file, so BGZF files are supported too
+            return new ReadAheadInputStream(new GZIPInputStream(inputStream, BUFFER_SIZE));
+        }
+        return inputStream;
+    }
+
+    /**
+     * Count the records of a FASTQ file without building them.
+     *
+     * @param path  FASTQ file, can be gzipped
+     * @return Number of records
+     * @throws IOException          If the file can not be read
+     * @throws FileFormatException  If the file is not a valid FASTQ file
+     */
+    public static long count(Path path) throws IOException, FileFormatException {
+        long count = 0;
+        try (FastqBatchReader reader = new FastqBatchReader(path)) {
+            FastqRecordBatch batch = new FastqRecordBatch(4096);
+            while (reader.next(batch)) {
+                count += batch.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Clear the batch and fill it with the next records.
+     *
+     * @param batch Batch to fill
+     * @return false if there are no more records
+     * @throws IOException          If the file can not be read
+     * @throws FileFormatException  If the file is not a valid FASTQ file
+     */
+    public boolean next(FastqRecordBatch batch) throws IOException, FileFormatException {
+        batch.clear();
+        while (!batch.isFull() && readRecord(batch)) {
+            batch.endRecord();
+        }
+        return batch.size() > 0;
+    }
+
+    private boolean readRecord(FastqRecordBatch batch) throws IOException, FileFormatException {
+        // Id line, empty lines between records are skipped
+        do {
+            if (!readLine()) {
+                return false;
+            }
+        } while (lineStart == lineEnd);
+        if (buffer[lineStart] != '@') {
+            throw new FileFormatException("Incorrect ID Line " + lineNumber + ": " + currentLine());
+        }
+        batch.startRecord();
+        int idEnd = lineStart + 1;
+        while (idEnd < lineEnd && !isWhitespace(buffer[idEnd])) {
+            idEnd++;
+        }
+        batch.appendId(buffer, lineStart + 1, idEnd - lineStart - 1);
+        int descriptionStart = idEnd;
+        while (descriptionStart < lineEnd && isWhitespace(buffer[descriptionStart])) {
+            descriptionStart++;
+        }
+        batch.appendDescription(buffer, descriptionStart, trimmedEnd(descriptionStart, lineEnd) - descriptionStart);
+
+        // Sequence lines, until the '+' line
+        while (true) {
+            if (!readLine()) {
+                throw new FileFormatException("Unexpected end of file in FASTQ record " + batch.getId(batch.size()));
+            }
+            if (lineStart < lineEnd && buffer[lineStart] == '+') {
+                break;
+            }
+            batch.appendSequence(buffer, lineStart, trimmedEnd(lineStart, lineEnd) - lineStart);
+        }
+
+        // Quality lines, until they are as long as the sequence
+        int sequenceLength = batch.getCurrentSequenceLength();
+        while (batch.getCurrentQualityLength() < sequenceLength) {
+            if (!readLine()) {
+                break;
+            }
+            batch.appendQuality(buffer, lineStart, trimmedEnd(lineStart, lineEnd) - lineStart);
+        }
+        if (batch.getCurrentQualityLength() != sequenceLength) {
+            throw new FileFormatException("Quality and Sequence lenghts are different in Fasta " + batch.getId(batch.size()));
+        }
+        return true;
+    }
+
+    /**
+     * Find the next line in the buffer, refilling it if needed.
+     *
+     * @return false at the end of the file
+     */
+    private boolean readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buffer[scan] == '\n') {
+                    setLine(position, scan);
+                    position = scan + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (position == limit) {
+                    return false;
+                }
+                // Last line without line terminator
+                setLine(position, limit);
+                position = limit;
+                return true;
+            }
+            scan -= position;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+        lineNumber++;
+    }
+
+    /**
+     * Move the unread bytes to the beginning of the buffer, growing it if the current line does not fit, and read more.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private int trimmedEnd(int start, int end) {
+        while (end > start && isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private String currentLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,173 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable batch of FASTQ records.
+ *
+ * All the records are stored in a single byte array, and each record is described by the offsets and lengths of its
+ * id, description, sequence and quality. Sequence and quality always have the same length. The arrays are reused
+ * from batch to batch, so nothing is allocated once they have grown to the size of a typical batch.
+ */
+public class FastqRecordBatch {
+
+    private final int capacity;
+    private byte[] data;
+    private int dataLength;
+    private int size;
+
+    private final int[] idOffsets;
+    private final int[] idLengths;
+    private final int[] descriptionLengths;
+    private final int[] sequenceLengths;
+
+    public FastqRecordBatch(int capacity) {
+        this(capacity, capacity * 512);
+    }
+
+    public FastqRecordBatch(int capacity, int initialDataSize) {
+        this.capacity = capacity;
+        this.data = new byte[Math.max(1024, initialDataSize)];
+        this.idOffsets = new int[capacity];
+        this.idLengths = new int[capacity];
+        this.descriptionLengths = new int[capacity];
+        this.sequenceLengths = new int[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+        dataLength = 0;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Start a new record. Fields must be then appended in order: id, description, sequence and quality.
+     */
+    void startRecord() {
+        idOffsets[size] = dataLength;
+        idLengths[size] = 0;
+        descriptionLengths[size] = 0;
+        sequenceLengths[size] = 0;
+    }
+
+    void appendId(byte[] buffer, int offset, int length) {
+        append(buffer, offset, length);
+        idLengths[size] += length;
+    }
+
+    void appendDescription(byte[] buffer, int offset, int length) {
+        append(buffer, offset, length);
+        descriptionLengths[size] += length;
+    }
+
+    void appendSequence(byte[] buffer, int offset, int length) {
+        append(buffer, offset, length);
+        sequenceLengths[size] += length;
+    }
+
+    void appendQuality(byte[] buffer, int offset, int length) {
+        append(buffer, offset, length);
+    }
+
+    /**
+     * @return Number of quality bytes appended to the current record
+     */
+    int getCurrentQualityLength() {
+        return dataLength - getSequenceOffset(size) - sequenceLengths[size];
+    }
+
+    int getCurrentSequenceLength() {
+        return sequenceLengths[size];
+    }
+
+    void endRecord() {
+        size++;
+    }
+
+    private void append(byte[] buffer, int offset, int length) {
+        if (dataLength + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + length));
+        }
+        System.arraycopy(buffer, offset, data, dataLength, length);
+        dataLength += length;
+    }
+
+    /**
+     * @return Bytes of all the records of the batch. Do not keep a reference, the array is reused by the next batch
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getIdOffset(int i) {
+        return idOffsets[i];
+    }
+
+    public int getIdLength(int i) {
+        return idLengths[i];
+    }
+
+    public int getDescriptionOffset(int i) {
+        return idOffsets[i] + idLengths[i];
+    }
+
+    public int getDescriptionLength(int i) {
+        return descriptionLengths[i];
+    }
+
+    public int getSequenceOffset(int i) {
+        return getDescriptionOffset(i) + descriptionLengths[i];
+    }
+
+    public int getSequenceLength(int i) {
+        return sequenceLengths[i];
+    }
+
+    public int getQualityOffset(int i) {
+        return getSequenceOffset(i) + sequenceLengths[i];
+    }
+
+    public String getId(int i) {
+        return new String(data, idOffsets[i], idLengths[i], StandardCharsets.US_ASCII);
+    }
+
+    public String getDescription(int i) {
+        return new String(data, getDescriptionOffset(i), descriptionLengths[i], StandardCharsets.US_ASCII);
+    }
+
+    public String getSequence(int i) {
+        return new String(data, getSequenceOffset(i), sequenceLengths[i], StandardCharsets.US_ASCII);
+    }
+
+    public String getQuality(int i) {
+        return new String(data, getQualityOffset(i), sequenceLengths[i], StandardCharsets.US_ASCII);
+    }
+
+    public FastQ toFastQ(int i, int encoding) {
+        return new FastQ(getId(i), getDescription(i), getSequence(i), getQuality(i), encoding);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("FastqRecordBatch{");
+        sb.append("size=").append(size);
+        sb.append(", capacity=").append(capacity);
+        sb.append(", dataLength=").append(dataLength);
+        sb.append('}');
+        return sb.toString();
+    }
+}
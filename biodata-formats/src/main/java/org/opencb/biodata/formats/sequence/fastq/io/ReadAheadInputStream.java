@@ -0,0 +1,133 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream reading its source, e.g. a GZIP decompressor, on a separate thread. Chunks are handed over through a
+ * small queue and their buffers are recycled, so decompression and parsing overlap without extra allocations.
+ */
+class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int NUM_CHUNKS = 4;
+
+    private static class Chunk {
+        private final byte[] data;
+        private int length;
+        private IOException error;
+
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    // Empty chunk marking the end of the source
+    private static final Chunk END = new Chunk(new byte[0]);
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(NUM_CHUNKS + 1);
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(NUM_CHUNKS);
+    private final Thread producer;
+
+    private Chunk current;
+    private int position;
+    private boolean eof;
+
+    ReadAheadInputStream(InputStream source) {
+        this.source = source;
+        for (int i = 0; i < NUM_CHUNKS; i++) {
+            free.add(new Chunk(new byte[CHUNK_SIZE]));
+        }
+        producer = new Thread(this::produce, "read-ahead");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce() {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                chunk.length = 0;
+                try {
+                    int read = 0;
+                    while (chunk.length < chunk.data.length
+                            && (read = source.read(chunk.data, chunk.length, chunk.data.length - chunk.length)) > 0) {
+                        chunk.length += read;
+                    }
+                    if (chunk.length > 0) {
+                        filled.put(chunk);
+                    }
+                    if (read < 0) {
+                        filled.put(END);
+                        return;
+                    }
+                } catch (IOException e) {
+                    chunk.error = e;
+                    filled.put(chunk);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        try {
+            Chunk chunk = filled.take();
+            if (chunk.error != null) {
+                eof = true;
+                throw chunk.error;
+            }
+            if (chunk == END) {
+                eof = true;
+                return false;
+            }
+            current = chunk;
+            position = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((current == null || position == current.length) && !nextChunk()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if ((current == null || position == current.length) && !nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        producer.interrupt();
+        source.close();
+    }
+}
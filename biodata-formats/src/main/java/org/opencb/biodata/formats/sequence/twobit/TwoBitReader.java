@@ -0,0 +1,274 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.sequence.twobit;
+
+import org.opencb.biodata.formats.sequence.GenomeSequenceReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reader of UCSC .2bit files. See https://genome.ucsc.edu/FAQ/FAQformat.html#format7
+ *
+ * Bases are packed four per byte, with lists of N blocks and soft-masked (lowercase) blocks per sequence. The packed
+ * bases of each sequence are memory mapped when the sequence is first read, so random access does not need any seek
+ * nor copy of the file, and the reader can be shared between threads.
+ */
+public class TwoBitReader implements GenomeSequenceReader {
+
+    public static final int SIGNATURE = 0x1A412743;
+
+    private static final char[] BASES = {'T', 'C', 'A', 'G'};
+    // The four bases packed in each possible byte value
+    private static final char[][] DECODED = new char[256][4];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 4; i++) {
+                DECODED[b][i] = BASES[(b >> (6 - 2 * i)) & 3];
+            }
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteOrder byteOrder;
+    private final boolean longOffsets;
+    private final Map<String, Long> offsets;
+    private final Map<String, TwoBitSequence> sequences;
+
+    /**
+     * Sequence record: length, N blocks, mask blocks and the mapped packed bases.
+     */
+    private static class TwoBitSequence {
+        private final int length;
+        private final int[] nBlockStarts;
+        private final int[] nBlockSizes;
+        private final int[] maskBlockStarts;
+        private final int[] maskBlockSizes;
+        private final ByteBuffer packedBases;
+
+        TwoBitSequence(int length, int[] nBlockStarts, int[] nBlockSizes, int[] maskBlockStarts, int[] maskBlockSizes,
+                       ByteBuffer packedBases) {
+            this.length = length;
+            this.nBlockStarts = nBlockStarts;
+            this.nBlockSizes = nBlockSizes;
+            this.maskBlockStarts = maskBlockStarts;
+            this.maskBlockSizes = maskBlockSizes;
+            this.packedBases = packedBases;
+        }
+    }
+
+    public TwoBitReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 16, ByteOrder.LITTLE_ENDIAN);
+            int signature = header.getInt(0);
+            if (signature == SIGNATURE) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if (Integer.reverseBytes(signature) == SIGNATURE) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("File '" + path + "' is not a 2bit file");
+            }
+            header.order(byteOrder);
+            int version = header.getInt(4);
+            if (version != 0 && version != 1) {
+                throw new IOException("Unsupported 2bit version " + version + " in file '" + path + "'");
+            }
+            longOffsets = version == 1;
+            int sequenceCount = header.getInt(8);
+
+            // Sequence index: name size (1 byte), name, offset (4 or 8 bytes)
+            offsets = new LinkedHashMap<>();
+            long position = 16;
+            ByteBuffer buffer = read(position, (int) Math.min(channel.size() - position, 1 << 20), byteOrder);
+            for (int i = 0; i < sequenceCount; i++) {
+                if (buffer.remaining() < 256 + 8) {
+                    position += buffer.position();
+                    buffer = read(position, (int) Math.min(channel.size() - position, 1 << 20), byteOrder);
+                }
+                int nameSize = buffer.get() & 0xFF;
+                byte[] name = new byte[nameSize];
+                buffer.get(name);
+                long offset = longOffsets ? buffer.getLong() : buffer.getInt() & 0xFFFFFFFFL;
+                offsets.put(new String(name, StandardCharsets.US_ASCII), offset);
+            }
+            sequences = new ConcurrentHashMap<>();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int size, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of 2bit file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private TwoBitSequence getSequence(String sequenceName) throws IOException {
+        TwoBitSequence sequence = sequences.get(sequenceName);
+        if (sequence == null) {
+            Long offset = offsets.get(sequenceName);
+            if (offset == null) {
+                throw new IOException("Sequence '" + sequenceName + "' not found in 2bit file");
+            }
+            synchronized (this) {
+                sequence = sequences.get(sequenceName);
+                if (sequence == null) {
+                    sequence = readSequence(offset);
+                    sequences.put(sequenceName, sequence);
+                }
+            }
+        }
+        return sequence;
+    }
+
+    private TwoBitSequence readSequence(long offset) throws IOException {
+        long position = offset;
+        ByteBuffer buffer = read(position, 8, byteOrder);
+        int length = buffer.getInt();
+        int nBlockCount = buffer.getInt();
+        position += 8;
+        buffer = read(position, nBlockCount * 8 + 4, byteOrder);
+        int[] nBlockStarts = readInts(buffer, nBlockCount);
+        int[] nBlockSizes = readInts(buffer, nBlockCount);
+        int maskBlockCount = buffer.getInt();
+        position += nBlockCount * 8L + 4;
+        buffer = read(position, maskBlockCount * 8 + 4, byteOrder);
+        int[] maskBlockStarts = readInts(buffer, maskBlockCount);
+        int[] maskBlockSizes = readInts(buffer, maskBlockCount);
+        // Skip reserved
+        position += maskBlockCount * 8L + 4;
+        ByteBuffer packedBases = channel.map(FileChannel.MapMode.READ_ONLY, position, (length + 3) / 4);
+        return new TwoBitSequence(length, nBlockStarts, nBlockSizes, maskBlockStarts, maskBlockSizes, packedBases);
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+    @Override
+    public List<String> getSequenceNames() {
+        return new ArrayList<>(offsets.keySet());
+    }
+
+    @Override
+    public int getLength(String sequenceName) {
+        if (!offsets.containsKey(sequenceName)) {
+            return -1;
+        }
+        try {
+            return getSequence(sequenceName).length;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String read(String sequenceName, int start, int end) throws IOException {
+        TwoBitSequence sequence = getSequence(sequenceName);
+        if (start < 1 || end > sequence.length) {
+            throw new IOException("Region " + sequenceName + ":" + start + "-" + end + " out of sequence bounds [1, "
+                    + sequence.length + "]");
+        }
+        if (end < start) {
+            return "";
+        }
+        char[] bases = new char[end - start + 1];
+        decode(sequence, start - 1, end, bases);
+        return new String(bases);
+    }
+
+    /**
+     * Decode the 0-based half open region [from, to) of the sequence into the array.
+     */
+    private static void decode(TwoBitSequence sequence, int from, int to, char[] bases) {
+        ByteBuffer packedBases = sequence.packedBases;
+        int i = from;
+        // First partial byte
+        while (i < to && (i & 3) != 0) {
+            bases[i - from] = DECODED[packedBases.get(i >> 2) & 0xFF][i & 3];
+            i++;
+        }
+        // Whole bytes
+        for (; i + 4 <= to; i += 4) {
+            char[] decoded = DECODED[packedBases.get(i >> 2) & 0xFF];
+            System.arraycopy(decoded, 0, bases, i - from, 4);
+        }
+        // Last partial byte
+        for (; i < to; i++) {
+            bases[i - from] = DECODED[packedBases.get(i >> 2) & 0xFF][i & 3];
+        }
+
+        for (int b = firstBlock(sequence.nBlockStarts, sequence.nBlockSizes, from); b < sequence.nBlockStarts.length
+                && sequence.nBlockStarts[b] < to; b++) {
+            int blockStart = Math.max(from, sequence.nBlockStarts[b]);
+            int blockEnd = Math.min(to, sequence.nBlockStarts[b] + sequence.nBlockSizes[b]);
+            Arrays.fill(bases, blockStart - from, Math.max(blockStart, blockEnd) - from, 'N');
+        }
+        for (int b = firstBlock(sequence.maskBlockStarts, sequence.maskBlockSizes, from); b < sequence.maskBlockStarts.length
+                && sequence.maskBlockStarts[b] < to; b++) {
+            int blockEnd = Math.min(to, sequence.maskBlockStarts[b] + sequence.maskBlockSizes[b]);
+            for (int j = Math.max(from, sequence.maskBlockStarts[b]); j < blockEnd; j++) {
+                bases[j - from] = Character.toLowerCase(bases[j - from]);
+            }
+        }
+    }
+
+    /**
+     * @return Index of the first block, sorted by start, that ends after the position
+     */
+    private static int firstBlock(int[] starts, int[] sizes, int position) {
+        int index = Arrays.binarySearch(starts, position);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            return 0;
+        }
+        return starts[index] + sizes[index] > position ? index : index + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.formats.sequence.twobit;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writer of UCSC .2bit files, see {@link TwoBitReader}.
+ *
+ * Sequence records are encoded with {@link #encode(byte[], int)}, which can be called from many threads, and added in
+ * order with {@link #write(String, byte[])}. Records are written to a temporary file next to the output, and the file
+ * header and index are written on {@link #close()}, once all the record sizes are known.
+ */
+public class TwoBitWriter implements Closeable {
+
+    private static final int[] CODES = new int[256];
+
+    static {
+        Arrays.fill(CODES, -1);
+        CODES['T'] = 0;
+        CODES['t'] = 0;
+        CODES['C'] = 1;
+        CODES['c'] = 1;
+        CODES['A'] = 2;
+        CODES['a'] = 2;
+        CODES['G'] = 3;
+        CODES['g'] = 3;
+    }
+
+    private final Path output;
+    private final Path recordsFile;
+    private final OutputStream records;
+    private final List<String> names = new ArrayList<>();
+    private final List<Long> recordSizes = new ArrayList<>();
+
+    public TwoBitWriter(Path output) throws IOException {
+        this.output = output;
+        this.recordsFile = output.resolveSibling(output.getFileName() + ".records.tmp");
+        this.records = new BufferedOutputStream(Files.newOutputStream(recordsFile), 1 << 20);
+    }
+
+    /**
+     * Encode a sequence as a 2bit record. Any base other than A, C, G or T is stored as N, and lowercase bases are
+     * stored as soft-masked blocks.
+     *
+     * @param bases     Bases of the sequence
+     * @param length    Number of bases
+     * @return Record bytes, little endian
+     */
+    public static byte[] encode(byte[] bases, int length) {
+        Blocks nBlocks = new Blocks();
+        Blocks maskBlocks = new Blocks();
+        byte[] packed = new byte[(length + 3) / 4];
+        for (int i = 0; i < length; i++) {
+            byte base = bases[i];
+            int code = CODES[base & 0xFF];
+            if (code < 0) {
+                // N bases are packed as T
+                nBlocks.add(i);
+                code = 0;
+            }
+            if (base >= 'a' && base <= 'z') {
+                maskBlocks.add(i);
+            }
+            packed[i >> 2] |= code << (6 - 2 * (i & 3));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 8 * nBlocks.size + 8 * maskBlocks.size + packed.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(length);
+        nBlocks.write(buffer);
+        maskBlocks.write(buffer);
+        // Reserved
+        buffer.putInt(0);
+        buffer.put(packed);
+        return buffer.array();
+    }
+
+    /**
+     * Runs of consecutive positions, as block starts and sizes.
+     */
+    private static class Blocks {
+        private int[] starts = new int[16];
+        private int[] sizes = new int[16];
+        private int size;
+
+        void add(int position) {
+            if (size > 0 && starts[size - 1] + sizes[size - 1] == position) {
+                sizes[size - 1]++;
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                sizes = Arrays.copyOf(sizes, size * 2);
+            }
+            starts[size] = position;
+            sizes[size] = 1;
+            size++;
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putInt(size);
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(starts[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                buffer.putInt(sizes[i]);
+            }
+        }
+    }
+
+    /**
+     * @param name      Sequence name, at most 255 characters
+     * @param record    Record encoded with {@link #encode(byte[], int)}
+     * @throws IOException If the record can not be written
+     */
+    public void write(String name, byte[] record) throws IOException {
+        if (name.length() > 255) {
+            throw new IllegalArgumentException("Sequence name longer than 255 characters: " + name);
+        }
+        records.write(record);
+        names.add(name);
+        recordSizes.add((long) record.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        records.close();
+        try {
+            int indexSize = 0;
+            for (String name : names) {
+                indexSize += 1 + name.getBytes(StandardCharsets.US_ASCII).length + 4;
+            }
+            long recordsSize = recordSizes.stream().mapToLong(Long::longValue).sum();
+            // Version 1 files have 64 bit offsets, for files over 4 GB
+            boolean longOffsets = 16L + indexSize + recordsSize > 0xFFFFFFFFL;
+            if (longOffsets) {
+                indexSize += 4 * names.size();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(16 + indexSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(TwoBitReader.SIGNATURE).putInt(longOffsets ? 1 : 0).putInt(names.size()).putInt(0);
+            long offset = header.capacity();
+            for (int i = 0; i < names.size(); i++) {
+                byte[] name = names.get(i).getBytes(StandardCharsets.US_ASCII);
+                header.put((byte) name.length).put(name);
+                if (longOffsets) {
+                    header.putLong(offset);
+                } else {
+                    header.putInt((int) offset);
+                }
+                offset += recordSizes.get(i);
+            }
+            header.flip();
+
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 FileChannel in = FileChannel.open(recordsFile, StandardOpenOption.READ)) {
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                long position = 0;
+                while (position < recordsSize) {
+                    position += in.transferTo(position, recordsSize - position, out);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(recordsFile);
+        }
+    }
+}
@@ -19,7 +19,6 @@
 
 package org.opencb.biodata.formats.variant.annotation.io;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
 import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
@@ -35,24 +34,60 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Created by fjlopez on 07/04/15.
+ *
+ * VEP tab separated output reader. Consecutive lines of the same variant are merged into a single VariantAnnotation.
+ *
+ * Lines are read in blocks that never split the lines of a variant, and each block is parsed on its own, so blocks
+ * can be parsed by a pool of workers while annotations are still returned in file order.
  */
 public class VepFormatReader implements DataReader<VariantAnnotation> {
 
+    private static final int NUM_COLUMNS = 14;
+    private static final int DEFAULT_BLOCK_SIZE = 10000;
+
     private BufferedReader reader;
     private Path path;
     private String filename;
-    private String currentVariantString = "";
-    private VariantAnnotation currentAnnotation = null;
 
-    private static final String CNV_PATTERN = "CN(([0123456789]+)|V)";
+    private final int numThreads;
+    private final int blockSize;
+    private ExecutorService executor;
+    private final Deque<Future<List<VariantAnnotation>>> pendingBlocks = new ArrayDeque<>();
+    private final Deque<VariantAnnotation> annotations = new ArrayDeque<>();
+    // First line of the next block, already read to find the end of the previous one
+    private String nextLine;
+    private boolean eof;
+
+    private static final Pattern CNV_PATTERN = Pattern.compile("CN(([0123456789]+)|V)");
 
-    public VepFormatReader(String filename) { this.filename = filename; }
+    public VepFormatReader(String filename) {
+        this(filename, 1);
+    }
+
+    /**
+     * @param filename      VEP output file, can be gzipped
+     * @param numThreads    Number of threads parsing blocks of lines
+     */
+    public VepFormatReader(String filename, int numThreads) {
+        this(filename, numThreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    public VepFormatReader(String filename, int numThreads, int blockSize) {
+        this.filename = filename;
+        this.numThreads = numThreads;
+        this.blockSize = blockSize;
+    }
 
     @Override
     public boolean open() {
@@ -72,7 +107,9 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
             return false;
         }
 
-
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads);
+        }
         return true;
     }
 
@@ -81,6 +118,9 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
 
     @Override
     public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
         try {
             reader.close();
         } catch (IOException e) {
@@ -94,102 +134,198 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
 
     @Override
     public List<VariantAnnotation> read() {
-        try {
-            String line;
-            Boolean noNewVariantFound = true;
-            VariantAnnotation variantAnnotationToReturn = null;
-
-            while ((line = reader.readLine()) != null && (line.trim().equals("") || line.startsWith("#"))) ;
-
-            while ((line != null) && noNewVariantFound) {
-                ConsequenceType consequenceType = new ConsequenceType();
-                String[] lineFields = line.split("\t");
-                // strings representing the current and the read are compared
-                if (!currentVariantString.equals(lineFields[0] + ":" + lineFields[1] + ":" + lineFields[2])) {
-                    noNewVariantFound = (currentAnnotation==null);  // currentAnnotation==null only in the first iteration.
-                    variantAnnotationToReturn = currentAnnotation;
-                    Map<String,String> variantMap = parseVariant(lineFields[0], lineFields[1], lineFields[2]);  // coordinates and alternative are only parsed onceca
-                    currentAnnotation = new VariantAnnotation();
-                    currentAnnotation.setChromosome(variantMap.get("chromosome"));
-                    currentAnnotation.setStart(Integer.valueOf(variantMap.get("start")));
-                    currentAnnotation.setEnd(Integer.valueOf(variantMap.get("end")));
-                    currentAnnotation.setReference(variantMap.get("reference"));
-                    currentAnnotation.setAlternate(variantMap.get("alternative"));
-
-                    /**
-                     * Set rs id
-                     */
-                    if (!lineFields[12].isEmpty() && !lineFields[12].equals("-")) {
-                        currentAnnotation.setId(lineFields[12]);
-                    }
+        if (annotations.isEmpty()) {
+            try {
+                fill();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        VariantAnnotation variantAnnotation = annotations.poll();
+        return variantAnnotation == null ? null : Collections.singletonList(variantAnnotation);
+    }
 
-                    /**
-                     * Initialize list of consequence types
-                     */
-                    if(currentAnnotation.getConsequenceTypes()==null) {
-                        currentAnnotation.setConsequenceTypes(new ArrayList<ConsequenceType>());
-                    }
+    @Override
+    public List<VariantAnnotation> read(int batchSize) {
+        List<VariantAnnotation> batch = new ArrayList<>(batchSize);
+        List<VariantAnnotation> readRecords;
+        int i = 0;
+        while ((i < batchSize) && (readRecords = this.read()) != null) {
+                batch.add(readRecords.get(0));
+                i++;
+        }
+        return batch;
+    }
 
-                    /**
-                     * Save the string representing coordinates and
-                     */
-                    currentVariantString = lineFields[0] + ":" + lineFields[1] + ":" + lineFields[2];
-
-                    /**
-                     * parses extra column and populates fields as required. Some lines do not have extra field and end with a \t: the split function above does not return that field
-                     * true parameter indicates the function to also parse frequencies
-                     */
-                    if(lineFields.length>13) {
-                        parseExtraField(consequenceType, lineFields[13], true);
-                    }
+    /**
+     * Parse the next block, or keep the worker pool busy and wait for the oldest block to be parsed.
+     */
+    private void fill() throws IOException {
+        if (executor == null) {
+            List<String> block = readBlock();
+            if (block != null) {
+                annotations.addAll(parseBlock(block));
+            }
+            return;
+        }
 
-                    /**
-                     * Another line must be read if this is the first variant in the file
-                     */
-                    if(noNewVariantFound) {
-                        line = reader.readLine();
-                    }
-                } else {
-                    /**
-                     * Some lines do not have extra field and end with a \t: the split function above does not return that field
-                     * false indicates the function to skip frequency attributes (were already parsed the first time this variant was seen)
-                     */
-                    if(lineFields.length>13) {
-                        parseExtraField(consequenceType, lineFields[13], false);
-                    }
-                    line = reader.readLine();
+        while (pendingBlocks.size() < 2 * numThreads) {
+            List<String> block = readBlock();
+            if (block == null) {
+                break;
+            }
+            pendingBlocks.add(executor.submit(() -> parseBlock(block)));
+        }
+        Future<List<VariantAnnotation>> future = pendingBlocks.poll();
+        if (future != null) {
+            try {
+                annotations.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Read at least blockSize lines, and then up to the last line of the current variant.
+     *
+     * @return Block of lines, or null at the end of the file
+     */
+    private List<String> readBlock() throws IOException {
+        if (eof) {
+            return null;
+        }
+        List<String> block = new ArrayList<>(blockSize + 16);
+        if (nextLine != null) {
+            block.add(nextLine);
+            nextLine = null;
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#") || line.trim().isEmpty()) {
+                continue;
+            }
+            if (block.size() >= blockSize && !sameVariant(block.get(block.size() - 1), line)) {
+                nextLine = line;
+                return block;
+            }
+            block.add(line);
+        }
+        eof = true;
+        return block.isEmpty() ? null : block;
+    }
+
+    /**
+     * Lines of the same variant share the first three columns: variant id, location and allele.
+     */
+    private static boolean sameVariant(String line1, String line2) {
+        int end = variantKeyEnd(line1);
+        return end == variantKeyEnd(line2) && line1.regionMatches(0, line2, 0, end);
+    }
+
+    private static int variantKeyEnd(String line) {
+        int end = -1;
+        for (int i = 0; i < 3; i++) {
+            int tab = line.indexOf('\t', end + 1);
+            if (tab < 0) {
+                return line.length();
+            }
+            end = tab;
+        }
+        return end;
+    }
+
+    /**
+     * Parse a block of lines. Does not use any reader state, so blocks can be parsed concurrently.
+     *
+     * @param lines Lines, all the lines of a variant must be in the same block
+     * @return Variant annotations, in the same order
+     */
+    protected List<VariantAnnotation> parseBlock(List<String> lines) {
+        List<VariantAnnotation> variantAnnotations = new ArrayList<>();
+        String[] lineFields = new String[NUM_COLUMNS];
+        VariantAnnotation currentAnnotation = null;
+        String previousLine = null;
+        for (String line : lines) {
+            int numFields = split(line, lineFields);
+            ConsequenceType consequenceType = new ConsequenceType();
+            if (previousLine == null || !sameVariant(previousLine, line)) {
+                // coordinates and alternative are only parsed once
+                currentAnnotation = parseVariant(lineFields[0], lineFields[1], lineFields[2]);
+                variantAnnotations.add(currentAnnotation);
+
+                // Set rs id
+                if (!lineFields[12].isEmpty() && !lineFields[12].equals("-")) {
+                    currentAnnotation.setId(lineFields[12]);
                 }
-                // Remaining fields only of interest if the feature is a transcript
-                if(lineFields[5].toLowerCase().equals("transcript")) {
-                    parseRemainingFields(consequenceType, lineFields);
-                // Otherwise just set SO terms
-                } else {
-                    consequenceType.setSequenceOntologyTerms(
-                            getSequenceOntologyTerms(Arrays.asList(lineFields[6].split(","))));   // fill so terms
-//                    consequenceType.setSoTermsFromSoNames(Arrays.asList(lineFields[6].split(",")));   // fill so terms
+                currentAnnotation.setConsequenceTypes(new ArrayList<>());
+
+                // Some lines do not have extra field and end with a \t. Frequencies are only parsed for the first line
+                if (numFields > 13) {
+                    parseExtraField(currentAnnotation, consequenceType, lineFields[13], true);
                 }
-                currentAnnotation.getConsequenceTypes().add(consequenceType);
+            } else if (numFields > 13) {
+                // Frequency attributes were already parsed the first time this variant was seen
+                parseExtraField(currentAnnotation, consequenceType, lineFields[13], false);
             }
+            previousLine = line;
 
-            /**
-             * End of file.
-             */
-            if(line==null) {
-                // Last variant was read, no more to read. Return last read variant and leave currentAnnotation=null so that if read() is called again, null will be returned
-                if(currentAnnotation!=null) {
-                    variantAnnotationToReturn = currentAnnotation;
-                    currentAnnotation = null;
-                } else {
-                    return null;
-                }
+            // Remaining fields only of interest if the feature is a transcript
+            if (lineFields[5].equalsIgnoreCase("transcript")) {
+                parseRemainingFields(consequenceType, lineFields);
+            // Otherwise just set SO terms
+            } else {
+                consequenceType.setSequenceOntologyTerms(getSequenceOntologyTerms(splitList(lineFields[6], ',')));
             }
-            return Collections.singletonList(variantAnnotationToReturn);
+            currentAnnotation.getConsequenceTypes().add(consequenceType);
+        }
+        return variantAnnotations;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Single pass tab tokenizer. As String.split, trailing empty fields are not counted. Missing fields are left empty.
+     *
+     * @return Number of fields
+     */
+    private static int split(String line, String[] fields) {
+        int numFields = 0;
+        int start = 0;
+        while (numFields < fields.length) {
+            int tab = line.indexOf('\t', start);
+            if (tab < 0) {
+                fields[numFields++] = line.substring(start);
+                break;
+            }
+            fields[numFields++] = line.substring(start, tab);
+            start = tab + 1;
         }
+        for (int i = numFields; i < fields.length; i++) {
+            fields[i] = "";
+        }
+        while (numFields > 0 && fields[numFields - 1].isEmpty()) {
+            numFields--;
+        }
+        return numFields;
+    }
 
-        return null;
+    private static List<String> splitList(String value, char separator) {
+        List<String> values = new ArrayList<>(2);
+        int start = 0;
+        int end;
+        while ((end = value.indexOf(separator, start)) >= 0) {
+            values.add(value.substring(start, end));
+            start = end + 1;
+        }
+        values.add(value.substring(start));
+        // As String.split, drop trailing empty values
+        while (values.size() > 1 && values.get(values.size() - 1).isEmpty()) {
+            values.remove(values.size() - 1);
+        }
+        return values;
     }
 
     protected List<SequenceOntologyTerm> getSequenceOntologyTerms(List<String> SoNames) {
@@ -218,127 +354,109 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
             proteinVariantAnnotation.setPosition(parseStringInterval(lineFields[9]));    // fill aa position
         }
         if(!lineFields[10].equals("-")) {
-            String parts[] = lineFields[10].split("/");
-            if(parts.length == 2) {
-                proteinVariantAnnotation.setReference(parts[0]);  // fill aa change
-                proteinVariantAnnotation.setAlternate(parts[1]);  // fill aa change
+            String aminoacids = lineFields[10];
+            int slash = aminoacids.indexOf('/');
+            if (slash >= 0 && slash < aminoacids.length() - 1 && aminoacids.indexOf('/', slash + 1) < 0) {
+                proteinVariantAnnotation.setReference(aminoacids.substring(0, slash));  // fill aa change
+                proteinVariantAnnotation.setAlternate(aminoacids.substring(slash + 1));  // fill aa change
             }
         }
         consequenceType.setProteinVariantAnnotation(proteinVariantAnnotation);
         consequenceType.setCodon(lineFields[11]); // fill codon change
-        if(!lineFields[6].equals("") && !lineFields.equals("-")) {  // VEP may leave this field empty
-            consequenceType.setSequenceOntologyTerms(
-                    getSequenceOntologyTerms(Arrays.asList(lineFields[6].split(","))));   // fill so terms
-//            consequenceType.setSoTermsFromSoNames(Arrays.asList(lineFields[6].split(",")));    // fill so terms
+        if(!lineFields[6].equals("")) {  // VEP may leave this field empty
+            consequenceType.setSequenceOntologyTerms(getSequenceOntologyTerms(splitList(lineFields[6], ',')));   // fill so terms
         }
     }
 
     private Integer parseStringInterval(String stringInterval) {
-        String[] parts = stringInterval.split("-");
-        if(!parts[0].equals("?")) {
-            return Integer.valueOf(parts[0]);
-        } else if(parts.length>1 && !parts[1].equals("?"))  {
-            return Integer.valueOf(parts[1]);
+        int dash = stringInterval.indexOf('-');
+        String first = dash < 0 ? stringInterval : stringInterval.substring(0, dash);
+        if(!first.equals("?")) {
+            return Integer.valueOf(first);
+        } else if(dash >= 0 && dash < stringInterval.length() - 1) {
+            int end = stringInterval.indexOf('-', dash + 1);
+            String second = end < 0 ? stringInterval.substring(dash + 1) : stringInterval.substring(dash + 1, end);
+            return second.equals("?") ? null : Integer.valueOf(second);
         } else {
             return null;
         }
     }
 
-    private void parseExtraField(ConsequenceType consequenceType, String extraField, Boolean parseFrequencies) {
-
-        for (String field : extraField.split(";")) {
-            String[] keyValue = field.split("=");
+    private void parseExtraField(VariantAnnotation currentAnnotation, ConsequenceType consequenceType, String extraField,
+                                 boolean parseFrequencies) {
+        int start = 0;
+        while (start < extraField.length()) {
+            int end = extraField.indexOf(';', start);
+            if (end < 0) {
+                end = extraField.length();
+            }
+            int equals = extraField.indexOf('=', start);
+            if (equals < 0 || equals > end) {
+                // Flag without value
+                start = end + 1;
+                continue;
+            }
+            String key = extraField.substring(start, equals);
+            String value = extraField.substring(equals + 1, end);
+            start = end + 1;
 
-            switch (keyValue[0].toLowerCase()) {
+            switch (key.toLowerCase()) {
                 case "aa_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "ESP_6500",
-                                "African_American"));
+                        addPopulationFrequency(currentAnnotation, value, "ESP_6500", "African_American");
                     }
                     break;
                 case "afr_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "1000GENOMES",
-                                "phase_1_AFR"));
+                        addPopulationFrequency(currentAnnotation, value, "1000GENOMES", "phase_1_AFR");
                     }
                     break;
                 case "amr_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "1000GENOMES",
-                                "phase_1_AMR"));
+                        addPopulationFrequency(currentAnnotation, value, "1000GENOMES", "phase_1_AMR");
                     }
                     break;
                 case "asn_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "1000GENOMES",
-                                "phase_1_ASN"));
+                        addPopulationFrequency(currentAnnotation, value, "1000GENOMES", "phase_1_ASN");
                     }
                     break;
                 case "biotype":
-                    consequenceType.setBiotype(keyValue[1]);
+                    consequenceType.setBiotype(value);
                     break;
                 case "ea_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "ESP_6500",
-                                "European_American"));
+                        addPopulationFrequency(currentAnnotation, value, "ESP_6500", "European_American");
                     }
                     break;
                 case "eur_maf":
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "1000GENOMES",
-                                "phase_1_EUR"));
+                        addPopulationFrequency(currentAnnotation, value, "1000GENOMES", "phase_1_EUR");
                     }
                     break;
                 case "gmaf": // Format is GMAF=G:0.2640  or  GMAF=T:0.1221,-:0.0905
                     if(parseFrequencies) {
-                        if(currentAnnotation.getPopulationFrequencies()==null) {
-                            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
-                        }
-                        currentAnnotation.getPopulationFrequencies().add(parsePopulationFrequency(keyValue[1], "1000GENOMES",
-                                "phase_1_ALL"));
+                        addPopulationFrequency(currentAnnotation, value, "1000GENOMES", "phase_1_ALL");
                     }
                     break;
                 case "hgvsc":
-                    if(currentAnnotation.getHgvs()==null) {
-                        currentAnnotation.setHgvs(new ArrayList<String>());
-                    }
-                    currentAnnotation.getHgvs().add(keyValue[1]);
-                    break;
                 case "hgvsp":
                     if(currentAnnotation.getHgvs()==null) {
                         currentAnnotation.setHgvs(new ArrayList<String>());
                     }
-                    currentAnnotation.getHgvs().add(keyValue[1]);
+                    currentAnnotation.getHgvs().add(value);
                     break;
                 case "polyphen": // Format is PolyPhen=possibly_damaging(0.859)
-                    addProteinSubstitutionScore(consequenceType, parseProteinSubstitutionScore("Polyphen", keyValue[1]));
+                    addProteinSubstitutionScore(consequenceType, parseProteinSubstitutionScore("Polyphen", value));
                     break;
                 case "sift": // Format is SIFT=tolerated(0.07)
-                    addProteinSubstitutionScore(consequenceType, parseProteinSubstitutionScore("Sift", keyValue[1]));
+                    addProteinSubstitutionScore(consequenceType, parseProteinSubstitutionScore("Sift", value));
                     break;
                 case "strand":
-                    consequenceType.setStrand(keyValue[1].equals("1")?"+":"-");
+                    consequenceType.setStrand(value.equals("1")?"+":"-");
                     break;
                 case "symbol":
-                    consequenceType.setGeneName(keyValue[1]);
+                    consequenceType.setGeneName(value);
                     break;
                 default:
                     // ALLELE_NUM, FREQS, IND, ZYG
@@ -362,38 +480,52 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
     }
 
     private Score parseProteinSubstitutionScore(String predictorName, String scoreString) {
-        String[] scoreFields = scoreString.split("[\\(\\)]");
-        return new Score(Double.valueOf(scoreFields[1]), predictorName, scoreFields[0]);
+        // Format is description(score)
+        int open = scoreString.indexOf('(');
+        int close = scoreString.indexOf(')', open + 1);
+        if (open < 0 || close < 0) {
+            throw new IllegalArgumentException("Unexpected format for " + predictorName + " score: " + scoreString);
+        }
+        return new Score(Double.valueOf(scoreString.substring(open + 1, close)), predictorName, scoreString.substring(0, open));
     }
 
-    private PopulationFrequency parsePopulationFrequency(String frequencyStrings, String study, String population) {
+    private void addPopulationFrequency(VariantAnnotation currentAnnotation, String frequencyStrings, String study,
+                                        String population) {
+        if(currentAnnotation.getPopulationFrequencies()==null) {
+            currentAnnotation.setPopulationFrequencies(new ArrayList<PopulationFrequency>());
+        }
         PopulationFrequency populationFrequency = new PopulationFrequency();
         populationFrequency.setStudy(study);
         populationFrequency.setPopulation(population);
-//        populationFrequency.setSuperPopulation(population);
         populationFrequency.setRefAllele(currentAnnotation.getReference());
         populationFrequency.setAltAllele(currentAnnotation.getAlternate());
-        for(String frequencyString : frequencyStrings.split(",")) {
-            String[] parts = frequencyString.split(":");
-            if (parts[0].equals(currentAnnotation.getAlternate())) {
-                populationFrequency.setAltAlleleFreq(Float.valueOf(parts[1]));
+        for(String frequencyString : splitList(frequencyStrings, ',')) {
+            int colon = frequencyString.lastIndexOf(':');
+            Float frequency = Float.valueOf(frequencyString.substring(colon + 1));
+            if (frequencyString.substring(0, Math.max(colon, 0)).equals(currentAnnotation.getAlternate())) {
+                populationFrequency.setAltAlleleFreq(frequency);
             } else {
-                populationFrequency.setRefAlleleFreq(Float.valueOf(parts[1]));
+                populationFrequency.setRefAlleleFreq(frequency);
             }
         }
 
-        return populationFrequency;
+        currentAnnotation.getPopulationFrequencies().add(populationFrequency);
     }
 
-    private Map<String,String> parseVariant(String variantIdString, String coordinatesString, String alternate) {
-        Map<String, String> parsedVariant = new HashMap<>(5);
-        String[] variantLocationFields;
-        try {
-            variantLocationFields = coordinatesString.split("[:-]");
-            parsedVariant.put("end", (variantLocationFields.length > 2) ? variantLocationFields[2] : variantLocationFields[1]);
-        } catch (ArrayIndexOutOfBoundsException e) {
+    private VariantAnnotation parseVariant(String variantIdString, String coordinatesString, String alternate) {
+        // Location is chromosome:start or chromosome:start-end
+        int colon = coordinatesString.indexOf(':');
+        int dash = colon < 0 ? -1 : coordinatesString.indexOf('-', colon + 1);
+        if (colon < 0) {
             throw new IllegalArgumentException("Unexpected format for column 2: "+coordinatesString);
         }
+        String locationChromosome = coordinatesString.substring(0, colon);
+        String locationStart = dash < 0 ? coordinatesString.substring(colon + 1) : coordinatesString.substring(colon + 1, dash);
+        String locationEnd = dash < 0 ? locationStart : coordinatesString.substring(dash + 1);
+
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setEnd(Integer.valueOf(locationEnd));
+        variantAnnotation.setAlternate(alternate);
 
         // Some VEP examples:
         // 1_718787_-/T    1:718786-718787 T    ...
@@ -401,79 +533,55 @@ public class VepFormatReader implements DataReader<VariantAnnotation> {
         // 1_718788_T/A    1:718788        A    ...
         // rs559462325     21:9411239      A    ...
         // rs557738790     21:26192724-26192725    AAGAAAATTAATTTCTGTTGTCTGAAGTTG   ...
-        String[] variantIdFields = variantIdString.split("[\\/]");
-        if (variantIdFields.length < 2) {
-            parseVariantFromOtherFields(parsedVariant, variantLocationFields, alternate);
+        int slash = variantIdString.indexOf('/');
+        if (slash < 0 || slash == variantIdString.length() - 1) {
+            parseVariantFromOtherFields(variantAnnotation, locationChromosome, locationStart, dash >= 0 ? locationEnd : null,
+                    alternate);
         } else {
-            parseVariantFromIdField(parsedVariant, variantIdFields);
-            parsedVariant.put("alternative", alternate);
+            parseVariantFromIdField(variantAnnotation, variantIdString.substring(0, slash));
         }
 
-        return parsedVariant;
+        return variantAnnotation;
     }
 
-    private void parseVariantFromOtherFields(Map<String, String> parsedVariant, String[] variantLocationFields, String alternate) {
-        parsedVariant.put("chromosome", variantLocationFields[0]);
-        parsedVariant.put("alternative", alternate);
+    private void parseVariantFromOtherFields(VariantAnnotation variantAnnotation, String chromosome, String start, String end,
+                                             String alternate) {
+        variantAnnotation.setChromosome(chromosome);
         // Deletion
         if (alternate.equals("-")) {
-            parsedVariant.put("start", variantLocationFields[1]);
+            variantAnnotation.setStart(Integer.valueOf(start));
             // Reference sequence does not appear in VEP file - fill with Ns
-            parsedVariant.put("reference", StringUtils.repeat("N", Integer.valueOf(parsedVariant.get("end"))
-                    - Integer.valueOf(parsedVariant.get("start")) + 1));
-            parsedVariant.put("alternative", alternate);
+            variantAnnotation.setReference(StringUtils.repeat("N", variantAnnotation.getEnd() - variantAnnotation.getStart() + 1));
         // CNV
-        } else if (alternate.matches(CNV_PATTERN)) {
-            parsedVariant.put("start", variantLocationFields[1]);
-            parsedVariant.put("reference", "N");
-            parsedVariant.put("alternative", "<" + alternate + ">");
+        } else if (CNV_PATTERN.matcher(alternate).matches()) {
+            variantAnnotation.setStart(Integer.valueOf(start));
+            variantAnnotation.setReference("N");
+            variantAnnotation.setAlternate("<" + alternate + ">");
         // Insertion
-        } else if (variantLocationFields.length > 2 || alternate.length() > 1) {
-            parsedVariant.put("start", variantLocationFields[variantLocationFields.length == 3 ? 2 : 1]);
-            parsedVariant.put("reference", "-");
-            parsedVariant.put("alternative", alternate);
+        } else if (end != null || alternate.length() > 1) {
+            variantAnnotation.setStart(Integer.valueOf(end != null ? end : start));
+            variantAnnotation.setReference("-");
         // SNV. Reference nucleotide does not appear in VEP file - fill with N
         } else {
-            parsedVariant.put("start", variantLocationFields[1]);
-            parsedVariant.put("reference", "N");
-            parsedVariant.put("alternative", alternate);
-        }
-    }
-
-    private void parseVariantFromIdField(Map<String, String> parsedVariant, String[] variantIdFields) {
-        try {
-            // Some VEP examples:
-            // 1_718787_-/T    1:718786-718787 T    ...
-            // 1_718787_T/-    1:718787        -    ...
-            // 1_718788_T/A    1:718788        A    ...
-            String[] leftVariantFields = variantIdFields[0].split("_");
-
-            // Chr id containing _
-            if(leftVariantFields.length>3) {
-                parsedVariant.put("chromosome",
-                        String.join("_", (String[]) ArrayUtils.subarray(leftVariantFields, 0, leftVariantFields.length - 2)));
-            } else {
-                parsedVariant.put("chromosome", leftVariantFields[0]);
-            }
-            parsedVariant.put("start", leftVariantFields[leftVariantFields.length-2]);
-            parsedVariant.put("reference", leftVariantFields[leftVariantFields.length-1]);
-//            parsedVariant.put("alternative", variantIdFields[1]);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new IllegalArgumentException("Unexpected variant format for column 1: "+variantIdFields.toString());
+            variantAnnotation.setStart(Integer.valueOf(start));
+            variantAnnotation.setReference("N");
         }
     }
 
-    @Override
-    public List<VariantAnnotation> read(int batchSize) {
-        List<VariantAnnotation> batch = new ArrayList<>(batchSize);
-        List<VariantAnnotation> readRecords;
-        int i = 0;
-        while ((i < batchSize) && (readRecords = this.read()) != null) {
-                batch.add(readRecords.get(0));
-                i++;
+    private void parseVariantFromIdField(VariantAnnotation variantAnnotation, String leftVariantId) {
+        // Some VEP examples:
+        // 1_718787_-/T    1:718786-718787 T    ...
+        // 1_718787_T/-    1:718787        -    ...
+        // 1_718788_T/A    1:718788        A    ...
+        // Chromosome ids may contain '_', so start and reference are taken from the end
+        int referenceSeparator = leftVariantId.lastIndexOf('_');
+        int startSeparator = referenceSeparator <= 0 ? -1 : leftVariantId.lastIndexOf('_', referenceSeparator - 1);
+        if (startSeparator <= 0) {
+            throw new IllegalArgumentException("Unexpected variant format for column 1: " + leftVariantId);
         }
-        return batch;
+        variantAnnotation.setChromosome(leftVariantId.substring(0, startSeparator));
+        variantAnnotation.setStart(Integer.valueOf(leftVariantId.substring(startSeparator + 1, referenceSeparator)));
+        variantAnnotation.setReference(leftVariantId.substring(referenceSeparator + 1));
     }
 
 }
-
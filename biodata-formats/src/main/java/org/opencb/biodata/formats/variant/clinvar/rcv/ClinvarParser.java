@@ -19,6 +19,8 @@
 
 package org.opencb.biodata.formats.variant.clinvar.rcv;
 
+import org.opencb.biodata.formats.io.XmlRecordIterator;
+import org.opencb.biodata.formats.variant.clinvar.rcv.v64jaxb.PublicSetType;
 import org.opencb.commons.utils.FileUtils;
 
 import javax.xml.bind.JAXBContext;
@@ -36,7 +38,7 @@ public class ClinvarParser {
     public final static String CLINVAR_CONTEXT_v64 = "org.opencb.biodata.formats.variant.clinvar.rcv.v64jaxb";
 
     public static void saveXMLInfo(Object obj, String filename) throws FileNotFoundException, JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(CLINVAR_CONTEXT_v64);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(CLINVAR_CONTEXT_v64);
         Marshaller marshaller = jaxbContext.createMarshaller();
         marshaller.marshal(obj, new FileOutputStream(filename));
     }
@@ -59,8 +61,20 @@ public class ClinvarParser {
      */
     public static Object loadXMLInfo(String filename, String clinvarVersion) throws JAXBException, IOException {
         InputStream inputStream = FileUtils.newInputStream(Paths.get(filename));
-        JAXBContext jaxbContext = JAXBContext.newInstance(clinvarVersion);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(clinvarVersion);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
         return unmarshaller.unmarshal(inputStream);
     }
+
+    /**
+     * Streams the ClinVarSet records of a ClinVar RCV XML file, one at a time, without loading the whole document.
+     *
+     * @param filename  ClinVar XML file, can be gzipped
+     * @return  ClinVarSet iterator, must be closed
+     * @throws JAXBException    If the JAXB context can not be created
+     * @throws IOException      If the file can not be opened
+     */
+    public static XmlRecordIterator<PublicSetType> iterator(String filename) throws JAXBException, IOException {
+        return new XmlRecordIterator<>(Paths.get(filename), CLINVAR_CONTEXT_v64, "ClinVarSet", PublicSetType.class);
+    }
 }
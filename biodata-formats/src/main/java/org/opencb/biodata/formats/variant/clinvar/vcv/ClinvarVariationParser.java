@@ -19,6 +19,8 @@
 
 package org.opencb.biodata.formats.variant.clinvar.vcv;
 
+import org.opencb.biodata.formats.io.XmlRecordIterator;
+import org.opencb.biodata.formats.variant.clinvar.vcv.v10jaxb.VariationArchiveType;
 import org.opencb.commons.utils.FileUtils;
 
 import javax.xml.bind.JAXBContext;
@@ -36,7 +38,7 @@ public class ClinvarVariationParser {
     public final static String CLINVAR_VARIATION_CONTEXT_v10 = "org.opencb.biodata.formats.variant.clinvar.vcv.v10jaxb";
 
     public static void saveXMLInfo(Object obj, String filename) throws FileNotFoundException, JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(CLINVAR_VARIATION_CONTEXT_v10);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(CLINVAR_VARIATION_CONTEXT_v10);
         Marshaller marshaller = jaxbContext.createMarshaller();
         marshaller.marshal(obj, new FileOutputStream(filename));
     }
@@ -59,8 +61,21 @@ public class ClinvarVariationParser {
      */
     public static Object loadXMLInfo(String filename, String clinvarVersion) throws JAXBException, IOException {
         InputStream inputStream = FileUtils.newInputStream(Paths.get(filename));
-        JAXBContext jaxbContext = JAXBContext.newInstance(clinvarVersion);
+        JAXBContext jaxbContext = XmlRecordIterator.getJAXBContext(clinvarVersion);
         Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
         return unmarshaller.unmarshal(inputStream);
     }
+
+    /**
+     * Streams the VariationArchive records of a ClinVar VCV XML file, one at a time, without loading the whole document.
+     *
+     * @param filename  ClinVar XML file, can be gzipped
+     * @return  VariationArchive iterator, must be closed
+     * @throws JAXBException    If the JAXB context can not be created
+     * @throws IOException      If the file can not be opened
+     */
+    public static XmlRecordIterator<VariationArchiveType> iterator(String filename) throws JAXBException, IOException {
+        return new XmlRecordIterator<>(Paths.get(filename), CLINVAR_VARIATION_CONTEXT_v10, "VariationArchive",
+                VariationArchiveType.class);
+    }
 }
@@ -20,6 +20,7 @@
 package org.opencb.biodata.formats.variant.vcf4;
 
 import org.opencb.biodata.formats.variant.VariantFactory;
+import org.opencb.biodata.models.common.StringDictionary;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
@@ -78,7 +79,7 @@ public class VariantVcfFactory implements VariantFactory {
 //            throw new NotAVariantException("Alternative allele is a '.'. This is not an actual variant but a reference position.");
 //        }
 
-        String chromosome = fields[0];
+        String chromosome = StringDictionary.CHROMOSOMES.intern(fields[0]);
         int position = Integer.parseInt(fields[1]);
         String id = fields[2].equals(".") ? null : fields[2];
         List<String> ids = id == null? Collections.emptyList() : Arrays.asList(id.split(";"));
@@ -97,9 +98,9 @@ public class VariantVcfFactory implements VariantFactory {
         Variant variant = new Variant(chromosome, position, end, reference, mainAlternate);
 
         List<AlternateCoordinate> secondaryAlternatesMap = Arrays.stream(alternateAlleles, 1, alternateAlleles.length)
-                .map(a -> new AlternateCoordinate(chromosome, null, null, null, a, null))
+                .map(a -> new AlternateCoordinate(chromosome, null, null, null, StringDictionary.ALLELES.intern(a), null))
                 .collect(Collectors.toList());
-        StudyEntry entry = new StudyEntry(metadata.getId(), secondaryAlternatesMap, Arrays.asList(format.split(":")));
+        StudyEntry entry = new StudyEntry(metadata.getId(), secondaryAlternatesMap, internFields(format.split(":")));
         VariantFileMetadata fileMetadata = new VariantFileMetadata(metadata.getFiles().get(0));
         entry.setFileId(fileMetadata.getId());
         variant.addStudyEntry(entry);
@@ -127,11 +128,17 @@ public class VariantVcfFactory implements VariantFactory {
             return;
         }
         List<String> formatFields = Arrays.asList(fields[8].split(":"));
+        int gtPosition = formatFields.indexOf("GT");
         entry.setSamplesPosition(fileMetadata.getSamplesPosition());
 
         List<SampleEntry> samplesData = Arrays.asList(new SampleEntry[fields.length - 9]);
         for (int i = 9; i < fields.length; i++) {
-            List<String> data = Arrays.asList(fields[i].split(":"));
+            String[] values = fields[i].split(":");
+            // Only genotypes are shared, other sample values rarely repeat and would fill the dictionary
+            if (gtPosition >= 0 && gtPosition < values.length) {
+                values[gtPosition] = StringDictionary.FIELDS.intern(values[gtPosition]);
+            }
+            List<String> data = Arrays.asList(values);
             if (data.size() < formatFields.size()) {
                 List<String> correctSizeData = new ArrayList<>(formatFields.size());
                 correctSizeData.addAll(data);
@@ -149,6 +156,16 @@ public class VariantVcfFactory implements VariantFactory {
         entry.setSamples(samplesData);
     }
 
+    /**
+     * Replaces the FORMAT keys by their canonical instances, shared by all the variants.
+     */
+    private static List<String> internFields(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = StringDictionary.FIELDS.intern(values[i]);
+        }
+        return Arrays.asList(values);
+    }
+
     /**
      * Checks whether a sample should be included in a variant's list of
      * samples. If current allele index is not found in the genotype and not all
@@ -187,7 +204,7 @@ public class VariantVcfFactory implements VariantFactory {
             study.addFileData(fileMetadata.getId(), StudyEntry.QUAL, String.valueOf(quality));
         }
         if (!filter.isEmpty()) {
-            study.addFileData(fileMetadata.getId(), StudyEntry.FILTER, filter);
+            study.addFileData(fileMetadata.getId(), StudyEntry.FILTER, StringDictionary.FIELDS.intern(filter));
         }
         if (!info.isEmpty()) {
             parseInfo(variant, fileMetadata.getId(), study.getStudyId(), info);
@@ -202,7 +219,7 @@ public class VariantVcfFactory implements VariantFactory {
         for (String var : info.split(";")) {
             String[] splits = var.split("=");
             if (splits.length == 2) {
-                file.getData().put(splits[0], splits[1]);
+                file.getData().put(StringDictionary.FIELDS.intern(splits[0]), splits[1]);
 //                switch (splits[0]) {
 //                    case "ACC":
 //                        // Managing accession ID for the allele
@@ -260,7 +277,7 @@ public class VariantVcfFactory implements VariantFactory {
 //                        break;
 //                }
             } else {
-                file.getData().put(splits[0], "");
+                file.getData().put(StringDictionary.FIELDS.intern(splits[0]), "");
             }
         }
     }
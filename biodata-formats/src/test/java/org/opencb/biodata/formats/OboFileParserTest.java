@@ -56,4 +56,56 @@ public class OboFileParserTest {
         terms = parser.parseOBO(bufferedReader, "GO");
         assertEquals(3112, terms.size());
     }
+
+    @Test
+    public void testFrames() throws IOException {
+        String obo = String.join("\n",
+                "format-version: 1.2",
+                "ontology: test",
+                "",
+                "[Term]",
+                "id: T:0000002",
+                "name: Child \\{with escapes\\} {source=\"test\"}",
+                "def: \"A \\\"quoted\\\" definition.\" [T:curator]",
+                "comment: Some comment ! trailing comment",
+                "synonym: \"Second child\" EXACT []",
+                "xref: DB:123 \"description\"",
+                "is_a: T:0000001 ! Root",
+                "is_a: T:0000003 {source=\"test\"} ! Other",
+                "",
+                "[Typedef]",
+                "id: part_of",
+                "name: part of",
+                "",
+                "! comment line",
+                "[Term]",
+                "id: T:0000001",
+                "name: Root",
+                "namespace: test_namespace",
+                "");
+
+        List<OntologyTerm> terms = new OboParser().parseOBO(new BufferedReader(new StringReader(obo)), "Test");
+        // Terms in order of appearance, parents referenced by is_a included, typedefs skipped
+        assertEquals(3, terms.size());
+        assertEquals("T:0000002", terms.get(0).getId());
+        assertEquals("T:0000001", terms.get(1).getId());
+        assertEquals("T:0000003", terms.get(2).getId());
+
+        OntologyTerm child = terms.get(0);
+        assertEquals("Child {with escapes}", child.getName());
+        assertEquals("A \"quoted\" definition.", child.getDescription());
+        assertEquals("Some comment", child.getComment());
+        assertEquals("Second child", child.getSynonyms().get(0));
+        assertEquals("DB:123", child.getXrefs().get(0));
+        assertEquals("T:0000001", child.getParents().get(0));
+        assertEquals("T:0000003", child.getParents().get(1));
+        assertEquals("Test", child.getSource());
+
+        OntologyTerm root = terms.get(1);
+        assertEquals("Root", root.getName());
+        assertEquals("test_namespace", root.getNamespace());
+        assertEquals("T:0000002", root.getChildren().get(0));
+        assertEquals("T:0000002", terms.get(2).getChildren().get(0));
+        assertNull(terms.get(2).getName());
+    }
 }
@@ -109,4 +109,21 @@ public class VepFormatReaderTest {
         vepFormatReader.close();
 
     }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        String file = getClass().getResource("/vepoutputtest.tsv.gz").getFile();
+        VepFormatReader vepFormatReader = new VepFormatReader(file);
+        vepFormatReader.open();
+        List<VariantAnnotation> expected = vepFormatReader.read(10000);
+        vepFormatReader.close();
+
+        // Tiny blocks, so that every block boundary is checked
+        VepFormatReader parallelReader = new VepFormatReader(file, 4, 1);
+        parallelReader.open();
+        List<VariantAnnotation> variantAnnotationList = parallelReader.read(10000);
+        parallelReader.close();
+
+        assertEquals(expected, variantAnnotationList);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package org.opencb.biodata.formats.gaf;
+
+import org.junit.Test;
+import org.opencb.biodata.models.core.AnnotationEvidence;
+import org.opencb.biodata.models.core.FeatureOntologyTermAnnotation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GafParserTest {
+
+    @Test
+    public void test() throws IOException, ParseException {
+        Path goaFile = Paths.get(getClass().getResource("/goa_human.gaf.gz").getPath());
+        Path oboFile = Paths.get(getClass().getResource("/go-basic.obo").getPath());
+
+        GafParser parser = new GafParser();
+        Map<String, List<FeatureOntologyTermAnnotation>> results = parser.parseGaf(goaFile, oboFile);
+        assertEquals(1, results.size());
+
+        List<FeatureOntologyTermAnnotation> annotations = results.get("A0A024RBG1");
+        assertEquals(4, annotations.size());
+
+        FeatureOntologyTermAnnotation annotation0 = annotations.stream()
+                .filter(annotation -> annotation.getId().equals("GO:0005829")).findFirst().get();
+        AnnotationEvidence evidence = annotation0.getEvidence().get(0);
+        assertEquals("GO:0005829", annotation0.getId());
+        assertEquals("IDA", evidence.getCode());
+        assertEquals("cytosol", annotation0.getName());
+        assertNull(evidence.getQualifier());
+        assertEquals("GO_REF:0000052", evidence.getReferences().toArray()[0]);
+
+        // Chunks tokenized in parallel give the same annotations
+        Map<String, List<FeatureOntologyTermAnnotation>> parallelResults = parser.parseGaf(goaFile, oboFile, 4);
+        assertEquals(results.keySet(), parallelResults.keySet());
+        for (Map.Entry<String, List<FeatureOntologyTermAnnotation>> entry : results.entrySet()) {
+            assertEquals(toString(entry.getValue()), toString(parallelResults.get(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        Path goaFile = Paths.get(getClass().getResource("/goa_human.gaf.gz").getPath());
+        Path oboFile = Paths.get(getClass().getResource("/go-basic.obo").getPath());
+        Map<String, List<FeatureOntologyTermAnnotation>> expected = new GafParser().parseGaf(goaFile, oboFile);
+
+        // Small chunks, so that the annotations of a feature are split and merged across several chunks
+        for (int numThreads : new int[]{1, 4}) {
+            for (int chunkSize : new int[]{1, 3, 7}) {
+                Map<String, List<FeatureOntologyTermAnnotation>> results = new GafParser(chunkSize)
+                        .parseGaf(goaFile, oboFile, numThreads);
+                assertEquals(expected.keySet(), results.keySet());
+                for (Map.Entry<String, List<FeatureOntologyTermAnnotation>> entry : expected.entrySet()) {
+                    assertEquals(toString(entry.getValue()), toString(results.get(entry.getKey())));
+                }
+            }
+        }
+    }
+
+    private List<String> toString(List<FeatureOntologyTermAnnotation> annotations) {
+        List<String> strings = new ArrayList<>();
+        for (FeatureOntologyTermAnnotation annotation : annotations) {
+            for (AnnotationEvidence evidence : annotation.getEvidence()) {
+                strings.add(annotation.getId() + " " + annotation.getName() + " " + evidence.getCode() + " "
+                        + evidence.getQualifier() + " " + new TreeSet<>(evidence.getReferences()));
+            }
+        }
+        return strings;
+    }
+}
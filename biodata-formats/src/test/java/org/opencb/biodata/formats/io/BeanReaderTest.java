@@ -0,0 +1,104 @@
+package org.opencb.biodata.formats.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.Assert.*;
+
+public class BeanReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    public static class Row {
+        private final String name;
+        private final Integer start;
+        private final long end;
+        private final double score;
+
+        public Row(String name, Integer start, long end, double score) {
+            if (start < 0) {
+                throw new IllegalArgumentException("Negative start");
+            }
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.score = score;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Row row = (Row) o;
+            return end == row.end && Double.compare(row.score, score) == 0 && Objects.equals(name, row.name)
+                    && Objects.equals(start, row.start);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, start, end, score);
+        }
+    }
+
+    @Test
+    public void testReadAllParallel() throws Exception {
+        // More lines than a parallel batch, with comments and empty lines in between
+        Path path = writeRows(25003, -1);
+
+        List<Row> expected = new BeanReader<>(path, Row.class).readAll();
+        List<Row> actual = new BeanReader<>(path, Row.class).readAll(3);
+
+        assertEquals(25003, expected.size());
+        assertEquals(expected, actual);
+        assertEquals(new Row("row_12345", 12345, 12445, 12345 / 4.0), actual.get(12345));
+    }
+
+    @Test
+    public void testConstructorException() throws Exception {
+        Path path = writeRows(15000, 12000);
+
+        try {
+            new BeanReader<>(path, Row.class).readAll();
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        try {
+            new BeanReader<>(path, Row.class).readAll(2);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof InvocationTargetException);
+            assertTrue(e.getCause().getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private Path writeRows(int numRows, int negativeRow) throws IOException {
+        Path path = temporaryFolder.newFile("rows.tsv").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("#name\tstart\tend\tscore\n");
+            for (int i = 0; i < numRows; i++) {
+                int start = i == negativeRow ? -i : i;
+                writer.write("row_" + i + "\t" + start + "\t" + (i + 100) + "\t" + (i / 4.0) + "\n");
+                if (i % 1000 == 0) {
+                    writer.write("# comment\n\n");
+                }
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,56 @@
+package org.opencb.biodata.formats.pedigree.io;
+
+import org.junit.Test;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PedigreePedReaderTest {
+
+    private String getPedFile() throws Exception {
+        return Paths.get(getClass().getResource("/pedigree-test-file.ped").toURI()).toString();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        PedigreePedReader reader = new PedigreePedReader(getPedFile());
+        assertTrue(reader.open());
+        List<Pedigree> pedigrees = reader.read();
+        reader.close();
+
+        assertEquals(1, pedigrees.size());
+        Pedigree pedigree = pedigrees.get(0);
+        assertEquals(4, pedigree.getIndividuals().size());
+        assertEquals(4, pedigree.getFamily("FAM").size());
+        Individual child = pedigree.getIndividual("NA19600");
+        assertEquals("NA19661", child.getFather().getId());
+        assertEquals("NA19660", child.getMother().getId());
+        assertEquals(2, pedigree.getIndividual("NA19660").getChildren().size());
+    }
+
+    @Test
+    public void testReadBatches() throws Exception {
+        PedigreePedReader reader = new PedigreePedReader(getPedFile());
+        assertTrue(reader.open());
+
+        List<Pedigree> batch = reader.read(3);
+        assertEquals(1, batch.size());
+        Pedigree pedigree = batch.get(0);
+        assertEquals(3, pedigree.getIndividuals().size());
+        assertEquals("NA19661", pedigree.getIndividual("NA19600").getFather().getId());
+
+        batch = reader.read(3);
+        assertEquals(1, batch.size());
+        Individual child = batch.get(0).getIndividual("NA19685");
+        // Parents were read in the previous batch
+        assertNull(child.getFather());
+        assertEquals("NA19661", child.getFatherId());
+
+        assertTrue(reader.read(3).isEmpty());
+        reader.close();
+    }
+}
@@ -0,0 +1,79 @@
+package org.opencb.biodata.formats.pedigree.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PedigreePedSqliteTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws Exception {
+        PedigreePedReader pedReader = new PedigreePedReader(
+                Paths.get(getClass().getResource("/pedigree-test-file.ped").toURI()).toString());
+        assertTrue(pedReader.open());
+        Pedigree expected = pedReader.read().get(0);
+        pedReader.close();
+
+        String dbName = temporaryFolder.newFile("pedigree.db").getAbsolutePath();
+        // Batches smaller than the pedigree
+        PedigreePedSqliteWriter writer = new PedigreePedSqliteWriter(dbName, 3);
+        assertTrue(writer.open());
+        assertTrue(writer.pre());
+        assertTrue(writer.write(expected));
+
+        // A duplicated sample fails the whole write, which is rolled back
+        Pedigree invalid = new Pedigree();
+        invalid.addIndividual(new Individual("NEW", "FAM2", null, null, "1", "1", null));
+        invalid.addIndividual(new Individual("NA19600", "FAM2", null, null, "1", "1", null));
+        assertFalse(writer.write(Arrays.asList(invalid)));
+        assertTrue(writer.post());
+        assertTrue(writer.close());
+
+        PedigreePedSqliteReader reader = new PedigreePedSqliteReader(dbName);
+        assertTrue(reader.open());
+
+        Pedigree pedigree = reader.read().get(0);
+        assertEquals(expected.getIndividuals().keySet(), pedigree.getIndividuals().keySet());
+        assertNull(pedigree.getIndividual("NEW"));
+        for (Individual expectedIndividual : expected.getIndividuals().values()) {
+            Individual individual = pedigree.getIndividual(expectedIndividual.getId());
+            assertEquals(expectedIndividual.getFamily(), individual.getFamily());
+            assertEquals(expectedIndividual.getSex(), individual.getSex());
+            assertEquals(expectedIndividual.getPhenotype(), individual.getPhenotype());
+            assertEquals(id(expectedIndividual.getFather()), id(individual.getFather()));
+            assertEquals(id(expectedIndividual.getMother()), id(individual.getMother()));
+        }
+
+        Pedigree family = reader.readFamily("FAM");
+        assertEquals(expected.getFamily("FAM").size(), family.getFamily("FAM").size());
+        assertEquals("NA19661", family.getIndividual("NA19600").getFather().getId());
+        assertNull(reader.readFamily("FAM2"));
+
+        List<Pedigree> families = reader.read(10);
+        assertEquals(1, families.size());
+        assertEquals(expected.getIndividuals().size(), families.get(0).getIndividuals().size());
+        assertTrue(reader.read(10).isEmpty());
+        assertTrue(reader.close());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOpenError() throws Exception {
+        String dbName = temporaryFolder.getRoot().toPath().resolve("missing").resolve("pedigree.db").toString();
+        new PedigreePedSqliteReader(dbName).open();
+    }
+
+    private static String id(Individual individual) {
+        return individual == null ? null : individual.getId();
+    }
+}
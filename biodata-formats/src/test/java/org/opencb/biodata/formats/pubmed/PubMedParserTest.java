@@ -3,6 +3,7 @@ package org.opencb.biodata.formats.pubmed;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Test;
+import org.opencb.biodata.formats.io.XmlRecordIterator;
 import org.opencb.biodata.formats.pubmed.v233jaxb.PubmedArticle;
 import org.opencb.biodata.formats.pubmed.v233jaxb.PubmedArticleSet;
 
@@ -11,6 +12,9 @@ import javax.xml.bind.JAXBException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 public class PubMedParserTest {
@@ -44,4 +48,22 @@ public class PubMedParserTest {
 
         Assert.assertEquals(json, json2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void iterator() throws Exception {
+        Path pubmedFile = Paths.get(getClass().getResource("/pubmed.test.xml").getPath());
+
+        List<String> pmids = new ArrayList<>();
+        try (XmlRecordIterator<PubmedArticle> iterator = PubMedParser.iterator(pubmedFile.toAbsolutePath().toString())) {
+            iterator.forEachRemaining(article -> pmids.add(article.getMedlineCitation().getPMID().getContent()));
+        }
+        Assert.assertEquals(2, pmids.size());
+        Assert.assertEquals("34878743", pmids.get(0));
+
+        List<String> parallelPmids = Collections.synchronizedList(new ArrayList<>());
+        try (XmlRecordIterator<PubmedArticle> iterator = PubMedParser.iterator(pubmedFile.toAbsolutePath().toString())) {
+            iterator.forEach(2, article -> parallelPmids.add(article.getMedlineCitation().getPMID().getContent()));
+        }
+        Assert.assertEquals(new HashSet<>(pmids), new HashSet<>(parallelPmids));
+    }
+}
@@ -0,0 +1,104 @@
+package org.opencb.biodata.formats.sequence.fasta.dbadaptor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocalSequenceDBAdaptorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // 25 bases, N block at [10, 14) and soft-masked block at [20, 23)
+    private static final String CHR1 = "ACGTACGTACNNNNGGCCTTaaaTT";
+    private static final String CHR2 = "TTTTGGGGCCCCAAAA";
+
+    @Test
+    public void fasta() throws Exception {
+        Path fasta = temporaryFolder.getRoot().toPath().resolve("genome.fa");
+        String content = ">1 first\n" + CHR1.substring(0, 10) + "\n" + CHR1.substring(10, 20) + "\n" + CHR1.substring(20) + "\n"
+                + ">2\r\n" + CHR2.substring(0, 10) + "\r\n" + CHR2.substring(10) + "\r\n";
+        Files.write(fasta, content.getBytes(StandardCharsets.US_ASCII));
+        Files.write(fasta.resolveSibling("genome.fa.fai"), ("1\t25\t9\t10\t11\n2\t16\t41\t10\t12\n").getBytes(StandardCharsets.US_ASCII));
+        check(fasta);
+    }
+
+    @Test
+    public void twoBit() throws Exception {
+        Path twoBit = temporaryFolder.getRoot().toPath().resolve("genome.2bit");
+        Files.write(twoBit, createTwoBit());
+        check(twoBit);
+    }
+
+    private void check(Path genome) throws IOException {
+        // Chunks smaller than the sequences, to read across chunk boundaries
+        LocalSequenceDBAdaptor adaptor = new LocalSequenceDBAdaptor(genome, 7, 2);
+        adaptor.open();
+        try {
+            assertEquals(CHR1, adaptor.getSequence(new Region("1", 1, 25)));
+            assertEquals("CNNNNGGCC", adaptor.getSequence(new Region("1", 10, 18)));
+            assertEquals("Taaa", adaptor.getSequence(new Region("1", 20, 23)));
+            assertEquals("AAA", adaptor.getSequence(new Region("2", 14, 100)));
+            assertEquals(CHR2.substring(3, 4), adaptor.getSequence(new Region("2", 4, 4), "hsapiens"));
+
+            List<Region> regions = Arrays.asList(new Region("2", 5, 8), new Region("1", 3, 6), new Region("1", 1, 4),
+                    new Region("1", 7, 12), new Region("2", 1, 2), new Region("1", 20, 30));
+            List<String> sequences = adaptor.getSequences(regions);
+            assertEquals(Arrays.asList("GGGG", "GTAC", "ACGT", "GTACNN", "TT", "TaaaTT"), sequences);
+        } finally {
+            adaptor.close();
+        }
+    }
+
+    private static byte[] createTwoBit() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(16 + 2 * (1 + 1 + 4)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] record1 = record(CHR1, new int[]{10}, new int[]{4}, new int[]{20}, new int[]{3});
+        header.putInt(0x1A412743).putInt(0).putInt(2).putInt(0);
+        header.put((byte) 1).put((byte) '1').putInt(header.capacity());
+        header.put((byte) 1).put((byte) '2').putInt(header.capacity() + record1.length);
+        outputStream.write(header.array(), 0, header.capacity());
+        outputStream.write(record1, 0, record1.length);
+        byte[] record2 = record(CHR2, new int[0], new int[0], new int[0], new int[0]);
+        outputStream.write(record2, 0, record2.length);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] record(String sequence, int[] nStarts, int[] nSizes, int[] maskStarts, int[] maskSizes) {
+        int packedSize = (sequence.length() + 3) / 4;
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 8 * nStarts.length + 8 * maskStarts.length + packedSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(sequence.length()).putInt(nStarts.length);
+        Arrays.stream(nStarts).forEach(buffer::putInt);
+        Arrays.stream(nSizes).forEach(buffer::putInt);
+        buffer.putInt(maskStarts.length);
+        Arrays.stream(maskStarts).forEach(buffer::putInt);
+        Arrays.stream(maskSizes).forEach(buffer::putInt);
+        buffer.putInt(0);
+        for (int i = 0; i < packedSize * 4; i += 4) {
+            int b = 0;
+            for (int j = i; j < i + 4; j++) {
+                b <<= 2;
+                if (j < sequence.length()) {
+                    // N bases are stored as T
+                    b |= Math.max(0, "TCAG".indexOf(Character.toUpperCase(sequence.charAt(j))));
+                }
+            }
+            buffer.put((byte) b);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class FastqBatchReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String FASTQ = "@read1 first read\n"
+            + "ACGTAC\n"
+            + "+\n"
+            + "@@II!!\n"
+            + "@read2\r\n"
+            + "ACGT\r\n"
+            + "AC\r\n"
+            + "+read2\r\n"
+            + "+#II\r\n"
+            + "!!\r\n"
+            + "\n"
+            + "@read3\tthird\n"
+            + "N\n"
+            + "+\n"
+            + "#";
+
+    @Test
+    public void readBatches() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("test.fastq");
+        Files.write(path, FASTQ.getBytes(StandardCharsets.US_ASCII));
+
+        try (FastqBatchReader reader = new FastqBatchReader(path)) {
+            FastqRecordBatch batch = new FastqRecordBatch(2);
+            assertTrue(reader.next(batch));
+            assertEquals(2, batch.size());
+            assertEquals("read1", batch.getId(0));
+            assertEquals("first read", batch.getDescription(0));
+            assertEquals("ACGTAC", batch.getSequence(0));
+            assertEquals("@@II!!", batch.getQuality(0));
+            assertEquals("read2", batch.getId(1));
+            assertEquals("", batch.getDescription(1));
+            assertEquals("ACGTAC", batch.getSequence(1));
+            assertEquals("+#II!!", batch.getQuality(1));
+
+            assertTrue(reader.next(batch));
+            assertEquals(1, batch.size());
+            assertEquals("read3", batch.getId(0));
+            assertEquals("third", batch.getDescription(0));
+            FastQ fastQ = batch.toFastQ(0, FastQ.SANGER_ENCODING);
+            assertEquals("N", fastQ.getSeq());
+            assertEquals("#", fastQ.getQuality());
+
+            assertFalse(reader.next(batch));
+        }
+    }
+
+    @Test
+    public void countMultiMemberGzip() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("test.fastq.gz");
+        byte[] bytes = FASTQ.concat("\n").getBytes(StandardCharsets.US_ASCII);
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            // Two gzip members, as in BGZF files
+            for (int i = 0; i < 2; i++) {
+                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+                gzipOutputStream.write(bytes);
+                gzipOutputStream.finish();
+            }
+        }
+
+        assertEquals(6, FastqBatchReader.count(path));
+        try (FastaQReader reader = new FastaQReader(path)) {
+            assertEquals(6, reader.size());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.biodata.models.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe canonicalization of the strings repeated in millions of variants and regions, so all of them share the
+ * same instances, and equality checks between canonical values return at the reference comparison.
+ *
+ * Dictionaries are bounded, both in number of entries and in the length of the values. Once full, or for longer
+ * values, the given string is returned as it is.
+ */
+public final class StringDictionary {
+
+    /**
+     * Chromosome names.
+     */
+    public static final StringDictionary CHROMOSOMES = new StringDictionary(10000, 256);
+
+    /**
+     * Short reference and alternate alleles.
+     */
+    public static final StringDictionary ALLELES = new StringDictionary(100000, 8,
+            "", "A", "C", "G", "T", "N", "-", ".", "*",
+            "<*>", "<NON_REF>", "<DEL>", "<DUP>", "<INS>", "<INV>", "<CNV>");
+
+    /**
+     * VCF fields: INFO and FORMAT keys, FILTER values and genotypes. Other sample values are not interned, as they
+     * rarely repeat and would only fill the dictionary.
+     */
+    public static final StringDictionary FIELDS = new StringDictionary(100000, 32,
+            ".", "PASS", "GT", "AD", "DP", "GQ", "PL", "FT", "PS", "QUAL", "FILTER",
+            "0/0", "0/1", "1/1", "./.", "0|0", "0|1", "1|0", "1|1", ".|.", "0", "1");
+
+    private final int maxSize;
+    private final int maxLength;
+    private final ConcurrentHashMap<String, String> dictionary;
+
+    public StringDictionary(int maxSize, int maxLength, String... values) {
+        this.maxSize = maxSize;
+        this.maxLength = maxLength;
+        this.dictionary = new ConcurrentHashMap<>(Math.max(16, values.length * 2));
+        for (String value : values) {
+            dictionary.put(value, value);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of the value.
+     *
+     * @param value Value, may be null
+     * @return      The canonical instance, or the value itself if it is not in the dictionary and can not be added
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        String canonical = dictionary.get(value);
+        if (canonical == null) {
+            if (dictionary.size() >= maxSize) {
+                return value;
+            }
+            canonical = dictionary.putIfAbsent(value, value);
+            if (canonical == null) {
+                canonical = value;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns a list with the canonical instances of the values. The list is not modified, and is returned as it is
+     * if all the values are already canonical.
+     *
+     * @param values    Values
+     * @return          List of canonical values
+     */
+    public List<String> intern(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> interned = values;
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            String canonical = intern(value);
+            if (canonical != value) {
+                if (interned == values) {
+                    interned = new ArrayList<>(values);
+                }
+                interned.set(i, canonical);
+            }
+        }
+        return interned;
+    }
+
+    public int size() {
+        return dictionary.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("StringDictionary{");
+        sb.append("size=").append(dictionary.size());
+        sb.append(", maxSize=").append(maxSize);
+        sb.append(", maxLength=").append(maxLength);
+        sb.append('}');
+        return sb.toString();
+    }
+}
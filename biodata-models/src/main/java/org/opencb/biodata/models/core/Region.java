@@ -19,6 +19,8 @@
 
 package org.opencb.biodata.models.core;
 
+import org.opencb.biodata.models.common.StringDictionary;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,7 +51,7 @@ public class Region {
         if (region != null && !region.isEmpty()) {
             int idx1 = region.indexOf(':');
             if (idx1 > 0) {
-                this.chromosome = region.substring(0, idx1);
+                this.chromosome = StringDictionary.CHROMOSOMES.intern(region.substring(0, idx1));
                 int idx2 = region.indexOf('-', idx1);
                 if (idx2 > 0) {
                     this.start = Integer.parseInt(region.substring(idx1 + 1, idx2));
@@ -59,7 +61,7 @@ public class Region {
                     this.end = this.start;
                 }
             } else {
-                this.chromosome = region;
+                this.chromosome = StringDictionary.CHROMOSOMES.intern(region);
                 this.start = 0;
                 this.end = Integer.MAX_VALUE;
             }
@@ -113,7 +115,7 @@ public class Region {
         if (chromosome.equals(MITOCHONDRIA_M)) {
             chromosome = "MT";
         }
-        return chromosome;
+        return StringDictionary.CHROMOSOMES.intern(chromosome);
     }
 
     public int size() {
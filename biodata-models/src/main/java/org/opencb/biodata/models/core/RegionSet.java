@@ -0,0 +1,441 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.models.core;
+
+import java.util.*;
+
+/**
+ * Immutable set of genomic positions, indexed for fast region queries.
+ *
+ * Regions are sorted and merged per chromosome, overlapping or adjacent regions becoming a single interval, and stored
+ * as two int arrays of starts and ends. Point and region queries are binary searches, and set operations are linear
+ * merges of the sorted arrays. For streams sorted by position, e.g. the variants of a sorted VCF, a {@link Cursor}
+ * answers each query in amortized constant time.
+ *
+ * As {@link Region}, positions are 1-based and inclusive.
+ */
+public final class RegionSet {
+
+    private static final RegionSet EMPTY = new RegionSet(Collections.emptyMap());
+
+    private final Map<String, Intervals> intervals;
+
+    /**
+     * Sorted, disjoint and not adjacent intervals of one chromosome.
+     */
+    private static final class Intervals {
+        private final int[] starts;
+        private final int[] ends;
+        private final int size;
+
+        private Intervals(int[] starts, int[] ends, int size) {
+            this.starts = starts;
+            this.ends = ends;
+            this.size = size;
+        }
+
+        /**
+         * @return Index of the first interval ending at or after the position, or size if none
+         */
+        private int firstEndingFrom(int position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return Number of intervals starting at or before the position
+         */
+        private int countStartingUntil(int position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Accumulates intervals in order, merging each one with the previous if they overlap or are adjacent.
+     */
+    private static final class IntervalsBuilder {
+        private int[] starts;
+        private int[] ends;
+        private int size;
+
+        private IntervalsBuilder(int capacity) {
+            starts = new int[Math.max(1, capacity)];
+            ends = new int[Math.max(1, capacity)];
+        }
+
+        private void add(int start, int end) {
+            if (size > 0 && start <= (long) ends[size - 1] + 1) {
+                ends[size - 1] = Math.max(ends[size - 1], end);
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        private Intervals build() {
+            return size == 0 ? null : new Intervals(starts, ends, size);
+        }
+    }
+
+    private RegionSet(Map<String, Intervals> intervals) {
+        this.intervals = intervals;
+    }
+
+    public static RegionSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param regions Regions, in any order and possibly overlapping. Regions with end before start are ignored
+     * @return Region set
+     */
+    public static RegionSet of(Collection<Region> regions) {
+        Map<String, List<Region>> byChromosome = new LinkedHashMap<>();
+        for (Region region : regions) {
+            if (region.getEnd() >= region.getStart()) {
+                byChromosome.computeIfAbsent(region.getChromosome(), k -> new ArrayList<>()).add(region);
+            }
+        }
+        Map<String, Intervals> intervals = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Region>> entry : byChromosome.entrySet()) {
+            List<Region> chromosomeRegions = entry.getValue();
+            chromosomeRegions.sort(Comparator.comparingInt(Region::getStart));
+            IntervalsBuilder builder = new IntervalsBuilder(chromosomeRegions.size());
+            for (Region region : chromosomeRegions) {
+                builder.add(region.getStart(), region.getEnd());
+            }
+            intervals.put(entry.getKey(), builder.build());
+        }
+        return new RegionSet(intervals);
+    }
+
+    /**
+     * @param regionsString Comma separated regions, see {@link Region#parseRegions(String)}
+     * @return Region set
+     */
+    public static RegionSet parse(String regionsString) {
+        List<Region> regions = Region.parseRegions(regionsString);
+        return regions == null ? EMPTY : of(regions);
+    }
+
+    public boolean contains(String chromosome, int position) {
+        Intervals chromosomeIntervals = intervals.get(chromosome);
+        if (chromosomeIntervals == null) {
+            return false;
+        }
+        int i = chromosomeIntervals.firstEndingFrom(position);
+        return i < chromosomeIntervals.size && chromosomeIntervals.starts[i] <= position;
+    }
+
+    /**
+     * @param chromosome Chromosome
+     * @param start Start
+     * @param end End
+     * @return true if all the positions of the region are in the set
+     */
+    public boolean contains(String chromosome, int start, int end) {
+        Intervals chromosomeIntervals = intervals.get(chromosome);
+        if (chromosomeIntervals == null) {
+            return false;
+        }
+        int i = chromosomeIntervals.firstEndingFrom(end);
+        return i < chromosomeIntervals.size && chromosomeIntervals.starts[i] <= start;
+    }
+
+    /**
+     * @param chromosome Chromosome
+     * @param start Start
+     * @param end End
+     * @return true if any position of the region is in the set
+     */
+    public boolean overlaps(String chromosome, int start, int end) {
+        Intervals chromosomeIntervals = intervals.get(chromosome);
+        if (chromosomeIntervals == null) {
+            return false;
+        }
+        int i = chromosomeIntervals.firstEndingFrom(start);
+        return i < chromosomeIntervals.size && chromosomeIntervals.starts[i] <= end;
+    }
+
+    /**
+     * @param chromosome Chromosome
+     * @param start Start
+     * @param end End
+     * @return Number of merged intervals overlapping the region
+     */
+    public int countOverlaps(String chromosome, int start, int end) {
+        Intervals chromosomeIntervals = intervals.get(chromosome);
+        if (chromosomeIntervals == null || end < start) {
+            return 0;
+        }
+        return Math.max(0, chromosomeIntervals.countStartingUntil(end) - chromosomeIntervals.firstEndingFrom(start));
+    }
+
+    public RegionSet union(RegionSet other) {
+        Set<String> chromosomes = new LinkedHashSet<>(intervals.keySet());
+        chromosomes.addAll(other.intervals.keySet());
+        Map<String, Intervals> result = new LinkedHashMap<>();
+        for (String chromosome : chromosomes) {
+            Intervals a = intervals.get(chromosome);
+            Intervals b = other.intervals.get(chromosome);
+            if (a == null || b == null) {
+                result.put(chromosome, a == null ? b : a);
+                continue;
+            }
+            IntervalsBuilder builder = new IntervalsBuilder(a.size + b.size);
+            int i = 0;
+            int j = 0;
+            while (i < a.size || j < b.size) {
+                if (j == b.size || (i < a.size && a.starts[i] <= b.starts[j])) {
+                    builder.add(a.starts[i], a.ends[i]);
+                    i++;
+                } else {
+                    builder.add(b.starts[j], b.ends[j]);
+                    j++;
+                }
+            }
+            result.put(chromosome, builder.build());
+        }
+        return new RegionSet(result);
+    }
+
+    public RegionSet intersection(RegionSet other) {
+        Map<String, Intervals> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Intervals> entry : intervals.entrySet()) {
+            Intervals a = entry.getValue();
+            Intervals b = other.intervals.get(entry.getKey());
+            if (b == null) {
+                continue;
+            }
+            IntervalsBuilder builder = new IntervalsBuilder(Math.min(a.size, b.size));
+            int i = 0;
+            int j = 0;
+            while (i < a.size && j < b.size) {
+                int start = Math.max(a.starts[i], b.starts[j]);
+                int end = Math.min(a.ends[i], b.ends[j]);
+                if (start <= end) {
+                    builder.add(start, end);
+                }
+                if (a.ends[i] < b.ends[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            Intervals chromosomeIntervals = builder.build();
+            if (chromosomeIntervals != null) {
+                result.put(entry.getKey(), chromosomeIntervals);
+            }
+        }
+        return new RegionSet(result);
+    }
+
+    /**
+     * @param other Positions to remove
+     * @return Positions of this set not in the other set
+     */
+    public RegionSet subtract(RegionSet other) {
+        Map<String, Intervals> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Intervals> entry : intervals.entrySet()) {
+            Intervals a = entry.getValue();
+            Intervals b = other.intervals.get(entry.getKey());
+            if (b == null) {
+                result.put(entry.getKey(), a);
+                continue;
+            }
+            IntervalsBuilder builder = new IntervalsBuilder(a.size);
+            int j = 0;
+            for (int i = 0; i < a.size; i++) {
+                int start = a.starts[i];
+                int end = a.ends[i];
+                // Skip the removed intervals ending before this one
+                while (j < b.size && b.ends[j] < start) {
+                    j++;
+                }
+                boolean removed = false;
+                for (int k = j; k < b.size && b.starts[k] <= end; k++) {
+                    if (b.starts[k] > start) {
+                        builder.add(start, b.starts[k] - 1);
+                    }
+                    if (b.ends[k] >= end) {
+                        removed = true;
+                        break;
+                    }
+                    start = Math.max(start, b.ends[k] + 1);
+                }
+                if (!removed) {
+                    builder.add(start, end);
+                }
+            }
+            Intervals chromosomeIntervals = builder.build();
+            if (chromosomeIntervals != null) {
+                result.put(entry.getKey(), chromosomeIntervals);
+            }
+        }
+        return new RegionSet(result);
+    }
+
+    /**
+     * @return Cursor for queries sorted by chromosome and position
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Stateful query helper for streams sorted by position within each chromosome. Each query continues from the interval
+     * of the previous one, falling back to a binary search if the stream goes backwards. Not thread safe.
+     */
+    public final class Cursor {
+        private String chromosome;
+        private Intervals chromosomeIntervals;
+        private int index;
+
+        private Cursor() {
+        }
+
+        /**
+         * Move to the first interval ending at or after the position.
+         *
+         * @return false if there is no such interval
+         */
+        private boolean seek(String chromosome, int position) {
+            if (!chromosome.equals(this.chromosome)) {
+                this.chromosome = chromosome;
+                this.chromosomeIntervals = intervals.get(chromosome);
+                this.index = 0;
+            }
+            if (chromosomeIntervals == null) {
+                return false;
+            }
+            if (index > 0 && chromosomeIntervals.ends[index - 1] >= position) {
+                index = chromosomeIntervals.firstEndingFrom(position);
+            }
+            while (index < chromosomeIntervals.size && chromosomeIntervals.ends[index] < position) {
+                index++;
+            }
+            return index < chromosomeIntervals.size;
+        }
+
+        public boolean contains(String chromosome, int position) {
+            return seek(chromosome, position) && chromosomeIntervals.starts[index] <= position;
+        }
+
+        public boolean contains(String chromosome, int start, int end) {
+            return seek(chromosome, start) && chromosomeIntervals.starts[index] <= start && chromosomeIntervals.ends[index] >= end;
+        }
+
+        public boolean overlaps(String chromosome, int start, int end) {
+            return seek(chromosome, start) && chromosomeIntervals.starts[index] <= end;
+        }
+    }
+
+    /**
+     * @return Merged regions, sorted by start within each chromosome
+     */
+    public List<Region> toRegions() {
+        List<Region> regions = new ArrayList<>(getNumIntervals());
+        for (Map.Entry<String, Intervals> entry : intervals.entrySet()) {
+            Intervals chromosomeIntervals = entry.getValue();
+            for (int i = 0; i < chromosomeIntervals.size; i++) {
+                regions.add(new Region(entry.getKey(), chromosomeIntervals.starts[i], chromosomeIntervals.ends[i]));
+            }
+        }
+        return regions;
+    }
+
+    public Set<String> getChromosomes() {
+        return Collections.unmodifiableSet(intervals.keySet());
+    }
+
+    public int getNumIntervals() {
+        int numIntervals = 0;
+        for (Intervals chromosomeIntervals : intervals.values()) {
+            numIntervals += chromosomeIntervals.size;
+        }
+        return numIntervals;
+    }
+
+    /**
+     * @return Number of positions in the set
+     */
+    public long getLength() {
+        long length = 0;
+        for (Intervals chromosomeIntervals : intervals.values()) {
+            for (int i = 0; i < chromosomeIntervals.size; i++) {
+                length += (long) chromosomeIntervals.ends[i] - chromosomeIntervals.starts[i] + 1;
+            }
+        }
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return intervals.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RegionSet)) {
+            return false;
+        }
+        return new HashSet<>(toRegions()).equals(new HashSet<>(((RegionSet) o).toRegions()));
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashSet<>(toRegions()).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(",");
+        for (Region region : toRegions()) {
+            joiner.add(region.getChromosome() + ":" + region.getStart() + "-" + region.getEnd());
+        }
+        return joiner.toString();
+    }
+}
@@ -26,8 +26,12 @@ import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.*;
 
 import javax.annotation.Nullable;
-import java.io.Serializable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author Jacobo Coll;
@@ -112,10 +116,45 @@ public class Variant implements Serializable, Comparable<Variant> {
     public static List<Variant> parseVariants(String variantsString) {
         List<Variant> variants = null;
         if(variantsString != null && !variantsString.isEmpty()) {
-            String[] variantItems = variantsString.split(",");
-            variants = new ArrayList<>(variantItems.length);
-            for(String variantString: variantItems) {
-                variants.add(parseVariant(variantString));
+            variants = parseVariants(Arrays.asList(variantsString.split(",")));
+        }
+        return variants;
+    }
+
+    /**
+     * Parses a batch of variant strings, e.g. variant IDs from a REST query or a file.
+     *
+     * @param variantStrings Variant strings
+     * @return List of variants, in the same order
+     * @throws IllegalArgumentException if any variant does not match with the pattern
+     */
+    public static List<Variant> parseVariants(Collection<String> variantStrings) {
+        List<Variant> variants = new ArrayList<>(variantStrings.size());
+        for (String variantString : variantStrings) {
+            variants.add(parseVariant(variantString));
+        }
+        return variants;
+    }
+
+    /**
+     * Parses a file with one variant string per line. Empty lines and lines starting with '#' are skipped.
+     *
+     * @param path File with variant strings, optionally gzipped
+     * @return List of variants, in the same order
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if any variant does not match with the pattern
+     */
+    public static List<Variant> parseVariants(Path path) throws IOException {
+        List<Variant> variants = new ArrayList<>();
+        try (InputStream fileInputStream = Files.newInputStream(path);
+             InputStream inputStream = path.toString().endsWith(".gz") ? new GZIPInputStream(fileInputStream) : fileInputStream;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    variants.add(parseVariant(line));
+                }
             }
         }
         return variants;
@@ -481,6 +520,14 @@ public class Variant implements Serializable, Comparable<Variant> {
         return sb.toString();
     }
 
+    /**
+     * @return compact key of the genomic identity of this variant
+     * @see VariantKey
+     */
+    public VariantKey toVariantKey() {
+        return VariantKey.of(this);
+    }
+
     public String toJson() {
         return impl.toString();
     }
@@ -5,6 +5,7 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFConstants;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.common.StringDictionary;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.biodata.models.variant.protobuf.VariantProto;
@@ -143,6 +144,10 @@ public class VariantBuilder {
         this();
         this.variantString = variantString;
         if (variantString != null && !variantString.isEmpty()) {
+            if (scan(variantString)) {
+                // Most variant strings are parsed in a single pass
+                return;
+            }
             String[] fields;
 
             // Symbolic and breakend variants may use ':' within the alternate.
@@ -199,6 +204,199 @@ public class VariantBuilder {
         }
     }
 
+    /**
+     * Single pass parser of variant strings. Reads the chromosome up to the first ':', the start and end (with their
+     * confidence intervals), an optional reference followed by ':', and the alternates.
+     *
+     * Strings that do not follow this structure, like chromosomes containing ':' or alternates that would not
+     * match {@link #ALTERNATE_REGGEX}, are not modified, and return false to be parsed by the general parser.
+     *
+     * @param variantString Variant string
+     * @return if the string was parsed
+     */
+    private boolean scan(String variantString) {
+        int length = variantString.length();
+        int chromosomeEnd = variantString.indexOf(':');
+        if (chromosomeEnd <= 0) {
+            return false;
+        }
+
+        // Start and end as (ci_left, position, ci_right). Missing values are -1
+        int[] coordinates = {-1, -1, -1, -1, -1, -1};
+        int i = scanPosition(variantString, chromosomeEnd + 1, coordinates, 0);
+        if (i > 0 && i < length && variantString.charAt(i) == '-') {
+            i = scanPosition(variantString, i + 1, coordinates, 3);
+        }
+        if (i < 0 || i >= length || variantString.charAt(i) != ':') {
+            return false;
+        }
+        i++;
+
+        // Optional reference, followed by ':'
+        int referenceEnd = scanBases(variantString, i, length);
+        if (referenceEnd == i && referenceEnd < length && variantString.charAt(referenceEnd) == '-') {
+            referenceEnd++;
+        }
+        String reference;
+        int alternateStart;
+        if (referenceEnd < length && variantString.charAt(referenceEnd) == ':') {
+            reference = variantString.substring(i, referenceEnd);
+            alternateStart = referenceEnd + 1;
+        } else {
+            reference = "";
+            alternateStart = i;
+        }
+
+        for (int from = alternateStart, to; from <= length; from = to + 1) {
+            to = variantString.indexOf(',', from);
+            if (to < 0) {
+                to = length;
+            }
+            if (!isValidAlternate(variantString, from, to)) {
+                return false;
+            }
+        }
+
+        setChromosome(variantString.substring(0, chromosomeEnd));
+        setReference(reference);
+        parseAlternate(variantString.substring(alternateStart));
+        if (coordinates[0] >= 0) {
+            setCiStart(coordinates[0], coordinates[2]);
+        }
+        setStart(coordinates[1]);
+        if (coordinates[3] >= 0) {
+            setCiEnd(coordinates[3], coordinates[5]);
+        }
+        if (coordinates[4] >= 0) {
+            setEnd(coordinates[4]);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a position, "(position)" or "(ci_left)<(position)<(ci_right)", into the given coordinates.
+     *
+     * @return the index after the position, or -1 if it is not a valid position
+     */
+    private static int scanPosition(String variantString, int from, int[] coordinates, int offset) {
+        int i = from;
+        for (int field = 0; field < 3; field++) {
+            int value = 0;
+            int digitsStart = i;
+            while (i < variantString.length() && variantString.charAt(i) >= '0' && variantString.charAt(i) <= '9') {
+                value = value * 10 + (variantString.charAt(i) - '0');
+                i++;
+            }
+            // Integer.parseInt in the general parser deals with longer numbers
+            if (i == digitsStart || i - digitsStart > 9) {
+                return -1;
+            }
+            if (field == 0 && (i == variantString.length() || variantString.charAt(i) != '<')) {
+                coordinates[offset + 1] = value;
+                return i;
+            }
+            coordinates[offset + field] = value;
+            if (field < 2) {
+                if (i == variantString.length() || variantString.charAt(i) != '<') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int scanBases(String string, int from, int to) {
+        int i = from;
+        while (i < to && isBase(string.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBase(char c) {
+        return c == 'A' || c == 'C' || c == 'G' || c == 'T' || c == 'N';
+    }
+
+    private static boolean isBracket(char c) {
+        return c == '[' || c == ']';
+    }
+
+    /**
+     * Checks, without regular expressions, if the substring is one of the alternates accepted by {@link #ALTERNATE_REGGEX}.
+     */
+    private static boolean isValidAlternate(String string, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        char first = string.charAt(from);
+        if (to - from == 1 && (first == '.' || first == '-' || first == '*')) {
+            return true;
+        }
+        if (first == '<') {
+            // Symbolic
+            for (int i = from + 1; i < to - 1; i++) {
+                if (string.charAt(i) == '<' || string.charAt(i) == '>') {
+                    return false;
+                }
+            }
+            return to - from > 2 && string.charAt(to - 1) == '>';
+        }
+
+        int basesEnd = scanBases(string, from, to);
+        if (basesEnd == to) {
+            return true;
+        }
+        if (string.startsWith(PARTIAL_INS_SEQ_SEPARATOR, basesEnd)) {
+            // Partial long insertion
+            int rightStart = basesEnd + PARTIAL_INS_SEQ_SEPARATOR.length();
+            int n = string.indexOf('N', rightStart);
+            if (basesEnd == from && n >= 0 && n < to) {
+                return false;
+            }
+            return scanBases(string, rightStart, to) == to && (basesEnd > from || to > rightStart);
+        }
+
+        // Breakend: ([ACGTN]*|.)[(chr):(pos)[([ACGTN]*|.)
+        int bracket = basesEnd == from && first == '.' ? from + 1 : basesEnd;
+        int right = to;
+        if (string.charAt(to - 1) == '.') {
+            right = to - 1;
+        } else {
+            while (right > bracket && isBase(string.charAt(right - 1))) {
+                right--;
+            }
+        }
+        int bracket2 = right - 1;
+        if (bracket >= bracket2 || !isBracket(string.charAt(bracket)) || !isBracket(string.charAt(bracket2))) {
+            return false;
+        }
+        int colon = string.lastIndexOf(':', bracket2);
+        if (colon <= bracket + 1 || colon + 1 == bracket2) {
+            return false;
+        }
+        for (int i = bracket + 1; i < bracket2; i++) {
+            char c = string.charAt(i);
+            if (i > colon ? c < '0' || c > '9' : !isChromosomeChar(c, i == bracket + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Characters accepted by {@link #CHROMOSOME_REGGEX}.
+     */
+    private static boolean isChromosomeChar(char c, boolean first) {
+        if (c >= '0' && c <= '9' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z') {
+            return true;
+        }
+        if (c == '*' || c == '=') {
+            return !first;
+        }
+        return "!#$%&+./:;?@^_|~-".indexOf(c) >= 0;
+    }
+
     protected VariantBuilder regexParse(String variantString) {
         this.variantString = variantString;
         Matcher matcher = VARIANT_PATTERN.matcher(variantString);
@@ -347,7 +545,7 @@ public class VariantBuilder {
     }
 
     public VariantBuilder setReference(String reference) {
-        this.reference = checkEmptySequence(reference);
+        this.reference = StringDictionary.ALLELES.intern(checkEmptySequence(reference));
         return this;
     }
 
@@ -375,7 +573,7 @@ public class VariantBuilder {
             // A study entry is required if there are more than one alternate
             checkStudy("add alternate");
         }
-        alternates.add(checkEmptySequence(alternate));
+        alternates.add(StringDictionary.ALLELES.intern(checkEmptySequence(alternate)));
         return this;
     }
 
@@ -472,6 +670,10 @@ public class VariantBuilder {
 
     public VariantBuilder addFileData(String key, String value) {
         checkFile("add file data");
+        key = StringDictionary.FIELDS.intern(key);
+        if (StudyEntry.FILTER.equals(key)) {
+            value = StringDictionary.FIELDS.intern(value);
+        }
         if (fileData == null) {
             fileData = new HashMap<>();
         }
@@ -496,7 +698,7 @@ public class VariantBuilder {
 
     public VariantBuilder setSampleDataKeys(List<String> sampleDataKeys) {
         checkStudy("set sampleDataKeys");
-        this.sampleDataKeys = sampleDataKeys;
+        this.sampleDataKeys = StringDictionary.FIELDS.intern(sampleDataKeys);
         return this;
     }
 
@@ -565,8 +767,8 @@ public class VariantBuilder {
 
     protected static VariantAvro buildAvroVariant(String chromosome, int start, Integer end, String reference, String alternate) {
         chromosome = Region.normalizeChromosome(chromosome);
-        reference = checkEmptySequence(reference);
-        alternate = checkEmptySequence(alternate);
+        reference = StringDictionary.ALLELES.intern(checkEmptySequence(reference));
+        alternate = StringDictionary.ALLELES.intern(checkEmptySequence(alternate));
 
         VariantType type = VariantBuilder.inferType(reference, alternate);
         if (isSV(type)) {
@@ -1066,74 +1268,112 @@ public class VariantBuilder {
      */
     public static Breakend parseBreakend(String reference, String alternate) {
         if (isMateBreakend(alternate)) {
-            Matcher matcher = BREAKEND_MATED_PATTERN.matcher(alternate);
-            if (matcher.matches()) {
-                String insSeqLeft = matcher.group(1);
-                String bracket = matcher.group(2);
-                String chromosome = matcher.group(3);
-                Integer start = Integer.valueOf(matcher.group(4));
-                String bracket2 = matcher.group(5);
-                String insSeqRight = matcher.group(6);
-
-                chromosome = Region.normalizeChromosome(chromosome);
-
-                if (!bracket.equals(bracket2) || bracket.isEmpty()) {
+            String insSeqLeft;
+            String bracket;
+            String chromosome;
+            Integer start;
+            String bracket2;
+            String insSeqRight;
+
+            // Split the usual alternates, with only two brackets, without the regex
+            int bracketIdx = indexOfBracket(alternate, 0);
+            int bracket2Idx = indexOfBracket(alternate, bracketIdx + 1);
+            int colonIdx = alternate.lastIndexOf(':', bracket2Idx);
+            if (bracket2Idx > bracketIdx && colonIdx > bracketIdx + 1 && colonIdx + 1 < bracket2Idx
+                    && indexOfBracket(alternate, bracket2Idx + 1) < 0
+                    && isNumber(alternate, colonIdx + 1, bracket2Idx)) {
+                insSeqLeft = alternate.substring(0, bracketIdx);
+                bracket = alternate.substring(bracketIdx, bracketIdx + 1);
+                chromosome = alternate.substring(bracketIdx + 1, colonIdx);
+                start = Integer.valueOf(alternate.substring(colonIdx + 1, bracket2Idx));
+                bracket2 = alternate.substring(bracket2Idx, bracket2Idx + 1);
+                insSeqRight = alternate.substring(bracket2Idx + 1);
+            } else {
+                Matcher matcher = BREAKEND_MATED_PATTERN.matcher(alternate);
+                if (!matcher.matches()) {
                     throw breakendParseException(alternate);
                 }
+                insSeqLeft = matcher.group(1);
+                bracket = matcher.group(2);
+                chromosome = matcher.group(3);
+                start = Integer.valueOf(matcher.group(4));
+                bracket2 = matcher.group(5);
+                insSeqRight = matcher.group(6);
+            }
+            chromosome = Region.normalizeChromosome(chromosome);
 
-                String insSeq;
-                BreakendOrientation type;
-                char thisJunctionOrientation;
-                char mateJunctionOrientation;
+            if (!bracket.equals(bracket2) || bracket.isEmpty()) {
+                throw breakendParseException(alternate);
+            }
 
-                if (insSeqLeft.isEmpty()) {
-                    if (insSeqRight.isEmpty()) {
-                        throw breakendParseException(alternate);
-                    } else {
-                        insSeq = insSeqRight;
-                        thisJunctionOrientation = 'E';
-                        if (insSeq.endsWith(reference)) {
-                            insSeq = insSeq.substring(0, insSeq.length() - reference.length());
-                        }
-                    }
+            String insSeq;
+            BreakendOrientation type;
+            char thisJunctionOrientation;
+            char mateJunctionOrientation;
+
+            if (insSeqLeft.isEmpty()) {
+                if (insSeqRight.isEmpty()) {
+                    throw breakendParseException(alternate);
                 } else {
-                    if (insSeqRight.isEmpty()) {
-                        insSeq = insSeqLeft;
-                        thisJunctionOrientation = 'S';
-                        if (insSeq.startsWith(reference)) {
-                            insSeq = insSeq.substring(reference.length());
-                        }
-                    } else {
-                        throw breakendParseException(alternate);
+                    insSeq = insSeqRight;
+                    thisJunctionOrientation = 'E';
+                    if (insSeq.endsWith(reference)) {
+                        insSeq = insSeq.substring(0, insSeq.length() - reference.length());
                     }
                 }
-                if (insSeq.isEmpty() || insSeq.equals(".")) {
-                    insSeq = null;
+            } else {
+                if (insSeqRight.isEmpty()) {
+                    insSeq = insSeqLeft;
+                    thisJunctionOrientation = 'S';
+                    if (insSeq.startsWith(reference)) {
+                        insSeq = insSeq.substring(reference.length());
+                    }
+                } else {
+                    throw breakendParseException(alternate);
                 }
+            }
+            if (insSeq.isEmpty() || insSeq.equals(".")) {
+                insSeq = null;
+            }
 
-                mateJunctionOrientation = bracket.equals("]") ? 'S' : 'E';
-                if (thisJunctionOrientation == 'S') {
-                    if (mateJunctionOrientation == 'S') {
-                        type = BreakendOrientation.SS;
-                    } else { // 'E'
-                        type = BreakendOrientation.SE;
-                    }
+            mateJunctionOrientation = bracket.equals("]") ? 'S' : 'E';
+            if (thisJunctionOrientation == 'S') {
+                if (mateJunctionOrientation == 'S') {
+                    type = BreakendOrientation.SS;
                 } else { // 'E'
-                    if (mateJunctionOrientation == 'S') {
-                        type = BreakendOrientation.ES;
-                    } else { // 'E'
-                        type = BreakendOrientation.EE;
-                    }
+                    type = BreakendOrientation.SE;
+                }
+            } else { // 'E'
+                if (mateJunctionOrientation == 'S') {
+                    type = BreakendOrientation.ES;
+                } else { // 'E'
+                    type = BreakendOrientation.EE;
                 }
-
-                return new Breakend(new BreakendMate(chromosome, start, null, null), type, insSeq);
-            } else {
-                throw breakendParseException(alternate);
             }
+
+            return new Breakend(new BreakendMate(chromosome, start, null, null), type, insSeq);
         }
         return null;
     }
 
+    private static int indexOfBracket(String string, int from) {
+        for (int i = from; i < string.length(); i++) {
+            if (isBracket(string.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNumber(String string, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (string.charAt(i) < '0' || string.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return from < to && to - from <= 9;
+    }
+
     public static boolean isMateBreakend(String alternate) {
         return StringUtils.contains(alternate, ']') || StringUtils.contains(alternate, '[');
     }
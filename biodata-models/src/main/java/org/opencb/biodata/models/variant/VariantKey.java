@@ -0,0 +1,415 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.models.variant;
+
+import org.opencb.biodata.models.variant.avro.VariantType;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact identity of a {@link Variant}, to be used as key of hash maps and sorted collections instead of
+ * {@link Variant#toString()}.
+ *
+ * Variants in human chromosomes with up to 11 ACGT bases between reference and alternate, and positions under 2^28,
+ * are packed into a single long:
+ * <pre>
+ *   | chromosome (5 bits) | start (28 bits) | ref length (4 bits) | alt length (4 bits) | bases (2 bits each, 22 bits) |
+ * </pre>
+ * Any other variant, including structural variants, is encoded into a variable-length byte array starting with
+ * the chromosome and the start. The byte form of a packed key, see {@link #toBytes()}, sorts the same as the long,
+ * so all the keys share the same order: chromosome (1-22, X, Y, MT, then other names), start, and then the alleles.
+ *
+ * Keys only hold the genomic identity: two variants with the same key have the same {@link Variant#toString()}.
+ * Variants with explicit alleles are keyed by their coordinates and alleles, ignoring the type as toString() does.
+ * Structural, symbolic and {@link VariantType#NO_VARIATION} variants, whose type or length may change their
+ * toString(), are keyed by the toString() itself. They never share a key with a variant keyed by its alleles, even if
+ * both have the same toString().
+ */
+public final class VariantKey implements Comparable<VariantKey>, Serializable {
+
+    /**
+     * Value returned by {@link #encode(Variant)} for variants that can not be packed into a long.
+     */
+    public static final long NOT_PACKED = 0;
+
+    private static final String[] CHROMOSOMES = {null,
+            "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18", "19", "20",
+            "21", "22", "X", "Y", "MT"};
+    private static final Map<String, Integer> CHROMOSOME_CODES = new HashMap<>();
+    private static final int OTHER_CHROMOSOME = CHROMOSOMES.length;
+
+    private static final int MAX_PACKED_START = (1 << 28) - 1;
+    private static final int MAX_PACKED_BASES = 11;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static final byte PACKED = 0;
+    private static final byte SIMPLE = 1;
+    private static final byte STRUCTURAL = 2;
+
+    static {
+        for (int code = 1; code < CHROMOSOMES.length; code++) {
+            CHROMOSOME_CODES.put(CHROMOSOMES[code], code);
+        }
+    }
+
+    private final long packed;
+    private final byte[] bytes;
+    private transient int hash;
+
+    private VariantKey(long packed, byte[] bytes) {
+        this.packed = packed;
+        this.bytes = bytes;
+    }
+
+    public static VariantKey of(Variant variant) {
+        long packed = encode(variant);
+        if (packed != NOT_PACKED) {
+            return new VariantKey(packed, null);
+        }
+
+        ByteArray out = new ByteArray(32);
+        writeChromosome(out, variant.getChromosome());
+        out.writeInt(variant.getStart());
+        String reference = variant.getReference();
+        String alternate = variant.getAlternate();
+        if (isSimple(variant)) {
+            out.write(SIMPLE);
+            out.writeInt(variant.getEnd());
+            out.writeString(reference);
+            out.writeString(alternate);
+        } else {
+            // Structural variants carry their identity in the variant string: confidence intervals, inserted sequences...
+            out.write(STRUCTURAL);
+            out.writeString(variant.toString());
+        }
+        return new VariantKey(NOT_PACKED, out.toByteArray());
+    }
+
+    public static VariantKey fromPackedKey(long packed) {
+        if (packed == NOT_PACKED) {
+            throw new IllegalArgumentException("Invalid packed variant key " + packed);
+        }
+        return new VariantKey(packed, null);
+    }
+
+    public static VariantKey fromBytes(byte[] bytes) {
+        if (bytes.length == 10 && bytes[0] != OTHER_CHROMOSOME && bytes[5] == PACKED) {
+            long packed = ((long) (bytes[0] & 0xFF) << 59)
+                    | ((long) readInt(bytes, 1) << 31)
+                    | readInt(bytes, 6);
+            return new VariantKey(packed, null);
+        }
+        return new VariantKey(NOT_PACKED, bytes);
+    }
+
+    /**
+     * Packs the variant into a long.
+     *
+     * @param variant   Variant
+     * @return          The packed key, or {@link #NOT_PACKED} if the variant does not fit in a long
+     */
+    public static long encode(Variant variant) {
+        if (!isSimple(variant)) {
+            return NOT_PACKED;
+        }
+        String reference = variant.getReference();
+        int start = variant.getStart();
+        if (variant.getEnd() != start + reference.length() - 1) {
+            return NOT_PACKED;
+        }
+        return encode(variant.getChromosome(), start, reference, variant.getAlternate());
+    }
+
+    /**
+     * Packs a short variant into a long. The end of the variant is given by the length of the reference.
+     *
+     * @param chromosome    Normalized chromosome name
+     * @param start         Start
+     * @param reference     Reference allele, empty for insertions
+     * @param alternate     Alternate allele, empty for deletions
+     * @return              The packed key, or {@link #NOT_PACKED} if the variant does not fit in a long
+     */
+    public static long encode(String chromosome, int start, String reference, String alternate) {
+        Integer code = CHROMOSOME_CODES.get(chromosome);
+        int numBases = reference.length() + alternate.length();
+        if (code == null || start < 0 || start > MAX_PACKED_START || numBases > MAX_PACKED_BASES) {
+            return NOT_PACKED;
+        }
+        long bases = 0;
+        int shift = 2 * (MAX_PACKED_BASES - 1);
+        for (int i = 0; i < numBases; i++, shift -= 2) {
+            int base = encodeBase(i < reference.length() ? reference.charAt(i) : alternate.charAt(i - reference.length()));
+            if (base < 0) {
+                return NOT_PACKED;
+            }
+            bases |= (long) base << shift;
+        }
+        return ((long) code << 59)
+                | ((long) start << 31)
+                | ((long) reference.length() << 26)
+                | ((long) alternate.length() << 22)
+                | bases;
+    }
+
+    /**
+     * Whether the variant is fully described by its coordinates and alleles, so it can be rebuilt from them with the
+     * same {@link Variant#toString()}.
+     *
+     * @param variant   Variant
+     * @return          false for structural, symbolic and NO_VARIATION variants
+     */
+    private static boolean isSimple(Variant variant) {
+        return variant.getSv() == null
+                && !variant.isSymbolic()
+                && !VariantBuilder.hasIncompleteReference(variant.getType());
+    }
+
+    public Variant toVariant() {
+        if (isPacked()) {
+            int alleles = (int) (packed & 0x7FFFFFFFL);
+            int referenceLength = alleles >>> 26;
+            int alternateLength = (alleles >>> 22) & 0xF;
+            char[] sequence = new char[referenceLength + alternateLength];
+            for (int i = 0, shift = 2 * (MAX_PACKED_BASES - 1); i < sequence.length; i++, shift -= 2) {
+                sequence[i] = BASES[(alleles >>> shift) & 3];
+            }
+            return new Variant(getChromosome(), getStart(), new String(sequence, 0, referenceLength),
+                    new String(sequence, referenceLength, alternateLength));
+        }
+
+        int[] offset = {0};
+        String chromosome = readChromosome(bytes, offset);
+        int start = readInt(bytes, offset[0]);
+        offset[0] += 4;
+        if (bytes[offset[0]++] == SIMPLE) {
+            int end = readInt(bytes, offset[0]);
+            offset[0] += 4;
+            String reference = readString(bytes, offset);
+            String alternate = readString(bytes, offset);
+            return new Variant(chromosome, start, end, reference, alternate);
+        } else {
+            return new Variant(readString(bytes, offset));
+        }
+    }
+
+    public boolean isPacked() {
+        return bytes == null;
+    }
+
+    /**
+     * @return the packed key, or {@link #NOT_PACKED} if this key is not packed
+     */
+    public long getPackedKey() {
+        return packed;
+    }
+
+    /**
+     * Byte-sortable form of the key. Unsigned lexicographic order of these arrays is the order of the keys.
+     *
+     * @return key bytes
+     */
+    public byte[] toBytes() {
+        if (isPacked()) {
+            byte[] out = new byte[10];
+            out[0] = (byte) (packed >>> 59);
+            writeInt(out, 1, getStart());
+            out[5] = PACKED;
+            writeInt(out, 6, (int) (packed & 0x7FFFFFFFL));
+            return out;
+        }
+        return bytes.clone();
+    }
+
+    public String getChromosome() {
+        if (isPacked()) {
+            return CHROMOSOMES[(int) (packed >>> 59)];
+        }
+        return readChromosome(bytes, new int[1]);
+    }
+
+    public int getStart() {
+        if (isPacked()) {
+            return (int) ((packed >>> 31) & MAX_PACKED_START);
+        }
+        int code = bytes[0] & 0xFF;
+        int offset = 1;
+        if (code == OTHER_CHROMOSOME) {
+            while (bytes[offset] != 0) {
+                offset++;
+            }
+            offset++;
+        }
+        return readInt(bytes, offset);
+    }
+
+    @Override
+    public int compareTo(VariantKey o) {
+        if (isPacked() && o.isPacked()) {
+            return Long.compareUnsigned(packed, o.packed);
+        }
+        byte[] a = isPacked() ? toBytes() : bytes;
+        byte[] b = o.isPacked() ? o.toBytes() : o.bytes;
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VariantKey)) {
+            return false;
+        }
+        VariantKey that = (VariantKey) o;
+        // Every variant has a single encoding, so packed and variable-length keys are never equal
+        return packed == that.packed && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = isPacked() ? Long.hashCode(packed * 0x9E3779B97F4A7C15L) : Arrays.hashCode(bytes);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("VariantKey{");
+        if (isPacked()) {
+            sb.append("packed=").append(Long.toHexString(packed));
+        } else {
+            sb.append("bytes=").append(bytes.length);
+        }
+        sb.append(", variant=").append(toVariant());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static int encodeBase(char base) {
+        switch (base) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private static void writeChromosome(ByteArray out, String chromosome) {
+        Integer code = CHROMOSOME_CODES.get(chromosome);
+        if (code == null) {
+            out.write(OTHER_CHROMOSOME);
+            out.writeString(chromosome);
+        } else {
+            out.write(code);
+        }
+    }
+
+    private static String readChromosome(byte[] bytes, int[] offset) {
+        int code = bytes[offset[0]++] & 0xFF;
+        if (code == OTHER_CHROMOSOME) {
+            return readString(bytes, offset);
+        }
+        return CHROMOSOMES[code];
+    }
+
+    private static String readString(byte[] bytes, int[] offset) {
+        int start = offset[0];
+        int end = start;
+        while (bytes[end] != 0) {
+            end++;
+        }
+        offset[0] = end + 1;
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Minimal growable byte buffer. Strings are written zero-terminated to keep the byte order.
+     */
+    private static final class ByteArray {
+        private byte[] buffer;
+        private int size;
+
+        private ByteArray(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private void write(int b) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+
+        private void writeInt(int value) {
+            ensureCapacity(4);
+            VariantKey.writeInt(buffer, size, value);
+            size += 4;
+        }
+
+        private void writeString(String value) {
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(b.length + 1);
+            System.arraycopy(b, 0, buffer, size, b.length);
+            size += b.length;
+            buffer[size++] = 0;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+}
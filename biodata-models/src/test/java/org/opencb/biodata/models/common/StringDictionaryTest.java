@@ -0,0 +1,63 @@
+package org.opencb.biodata.models.common;
+
+import org.junit.Test;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void testIntern() {
+        StringDictionary dictionary = new StringDictionary(3, 4, "PASS");
+        String pass = new String("PASS");
+        assertSame("PASS", dictionary.intern(pass));
+
+        String gt = new String("GT");
+        assertSame(gt, dictionary.intern(gt));
+        assertSame(gt, dictionary.intern(new String("GT")));
+        assertEquals(2, dictionary.size());
+
+        // Too long
+        String longValue = new String("LowQual");
+        assertSame(longValue, dictionary.intern(longValue));
+        assertSame(longValue, dictionary.intern(longValue));
+        assertNotSame(longValue, dictionary.intern(new String("LowQual")));
+
+        // Full
+        assertSame("DP", dictionary.intern("DP"));
+        String gq = new String("GQ");
+        assertSame(gq, dictionary.intern(gq));
+        assertNotSame(gq, dictionary.intern(new String("GQ")));
+        assertEquals(3, dictionary.size());
+
+        assertNull(dictionary.intern((String) null));
+    }
+
+    @Test
+    public void testInternList() {
+        List<String> values = Arrays.asList("GT", "DP");
+        assertSame(values, StringDictionary.FIELDS.intern(values));
+
+        List<String> copies = Arrays.asList(new String("GT"), new String("DP"));
+        List<String> interned = StringDictionary.FIELDS.intern(copies);
+        assertNotSame(copies, interned);
+        assertEquals(copies, interned);
+        assertSame("GT", interned.get(0));
+        assertSame("DP", interned.get(1));
+    }
+
+    @Test
+    public void testSharedChromosomes() {
+        Variant variant = new Variant("chr1:1000:A:C");
+        Region region = new Region(new String("1:100-200"));
+        assertSame(variant.getChromosome(), region.getChromosome());
+        assertSame(variant.getChromosome(), new Variant(new String("1"), 10, new String("A"), "T").getChromosome());
+        assertSame("A", variant.getReference());
+        assertSame("C", variant.getAlternate());
+    }
+}
@@ -0,0 +1,100 @@
+package org.opencb.biodata.models.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RegionSetTest {
+
+    @Test
+    public void testMerge() {
+        RegionSet regionSet = RegionSet.parse("1:100-200,2:10-20,1:150-300,1:301-400,1:500-600");
+        assertEquals("1:100-400,1:500-600,2:10-20", regionSet.toString());
+        assertEquals(3, regionSet.getNumIntervals());
+        assertEquals(301 + 101 + 11, regionSet.getLength());
+
+        assertTrue(regionSet.contains("1", 100));
+        assertTrue(regionSet.contains("1", 400));
+        assertFalse(regionSet.contains("1", 401));
+        assertFalse(regionSet.contains("3", 100));
+        assertTrue(regionSet.contains("1", 200, 350));
+        assertFalse(regionSet.contains("1", 350, 550));
+        assertTrue(regionSet.overlaps("1", 350, 550));
+        assertFalse(regionSet.overlaps("1", 401, 499));
+        assertEquals(2, regionSet.countOverlaps("1", 350, 550));
+        assertEquals(0, regionSet.countOverlaps("2", 1, 9));
+
+        // Whole chromosome
+        assertTrue(RegionSet.parse("X").contains("X", 1000000));
+    }
+
+    @Test
+    public void testSetOperations() {
+        RegionSet a = RegionSet.parse("1:100-200,1:300-400,2:1-10");
+        RegionSet b = RegionSet.parse("1:150-350,3:5-6");
+        assertEquals(RegionSet.parse("1:100-400,2:1-10,3:5-6"), a.union(b));
+        assertEquals(RegionSet.parse("1:150-200,1:300-350"), a.intersection(b));
+        assertEquals(RegionSet.parse("1:100-149,1:351-400,2:1-10"), a.subtract(b));
+        assertEquals(RegionSet.parse("1:201-299,3:5-6"), b.subtract(a));
+        assertTrue(a.subtract(a).isEmpty());
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        for (int n = 0; n < 200; n++) {
+            BitSet bitsA = new BitSet();
+            BitSet bitsB = new BitSet();
+            RegionSet a = RegionSet.of(randomRegions(random, bitsA));
+            RegionSet b = RegionSet.of(randomRegions(random, bitsB));
+
+            BitSet union = (BitSet) bitsA.clone();
+            union.or(bitsB);
+            BitSet intersection = (BitSet) bitsA.clone();
+            intersection.and(bitsB);
+            BitSet subtraction = (BitSet) bitsA.clone();
+            subtraction.andNot(bitsB);
+            assertEquals(toRegionSet(union), a.union(b));
+            assertEquals(toRegionSet(intersection), a.intersection(b));
+            assertEquals(toRegionSet(subtraction), a.subtract(b));
+
+            RegionSet.Cursor cursor = a.cursor();
+            for (int start = 1; start < 1000; start += 1 + random.nextInt(5)) {
+                int end = start + random.nextInt(20);
+                boolean overlaps = bitsA.nextSetBit(start) >= 0 && bitsA.nextSetBit(start) <= end;
+                boolean contains = bitsA.nextClearBit(start) > end;
+                assertEquals(overlaps, a.overlaps("1", start, end));
+                assertEquals(overlaps, cursor.overlaps("1", start, end));
+                assertEquals(contains, a.contains("1", start, end));
+                assertEquals(contains, cursor.contains("1", start, end));
+                assertEquals(bitsA.get(start), cursor.contains("1", start));
+            }
+            // Going backwards
+            assertEquals(bitsA.get(5), cursor.contains("1", 5));
+        }
+    }
+
+    private static List<Region> randomRegions(Random random, BitSet bits) {
+        List<Region> regions = new ArrayList<>();
+        for (int i = random.nextInt(20); i > 0; i--) {
+            int start = 1 + random.nextInt(1000);
+            int end = start + random.nextInt(50);
+            regions.add(new Region("1", start, end));
+            bits.set(start, end + 1);
+        }
+        return regions;
+    }
+
+    private static RegionSet toRegionSet(BitSet bits) {
+        List<Region> regions = new ArrayList<>();
+        for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(bits.nextClearBit(start))) {
+            regions.add(new Region("1", start, bits.nextClearBit(start) - 1));
+        }
+        return RegionSet.of(regions);
+    }
+}
@@ -5,8 +5,9 @@ import org.junit.Test;
 import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.biodata.models.variant.protobuf.VariantProto;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.regex.Matcher;
 
 import static org.junit.Assert.*;
@@ -87,6 +88,49 @@ public class VariantBuilderTest {
         return new VariantBuilder().regexParse(variantId).build();
     }
 
+    @Test
+    public void parseVariantsTest() throws Exception {
+        List<String> variantStrings = Arrays.asList("1:1000:A:C", "chr1:1000:A:C", "1:1000:-:GT", "1:999<1000<1001-2000:<CN5>",
+                "1:800001:A:A[2:321681[", "HLA-DRB1*10:01:01:11575:A:T");
+        List<Variant> variants = Variant.parseVariants(variantStrings);
+        assertEquals(variantStrings.size(), variants.size());
+        for (int i = 0; i < variantStrings.size(); i++) {
+            assertEquals(regexParse(variantStrings.get(i)), variants.get(i));
+        }
+        // Chromosome names are shared
+        assertSame(variants.get(0).getChromosome(), variants.get(1).getChromosome());
+        assertSame(variants.get(0).getChromosome(), variants.get(2).getChromosome());
+
+        Path file = Files.createTempFile("variants", ".txt");
+        try {
+            List<String> lines = new ArrayList<>();
+            lines.add("#variants");
+            lines.addAll(variantStrings);
+            lines.add("");
+            Files.write(file, lines);
+            assertEquals(variants, Variant.parseVariants(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parseBreakendTest() {
+        Breakend breakend = VariantBuilder.parseBreakend("A", "A[chr2:321681[");
+        assertEquals("2", breakend.getMate().getChromosome());
+        assertEquals(321681, breakend.getMate().getPosition().intValue());
+        assertEquals(BreakendOrientation.SE, breakend.getOrientation());
+        assertNull(breakend.getInsSeq());
+
+        breakend = VariantBuilder.parseBreakend("G", "]HLA-DRB8*10:01:01:20000]TATTGG");
+        assertEquals("HLA-DRB8*10:01:01", breakend.getMate().getChromosome());
+        assertEquals(20000, breakend.getMate().getPosition().intValue());
+        assertEquals(BreakendOrientation.ES, breakend.getOrientation());
+        assertEquals("TATTG", breakend.getInsSeq());
+
+        assertNull(VariantBuilder.parseBreakend("A", "."));
+    }
+
     @Test
     public void buildSVDeletion() {
         Variant v = new VariantBuilder("1:1000:A:<DEL>")
@@ -0,0 +1,135 @@
+package org.opencb.biodata.models.variant;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.avro.VariantType;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class VariantKeyTest {
+
+    private static final List<String> VARIANTS = Arrays.asList(
+            "1:99:T:C",
+            "1:100:-:GT",
+            "1:100:A:C",
+            "1:100:A:G",
+            "1:100:ACGTACGTACGT:A",
+            "1:100:N:C",
+            "1:1000-2000:<DEL>",
+            "1:999<1000<1001-2000:<CN5>",
+            "1:1000:ACACAC...GTGTGTGT",
+            "2:1:A:-",
+            "X:300000000:A:C",
+            "MT:268435455:ACGTACGTAC:T",
+            "GL000192.1:5:A:C");
+
+    @Test
+    public void testRoundTrip() {
+        for (String variantString : VARIANTS) {
+            Variant variant = new Variant(variantString);
+            VariantKey key = variant.toVariantKey();
+            assertEquals(variantString, variant.toString(), key.toVariant().toString());
+            assertTrue(variantString, variant.sameGenomicVariant(key.toVariant()));
+            assertEquals(variant.getChromosome(), key.getChromosome());
+            assertEquals(variant.getStart().intValue(), key.getStart());
+
+            VariantKey fromBytes = VariantKey.fromBytes(key.toBytes());
+            assertEquals(key, fromBytes);
+            assertEquals(key.hashCode(), fromBytes.hashCode());
+            assertEquals(key.isPacked(), fromBytes.isPacked());
+            if (key.isPacked()) {
+                assertEquals(key, VariantKey.fromPackedKey(key.getPackedKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testPacked() {
+        assertTrue(new Variant("1:100:A:C").toVariantKey().isPacked());
+        assertTrue(new Variant("1:100:-:GT").toVariantKey().isPacked());
+        assertTrue(new Variant("MT:268435455:ACGTACGTAC:T").toVariantKey().isPacked());
+        assertFalse(new Variant("1:100:N:C").toVariantKey().isPacked());
+        assertFalse(new Variant("1:100:ACGTACGTACGT:A").toVariantKey().isPacked());
+        assertFalse(new Variant("X:300000000:A:C").toVariantKey().isPacked());
+        assertFalse(new Variant("GL000192.1:5:A:C").toVariantKey().isPacked());
+        assertFalse(new Variant("1:1000-2000:<DEL>").toVariantKey().isPacked());
+
+        assertEquals(VariantKey.NOT_PACKED, VariantKey.encode(new Variant("1:1000-2000:<DEL>")));
+        assertEquals(new Variant("1:100:A:C").toVariantKey().getPackedKey(), VariantKey.encode("1", 100, "A", "C"));
+    }
+
+    @Test
+    public void testEquals() {
+        Map<VariantKey, String> map = new HashMap<>();
+        for (String variantString : VARIANTS) {
+            map.put(new Variant(variantString).toVariantKey(), variantString);
+        }
+        assertEquals(VARIANTS.size(), map.size());
+        for (String variantString : VARIANTS) {
+            assertEquals(variantString, map.get(new Variant(variantString).toVariantKey()));
+        }
+        assertNotEquals(new Variant("1:100:A:C").toVariantKey(), new Variant("1:100:A:G").toVariantKey());
+        assertEquals(new Variant("chr1:100:A:C").toVariantKey(), new Variant("1:100:A:C").toVariantKey());
+    }
+
+    @Test
+    public void testType() {
+        // The type is ignored for explicit alleles, as in toString()
+        Variant variant = new Variant("1:100:A:C");
+        variant.setType(VariantType.MNV);
+        assertEquals(new Variant("1:100:A:C").toString(), variant.toString());
+        assertEquals(new Variant("1:100:A:C").toVariantKey(), variant.toVariantKey());
+        assertTrue(variant.toVariantKey().isPacked());
+
+        variant = new Variant("1:100:ACGTACGTACGT:A");
+        variant.setType(VariantType.MNV);
+        assertEquals(new Variant("1:100:ACGTACGTACGT:A").toVariantKey(), variant.toVariantKey());
+
+        // Types that may change toString() are keyed by it
+        variant = new Variant("1:100:A:C");
+        variant.setType(VariantType.NO_VARIATION);
+        assertFalse(variant.toVariantKey().isPacked());
+        assertEquals(VariantKey.NOT_PACKED, VariantKey.encode(variant));
+        assertEquals(variant.toString(), variant.toVariantKey().toVariant().toString());
+    }
+
+    @Test
+    public void testSort() {
+        List<VariantKey> keys = new ArrayList<>();
+        List<byte[]> bytes = new ArrayList<>();
+        for (String variantString : VARIANTS) {
+            VariantKey key = new Variant(variantString).toVariantKey();
+            keys.add(key);
+            bytes.add(key.toBytes());
+        }
+        Collections.shuffle(keys, new Random(1));
+        Collections.sort(keys);
+
+        List<String> sorted = new ArrayList<>();
+        for (VariantKey key : keys) {
+            sorted.add(key.toVariant().toString());
+        }
+        // Chromosome, start, then packed alleles before any variable-length key
+        assertEquals(Arrays.asList("1:99:T:C", "1:100:-:GT", "1:100:A:C", "1:100:A:G"), sorted.subList(0, 4));
+        assertEquals("MT:268435455:ACGTACGTAC:T", sorted.get(sorted.size() - 2));
+        assertEquals("GL000192.1:5:A:C", sorted.get(sorted.size() - 1));
+
+        // Byte-sortable
+        for (int i = 0; i < keys.size(); i++) {
+            for (int j = 0; j < keys.size(); j++) {
+                assertEquals(Integer.signum(keys.get(i).compareTo(keys.get(j))),
+                        Integer.signum(compareUnsigned(keys.get(i).toBytes(), keys.get(j).toBytes())));
+            }
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+}
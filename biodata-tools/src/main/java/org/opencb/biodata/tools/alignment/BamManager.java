@@ -25,7 +25,6 @@ import htsjdk.samtools.reference.FastaSequenceIndexCreator;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.seekablestream.SeekableStreamFactory;
 import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
-import htsjdk.samtools.util.BlockCompressedInputStream;
 import htsjdk.samtools.util.Log;
 import org.apache.commons.collections.CollectionUtils;
 import org.ga4gh.models.ReadAlignment;
@@ -45,11 +44,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by imedina on 14/09/15.
@@ -59,6 +65,9 @@ public class BamManager implements AutoCloseable {
     private Path bamFile;
     private Path refFile;
     private SamReader samReader;
+    private int maxReaders;
+    private BamReaderPool readerPool;
+    private ExecutorService queryExecutor;
 
     public static final int DEFAULT_WINDOW_SIZE = 1;
     public static final int MAX_NUM_RECORDS = 50000;
@@ -72,8 +81,22 @@ public class BamManager implements AutoCloseable {
     }
 
     public BamManager(Path bamFilePath, Path refFilePath) throws IOException {
+        this(bamFilePath, refFilePath, 1);
+    }
+
+    /**
+     * Creates a BamManager that can serve concurrent queries. Region and whole file iterators, and so query, coverage
+     * and stats methods, borrow one of up to maxReaders readers and release it when closed, while the header is read
+     * once and shared. With maxReaders = 1 the BamManager is not thread safe, as it has always been.
+     * @param bamFilePath BAM or CRAM file
+     * @param refFilePath Reference file, mandatory for CRAM files
+     * @param maxReaders Maximum number of readers open at the same time
+     * @throws IOException If the file can not be opened
+     */
+    public BamManager(Path bamFilePath, Path refFilePath, int maxReaders) throws IOException {
         this.bamFile = bamFilePath;
         this.refFile = refFilePath;
+        this.maxReaders = Math.max(1, maxReaders);
 
         this.init();
     }
@@ -93,7 +116,9 @@ public class BamManager implements AutoCloseable {
                 }
             }
             this.samReader = srf.open(SamInputResource.of(bamFile.toFile()));
-
+            if (maxReaders > 1) {
+                this.readerPool = new BamReaderPool(srf, bamFile, maxReaders);
+            }
         }
 
         logger = LoggerFactory.getLogger(BamManager.class);
@@ -244,17 +269,65 @@ public class BamManager implements AutoCloseable {
         }
 
         List<T> results = new ArrayList<>(maxNumberRecords);
-        BamIterator<T> bamIterator = (region != null)
+        try (BamIterator<T> bamIterator = (region != null)
                 ? iterator(region, filters, options, clazz)
-                : iterator(filters, options, clazz);
-
-        while (bamIterator.hasNext() && results.size() < maxNumberRecords) {
-            results.add(bamIterator.next());
+                : iterator(filters, options, clazz)) {
+            while (bamIterator.hasNext() && results.size() < maxNumberRecords) {
+                results.add(bamIterator.next());
+            }
         }
-        bamIterator.close();
         return results;
     }
 
+    /**
+     * Query all the regions asynchronously. Regions are queried in parallel, up to the number of readers of this
+     * BamManager, and each of them returns up to MAX_NUM_RECORDS records as in the query methods.
+     * @param regions Regions to query
+     * @param filters Filters to be applied to reads
+     * @param options Options applied to every region
+     * @param clazz Alignment model class
+     * @param <T> Alignment model
+     * @return Future completed with the records of each region, in the same order than the regions
+     */
+    public <T> CompletableFuture<List<List<T>>> queryAll(List<Region> regions, AlignmentFilters<SAMRecord> filters,
+                                                         AlignmentOptions options, Class<T> clazz) {
+        ExecutorService executor = getQueryExecutor();
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(regions.size());
+        for (Region region : regions) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return query(region, filters, options, clazz);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<List<T>> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<List<T>> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    public CompletableFuture<List<List<SAMRecord>>> queryAll(List<Region> regions, AlignmentOptions options) {
+        return queryAll(regions, null, options, SAMRecord.class);
+    }
+
+    private synchronized ExecutorService getQueryExecutor() {
+        if (queryExecutor == null) {
+            // Without a pool there is a single reader, so regions are queried one by one in the background
+            AtomicInteger threadNumber = new AtomicInteger();
+            queryExecutor = Executors.newFixedThreadPool(maxReaders, runnable -> {
+                Thread thread = new Thread(runnable, "bam-query-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return queryExecutor;
+    }
+
 
     /*
      * These methods aim to provide a very simple, safe and quick way of iterating BAM/CRAM files.
@@ -274,7 +347,7 @@ public class BamManager implements AutoCloseable {
     public <T> BamIterator<T> iterator(AlignmentFilters<SAMRecord> filters, AlignmentOptions options, Class<T> clazz) throws IOException {
         checkBaiFileExists();
 
-        SAMRecordIterator samRecordIterator = samReader.iterator();
+        SAMRecordIterator samRecordIterator = (readerPool != null) ? readerPool.iterator() : samReader.iterator();
         return getAlignmentIterator(filters, options, clazz, samRecordIterator);
     }
 
@@ -300,8 +373,9 @@ public class BamManager implements AutoCloseable {
         // Sanity check
         BamUtils.validateRegion(region, samReader);
 
-        SAMRecordIterator samRecordIterator =
-                samReader.query(region.getChromosome(), region.getStart(), region.getEnd(), options.isContained());
+        SAMRecordIterator samRecordIterator = (readerPool != null)
+                ? readerPool.query(region.getChromosome(), region.getStart(), region.getEnd(), options.isContained())
+                : samReader.query(region.getChromosome(), region.getStart(), region.getEnd(), options.isContained());
         return getAlignmentIterator(filters, options, clazz, samRecordIterator);
     }
 
@@ -342,12 +416,12 @@ public class BamManager implements AutoCloseable {
     }
 
     public List<String> getBreakpoints(Region region) throws IOException {
-        try (BlockCompressedInputStream blockCompressedInputStream = new BlockCompressedInputStream(bamFile.toFile())) {
-            if (samReader.hasIndex()) {
-                List<Chunk> originalChunks = getChunks(region);
-                long lastEndPosition = -1;
+        if (samReader.hasIndex()) {
+            List<Chunk> originalChunks = getChunks(region);
+            long lastEndPosition = -1;
 
-                if (CollectionUtils.isNotEmpty(originalChunks)) {
+            if (CollectionUtils.isNotEmpty(originalChunks)) {
+                try (FileChannel channel = FileChannel.open(bamFile, StandardOpenOption.READ)) {
                     List<String> byteRanges = new ArrayList<>(originalChunks.size());
                     for (Chunk originalChunk : originalChunks) {
 
@@ -356,22 +430,17 @@ public class BamManager implements AutoCloseable {
                             // Skip, this chunk has already been included
                             continue;
                         }
-                        // We put the file pointer at the beginning of the end chunk
-                        blockCompressedInputStream.seek(seekInitialPos);
-
-                        // And start reading bytes until we reach the end of the block
-                        long virtualEndPos = seekInitialPos;
-                        while (!blockCompressedInputStream.endOfBlock()) {
-                            blockCompressedInputStream.read();
-                            virtualEndPos = blockCompressedInputStream.getPosition();
-                        }
+
+                        // The range ends with the block where the chunk ends, its size is read from the block header
+                        long blockAddress = BlockCompressedFilePointerUtil.getBlockAddress(seekInitialPos);
+                        long nextBlockAddress = blockAddress + BamUtils.getBgzfBlockSize(channel, blockAddress);
 
                         // Update the lastEndPosition retrieved to avoid duplication breakpoints
-                        lastEndPosition = virtualEndPos;
+                        lastEndPosition = BlockCompressedFilePointerUtil.makeFilePointer(nextBlockAddress, 0);
 
                         // Write the start and the retrieved end addresses
                         byteRanges.add(BlockCompressedFilePointerUtil.getBlockAddress(originalChunk.getChunkStart())
-                                + "-" + (BlockCompressedFilePointerUtil.getBlockAddress(virtualEndPos) - 1));
+                                + "-" + (nextBlockAddress - 1));
                     }
 
                     return byteRanges;
@@ -448,16 +517,26 @@ public class BamManager implements AutoCloseable {
     private AlignmentGlobalStats calculateGlobalStats(BamIterator<SAMRecord> iterator) throws IOException {
         AlignmentGlobalStats alignmentGlobalStats = new AlignmentGlobalStats();
         SamRecordAlignmentGlobalStatsCalculator calculator = new SamRecordAlignmentGlobalStatsCalculator();
-        while (iterator.hasNext()) {
-            AlignmentGlobalStats computed = calculator.compute(iterator.next());
-            calculator.update(computed, alignmentGlobalStats);
+        try (BamIterator<SAMRecord> bamIterator = iterator) {
+            while (bamIterator.hasNext()) {
+                AlignmentGlobalStats computed = calculator.compute(bamIterator.next());
+                calculator.update(computed, alignmentGlobalStats);
+            }
         }
-        iterator.close();
         return alignmentGlobalStats;
     }
 
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (queryExecutor != null) {
+                queryExecutor.shutdownNow();
+                queryExecutor = null;
+            }
+        }
+        if (readerPool != null) {
+            readerPool.close();
+        }
         if (samReader != null) {
             samReader.close();
         }
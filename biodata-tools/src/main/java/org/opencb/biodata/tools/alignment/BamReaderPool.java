@@ -0,0 +1,205 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment;
+
+import htsjdk.samtools.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of {@link SamReader}s over the same BAM/CRAM file.
+ *
+ * A SamReader can only serve one iterator at a time, so every query borrows a reader and gives it back when its
+ * iterator is closed. Readers are opened lazily, up to the maximum, and then callers wait for a free one. All the
+ * readers are created by the same {@link SamReaderFactory} with file based index caching, and BAM indexes are
+ * memory mapped by htsjdk, so index pages are shared through the OS page cache instead of being read once per reader.
+ */
+public class BamReaderPool implements Closeable {
+
+    // Waiting callers check this often whether the pool has been closed
+    private static final long WAIT_MILLIS = 100;
+
+    private final SamReaderFactory samReaderFactory;
+    private final Path bamFile;
+    private final int maxReaders;
+
+    private final BlockingQueue<SamReader> idleReaders;
+    private final List<SamReader> readers;
+    private volatile boolean closed;
+
+    public BamReaderPool(SamReaderFactory samReaderFactory, Path bamFile, int maxReaders) {
+        if (maxReaders < 1) {
+            throw new IllegalArgumentException("The pool needs at least one reader, found " + maxReaders);
+        }
+        this.samReaderFactory = samReaderFactory.enable(SamReaderFactory.Option.CACHE_FILE_BASED_INDEXES);
+        this.bamFile = bamFile;
+        this.maxReaders = maxReaders;
+        this.idleReaders = new LinkedBlockingQueue<>();
+        this.readers = new ArrayList<>(maxReaders);
+    }
+
+    /**
+     * Take an idle reader, opening a new one if the pool is not full, or waiting for one to be released otherwise.
+     *
+     * @return Reader, to be given back with {@link #release(SamReader)}
+     * @throws IOException If the pool is closed, also while waiting, or the thread is interrupted while waiting
+     */
+    public SamReader borrow() throws IOException {
+        SamReader samReader = idleReaders.poll();
+        if (samReader != null) {
+            return samReader;
+        }
+        synchronized (readers) {
+            checkOpen();
+            if (readers.size() < maxReaders) {
+                // A SamInputResource holds a single stream, closed by the factory, so each reader needs its own
+                samReader = samReaderFactory.open(SamInputResource.of(bamFile.toFile()));
+                readers.add(samReader);
+                return samReader;
+            }
+        }
+        try {
+            while ((samReader = idleReaders.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkOpen();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a reader of " + bamFile);
+        }
+        checkOpen();
+        return samReader;
+    }
+
+    public void release(SamReader samReader) {
+        if (!closed) {
+            idleReaders.offer(samReader);
+        }
+    }
+
+    /**
+     * Query a region with a borrowed reader. The reader is released when the returned iterator is closed.
+     */
+    public SAMRecordIterator query(String chromosome, int start, int end, boolean contained) throws IOException {
+        SamReader samReader = borrow();
+        try {
+            return new PooledSAMRecordIterator(samReader, samReader.query(chromosome, start, end, contained));
+        } catch (RuntimeException e) {
+            release(samReader);
+            throw e;
+        }
+    }
+
+    /**
+     * Iterate the whole file with a borrowed reader. The reader is released when the returned iterator is closed.
+     */
+    public SAMRecordIterator iterator() throws IOException {
+        SamReader samReader = borrow();
+        try {
+            return new PooledSAMRecordIterator(samReader, samReader.iterator());
+        } catch (RuntimeException e) {
+            release(samReader);
+            throw e;
+        }
+    }
+
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    public int getNumOpenReaders() {
+        synchronized (readers) {
+            return readers.size();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Reader pool of " + bamFile + " is closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        synchronized (readers) {
+            closed = true;
+            idleReaders.clear();
+            for (SamReader samReader : readers) {
+                try {
+                    samReader.close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+            readers.clear();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private class PooledSAMRecordIterator implements SAMRecordIterator {
+
+        private final SamReader samReader;
+        private final SAMRecordIterator iterator;
+        private boolean released;
+
+        PooledSAMRecordIterator(SamReader samReader, SAMRecordIterator iterator) {
+            this.samReader = samReader;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public SAMRecordIterator assertSorted(SAMFileHeader.SortOrder sortOrder) {
+            iterator.assertSorted(sortOrder);
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public SAMRecord next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                try {
+                    iterator.close();
+                } finally {
+                    release(samReader);
+                }
+            }
+        }
+    }
+}
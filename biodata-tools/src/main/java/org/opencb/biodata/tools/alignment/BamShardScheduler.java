@@ -0,0 +1,392 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment;
+
+import htsjdk.samtools.*;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import org.opencb.biodata.models.alignment.RegionCoverage;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.alignment.coverage.RegionCoverageCalculator;
+import org.opencb.biodata.tools.alignment.filters.AlignmentFilters;
+import org.opencb.biodata.tools.alignment.filters.SamRecordFilters;
+import org.opencb.biodata.tools.alignment.stats.AlignmentGlobalStats;
+import org.opencb.biodata.tools.alignment.stats.AlignmentGlobalStatsCalculator;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits an indexed BAM file, or some of its regions, in shards of similar compressed size and processes them in
+ * parallel.
+ *
+ * Regions are divided in tiles of {@link #TILE_SIZE} bases, and the compressed size of each tile is estimated from the
+ * BAI chunks overlapping it, as {@link BamManager#getChunks(Region)} does, without reading the file. Consecutive tiles are
+ * then grouped until they reach the target size, so dense regions get smaller shards. Each shard is read by one of
+ * numThreads readers.
+ *
+ * Results are exact: {@link #map(List, ShardProcessor)} gives each read to the shard where it starts, so reads spanning
+ * two shards are processed once, and {@link #coverage(Region, RegionCoverageCalculator, AlignmentFilters)} computes
+ * each position in the shard containing it.
+ */
+public class BamShardScheduler {
+
+    public static final int TILE_SIZE = 1 << 20;
+
+    private final Path bamFile;
+    private final Path refFile;
+    private final int numThreads;
+
+    /**
+     * A region of the BAM file and the index chunks overlapping it.
+     */
+    public static class Shard {
+
+        private final Region region;
+        private final List<Chunk> chunks;
+        private final long compressedSize;
+        // Reads starting before it, in the first shard of a region, belong to this shard too
+        private final int minAlignmentStart;
+
+        Shard(Region region, List<Chunk> chunks, long compressedSize, int minAlignmentStart) {
+            this.region = region;
+            this.chunks = chunks;
+            this.compressedSize = compressedSize;
+            this.minAlignmentStart = minAlignmentStart;
+        }
+
+        /**
+         * @return Region of the shard, null for the unmapped reads shard
+         */
+        public Region getRegion() {
+            return region;
+        }
+
+        public List<Chunk> getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return Estimated number of compressed bytes of the shard
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public boolean isUnmapped() {
+            return region == null;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Shard{");
+            sb.append("region=").append(region == null ? "unmapped" : region.toString());
+            sb.append(", numChunks=").append(chunks.size());
+            sb.append(", compressedSize=").append(compressedSize);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ShardProcessor<R> {
+        R process(Shard shard, Iterator<SAMRecord> reads) throws IOException;
+    }
+
+    public BamShardScheduler(Path bamFile, int numThreads) {
+        this(bamFile, null, numThreads);
+    }
+
+    public BamShardScheduler(Path bamFile, Path refFile, int numThreads) {
+        this.bamFile = bamFile;
+        this.refFile = refFile;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Split the whole file, mapped and unmapped reads.
+     * @param numShards Approximate number of shards of mapped reads, the unmapped reads are always the last shard
+     * @return Shards, sorted by position
+     * @throws IOException If the file or its index can not be read
+     */
+    public List<Shard> getShards(int numShards) throws IOException {
+        List<Region> regions = new ArrayList<>();
+        try (SamReader samReader = openReader()) {
+            for (SAMSequenceRecord sequence : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+                regions.add(new Region(sequence.getSequenceName(), 1, sequence.getSequenceLength()));
+            }
+        }
+        List<Shard> shards = getShards(regions, numShards);
+        shards.add(new Shard(null, Collections.emptyList(), 0, 0));
+        return shards;
+    }
+
+    /**
+     * Split some regions of the file.
+     * @param regions Regions to split, shards never span two regions
+     * @param numShards Approximate number of shards
+     * @return Shards, in the same order than the regions
+     * @throws IOException If the file or its index can not be read
+     */
+    public List<Shard> getShards(List<Region> regions, int numShards) throws IOException {
+        try (SamReader samReader = openReader()) {
+            if (!samReader.hasIndex()) {
+                throw new IOException("Missing index for " + bamFile);
+            }
+            SAMFileHeader header = samReader.getFileHeader();
+            BAMIndex index = samReader.indexing().getIndex();
+
+            // Compressed size of each tile
+            List<long[]> tileSizes = new ArrayList<>(regions.size());
+            long totalSize = 0;
+            for (Region region : regions) {
+                BamUtils.validateRegion(region, samReader);
+                int sequenceIndex = header.getSequenceIndex(region.getChromosome());
+                long[] sizes = new long[(region.getEnd() - region.getStart()) / TILE_SIZE + 1];
+                for (int tile = 0; tile < sizes.length; tile++) {
+                    int start = region.getStart() + tile * TILE_SIZE;
+                    int end = Math.min(region.getEnd(), start + TILE_SIZE - 1);
+                    sizes[tile] = getCompressedSize(index.getSpanOverlapping(sequenceIndex, start, end).getChunks());
+                    totalSize += sizes[tile];
+                }
+                tileSizes.add(sizes);
+            }
+
+            // Group consecutive tiles up to the target size
+            long targetSize = Math.max(1, totalSize / Math.max(1, numShards));
+            List<Shard> shards = new ArrayList<>();
+            for (int r = 0; r < regions.size(); r++) {
+                Region region = regions.get(r);
+                int sequenceIndex = header.getSequenceIndex(region.getChromosome());
+                long[] sizes = tileSizes.get(r);
+                int firstTile = 0;
+                long size = 0;
+                for (int tile = 0; tile < sizes.length; tile++) {
+                    size += sizes[tile];
+                    if (size >= targetSize || tile == sizes.length - 1) {
+                        int start = region.getStart() + firstTile * TILE_SIZE;
+                        int end = Math.min(region.getEnd(), region.getStart() + (tile + 1) * TILE_SIZE - 1);
+                        List<Chunk> chunks = index.getSpanOverlapping(sequenceIndex, start, end).getChunks();
+                        shards.add(new Shard(new Region(region.getChromosome(), start, end), chunks, getCompressedSize(chunks),
+                                firstTile == 0 ? Integer.MIN_VALUE : start));
+                        firstTile = tile + 1;
+                        size = 0;
+                    }
+                }
+            }
+            return shards;
+        }
+    }
+
+    private static long getCompressedSize(List<Chunk> chunks) {
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkEnd())
+                    - BlockCompressedFilePointerUtil.getBlockAddress(chunk.getChunkStart());
+        }
+        return size;
+    }
+
+    /**
+     * Process the shards in parallel. Each read is given to the shard where it starts, and to no other one.
+     * @param shards Shards to process
+     * @param processor Shard processor, must be thread safe
+     * @param <R> Type of the result of each shard
+     * @return Result of each shard, in the same order than the shards
+     * @throws IOException If the file can not be read or the processor fails
+     */
+    public <R> List<R> map(List<Shard> shards, ShardProcessor<R> processor) throws IOException {
+        return map(shards, processor, true);
+    }
+
+    private <R> List<R> map(List<Shard> shards, ShardProcessor<R> processor, boolean startingInShard) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try (BamReaderPool readerPool = new BamReaderPool(createFactory(), bamFile, numThreads)) {
+            List<Future<R>> futures = new ArrayList<>(shards.size());
+            for (Shard shard : shards) {
+                futures.add(executor.submit(() -> process(readerPool, shard, processor, startingInShard)));
+            }
+            List<R> results = new ArrayList<>(shards.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error processing shards of " + bamFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <R> R process(BamReaderPool readerPool, Shard shard, ShardProcessor<R> processor, boolean startingInShard)
+            throws IOException {
+        SamReader samReader = readerPool.borrow();
+        try (SAMRecordIterator iterator = shard.isUnmapped()
+                ? samReader.queryUnmapped()
+                : samReader.query(shard.region.getChromosome(), shard.region.getStart(), shard.region.getEnd(), false)) {
+            Iterator<SAMRecord> reads = iterator;
+            if (startingInShard && !shard.isUnmapped()) {
+                reads = new StartingInShardIterator(iterator, shard.minAlignmentStart);
+            }
+            return processor.process(shard, reads);
+        } finally {
+            readerPool.release(samReader);
+        }
+    }
+
+    /**
+     * Compute global stats of the shards in parallel, and merge them.
+     * @param shards Shards to process, e.g. all the shards of the file
+     * @param calculator Stats calculator
+     * @param filters Filters to be applied to reads
+     * @return Stats of all the reads of the shards
+     * @throws IOException If the file can not be read
+     */
+    public AlignmentGlobalStats stats(List<Shard> shards, AlignmentGlobalStatsCalculator<SAMRecord> calculator,
+                                      AlignmentFilters<SAMRecord> filters) throws IOException {
+        AlignmentFilters<SAMRecord> readFilters = filters == null ? new SamRecordFilters() : filters;
+        List<AlignmentGlobalStats> shardStats = map(shards, (shard, reads) -> {
+            AlignmentGlobalStats stats = new AlignmentGlobalStats();
+            while (reads.hasNext()) {
+                SAMRecord samRecord = reads.next();
+                if (readFilters.test(samRecord)) {
+                    calculator.update(calculator.compute(samRecord), stats);
+                }
+            }
+            return stats;
+        });
+
+        AlignmentGlobalStats stats = new AlignmentGlobalStats();
+        for (AlignmentGlobalStats src : shardStats) {
+            calculator.update(src, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Compute the coverage of a region in parallel. Each shard computes the coverage of its positions from all the reads
+     * overlapping it, and then shard coverages are merged with {@link RegionCoverageCalculator#update}.
+     * @param region Region
+     * @param calculator Coverage calculator
+     * @param filters Filters to be applied to reads
+     * @return Coverage of each position of the region
+     * @throws IOException If the file can not be read
+     */
+    public RegionCoverage coverage(Region region, RegionCoverageCalculator<SAMRecord> calculator,
+                                   AlignmentFilters<SAMRecord> filters) throws IOException {
+        AlignmentFilters<SAMRecord> readFilters = filters == null ? new SamRecordFilters() : filters;
+        List<Shard> shards = getShards(Collections.singletonList(region), numThreads * 4);
+        List<RegionCoverage> shardCoverages = map(shards, (shard, reads) -> {
+            RegionCoverage coverage = new RegionCoverage(shard.getRegion());
+            while (reads.hasNext()) {
+                SAMRecord samRecord = reads.next();
+                if (!samRecord.getReadUnmappedFlag() && readFilters.test(samRecord)) {
+                    calculator.update(samRecord, coverage);
+                }
+            }
+            return coverage;
+        }, false);
+
+        RegionCoverage regionCoverage = new RegionCoverage(region);
+        for (RegionCoverage shardCoverage : shardCoverages) {
+            calculator.update(shardCoverage, regionCoverage);
+        }
+        regionCoverage.updateStats();
+        return regionCoverage;
+    }
+
+    private SamReader openReader() throws IOException {
+        return createFactory().open(SamInputResource.of(bamFile.toFile()));
+    }
+
+    private SamReaderFactory createFactory() throws IOException {
+        FileUtils.checkFile(bamFile);
+        SamReaderFactory srf = SamReaderFactory.make();
+        srf.validationStringency(ValidationStringency.LENIENT);
+        if (refFile != null) {
+            FileUtils.checkFile(refFile);
+            srf.referenceSequence(refFile);
+        } else if (bamFile.toString().endsWith("cram")) {
+            throw new IOException("Missing reference file for CRAM file " + bamFile);
+        }
+        return srf;
+    }
+
+    /**
+     * Skips the reads overlapping the shard but starting before it, they belong to the previous shard.
+     */
+    private static class StartingInShardIterator implements Iterator<SAMRecord> {
+
+        private final Iterator<SAMRecord> iterator;
+        private final int minAlignmentStart;
+        private SAMRecord next;
+
+        StartingInShardIterator(Iterator<SAMRecord> iterator, int minAlignmentStart) {
+            this.iterator = iterator;
+            this.minAlignmentStart = minAlignmentStart;
+            findNext();
+        }
+
+        private void findNext() {
+            next = null;
+            while (iterator.hasNext()) {
+                SAMRecord samRecord = iterator.next();
+                if (samRecord.getAlignmentStart() >= minAlignmentStart) {
+                    next = samRecord;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public SAMRecord next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            SAMRecord samRecord = next;
+            findNext();
+            return samRecord;
+        }
+    }
+
+    public Path getBamFile() {
+        return bamFile;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+}
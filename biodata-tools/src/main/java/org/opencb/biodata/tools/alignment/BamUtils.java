@@ -33,6 +33,9 @@ import org.opencb.commons.utils.FileUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -248,6 +251,46 @@ public class BamUtils {
         writer.close();
     }
 
+    /**
+     * Get the size of a BGZF block from its header, without decompressing it. The block size is stored in the BC extra
+     * subfield of the gzip header, see the SAM specification.
+     *
+     * @param channel       Channel of the BGZF file, e.g. a BAM file
+     * @param blockAddress  Address of the first byte of the block
+     * @return Compressed size of the block, including header and footer
+     * @throws IOException  If there is no BGZF block at that address
+     */
+    public static int getBgzfBlockSize(FileChannel channel, long blockAddress) throws IOException {
+        // ID1, ID2, CM, FLG, MTIME, XFL, OS and XLEN
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, blockAddress);
+        if ((header.get(0) & 0xFF) != 31 || (header.get(1) & 0xFF) != 139 || (header.get(3) & 4) == 0) {
+            throw new IOException("Not a BGZF block at " + blockAddress);
+        }
+        int extraLength = header.getShort(10) & 0xFFFF;
+        ByteBuffer extra = ByteBuffer.allocate(extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, extra, blockAddress + 12);
+        int position = 0;
+        while (position + 4 <= extraLength) {
+            int subfieldLength = extra.getShort(position + 2) & 0xFFFF;
+            if (extra.get(position) == 'B' && extra.get(position + 1) == 'C' && subfieldLength == 2) {
+                // BSIZE is the total block size minus 1
+                return (extra.getShort(position + 4) & 0xFFFF) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        throw new IOException("Missing BGZF block size at " + blockAddress);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file reading BGZF block at " + position);
+            }
+        }
+    }
+
     public static void validateRegion(Region region, SamReader samReader) {
         String chrom = region.getChromosome();
         if (StringUtils.isEmpty(chrom)) {
@@ -0,0 +1,368 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment;
+
+import ga4gh.Reads;
+import htsjdk.samtools.*;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.ga4gh.models.ReadAlignment;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.alignment.converters.SAMRecordToAvroReadAlignmentBiConverter;
+import org.opencb.biodata.tools.alignment.converters.SAMRecordToProtoReadAlignmentBiConverter;
+import org.opencb.biodata.tools.alignment.filters.AlignmentFilters;
+import org.opencb.biodata.tools.alignment.filters.SamRecordFilters;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the reads of a BAM/CRAM file, or of some of its regions, to an Avro container file or to a file of delimited
+ * protobuf messages of ga4gh ReadAlignments.
+ *
+ * Regions are split in shards of {@link #DEFAULT_SHARD_SIZE} bases. Each shard is read by one of numThreads readers,
+ * so every thread decompresses the BGZF blocks the index points to for its shard, and its reads are converted reusing
+ * the same ReadAlignment, or builder, and serialized into a byte buffer. Serialized shards are then written in order.
+ * A read belongs to the shard where it starts, so reads spanning two shards are exported once.
+ */
+public class ReadAlignmentExporter {
+
+    public enum Format {
+        AVRO,
+        PROTO
+    }
+
+    public static final int DEFAULT_SHARD_SIZE = 100000;
+
+    private final Path bamFile;
+    private final Path refFile;
+    private final int numThreads;
+
+    private int shardSize;
+    private boolean binQualities;
+    private AlignmentFilters<SAMRecord> filters;
+
+    public ReadAlignmentExporter(Path bamFile, int numThreads) {
+        this(bamFile, null, numThreads);
+    }
+
+    public ReadAlignmentExporter(Path bamFile, Path refFile, int numThreads) {
+        this.bamFile = bamFile;
+        this.refFile = refFile;
+        this.numThreads = Math.max(1, numThreads);
+        this.shardSize = DEFAULT_SHARD_SIZE;
+    }
+
+    /**
+     * Export all the reads of the file, mapped reads sorted by position and then the unmapped ones.
+     * @param output Output file, protobuf files are gzipped if the name ends with .gz
+     * @param format Output format
+     * @return Number of exported reads
+     * @throws IOException If the BAM file can not be read or the output file can not be written
+     */
+    public long export(Path output, Format format) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        try (BamReaderPool readerPool = createReaderPool()) {
+            SamReader samReader = readerPool.borrow();
+            for (SAMSequenceRecord sequence : samReader.getFileHeader().getSequenceDictionary().getSequences()) {
+                addShards(shards, sequence.getSequenceName(), 1, sequence.getSequenceLength());
+            }
+            readerPool.release(samReader);
+        }
+        shards.add(Shard.UNMAPPED);
+        return export(shards, output, format);
+    }
+
+    /**
+     * Export the reads overlapping the given regions, region by region.
+     * @param regions Regions to export
+     * @param output Output file, protobuf files are gzipped if the name ends with .gz
+     * @param format Output format
+     * @return Number of exported reads
+     * @throws IOException If the BAM file can not be read or the output file can not be written
+     */
+    public long export(List<Region> regions, Path output, Format format) throws IOException {
+        List<Shard> shards = new ArrayList<>();
+        try (BamReaderPool readerPool = createReaderPool()) {
+            SamReader samReader = readerPool.borrow();
+            for (Region region : regions) {
+                BamUtils.validateRegion(region, samReader);
+                addShards(shards, region.getChromosome(), region.getStart(), region.getEnd());
+            }
+            readerPool.release(samReader);
+        }
+        return export(shards, output, format);
+    }
+
+    private void addShards(List<Shard> shards, String chromosome, int start, int end) {
+        for (int shardStart = start; shardStart <= end; shardStart += shardSize) {
+            int shardEnd = (int) Math.min((long) shardStart + shardSize - 1, end);
+            // The first shard of a region keeps the reads starting before the region
+            shards.add(new Shard(chromosome, shardStart, shardEnd, shardStart == start ? Integer.MIN_VALUE : shardStart));
+        }
+    }
+
+    private long export(List<Shard> shards, Path output, Format format) throws IOException {
+        FileUtils.checkDirectory(output.toAbsolutePath().getParent(), true);
+
+        long numReads = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ThreadLocal<ShardEncoder> encoders = ThreadLocal.withInitial(() -> format == Format.AVRO
+                ? new AvroShardEncoder(binQualities)
+                : new ProtoShardEncoder(binQualities));
+        Deque<Future<EncodedShard>> encodedShards = new ArrayDeque<>();
+        try (BamReaderPool readerPool = createReaderPool();
+             ShardWriter writer = format == Format.AVRO ? new AvroShardWriter(output) : new ProtoShardWriter(output)) {
+            for (Shard shard : shards) {
+                encodedShards.add(executor.submit(() -> encoders.get().encode(readerPool, shard, filters)));
+                if (encodedShards.size() > numThreads * 2) {
+                    numReads += writer.write(encodedShards.removeFirst().get());
+                }
+            }
+            while (!encodedShards.isEmpty()) {
+                numReads += writer.write(encodedShards.removeFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error exporting reads from " + bamFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return numReads;
+    }
+
+    private BamReaderPool createReaderPool() throws IOException {
+        FileUtils.checkFile(bamFile);
+        SamReaderFactory srf = SamReaderFactory.make();
+        srf.validationStringency(ValidationStringency.LENIENT);
+        if (refFile != null) {
+            FileUtils.checkFile(refFile);
+            srf.referenceSequence(refFile);
+        } else if (bamFile.toString().endsWith("cram")) {
+            throw new IOException("Missing reference file for CRAM file " + bamFile);
+        }
+        return new BamReaderPool(srf, bamFile, numThreads);
+    }
+
+    private static class Shard {
+
+        static final Shard UNMAPPED = new Shard(null, 0, 0, 0);
+
+        private final String chromosome;
+        private final int start;
+        private final int end;
+        private final int minAlignmentStart;
+
+        Shard(String chromosome, int start, int end, int minAlignmentStart) {
+            this.chromosome = chromosome;
+            this.start = start;
+            this.end = end;
+            this.minAlignmentStart = minAlignmentStart;
+        }
+    }
+
+    /**
+     * Serialized reads of a shard, ends holds the end offset of each of them.
+     */
+    private static class EncodedShard {
+
+        private final byte[] data;
+        private final int[] ends;
+
+        EncodedShard(byte[] data, int[] ends) {
+            this.data = data;
+            this.ends = ends;
+        }
+    }
+
+    /**
+     * Reads and serializes shards. Each worker thread has its own encoder, so converters and buffers are reused.
+     */
+    private abstract static class ShardEncoder {
+
+        protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+        private int[] ends = new int[1024];
+
+        EncodedShard encode(BamReaderPool readerPool, Shard shard, AlignmentFilters<SAMRecord> filters) throws IOException {
+            if (filters == null) {
+                filters = new SamRecordFilters();
+            }
+            buffer.reset();
+            int numReads = 0;
+            SamReader samReader = readerPool.borrow();
+            try (SAMRecordIterator iterator = shard == Shard.UNMAPPED
+                    ? samReader.queryUnmapped()
+                    : samReader.query(shard.chromosome, shard.start, shard.end, false)) {
+                while (iterator.hasNext()) {
+                    SAMRecord samRecord = iterator.next();
+                    if (shard != Shard.UNMAPPED && samRecord.getAlignmentStart() < shard.minAlignmentStart) {
+                        continue;
+                    }
+                    if (filters.test(samRecord)) {
+                        write(samRecord);
+                        if (numReads == ends.length) {
+                            ends = Arrays.copyOf(ends, ends.length * 2);
+                        }
+                        ends[numReads++] = buffer.size();
+                    }
+                }
+            } finally {
+                readerPool.release(samReader);
+            }
+            return new EncodedShard(buffer.toByteArray(), Arrays.copyOf(ends, numReads));
+        }
+
+        protected abstract void write(SAMRecord samRecord) throws IOException;
+    }
+
+    private static class AvroShardEncoder extends ShardEncoder {
+
+        private final SAMRecordToAvroReadAlignmentBiConverter converter;
+        private final SpecificDatumWriter<ReadAlignment> datumWriter = new SpecificDatumWriter<>(ReadAlignment.class);
+        private final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(buffer, null);
+        private ReadAlignment readAlignment;
+
+        AvroShardEncoder(boolean binQualities) {
+            converter = new SAMRecordToAvroReadAlignmentBiConverter(binQualities);
+        }
+
+        @Override
+        protected void write(SAMRecord samRecord) throws IOException {
+            readAlignment = converter.to(samRecord, readAlignment);
+            datumWriter.write(readAlignment, encoder);
+        }
+    }
+
+    private static class ProtoShardEncoder extends ShardEncoder {
+
+        private final SAMRecordToProtoReadAlignmentBiConverter converter;
+        private final Reads.ReadAlignment.Builder builder = Reads.ReadAlignment.newBuilder();
+
+        ProtoShardEncoder(boolean binQualities) {
+            converter = new SAMRecordToProtoReadAlignmentBiConverter(binQualities);
+        }
+
+        @Override
+        protected void write(SAMRecord samRecord) throws IOException {
+            converter.to(samRecord, builder).writeDelimitedTo(buffer);
+        }
+    }
+
+    private interface ShardWriter extends Closeable {
+
+        /**
+         * @return Number of reads written
+         */
+        int write(EncodedShard encodedShard) throws IOException;
+    }
+
+    private static class AvroShardWriter implements ShardWriter {
+
+        private final DataFileWriter<ReadAlignment> dataFileWriter;
+
+        AvroShardWriter(Path output) throws IOException {
+            dataFileWriter = new DataFileWriter<>(new SpecificDatumWriter<>(ReadAlignment.class));
+            dataFileWriter.create(ReadAlignment.getClassSchema(), output.toFile());
+        }
+
+        @Override
+        public int write(EncodedShard encodedShard) throws IOException {
+            int start = 0;
+            for (int end : encodedShard.ends) {
+                dataFileWriter.appendEncoded(ByteBuffer.wrap(encodedShard.data, start, end - start));
+                start = end;
+            }
+            return encodedShard.ends.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dataFileWriter.close();
+        }
+    }
+
+    private static class ProtoShardWriter implements ShardWriter {
+
+        private final OutputStream outputStream;
+
+        ProtoShardWriter(Path output) throws IOException {
+            OutputStream os = Files.newOutputStream(output);
+            outputStream = output.toString().endsWith(".gz")
+                    ? new GZIPOutputStream(os, 1 << 16)
+                    : new BufferedOutputStream(os, 1 << 16);
+        }
+
+        @Override
+        public int write(EncodedShard encodedShard) throws IOException {
+            // Messages are already delimited
+            outputStream.write(encodedShard.data);
+            return encodedShard.ends.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    public Path getBamFile() {
+        return bamFile;
+    }
+
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    public ReadAlignmentExporter setShardSize(int shardSize) {
+        this.shardSize = shardSize;
+        return this;
+    }
+
+    public boolean isBinQualities() {
+        return binQualities;
+    }
+
+    public ReadAlignmentExporter setBinQualities(boolean binQualities) {
+        this.binQualities = binQualities;
+        return this;
+    }
+
+    public AlignmentFilters<SAMRecord> getFilters() {
+        return filters;
+    }
+
+    public ReadAlignmentExporter setFilters(AlignmentFilters<SAMRecord> filters) {
+        this.filters = filters;
+        return this;
+    }
+}
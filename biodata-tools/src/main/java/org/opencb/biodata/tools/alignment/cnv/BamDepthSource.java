@@ -0,0 +1,117 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import htsjdk.samtools.*;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Window depths computed from a BAM/CRAM file in a single pass over each region. Aligned bases of the reads are added
+ * to per window counters, so no per base coverage array is needed. Unmapped, secondary, supplementary, duplicated and
+ * QC failed reads, and reads with a mapping quality below the minimum, are not counted.
+ */
+public class BamDepthSource implements DepthSource {
+
+    public static final int DEFAULT_MIN_MAPPING_QUALITY = 20;
+
+    private final Path bamFile;
+    private final SamReaderFactory samReaderFactory;
+    private int minMappingQuality;
+
+    public BamDepthSource(Path bamFile) throws IOException {
+        this(bamFile, null);
+    }
+
+    public BamDepthSource(Path bamFile, Path refFile) throws IOException {
+        FileUtils.checkFile(bamFile);
+        this.bamFile = bamFile;
+        this.samReaderFactory = SamReaderFactory.make().validationStringency(ValidationStringency.SILENT);
+        if (refFile != null) {
+            FileUtils.checkFile(refFile);
+            samReaderFactory.referenceSequence(refFile);
+        } else if (bamFile.toString().endsWith("cram")) {
+            throw new IOException("Missing reference file for CRAM file " + bamFile);
+        }
+        this.minMappingQuality = DEFAULT_MIN_MAPPING_QUALITY;
+    }
+
+    @Override
+    public double[] getWindowDepths(Region region, int windowSize) throws IOException {
+        int numWindows = DepthSource.getNumWindows(region, windowSize);
+        long[] alignedBases = new long[numWindows];
+        // 0-based offsets from the region start, end exclusive
+        int regionLength = region.getEnd() - region.getStart() + 1;
+
+        // One reader per call, as regions are read concurrently
+        try (SamReader samReader = samReaderFactory.open(SamInputResource.of(bamFile.toFile()));
+             SAMRecordIterator iterator = samReader.query(region.getChromosome(), region.getStart(), region.getEnd(), false)) {
+            while (iterator.hasNext()) {
+                SAMRecord samRecord = iterator.next();
+                if (samRecord.getReadUnmappedFlag() || samRecord.isSecondaryOrSupplementary() || samRecord.getDuplicateReadFlag()
+                        || samRecord.getReadFailsVendorQualityCheckFlag() || samRecord.getMappingQuality() < minMappingQuality) {
+                    continue;
+                }
+                int offset = samRecord.getAlignmentStart() - region.getStart();
+                for (CigarElement cigarElement : samRecord.getCigar().getCigarElements()) {
+                    CigarOperator operator = cigarElement.getOperator();
+                    if (!operator.consumesReferenceBases()) {
+                        continue;
+                    }
+                    int end = offset + cigarElement.getLength();
+                    if (operator.consumesReadBases()) {
+                        // M, = and X, aligned bases are split between the windows they overlap
+                        int start = Math.max(offset, 0);
+                        end = Math.min(end, regionLength);
+                        while (start < end) {
+                            int window = start / windowSize;
+                            int windowEnd = Math.min(end, (window + 1) * windowSize);
+                            alignedBases[window] += windowEnd - start;
+                            start = windowEnd;
+                        }
+                    }
+                    offset += cigarElement.getLength();
+                }
+            }
+        }
+
+        double[] depths = new double[numWindows];
+        for (int i = 0; i < numWindows; i++) {
+            depths[i] = (double) alignedBases[i] / DepthSource.getWindowLength(region, windowSize, i);
+        }
+        return depths;
+    }
+
+    public Path getBamFile() {
+        return bamFile;
+    }
+
+    public int getMinMappingQuality() {
+        return minMappingQuality;
+    }
+
+    public BamDepthSource setMinMappingQuality(int minMappingQuality) {
+        this.minMappingQuality = minMappingQuality;
+        return this;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.feature.BigWigManager;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Window depths read from a coverage BigWig file, e.g. created by {@link org.opencb.biodata.tools.alignment.BamManager}.
+ * Zoom levels are used when the window size allows it, see {@link BigWigManager#groupBy(Region, int)}.
+ */
+public class BigWigDepthSource implements DepthSource {
+
+    private final Path bigWigFile;
+
+    public BigWigDepthSource(Path bigWigFile) throws IOException {
+        FileUtils.checkFile(bigWigFile);
+        this.bigWigFile = bigWigFile;
+    }
+
+    @Override
+    public double[] getWindowDepths(Region region, int windowSize) throws IOException {
+        // BigWig readers are not thread safe, one per call
+        BigWigManager bigWigManager = new BigWigManager(bigWigFile);
+        double[] depths = bigWigManager.groupBy(new Region(region.getChromosome(), region.getStart(), region.getEnd()), windowSize);
+
+        // groupBy averages the last window over the whole window size
+        int last = depths.length - 1;
+        depths[last] = depths[last] * windowSize / DepthSource.getWindowLength(region, windowSize, last);
+        return depths;
+    }
+
+    public Path getBigWigFile() {
+        return bigWigFile;
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.opencb.biodata.formats.sequence.GenomeSequenceReader;
+import org.opencb.biodata.models.alignment.RegionCoverage;
+import org.opencb.biodata.models.core.Region;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Somatic copy number caller from tumour and normal coverage.
+ *
+ * Runs in three passes over primitive arrays, each of them parallelized by region (typically whole chromosomes):
+ * <ol>
+ *     <li>Tumour and normal window depths are read together for each region, with the GC content of each window if a
+ *     reference genome is given.</li>
+ *     <li>Each sample is normalized on its own, dividing every window by the median depth of the windows with its GC
+ *     content, or by the median depth of all the windows. Windows with a normal depth below the minimum, or mostly N
+ *     bases, are discarded, as well as the windows that either sample can not normalize. The log2 ratio of the
+ *     normalized depths is then centered on its median.</li>
+ *     <li>Each region is segmented with a {@link CopyNumberHmm}. The standard deviation of the log2 ratios is estimated
+ *     once for the whole genome from the differences between consecutive windows, so it is not inflated by the
+ *     copy number changes.</li>
+ * </ol>
+ */
+public class CopyNumberCaller {
+
+    public static final int DEFAULT_WINDOW_SIZE = 10000;
+    public static final double DEFAULT_MIN_NORMAL_DEPTH = 5;
+    public static final double MAX_LOG2_RATIO = 5;
+
+    // GC content is binned by percentage, bins with less windows than this are not used
+    private static final int GC_BINS = 101;
+    private static final int MIN_GC_BIN_WINDOWS = 10;
+    // Minimum fraction of A, C, G or T bases of a window to compute its GC content
+    private static final double MIN_ACGT_FRACTION = 0.5;
+
+    private final DepthSource tumour;
+    private final DepthSource normal;
+    private GenomeSequenceReader genome;
+    private int windowSize;
+    private double minNormalDepth;
+    private boolean centerLog2Ratios;
+    private int numThreads;
+    private CopyNumberHmm hmm;
+
+    public CopyNumberCaller(DepthSource tumour, DepthSource normal) {
+        this.tumour = tumour;
+        this.normal = normal;
+        this.windowSize = DEFAULT_WINDOW_SIZE;
+        this.minNormalDepth = DEFAULT_MIN_NORMAL_DEPTH;
+        this.centerLog2Ratios = true;
+        this.numThreads = 1;
+        this.hmm = new CopyNumberHmm();
+    }
+
+    /**
+     * Call copy numbers of the given regions.
+     *
+     * @param regions   Regions to analyse, usually whole chromosomes. Normalization uses the windows of all of them
+     * @return One profile per region, in the same order
+     * @throws IOException  If any file can not be read
+     */
+    public List<CopyNumberProfile> call(List<Region> regions) throws IOException {
+        int numRegions = regions.size();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        try {
+            // Depths and GC content
+            List<Future<double[][]>> futures = new ArrayList<>(numRegions);
+            for (Region region : regions) {
+                futures.add(executor.submit(() -> new double[][]{
+                        tumour.getWindowDepths(region, windowSize),
+                        normal.getWindowDepths(region, windowSize),
+                        genome != null ? getGcContent(genome, region, windowSize) : null,
+                }));
+            }
+            double[][] tumourDepths = new double[numRegions][];
+            double[][] normalDepths = new double[numRegions][];
+            double[][] gcContents = new double[numRegions][];
+            for (int i = 0; i < numRegions; i++) {
+                double[][] values = futures.get(i).get();
+                int numWindows = DepthSource.getNumWindows(regions.get(i), windowSize);
+                if (values[0].length != numWindows || values[1].length != numWindows) {
+                    throw new IOException("Unexpected number of windows for region " + regions.get(i) + ": " + values[0].length
+                            + " in tumour, " + values[1].length + " in normal, expected " + numWindows);
+                }
+                tumourDepths[i] = values[0];
+                normalDepths[i] = values[1];
+                gcContents[i] = values[2];
+            }
+
+            // Normalization
+            boolean[][] valid = new boolean[numRegions][];
+            for (int i = 0; i < numRegions; i++) {
+                valid[i] = new boolean[normalDepths[i].length];
+                for (int w = 0; w < valid[i].length; w++) {
+                    valid[i][w] = normalDepths[i][w] >= minNormalDepth && normalDepths[i][w] > 0
+                            && (gcContents[i] == null || !Double.isNaN(gcContents[i][w]));
+                }
+            }
+            // Both samples start from the same windows, so the windows invalidated by one do not bias the other
+            boolean[][] tumourValid = new boolean[numRegions][];
+            for (int i = 0; i < numRegions; i++) {
+                tumourValid[i] = valid[i].clone();
+            }
+            normalize(tumourDepths, gcContents, tumourValid);
+            normalize(normalDepths, gcContents, valid);
+            for (int i = 0; i < numRegions; i++) {
+                for (int w = 0; w < valid[i].length; w++) {
+                    valid[i][w] &= tumourValid[i][w];
+                }
+            }
+            double[][] log2Ratios = new double[numRegions][];
+            for (int i = 0; i < numRegions; i++) {
+                log2Ratios[i] = log2Ratios(tumourDepths[i], normalDepths[i], valid[i]);
+            }
+            if (centerLog2Ratios) {
+                double median = median(log2Ratios, null);
+                if (!Double.isNaN(median)) {
+                    for (double[] values : log2Ratios) {
+                        for (int w = 0; w < values.length; w++) {
+                            values[w] -= median;
+                        }
+                    }
+                }
+            }
+
+            // Segmentation
+            double standardDeviation = estimateStandardDeviation(log2Ratios);
+            List<Future<CopyNumberProfile>> profiles = new ArrayList<>(numRegions);
+            for (int i = 0; i < numRegions; i++) {
+                Region region = regions.get(i);
+                double[] values = log2Ratios[i];
+                profiles.add(executor.submit(() -> segment(region, values, standardDeviation)));
+            }
+            List<CopyNumberProfile> results = new ArrayList<>(numRegions);
+            for (Future<CopyNumberProfile> profile : profiles) {
+                results.add(profile.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error calling copy numbers", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * GC fraction of each window, NaN for windows with less than half of their bases being A, C, G or T.
+     */
+    static double[] getGcContent(GenomeSequenceReader genome, Region region, int windowSize) throws IOException {
+        int numWindows = DepthSource.getNumWindows(region, windowSize);
+        double[] gcContent = new double[numWindows];
+        int length = genome.getLength(region.getChromosome());
+        // Read about 1Mb at a time
+        int windowsPerRead = Math.max(1, 1000000 / windowSize);
+        for (int first = 0; first < numWindows; first += windowsPerRead) {
+            int last = Math.min(numWindows, first + windowsPerRead) - 1;
+            int start = region.getStart() + first * windowSize;
+            int end = Math.min(Math.min(region.getEnd(), start + (last - first + 1) * windowSize - 1), length);
+            String bases = start <= end ? genome.read(region.getChromosome(), start, end) : "";
+            for (int w = first; w <= last; w++) {
+                int offset = (w - first) * windowSize;
+                int windowEnd = Math.min(bases.length(), offset + DepthSource.getWindowLength(region, windowSize, w));
+                int gc = 0;
+                int acgt = 0;
+                for (int i = offset; i < windowEnd; i++) {
+                    switch (bases.charAt(i)) {
+                        case 'G':
+                        case 'C':
+                        case 'g':
+                        case 'c':
+                            gc++;
+                            acgt++;
+                            break;
+                        case 'A':
+                        case 'T':
+                        case 'a':
+                        case 't':
+                            acgt++;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                gcContent[w] = acgt >= MIN_ACGT_FRACTION * DepthSource.getWindowLength(region, windowSize, w)
+                        ? (double) gc / acgt
+                        : Double.NaN;
+            }
+        }
+        return gcContent;
+    }
+
+    /**
+     * Divide the depth of each valid window by the median depth of the valid windows with the same GC content, or by the
+     * median depth of all the valid windows if there is no GC content. Windows that can not be normalized are invalidated.
+     */
+    static void normalize(double[][] depths, double[][] gcContents, boolean[][] valid) {
+        if (gcContents.length == 0 || gcContents[0] == null) {
+            double median = median(depths, valid);
+            if (!(median > 0)) {
+                // No valid window, or most of them without reads
+                for (boolean[] regionValid : valid) {
+                    Arrays.fill(regionValid, false);
+                }
+                return;
+            }
+            for (int i = 0; i < depths.length; i++) {
+                for (int w = 0; w < depths[i].length; w++) {
+                    depths[i][w] /= median;
+                }
+            }
+            return;
+        }
+
+        // Depths of each GC bin, in a single array sorted by bin
+        int[] binStarts = new int[GC_BINS + 1];
+        for (int i = 0; i < depths.length; i++) {
+            for (int w = 0; w < depths[i].length; w++) {
+                if (valid[i][w]) {
+                    binStarts[gcBin(gcContents[i][w]) + 1]++;
+                }
+            }
+        }
+        for (int bin = 0; bin < GC_BINS; bin++) {
+            binStarts[bin + 1] += binStarts[bin];
+        }
+        double[] binDepths = new double[binStarts[GC_BINS]];
+        int[] binSizes = new int[GC_BINS];
+        for (int i = 0; i < depths.length; i++) {
+            for (int w = 0; w < depths[i].length; w++) {
+                if (valid[i][w]) {
+                    int bin = gcBin(gcContents[i][w]);
+                    binDepths[binStarts[bin] + binSizes[bin]++] = depths[i][w];
+                }
+            }
+        }
+        double[] binMedians = new double[GC_BINS];
+        for (int bin = 0; bin < GC_BINS; bin++) {
+            if (binSizes[bin] < MIN_GC_BIN_WINDOWS) {
+                binMedians[bin] = Double.NaN;
+            } else {
+                Arrays.sort(binDepths, binStarts[bin], binStarts[bin + 1]);
+                binMedians[bin] = sortedMedian(binDepths, binStarts[bin], binStarts[bin + 1]);
+            }
+        }
+
+        for (int i = 0; i < depths.length; i++) {
+            for (int w = 0; w < depths[i].length; w++) {
+                if (valid[i][w]) {
+                    double binMedian = binMedians[gcBin(gcContents[i][w])];
+                    if (binMedian > 0) {
+                        depths[i][w] /= binMedian;
+                    } else {
+                        valid[i][w] = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int gcBin(double gcContent) {
+        return (int) Math.round(gcContent * (GC_BINS - 1));
+    }
+
+    private static double[] log2Ratios(double[] tumourDepths, double[] normalDepths, boolean[] valid) {
+        double[] log2Ratios = new double[tumourDepths.length];
+        for (int w = 0; w < log2Ratios.length; w++) {
+            if (!valid[w]) {
+                log2Ratios[w] = Double.NaN;
+            } else if (tumourDepths[w] <= 0) {
+                log2Ratios[w] = -MAX_LOG2_RATIO;
+            } else {
+                double log2Ratio = Math.log(tumourDepths[w] / normalDepths[w]) / Math.log(2);
+                log2Ratios[w] = Math.max(-MAX_LOG2_RATIO, Math.min(MAX_LOG2_RATIO, log2Ratio));
+            }
+        }
+        return log2Ratios;
+    }
+
+    /**
+     * Robust standard deviation, from the median absolute difference between consecutive values.
+     */
+    static double estimateStandardDeviation(double[][] log2Ratios) {
+        int numDiffs = 0;
+        for (double[] values : log2Ratios) {
+            numDiffs += values.length;
+        }
+        double[] diffs = new double[numDiffs];
+        numDiffs = 0;
+        for (double[] values : log2Ratios) {
+            double previous = Double.NaN;
+            for (double value : values) {
+                if (!Double.isNaN(value)) {
+                    if (!Double.isNaN(previous)) {
+                        diffs[numDiffs++] = Math.abs(value - previous);
+                    }
+                    previous = value;
+                }
+            }
+        }
+        if (numDiffs == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(diffs, 0, numDiffs);
+        // MAD of the differences of two normal values, scaled to a standard deviation
+        return sortedMedian(diffs, 0, numDiffs) / (0.6745 * Math.sqrt(2));
+    }
+
+    private CopyNumberProfile segment(Region region, double[] log2Ratios, double standardDeviation) {
+        int[] copyNumbers = hmm.segment(log2Ratios, standardDeviation);
+        List<CopyNumberSegment> segments = new ArrayList<>();
+        int first = -1;
+        int last = -1;
+        int numWindows = 0;
+        double sum = 0;
+        for (int w = 0; w <= copyNumbers.length; w++) {
+            if (w < copyNumbers.length && copyNumbers[w] < 0) {
+                // Discarded windows do not break segments
+                continue;
+            }
+            if (first >= 0 && (w == copyNumbers.length || copyNumbers[w] != copyNumbers[first])) {
+                int start = region.getStart() + first * windowSize;
+                int end = region.getStart() + last * windowSize + DepthSource.getWindowLength(region, windowSize, last) - 1;
+                segments.add(new CopyNumberSegment(region.getChromosome(), start, end, copyNumbers[first], numWindows,
+                        sum / numWindows));
+                first = -1;
+            }
+            if (w < copyNumbers.length) {
+                if (first < 0) {
+                    first = w;
+                    numWindows = 0;
+                    sum = 0;
+                }
+                last = w;
+                numWindows++;
+                sum += log2Ratios[w];
+            }
+        }
+        RegionCoverage coverage = new RegionCoverage(region, windowSize, log2Ratios, null);
+        return new CopyNumberProfile(coverage, segments);
+    }
+
+    private static double median(double[][] values, boolean[][] valid) {
+        int size = 0;
+        for (double[] v : values) {
+            size += v.length;
+        }
+        double[] all = new double[size];
+        size = 0;
+        for (int i = 0; i < values.length; i++) {
+            for (int w = 0; w < values[i].length; w++) {
+                if (valid == null ? !Double.isNaN(values[i][w]) : valid[i][w]) {
+                    all[size++] = values[i][w];
+                }
+            }
+        }
+        if (size == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(all, 0, size);
+        return sortedMedian(all, 0, size);
+    }
+
+    private static double sortedMedian(double[] values, int from, int to) {
+        int middle = (from + to) >>> 1;
+        return (to - from) % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    public GenomeSequenceReader getGenome() {
+        return genome;
+    }
+
+    public CopyNumberCaller setGenome(GenomeSequenceReader genome) {
+        this.genome = genome;
+        return this;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public CopyNumberCaller setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    public double getMinNormalDepth() {
+        return minNormalDepth;
+    }
+
+    public CopyNumberCaller setMinNormalDepth(double minNormalDepth) {
+        this.minNormalDepth = minNormalDepth;
+        return this;
+    }
+
+    public boolean isCenterLog2Ratios() {
+        return centerLog2Ratios;
+    }
+
+    public CopyNumberCaller setCenterLog2Ratios(boolean centerLog2Ratios) {
+        this.centerLog2Ratios = centerLog2Ratios;
+        return this;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public CopyNumberCaller setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public CopyNumberHmm getHmm() {
+        return hmm;
+    }
+
+    public CopyNumberCaller setHmm(CopyNumberHmm hmm) {
+        this.hmm = hmm;
+        return this;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+/**
+ * Hidden Markov model segmenting log2 coverage ratios into copy number states.
+ *
+ * There is one state per copy number, from 0 to maxCopyNumber, emitting gaussian log2 ratios centered on the ratio
+ * expected for that copy number given the ploidy and the tumour purity. All the states share the same standard
+ * deviation, estimated from the data, and switching to any other state has the same probability. The most likely path
+ * is found with the Viterbi algorithm on primitive arrays, in O(windows * states) time.
+ */
+public class CopyNumberHmm {
+
+    public static final int DEFAULT_MAX_COPY_NUMBER = 6;
+    public static final double DEFAULT_TRANSITION_PROBABILITY = 1e-4;
+
+    private int maxCopyNumber;
+    private int ploidy;
+    private double purity;
+    private double transitionProbability;
+    private double maxAbsLog2Ratio;
+
+    public CopyNumberHmm() {
+        this.maxCopyNumber = DEFAULT_MAX_COPY_NUMBER;
+        this.ploidy = 2;
+        this.purity = 1;
+        this.transitionProbability = DEFAULT_TRANSITION_PROBABILITY;
+        this.maxAbsLog2Ratio = CopyNumberCaller.MAX_LOG2_RATIO;
+    }
+
+    /**
+     * @param copyNumber    Copy number
+     * @return Expected log2 ratio, limited to [-maxAbsLog2Ratio, maxAbsLog2Ratio]
+     */
+    public double getExpectedLog2Ratio(int copyNumber) {
+        double ratio = (purity * copyNumber + (1 - purity) * ploidy) / ploidy;
+        double log2Ratio = ratio > 0 ? Math.log(ratio) / Math.log(2) : -maxAbsLog2Ratio;
+        return Math.max(-maxAbsLog2Ratio, Math.min(maxAbsLog2Ratio, log2Ratio));
+    }
+
+    /**
+     * Find the most likely copy number of each value.
+     *
+     * @param log2Ratios            Log2 ratios, NaN values are skipped
+     * @param standardDeviation     Standard deviation of the log2 ratios within a segment
+     * @return Copy number of each value, or -1 for NaN values
+     */
+    public int[] segment(double[] log2Ratios, double standardDeviation) {
+        int numStates = maxCopyNumber + 1;
+        int[] copyNumbers = new int[log2Ratios.length];
+        int numValues = 0;
+        for (int i = 0; i < log2Ratios.length; i++) {
+            if (Double.isNaN(log2Ratios[i])) {
+                copyNumbers[i] = -1;
+            } else {
+                numValues++;
+            }
+        }
+        if (numValues == 0) {
+            return copyNumbers;
+        }
+
+        double[] means = new double[numStates];
+        for (int state = 0; state < numStates; state++) {
+            means[state] = getExpectedLog2Ratio(state);
+        }
+        double variance = Math.max(standardDeviation * standardDeviation, 1e-6);
+        double logStay = Math.log1p(-transitionProbability);
+        double logSwitch = Math.log(transitionProbability / Math.max(1, numStates - 1));
+
+        // Viterbi scores of the previous value, and best previous state of each value and state
+        double[] scores = new double[numStates];
+        double[] nextScores = new double[numStates];
+        byte[] backPointers = new byte[numValues * numStates];
+        int[] positions = new int[numValues];
+
+        int n = 0;
+        for (int i = 0; i < log2Ratios.length; i++) {
+            double value = log2Ratios[i];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            positions[n] = i;
+            if (n == 0) {
+                for (int state = 0; state < numStates; state++) {
+                    scores[state] = logEmission(value, means[state], variance);
+                }
+            } else {
+                // Switching costs the same from any state, so the best switch comes from the best previous state
+                int bestState = 0;
+                for (int state = 1; state < numStates; state++) {
+                    if (scores[state] > scores[bestState]) {
+                        bestState = state;
+                    }
+                }
+                double bestSwitch = scores[bestState] + logSwitch;
+                int offset = n * numStates;
+                for (int state = 0; state < numStates; state++) {
+                    double stay = scores[state] + logStay;
+                    if (stay >= bestSwitch) {
+                        nextScores[state] = stay;
+                        backPointers[offset + state] = (byte) state;
+                    } else {
+                        nextScores[state] = bestSwitch;
+                        backPointers[offset + state] = (byte) bestState;
+                    }
+                    nextScores[state] += logEmission(value, means[state], variance);
+                }
+                double[] tmp = scores;
+                scores = nextScores;
+                nextScores = tmp;
+            }
+            n++;
+        }
+
+        int state = 0;
+        for (int s = 1; s < numStates; s++) {
+            if (scores[s] > scores[state]) {
+                state = s;
+            }
+        }
+        for (n = numValues - 1; n >= 0; n--) {
+            copyNumbers[positions[n]] = state;
+            state = backPointers[n * numStates + state];
+        }
+        return copyNumbers;
+    }
+
+    private static double logEmission(double value, double mean, double variance) {
+        double diff = value - mean;
+        return -diff * diff / (2 * variance);
+    }
+
+    public int getMaxCopyNumber() {
+        return maxCopyNumber;
+    }
+
+    public CopyNumberHmm setMaxCopyNumber(int maxCopyNumber) {
+        if (maxCopyNumber < 1 || maxCopyNumber > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Max copy number must be between 1 and " + Byte.MAX_VALUE + ", found " + maxCopyNumber);
+        }
+        this.maxCopyNumber = maxCopyNumber;
+        return this;
+    }
+
+    public int getPloidy() {
+        return ploidy;
+    }
+
+    public CopyNumberHmm setPloidy(int ploidy) {
+        this.ploidy = ploidy;
+        return this;
+    }
+
+    public double getPurity() {
+        return purity;
+    }
+
+    public CopyNumberHmm setPurity(double purity) {
+        this.purity = purity;
+        return this;
+    }
+
+    public double getTransitionProbability() {
+        return transitionProbability;
+    }
+
+    public CopyNumberHmm setTransitionProbability(double transitionProbability) {
+        this.transitionProbability = transitionProbability;
+        return this;
+    }
+
+    public double getMaxAbsLog2Ratio() {
+        return maxAbsLog2Ratio;
+    }
+
+    public CopyNumberHmm setMaxAbsLog2Ratio(double maxAbsLog2Ratio) {
+        this.maxAbsLog2Ratio = maxAbsLog2Ratio;
+        return this;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.opencb.biodata.models.alignment.RegionCoverage;
+
+import java.util.List;
+
+/**
+ * Tumour/normal log2 coverage ratios of the windows of a region, NaN for the discarded windows, and their segments.
+ */
+public class CopyNumberProfile {
+
+    private RegionCoverage log2Ratios;
+    private List<CopyNumberSegment> segments;
+
+    public CopyNumberProfile() {
+    }
+
+    public CopyNumberProfile(RegionCoverage log2Ratios, List<CopyNumberSegment> segments) {
+        this.log2Ratios = log2Ratios;
+        this.segments = segments;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CopyNumberProfile{");
+        if (log2Ratios != null) {
+            sb.append("region=").append(log2Ratios.getChromosome()).append(':').append(log2Ratios.getStart())
+                    .append('-').append(log2Ratios.getEnd());
+            sb.append(", windowSize=").append(log2Ratios.getWindowSize());
+        }
+        sb.append(", segments=").append(segments);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public RegionCoverage getLog2Ratios() {
+        return log2Ratios;
+    }
+
+    public CopyNumberProfile setLog2Ratios(RegionCoverage log2Ratios) {
+        this.log2Ratios = log2Ratios;
+        return this;
+    }
+
+    public List<CopyNumberSegment> getSegments() {
+        return segments;
+    }
+
+    public CopyNumberProfile setSegments(List<CopyNumberSegment> segments) {
+        this.segments = segments;
+        return this;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.opencb.biodata.models.core.Region;
+
+/**
+ * Consecutive windows with the same copy number.
+ */
+public class CopyNumberSegment extends Region {
+
+    private int copyNumber;
+    private int numWindows;
+    private double meanLog2Ratio;
+
+    public CopyNumberSegment() {
+    }
+
+    public CopyNumberSegment(String chromosome, int start, int end, int copyNumber, int numWindows, double meanLog2Ratio) {
+        super(chromosome, start, end);
+        this.copyNumber = copyNumber;
+        this.numWindows = numWindows;
+        this.meanLog2Ratio = meanLog2Ratio;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CopyNumberSegment{");
+        sb.append("chromosome='").append(getChromosome()).append('\'');
+        sb.append(", start=").append(getStart());
+        sb.append(", end=").append(getEnd());
+        sb.append(", copyNumber=").append(copyNumber);
+        sb.append(", numWindows=").append(numWindows);
+        sb.append(", meanLog2Ratio=").append(meanLog2Ratio);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getCopyNumber() {
+        return copyNumber;
+    }
+
+    public CopyNumberSegment setCopyNumber(int copyNumber) {
+        this.copyNumber = copyNumber;
+        return this;
+    }
+
+    public int getNumWindows() {
+        return numWindows;
+    }
+
+    public CopyNumberSegment setNumWindows(int numWindows) {
+        this.numWindows = numWindows;
+        return this;
+    }
+
+    public double getMeanLog2Ratio() {
+        return meanLog2Ratio;
+    }
+
+    public CopyNumberSegment setMeanLog2Ratio(double meanLog2Ratio) {
+        this.meanLog2Ratio = meanLog2Ratio;
+        return this;
+    }
+}
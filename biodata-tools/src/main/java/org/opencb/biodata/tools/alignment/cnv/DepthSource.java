@@ -0,0 +1,48 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.opencb.biodata.models.core.Region;
+
+import java.io.IOException;
+
+/**
+ * Source of the mean depth of coverage of consecutive windows, e.g. a BAM or a BigWig file.
+ *
+ * Implementations must be thread safe, different regions are read concurrently.
+ */
+public interface DepthSource {
+
+    /**
+     * @param region        Region to read, windows start at the region start
+     * @param windowSize    Window size
+     * @return Mean depth of each window of the region. The last window may be shorter than windowSize
+     * @throws IOException  If the file can not be read
+     */
+    double[] getWindowDepths(Region region, int windowSize) throws IOException;
+
+    static int getNumWindows(Region region, int windowSize) {
+        return (region.getEnd() - region.getStart()) / windowSize + 1;
+    }
+
+    static int getWindowLength(Region region, int windowSize, int window) {
+        return Math.min(windowSize, region.getEnd() - region.getStart() + 1 - window * windowSize);
+    }
+}
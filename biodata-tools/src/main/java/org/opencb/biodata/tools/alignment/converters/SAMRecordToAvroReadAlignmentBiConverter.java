@@ -20,6 +20,7 @@
 package org.opencb.biodata.tools.alignment.converters;
 
 import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
 import org.ga4gh.models.*;
 import org.opencb.biodata.tools.alignment.BamUtils;
@@ -34,6 +35,14 @@ import java.util.Map;
  */
 public class SAMRecordToAvroReadAlignmentBiConverter extends AlignmentBiConverter<ReadAlignment> {
 
+    private static final CigarOperation[] CIGAR_OPERATIONS = new CigarOperation[CigarOperator.values().length];
+
+    static {
+        for (CigarOperator operator : CigarOperator.values()) {
+            CIGAR_OPERATIONS[operator.ordinal()] = toCigarOperation(operator);
+        }
+    }
+
     public SAMRecordToAvroReadAlignmentBiConverter() {
         this(false);
     }
@@ -45,31 +54,46 @@ public class SAMRecordToAvroReadAlignmentBiConverter extends AlignmentBiConverte
 
     @Override
     public ReadAlignment to(SAMRecord in) {
+        return to(in, null);
+    }
+
+    /**
+     * Convert a SAMRecord reusing a ReadAlignment, e.g. the one returned by the previous call. Positions, CIGAR units,
+     * quality and info lists of the reused object are updated in place, so converting a stream of reads only allocates
+     * the strings of each read. The reused object must not be kept by the caller between calls.
+     * @param in SAM record to convert
+     * @param reuse ReadAlignment to fill, a new one is created if null
+     * @return The reused ReadAlignment, or a new one
+     */
+    public ReadAlignment to(SAMRecord in, ReadAlignment reuse) {
+        ReadAlignment out = reuse != null ? reuse : new ReadAlignment();
+
         //id
-        String id = in.getReadName();
+        out.setId(in.getReadName());
 
         // read group id
-        String readGroupId;
         if (in.getReadGroup() != null) {
-            readGroupId = in.getReadGroup().getId();
+            out.setReadGroupId(in.getReadGroup().getId());
         } else {
-            readGroupId = "no-group";
+            out.setReadGroupId("no-group");
         }
 
         // reference name
-        String fragmentName = in.getReferenceName();
+        out.setFragmentName(in.getReferenceName());
 
         // the read is mapped in a proper pair
         boolean properPlacement = in.getReadPairedFlag() && in.getProperPairFlag();
+        out.setImproperPlacement(!properPlacement);
 
         // the read is either a PCR duplicate or an optical duplicate.
-        boolean duplicateFragment = in.getDuplicateReadFlag();
+        out.setDuplicateFragment(in.getDuplicateReadFlag());
 
         // the number of reads in the fragment (extension to SAM flag 0x1)
         int numberReads = in.getReadPairedFlag() ? 2 : 1;
+        out.setNumberReads(numberReads);
 
         // the observed length of the fragment, equivalent to TLEN in SAM
-        int fragmentLength = in.getReadPairedFlag() ? in.getInferredInsertSize() : 0;
+        out.setFragmentLength(in.getReadPairedFlag() ? in.getInferredInsertSize() : 0);
 
         // The read number in sequencing. 0-based and less than numberReads.
         // This field replaces SAM flag 0x40 and 0x80
@@ -77,73 +101,64 @@ public class SAMRecordToAvroReadAlignmentBiConverter extends AlignmentBiConverte
         if (in.getReadPairedFlag() && in.getSecondOfPairFlag()) {
             readNumber = numberReads - 1;
         }
+        out.setReadNumber(readNumber);
 
         // the read fails platform/vendor quality checks
-        boolean failedVendorQualityChecks = in.getReadFailsVendorQualityCheckFlag();
+        out.setFailedVendorQualityChecks(in.getReadFailsVendorQualityCheckFlag());
 
         // alignment
-        Position position = new Position();
+        LinearAlignment alignment = out.getAlignment();
+        if (alignment == null) {
+            alignment = new LinearAlignment(new Position(), 0, new ArrayList<>());
+            out.setAlignment(alignment);
+        }
+        Position position = alignment.getPosition();
         position.setPosition((long) in.getAlignmentStart());
         position.setReferenceName(in.getReferenceName());
 //        position.setSequenceId("");
         position.setStrand(in.getReadNegativeStrandFlag() ? Strand.NEG_STRAND : Strand.POS_STRAND);
-        int mappingQuality = in.getMappingQuality();
-
-        List<CigarUnit> cigar = new ArrayList<>();
-        for (CigarElement e: in.getCigar().getCigarElements()) {
-            CigarOperation op;
-            switch (e.getOperator()) {
-                case M:
-                    op = CigarOperation.ALIGNMENT_MATCH;
-                    break;
-                case I:
-                    op = CigarOperation.INSERT;
-                    break;
-                case D:
-                    op = CigarOperation.DELETE;
-                    break;
-                case N:
-                    op = CigarOperation.SKIP;
-                    break;
-                case S:
-                    op = CigarOperation.CLIP_SOFT;
-                    break;
-                case H:
-                    op = CigarOperation.CLIP_HARD;
-                    break;
-                case P:
-                    op = CigarOperation.PAD;
-                    break;
-                case EQ:
-                    op = CigarOperation.SEQUENCE_MATCH;
-                    break;
-                case X:
-                    op = CigarOperation.SEQUENCE_MISMATCH;
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unrecognized CigarOperator: " + e);
+        alignment.setMappingQuality(in.getMappingQuality());
+
+        // CIGAR units of the reused alignment are updated, only the missing ones are created
+        List<CigarUnit> cigar = alignment.getCigar();
+        List<CigarElement> cigarElements = in.getCigar().getCigarElements();
+        while (cigar.size() > cigarElements.size()) {
+            cigar.remove(cigar.size() - 1);
+        }
+        for (int i = 0; i < cigarElements.size(); i++) {
+            CigarElement e = cigarElements.get(i);
+            CigarOperation op = CIGAR_OPERATIONS[e.getOperator().ordinal()];
+            if (i < cigar.size()) {
+                CigarUnit cigarUnit = cigar.get(i);
+                cigarUnit.setOperation(op);
+                cigarUnit.setOperationLength((long) e.getLength());
+                cigarUnit.setReferenceSequence(null);
+            } else {
+                cigar.add(new CigarUnit(op, (long) e.getLength(), null));
             }
-            cigar.add(new CigarUnit(op, (long) e.getLength(), null));
         }
-        LinearAlignment alignment = new LinearAlignment(position, mappingQuality, cigar);
 
         // the read is the second read in a pair
-        boolean secondaryAlignment = in.getSupplementaryAlignmentFlag();
+        out.setSecondaryAlignment(in.getSupplementaryAlignmentFlag());
 
         // the alignment is supplementary
-        boolean supplementaryAlignment = in.getSupplementaryAlignmentFlag();
+        out.setSupplementaryAlignment(in.getSupplementaryAlignmentFlag());
 
         // read sequence
-        String alignedSequence = in.getReadString();
+        out.setAlignedSequence(in.getReadString());
 
-        // aligned quality
+        // aligned quality, qualities are boxed from the Integer cache
         byte[] baseQualities = in.getBaseQualities();
-        int size = baseQualities.length;
-        List<Integer> alignedQuality = new ArrayList<>(size);
+        List<Integer> alignedQuality = out.getAlignedQuality();
+        if (alignedQuality == null) {
+            alignedQuality = new ArrayList<>(baseQualities.length);
+            out.setAlignedQuality(alignedQuality);
+        } else {
+            alignedQuality.clear();
+        }
         if (adjustQuality) {
             for (byte baseQuality : baseQualities) {
-                int adjustedQuality = BamUtils.adjustQuality(baseQuality);
-                alignedQuality.add(adjustedQuality);
+                alignedQuality.add(BamUtils.adjustQuality(baseQuality));
             }
         } else {
             for (byte baseQuality : baseQualities) {
@@ -152,20 +167,37 @@ public class SAMRecordToAvroReadAlignmentBiConverter extends AlignmentBiConverte
         }
 
         // next mate position
-        Position nextMatePosition = null;
         if (in.getReadPairedFlag()) {
-            nextMatePosition = new Position();
+            Position nextMatePosition = out.getNextMatePosition();
+            if (nextMatePosition == null) {
+                nextMatePosition = new Position();
+                out.setNextMatePosition(nextMatePosition);
+            }
             nextMatePosition.setPosition((long) in.getMateAlignmentStart());
             nextMatePosition.setReferenceName(in.getMateReferenceName());
 //            nextMatePosition.setSequenceId("");
             nextMatePosition.setStrand(in.getMateNegativeStrandFlag() ? Strand.NEG_STRAND : Strand.POS_STRAND);
+        } else {
+            out.setNextMatePosition(null);
         }
 
         // A map of additional read alignment information.
-        Map<String, List<String>> info = new HashMap<>();
         List<SAMRecord.SAMTagAndValue> attributes = in.getAttributes();
+        Map<String, List<String>> info = out.getInfo();
+        if (info == null) {
+            info = new HashMap<>();
+            out.setInfo(info);
+        } else if (info.size() != attributes.size()) {
+            info.clear();
+        }
         for (SAMRecord.SAMTagAndValue tv : attributes) {
-            List<String> list = new ArrayList<>();
+            List<String> list = info.get(tv.tag);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                info.put(tv.tag, list);
+            } else {
+                list.clear();
+            }
             if (tv.value instanceof Integer) {
                 list.add("i");
             } else if (tv.value instanceof Float) {
@@ -174,16 +206,40 @@ public class SAMRecordToAvroReadAlignmentBiConverter extends AlignmentBiConverte
                 list.add("Z");
             }
             list.add("" + tv.value);
-            info.put(tv.tag, list);
         }
-
-        ReadAlignment out = new ReadAlignment(id, readGroupId, fragmentName, !properPlacement, duplicateFragment,
-                numberReads, fragmentLength, readNumber, failedVendorQualityChecks, alignment, secondaryAlignment,
-                supplementaryAlignment, alignedSequence, alignedQuality, nextMatePosition, info);
+        if (info.size() != attributes.size()) {
+            // Tags of the reused record not present in this read
+            info.keySet().removeIf(tag -> in.getAttribute(tag) == null);
+        }
 
         return out;
     }
 
+    private static CigarOperation toCigarOperation(CigarOperator operator) {
+        switch (operator) {
+            case M:
+                return CigarOperation.ALIGNMENT_MATCH;
+            case I:
+                return CigarOperation.INSERT;
+            case D:
+                return CigarOperation.DELETE;
+            case N:
+                return CigarOperation.SKIP;
+            case S:
+                return CigarOperation.CLIP_SOFT;
+            case H:
+                return CigarOperation.CLIP_HARD;
+            case P:
+                return CigarOperation.PAD;
+            case EQ:
+                return CigarOperation.SEQUENCE_MATCH;
+            case X:
+                return CigarOperation.SEQUENCE_MISMATCH;
+            default:
+                throw new IllegalArgumentException("Unrecognized CigarOperator: " + operator);
+        }
+    }
+
     @Override
     public SAMRecord from(ReadAlignment in) {
         final String samLine = getSamString(in);
@@ -26,16 +26,19 @@ import ga4gh.Reads;
 import htsjdk.samtools.*;
 import org.opencb.biodata.tools.alignment.BamUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
  * Created by pfurio on 25/10/16.
  */
 public class SAMRecordToProtoReadAlignmentBiConverter extends AlignmentBiConverter<Reads.ReadAlignment> {
 
+    private static final Common.CigarUnit.Operation[] CIGAR_OPERATIONS = new Common.CigarUnit.Operation[CigarOperator.values().length];
+
+    static {
+        for (CigarOperator operator : CigarOperator.values()) {
+            CIGAR_OPERATIONS[operator.ordinal()] = toCigarOperation(operator);
+        }
+    }
+
     public SAMRecordToProtoReadAlignmentBiConverter() {
         this(false);
     }
@@ -46,8 +49,18 @@ public class SAMRecordToProtoReadAlignmentBiConverter extends AlignmentBiConvert
 
     @Override
     public Reads.ReadAlignment to(SAMRecord in) {
+        return to(in, Reads.ReadAlignment.newBuilder());
+    }
 
-        Reads.ReadAlignment.Builder readBuilder = Reads.ReadAlignment.newBuilder();
+    /**
+     * Convert a SAMRecord reusing a builder. The builder is cleared and filled in place: CIGAR units, qualities and
+     * info values are added straight into it, without intermediate lists or maps.
+     * @param in SAM record to convert
+     * @param readBuilder Builder to reuse, it is cleared first
+     * @return The built ReadAlignment
+     */
+    public Reads.ReadAlignment to(SAMRecord in, Reads.ReadAlignment.Builder readBuilder) {
+        readBuilder.clear();
 
         // id
         readBuilder.setId(in.getReadName());
@@ -85,55 +98,20 @@ public class SAMRecordToProtoReadAlignmentBiConverter extends AlignmentBiConvert
         readBuilder.setFailedVendorQualityChecks(in.getReadFailsVendorQualityCheckFlag());
 
         // alignment
-        Reads.LinearAlignment.Builder linearAlignment = Reads.LinearAlignment.newBuilder();
-        Common.Position.Builder position = Common.Position.newBuilder();
+        Reads.LinearAlignment.Builder linearAlignment = readBuilder.getAlignmentBuilder();
+        Common.Position.Builder position = linearAlignment.getPositionBuilder();
         position.setPosition((long) in.getAlignmentStart());
         position.setReferenceName(in.getReferenceName());
 //        position.setSequenceId("");
         position.setStrand(in.getReadNegativeStrandFlag() ? Common.Strand.NEG_STRAND : Common.Strand.POS_STRAND);
 
-        linearAlignment.setPosition(position);
         linearAlignment.setMappingQuality(in.getMappingQuality());
 
-        List<Common.CigarUnit> cigar = new ArrayList<>();
         for (CigarElement e: in.getCigar().getCigarElements()) {
-            Common.CigarUnit.Builder op = Common.CigarUnit.newBuilder();
-            switch (e.getOperator()) {
-                case M:
-                    op.setOperation(Common.CigarUnit.Operation.ALIGNMENT_MATCH);
-                    break;
-                case I:
-                    op = op.setOperation(Common.CigarUnit.Operation.INSERT);
-                    break;
-                case D:
-                    op = op.setOperation(Common.CigarUnit.Operation.DELETE);
-                    break;
-                case N:
-                    op = op.setOperation(Common.CigarUnit.Operation.SKIP);
-                    break;
-                case S:
-                    op = op.setOperation(Common.CigarUnit.Operation.CLIP_SOFT);
-                    break;
-                case H:
-                    op = op.setOperation(Common.CigarUnit.Operation.CLIP_HARD);
-                    break;
-                case P:
-                    op = op.setOperation(Common.CigarUnit.Operation.PAD);
-                    break;
-                case EQ:
-                    op = op.setOperation(Common.CigarUnit.Operation.SEQUENCE_MATCH);
-                    break;
-                case X:
-                    op = op.setOperation(Common.CigarUnit.Operation.SEQUENCE_MISMATCH);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unrecognized CigarOperator: " + e);
-            }
-            op.setOperationLength((long) e.getLength());
-            cigar.add(op.build());
+            linearAlignment.addCigarBuilder()
+                    .setOperation(CIGAR_OPERATIONS[e.getOperator().ordinal()])
+                    .setOperationLength((long) e.getLength());
         }
-        linearAlignment.addAllCigar(cigar);
-        readBuilder.setAlignment(linearAlignment);
 
         // the read is the second read in a pair
         readBuilder.setSecondaryAlignment(in.getSupplementaryAlignmentFlag());
@@ -146,54 +124,67 @@ public class SAMRecordToProtoReadAlignmentBiConverter extends AlignmentBiConvert
 
         // aligned quality
         byte[] baseQualities = in.getBaseQualities();
-        int size = baseQualities.length;
-        List<Integer> alignedQuality = new ArrayList<>(size);
         if (adjustQuality) {
             for (byte baseQuality : baseQualities) {
-                int adjustedQuality = BamUtils.adjustQuality(baseQuality);
-                alignedQuality.add(adjustedQuality);
+                readBuilder.addAlignedQuality(BamUtils.adjustQuality(baseQuality));
             }
         } else {
             for (byte baseQuality : baseQualities) {
-                alignedQuality.add((int) baseQuality);
+                readBuilder.addAlignedQuality(baseQuality);
             }
         }
-        readBuilder.addAllAlignedQuality(alignedQuality);
 
         // next mate position
         if (in.getReadPairedFlag()) {
-            Common.Position.Builder nextMatePosition = Common.Position.newBuilder();
+            Common.Position.Builder nextMatePosition = readBuilder.getNextMatePositionBuilder();
             nextMatePosition.setPosition((long) in.getMateAlignmentStart());
             nextMatePosition.setReferenceName(in.getMateReferenceName());
 //            nextMatePosition.setSequenceId("");
             nextMatePosition.setStrand(in.getMateNegativeStrandFlag() ? Common.Strand.NEG_STRAND : Common.Strand.POS_STRAND);
-            readBuilder.setNextMatePosition(nextMatePosition.build());
         }
 
         // A map of additional read alignment information.
-        Map<String, ListValue> info = new HashMap<>();
-        List<SAMRecord.SAMTagAndValue> attributes = in.getAttributes();
-        for (SAMRecord.SAMTagAndValue tv : attributes) {
+        for (SAMRecord.SAMTagAndValue tv : in.getAttributes()) {
             ListValue.Builder list = ListValue.newBuilder();
-//            if (tv.value instanceof Character || tv.value instanceof String) {
             if (tv.value instanceof Integer) {
                 list.addValues(Value.newBuilder().setStringValue("i"));
-//                list.addValues(Value.newBuilder().setStringValue("" + tv.value));
             } else if (tv.value instanceof Float) {
                 list.addValues(Value.newBuilder().setStringValue("f"));
-//                list.addValues(Value.newBuilder().setNumberValue((float) tv.value));
             } else {
-                list.addValues(Value.newBuilder().setStringValue("Z").build());
-//                list.addValues(Value.newBuilder().setNumberValue((int) tv.value));
+                list.addValues(Value.newBuilder().setStringValue("Z"));
             }
             list.addValues(Value.newBuilder().setStringValue("" + tv.value));
-            info.put(tv.tag, list.build());
+            readBuilder.putInfo(tv.tag, list.build());
         }
-        readBuilder.putAllInfo(info);
 
         return readBuilder.build();
     }
 
+    private static Common.CigarUnit.Operation toCigarOperation(CigarOperator operator) {
+        switch (operator) {
+            case M:
+                return Common.CigarUnit.Operation.ALIGNMENT_MATCH;
+            case I:
+                return Common.CigarUnit.Operation.INSERT;
+            case D:
+                return Common.CigarUnit.Operation.DELETE;
+            case N:
+                return Common.CigarUnit.Operation.SKIP;
+            case S:
+                return Common.CigarUnit.Operation.CLIP_SOFT;
+            case H:
+                return Common.CigarUnit.Operation.CLIP_HARD;
+            case P:
+                return Common.CigarUnit.Operation.PAD;
+            case EQ:
+                return Common.CigarUnit.Operation.SEQUENCE_MATCH;
+            case X:
+                return Common.CigarUnit.Operation.SEQUENCE_MISMATCH;
+            default:
+                throw new IllegalArgumentException("Unrecognized CigarOperator: " + operator);
+        }
+    }
+
     @Override
     public SAMRecord from(Reads.ReadAlignment in) {
         final String samLine = getSamString(in);
@@ -0,0 +1,249 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.clinical;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.clinical.ClinicalProperty.ModeOfInheritance;
+import org.opencb.biodata.models.clinical.interpretation.DiseasePanel;
+import org.opencb.biodata.models.clinical.interpretation.VariantClassification;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+
+import java.util.*;
+
+/**
+ * Precompiled view of a list of disease panels, built once and reused for every variant.
+ *
+ * Gene IDs are mapped to a dense gene index, and each gene index to the sorted list of panels (and the mode of inheritance
+ * declared by each panel) containing it. SO terms are classified into tiers through lookup tables and panel regions are
+ * parsed once for the given assembly.
+ */
+public class DiseasePanelIndex {
+
+    public enum SoTermTier {
+        DISCARDED(null),
+        TIER_1(VariantClassification.TIER_1),
+        TIER_2(VariantClassification.TIER_2),
+        TIER_3(VariantClassification.TIER_3);
+
+        private final String tier;
+
+        SoTermTier(String tier) {
+            this.tier = tier;
+        }
+
+        public String getTier() {
+            return tier;
+        }
+    }
+
+    public static class PanelRegion {
+        private final DiseasePanel.RegionPanel regionPanel;
+        private final Region region;
+
+        PanelRegion(DiseasePanel.RegionPanel regionPanel, Region region) {
+            this.regionPanel = regionPanel;
+            this.region = region;
+        }
+
+        public DiseasePanel.RegionPanel getRegionPanel() {
+            return regionPanel;
+        }
+
+        public Region getRegion() {
+            return region;
+        }
+    }
+
+    private static final SoTermTier[] EMPTY_SO_TERM_TIERS = new SoTermTier[0];
+    private static final PanelRegion[] EMPTY_PANEL_REGIONS = new PanelRegion[0];
+
+    private final List<DiseasePanel> panels;
+    private final DiseasePanel[] panelArray;
+
+    // Gene ID -> gene index
+    private final Map<String, Integer> geneIndex;
+    // Gene index -> panel indexes, sorted
+    private final int[][] genePanels;
+    // Gene index -> mode of inheritance for each entry in genePanels (null if not defined)
+    private final ModeOfInheritance[][] genePanelMois;
+    // Gene index -> true if any panel defines a mode of inheritance for the gene
+    private final boolean[] geneHasMoi;
+
+    // Panel index -> regions parsed for the assembly
+    private final PanelRegion[][] panelRegions;
+
+    private final Set<String> lofTerms;
+    private final Map<String, SoTermTier> accessionTiers;
+
+    public DiseasePanelIndex(List<DiseasePanel> panels, String assembly, Set<String> lofTerms, Set<String> tier1Terms,
+                             Set<String> tier2Terms) {
+        this.panels = panels;
+        this.panelArray = panels == null ? new DiseasePanel[0] : panels.toArray(new DiseasePanel[0]);
+        this.lofTerms = lofTerms;
+
+        // SO accession lookup table: only LOF accessions are reported, the tier depends on the consequence type set
+        this.accessionTiers = new HashMap<>();
+        for (String term : lofTerms) {
+            if (tier1Terms.contains(term)) {
+                accessionTiers.put(term, SoTermTier.TIER_1);
+            } else if (tier2Terms.contains(term)) {
+                accessionTiers.put(term, SoTermTier.TIER_2);
+            } else {
+                accessionTiers.put(term, SoTermTier.TIER_3);
+            }
+        }
+
+        // Gene to panels, keeping the mode of inheritance of each gene in each panel
+        this.geneIndex = new HashMap<>();
+        List<List<Integer>> panelsByGene = new ArrayList<>();
+        List<Map<Integer, ModeOfInheritance>> moisByGene = new ArrayList<>();
+        for (int p = 0; p < panelArray.length; p++) {
+            DiseasePanel panel = panelArray[p];
+            if (CollectionUtils.isEmpty(panel.getGenes())) {
+                continue;
+            }
+            for (DiseasePanel.GenePanel genePanel : panel.getGenes()) {
+                if (genePanel.getId() == null) {
+                    continue;
+                }
+                Integer idx = geneIndex.get(genePanel.getId());
+                if (idx == null) {
+                    idx = panelsByGene.size();
+                    geneIndex.put(genePanel.getId().intern(), idx);
+                    panelsByGene.add(new ArrayList<>());
+                    moisByGene.add(new HashMap<>());
+                }
+                List<Integer> genePanelList = panelsByGene.get(idx);
+                if (genePanelList.isEmpty() || genePanelList.get(genePanelList.size() - 1) != p) {
+                    genePanelList.add(p);
+                }
+                if (StringUtils.isNotEmpty(genePanel.getId()) && genePanel.getModeOfInheritance() != null) {
+                    moisByGene.get(idx).put(p, genePanel.getModeOfInheritance());
+                }
+            }
+        }
+
+        int numGenes = panelsByGene.size();
+        this.genePanels = new int[numGenes][];
+        this.genePanelMois = new ModeOfInheritance[numGenes][];
+        this.geneHasMoi = new boolean[numGenes];
+        for (int g = 0; g < numGenes; g++) {
+            List<Integer> genePanelList = panelsByGene.get(g);
+            Map<Integer, ModeOfInheritance> moiMap = moisByGene.get(g);
+            genePanels[g] = new int[genePanelList.size()];
+            genePanelMois[g] = new ModeOfInheritance[genePanelList.size()];
+            for (int i = 0; i < genePanelList.size(); i++) {
+                genePanels[g][i] = genePanelList.get(i);
+                genePanelMois[g][i] = moiMap.get(genePanelList.get(i));
+            }
+            geneHasMoi[g] = !moiMap.isEmpty();
+        }
+
+        // Panel regions, parsed only once
+        this.panelRegions = new PanelRegion[panelArray.length][];
+        for (int p = 0; p < panelArray.length; p++) {
+            List<PanelRegion> regions = new ArrayList<>();
+            if (assembly != null && CollectionUtils.isNotEmpty(panelArray[p].getRegions())) {
+                for (DiseasePanel.RegionPanel regionPanel : panelArray[p].getRegions()) {
+                    if (CollectionUtils.isEmpty(regionPanel.getCoordinates())) {
+                        continue;
+                    }
+                    for (DiseasePanel.Coordinate coordinate : regionPanel.getCoordinates()) {
+                        if (assembly.equals(coordinate.getAssembly()) && StringUtils.isNotEmpty(coordinate.getLocation())) {
+                            regions.add(new PanelRegion(regionPanel, Region.parseRegion(coordinate.getLocation())));
+                        }
+                    }
+                }
+            }
+            panelRegions[p] = regions.isEmpty() ? EMPTY_PANEL_REGIONS : regions.toArray(new PanelRegion[0]);
+        }
+    }
+
+    /**
+     * Classify the SO terms of a consequence type. Terms not included in the LOF set are marked as discarded, otherwise
+     * the tier is given by the SO accession (Tier 3 when the accession is missing).
+     *
+     * @param soTerms   SO terms of a consequence type
+     * @return          Array with a tier for each SO term, in the same order
+     */
+    public SoTermTier[] getSoTermTiers(List<SequenceOntologyTerm> soTerms) {
+        if (CollectionUtils.isEmpty(soTerms)) {
+            return EMPTY_SO_TERM_TIERS;
+        }
+        SoTermTier[] tiers = new SoTermTier[soTerms.size()];
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = getSoTermTier(soTerms.get(i));
+        }
+        return tiers;
+    }
+
+    public SoTermTier getSoTermTier(SequenceOntologyTerm soTerm) {
+        if (soTerm.getName() != null && !lofTerms.contains(soTerm.getName())) {
+            return SoTermTier.DISCARDED;
+        }
+        if (soTerm.getAccession() == null) {
+            return SoTermTier.TIER_3;
+        }
+        SoTermTier tier = accessionTiers.get(soTerm.getAccession());
+        return tier == null ? SoTermTier.DISCARDED : tier;
+    }
+
+    /**
+     * @param geneId    Ensembl gene ID
+     * @return          Gene index, or -1 if the gene is not in any panel
+     */
+    public int getGeneIndex(String geneId) {
+        if (geneId == null) {
+            return -1;
+        }
+        Integer idx = geneIndex.get(geneId);
+        return idx == null ? -1 : idx;
+    }
+
+    public int[] getGenePanels(int geneIdx) {
+        return genePanels[geneIdx];
+    }
+
+    public ModeOfInheritance[] getGenePanelModeOfInheritances(int geneIdx) {
+        return genePanelMois[geneIdx];
+    }
+
+    public boolean hasModeOfInheritance(int geneIdx) {
+        return geneHasMoi[geneIdx];
+    }
+
+    public DiseasePanel getPanel(int panelIdx) {
+        return panelArray[panelIdx];
+    }
+
+    public PanelRegion[] getPanelRegions(int panelIdx) {
+        return panelRegions[panelIdx];
+    }
+
+    public int getNumGenes() {
+        return genePanels.length;
+    }
+
+    public List<DiseasePanel> getPanels() {
+        return panels;
+    }
+}
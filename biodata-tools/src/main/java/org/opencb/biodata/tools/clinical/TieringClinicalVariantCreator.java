@@ -20,7 +20,6 @@
 package org.opencb.biodata.tools.clinical;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.models.clinical.ClinicalProperty.ModeOfInheritance;
 import org.opencb.biodata.models.clinical.ClinicalProperty.Penetrance;
@@ -34,6 +33,7 @@ import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.ConsequenceType;
 import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.tools.clinical.DiseasePanelIndex.SoTermTier;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -54,6 +54,8 @@ public class TieringClinicalVariantCreator extends ClinicalVariantCreator {
             "SO:0001821", "inframe_insertion", "SO:0001822", "inframe_deletion", "SO:0001583", "missense_variant",
             "SO:0001630", "splice_region_variant", "SO:0001626", "incomplete_terminal_codon_variant"));
 
+    private DiseasePanelIndex panelIndex;
+
     public TieringClinicalVariantCreator(List<DiseasePanel> diseasePanels, Map<String, RoleInCancer> roleInCancer,
                                          Map<String, List<String>> actionableVariants, Disorder disorder,
                                          ModeOfInheritance modeOfInheritance, Penetrance penetrance, String assembly) {
@@ -81,15 +83,14 @@ public class TieringClinicalVariantCreator extends ClinicalVariantCreator {
         if (CollectionUtils.isEmpty(diseasePanels)) {
             throw new InterpretationAnalysisException("Missing gene panels for Tiering analysis");
         }
-        Map<String, Set<DiseasePanel>> geneToPanelMap = getGeneToPanelMap(diseasePanels);
+        DiseasePanelIndex panelIndex = getPanelIndex();
 
-        if (MapUtils.isEmpty(geneToPanelMap)) {
+        if (panelIndex.getNumGenes() == 0) {
             throw new InterpretationAnalysisException("Tiering analysis: no genes found in gene panels: "
                     + StringUtils.join(diseasePanels.stream().map(DiseasePanel::getId).collect(Collectors.toList()), ","));
         }
 
-        //   Gene        Panel       Moi
-        Map<String, Map<String, ModeOfInheritance>> geneToPanelMoiMap = getGeneToPanelMoiMap(diseasePanels);
+        boolean debug = logger.isDebugEnabled();
 
         // Create the list of clinical variants, with a evidence event for each 1) transcript, 2) panel and 3) consequence type (SO name)
         // Tiers classification:
@@ -111,153 +112,120 @@ public class TieringClinicalVariantCreator extends ClinicalVariantCreator {
 
                     // Only protein coding
                     if (StringUtils.isEmpty(ct.getBiotype()) || !proteinCoding.contains(ct.getBiotype())) {
-                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", discarded, biotype: "
-                                + ct.getBiotype());
+                        if (debug) {
+                            logger.debug("{}: {}, discarded, biotype: {}", variant.toStringSimple(), ct.getEnsemblTranscriptId(),
+                                    ct.getBiotype());
+                        }
                         continue;
                     }
 
                     GenomicFeature genomicFeature = new GenomicFeature(ct.getEnsemblGeneId(), "GENE", ct.getEnsemblTranscriptId(),
                             ct.getGeneName(), ct.getSequenceOntologyTerms(), null);
 
-                    if (geneToPanelMap.containsKey(ct.getEnsemblGeneId())) {
-                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", gene in panel");
+                    // SO terms are classified only once per transcript, and reused for each panel and mode of inheritance
+                    List<SequenceOntologyTerm> soTerms = ct.getSequenceOntologyTerms();
+                    SoTermTier[] soTermTiers = panelIndex.getSoTermTiers(soTerms);
+
+                    int geneIdx = panelIndex.getGeneIndex(ct.getEnsemblGeneId());
+                    if (geneIdx >= 0) {
+                        if (debug) {
+                            logger.debug("{}: {}, gene in panel", variant.toStringSimple(), ct.getEnsemblTranscriptId());
+                        }
 
                         // 2) create the clinical variant evidence for each panel
-                        Set<DiseasePanel> genePanels = geneToPanelMap.get(ct.getEnsemblGeneId());
-                        for (DiseasePanel genePanel : genePanels) {
+                        int[] genePanels = panelIndex.getGenePanels(geneIdx);
+                        ModeOfInheritance[] genePanelMois = panelIndex.getGenePanelModeOfInheritances(geneIdx);
+                        for (int i = 0; i < genePanels.length; i++) {
+                            String panelId = panelIndex.getPanel(genePanels[i]).getId();
+                            ModeOfInheritance panelMoi = genePanelMois[i];
+
                             // In addition to the panel, the mode of inheritance must match too!
-                            if (geneToPanelMoiMap.containsKey(ct.getEnsemblGeneId())) {
+                            if (panelIndex.hasModeOfInheritance(geneIdx)) {
                                 for (ModeOfInheritance moi : modeOfInheritances) {
                                     if (moi == ModeOfInheritance.UNKNOWN) {
-                                        processPanelRegion(genePanel, ct, variant, clinicalVariantEvidences);
-                                    } else if (geneToPanelMoiMap.get(ct.getEnsemblGeneId()).get(genePanel.getId()) == moi) {
-                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", moi match");
-
-                                        if (CollectionUtils.isNotEmpty(ct.getSequenceOntologyTerms())) {
+                                        processPanelRegion(panelIndex, genePanels[i], ct, variant, clinicalVariantEvidences);
+                                    } else if (panelMoi == moi) {
+                                        if (debug) {
+                                            logger.debug("{}: {}, moi match", variant.toStringSimple(), ct.getEnsemblTranscriptId());
+                                        }
 
+                                        if (soTermTiers.length > 0) {
                                             // 3) create the clinical variant evidence for consequence type (SO term)
-                                            for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-
+                                            for (int j = 0; j < soTermTiers.length; j++) {
                                                 // Only LOF extended SO terms are reported
-                                                if ((soTerm.getName() != null && !extendedLof.contains(soTerm.getName()))
-                                                        || (soTerm.getAccession() != null
-                                                        && !extendedLof.contains(soTerm.getAccession()))) {
-                                                    logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                            + ", discarded, LOF: " + soTerm.getName());
+                                                if (soTermTiers[j] == SoTermTier.DISCARDED) {
+                                                    if (debug) {
+                                                        logger.debug("{}: {}, discarded, LOF: {}", variant.toStringSimple(),
+                                                                ct.getEnsemblTranscriptId(), soTerms.get(j).getName());
+                                                    }
                                                     continue;
                                                 }
-
-                                                if (StringUtils.isNotEmpty(soTerm.getAccession())) {
-                                                    if (TIER_1_CONSEQUENCE_TYPES_SET.contains(soTerm.getAccession())) {
-                                                        // Tier 1
-                                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                                + ", reported, TIER 1, " + soTerm.getName());
-                                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                                genePanel.getId(), moi, penetrance, TIER_1, variant));
-                                                    } else if (TIER_2_CONSEQUENCE_TYPES_SET.contains(soTerm.getAccession())) {
-                                                        // Tier 2
-                                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                                + ", reported, TIER 2, " + soTerm.getName());
-                                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                                genePanel.getId(), moi, penetrance, TIER_2, variant));
-                                                    } else {
-                                                        // Tier 3
-                                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                                + ", reported, TIER 3, " + soTerm.getName());
-                                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                                genePanel.getId(), moi, penetrance, TIER_3, variant));
-                                                    }
-                                                } else {
-                                                    // Tier 3
-                                                    logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                            + ", reported, TIER 3, empty SO");
-                                                    clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                            genePanel.getId(), moi, penetrance, TIER_3, variant));
+                                                if (debug) {
+                                                    logger.debug("{}: {}, reported, {}, {}", variant.toStringSimple(),
+                                                            ct.getEnsemblTranscriptId(), soTermTiers[j].getTier(),
+                                                            soTerms.get(j).getName());
                                                 }
+                                                clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, panelId, moi,
+                                                        penetrance, soTermTiers[j].getTier(), variant));
                                             }
                                         } else {
                                             // Tier 3
-                                            logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", reported, "
-                                                    + "TIER 3, empty SO list");
-                                            clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, genePanel.getId(),
-                                                    moi, penetrance, TIER_3, variant));
-                                        }
-                                    } else {
-                                        if (geneToPanelMoiMap.get(ct.getEnsemblGeneId()).get(genePanel.getId()) == UNKNOWN) {
-                                            // Tier 3
-                                            logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", reported,"
-                                                    + " TIER 3, UNKNOWN moi");
-                                            if (CollectionUtils.isNotEmpty(ct.getSequenceOntologyTerms())) {
-                                                for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-                                                    // Only LOF extended SO terms are reported
-                                                    if ((soTerm.getName() != null && !extendedLof.contains(soTerm.getName()))
-                                                            || (soTerm.getAccession() != null
-                                                            && !extendedLof.contains(soTerm.getAccession()))) {
-                                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                                + ", discarded, LOF: " + soTerm.getName());
-                                                        continue;
-                                                    }
-                                                    logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                            + ", reported, TIER 3");
-                                                    clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                            genePanel.getId(), moi, penetrance, TIER_3, variant));
-                                                }
-                                            } else {
-                                                logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", discarded,"
-                                                        + " moi mismatch " + moi.name() + " vs panel gene moi "
-                                                        + geneToPanelMoiMap.get(ct.getEnsemblGeneId()).get(genePanel.getId()).name());
+                                            if (debug) {
+                                                logger.debug("{}: {}, reported, TIER 3, empty SO list", variant.toStringSimple(),
+                                                        ct.getEnsemblTranscriptId());
                                             }
+                                            clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, panelId, moi,
+                                                    penetrance, TIER_3, variant));
+                                        }
+                                    } else if (panelMoi == UNKNOWN) {
+                                        // Tier 3
+                                        if (debug) {
+                                            logger.debug("{}: {}, reported, TIER 3, UNKNOWN moi", variant.toStringSimple(),
+                                                    ct.getEnsemblTranscriptId());
+                                        }
+                                        if (soTermTiers.length > 0) {
+                                            addLofEvidences(variant, ct, genomicFeature, panelId, moi, TIER_3, soTermTiers,
+                                                    clinicalVariantEvidences, debug);
+                                        } else if (debug) {
+                                            logger.debug("{}: {}, discarded, moi mismatch {} vs panel gene moi {}",
+                                                    variant.toStringSimple(), ct.getEnsemblTranscriptId(), moi.name(), panelMoi.name());
                                         }
                                     }
                                 }
                             } else {
-                                logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", moi missing (UNTIERED)");
+                                if (debug) {
+                                    logger.debug("{}: {}, moi missing (UNTIERED)", variant.toStringSimple(),
+                                            ct.getEnsemblTranscriptId());
+                                }
                                 for (ModeOfInheritance moi : modeOfInheritances) {
-                                    if (CollectionUtils.isNotEmpty(ct.getSequenceOntologyTerms())) {
-                                        for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-                                            // Only LOF extended SO terms are reported
-                                            if ((soTerm.getName() != null && !extendedLof.contains(soTerm.getName()))
-                                                    || (soTerm.getAccession() != null && !extendedLof.contains(soTerm.getAccession()))) {
-                                                logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                        + ", discarded, LOF: " + soTerm.getName());
-                                                continue;
-                                            }
-                                            logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                    + ", reported, UNTIERED, LOF: " + soTerm.getName());
-                                            clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                    genePanel.getId(), moi, penetrance, "", variant));
-                                        }
+                                    if (soTermTiers.length > 0) {
+                                        addLofEvidences(variant, ct, genomicFeature, panelId, moi, "", soTermTiers,
+                                                clinicalVariantEvidences, debug);
                                     } else {
-                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                                + ", reported, UNTIERED, missing LOF");
-                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature,
-                                                genePanel.getId(), moi, penetrance, "", variant));
+                                        if (debug) {
+                                            logger.debug("{}: {}, reported, UNTIERED, missing LOF", variant.toStringSimple(),
+                                                    ct.getEnsemblTranscriptId());
+                                        }
+                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, panelId, moi,
+                                                penetrance, "", variant));
                                     }
                                 }
                             }
                         }
                     } else {
                         // Tier 3
-                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", not in panel");
+                        if (debug) {
+                            logger.debug("{}: {}, not in panel", variant.toStringSimple(), ct.getEnsemblTranscriptId());
+                        }
                         for (ModeOfInheritance moi : modeOfInheritances) {
-                            if (CollectionUtils.isNotEmpty(ct.getSequenceOntologyTerms())) {
-                                for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-                                    // Only LOF extended SO terms are reported
-                                    if ((soTerm.getName() != null && !extendedLof.contains(soTerm.getName()))
-                                            || (soTerm.getAccession() != null && !extendedLof.contains(soTerm.getAccession()))) {
-                                        logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", discarded, LOF: "
-                                                + soTerm.getName());
-                                        continue;
-                                    }
-
-                                    logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId() + ", reported, TIER 3, LOF: "
-                                            + soTerm.getName());
-                                    clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, null, moi, penetrance,
-                                            TIER_3, variant));
-                                }
+                            if (soTermTiers.length > 0) {
+                                addLofEvidences(variant, ct, genomicFeature, null, moi, TIER_3, soTermTiers, clinicalVariantEvidences,
+                                        debug);
                             } else {
-                                logger.debug(variant.toStringSimple() + ": " + ct.getEnsemblTranscriptId()
-                                        + ", reported, TIER 3, missing LOF");
+                                if (debug) {
+                                    logger.debug("{}: {}, reported, TIER 3, missing LOF", variant.toStringSimple(),
+                                            ct.getEnsemblTranscriptId());
+                                }
                                 clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, null, moi, penetrance,
                                         TIER_3, variant));
                             }
@@ -268,7 +236,9 @@ public class TieringClinicalVariantCreator extends ClinicalVariantCreator {
 
             // If we have clinical variant evidence, then we have to create the clinical variant
             if (CollectionUtils.isNotEmpty(clinicalVariantEvidences)) {
-                logger.debug(variant.toStringSimple() + ": reported, num. evidences: " + clinicalVariantEvidences.size());
+                if (debug) {
+                    logger.debug("{}: reported, num. evidences: {}", variant.toStringSimple(), clinicalVariantEvidences.size());
+                }
                 ClinicalVariant clinicalVariant = new ClinicalVariant(variant.getImpl(), Collections.emptyList(), Collections.emptyList(),
                         Collections.emptyMap(), "", ClinicalVariant.Status.NOT_REVIEWED, Collections.emptyMap());
                 clinicalVariant.setEvidences(clinicalVariantEvidences);
@@ -281,34 +251,57 @@ public class TieringClinicalVariantCreator extends ClinicalVariantCreator {
         return clinicalVariants;
     }
 
-    private void processPanelRegion(DiseasePanel genePanel, ConsequenceType ct, Variant variant,
-                                    List<ClinicalVariantEvidence> clinicalVariantEvidences) {
-        if (genePanel != null && CollectionUtils.isNotEmpty(genePanel.getRegions())) {
-            for (DiseasePanel.RegionPanel panelRegion : genePanel.getRegions()) {
-                if (CollectionUtils.isNotEmpty(genePanel.getRegions())) {
-                    for (DiseasePanel.Coordinate coordinate : panelRegion.getCoordinates()) {
-                        if (assembly.equals(coordinate.getAssembly())) {
-                            if (StringUtils.isNotEmpty(coordinate.getLocation())) {
-                                Region region = Region.parseRegion(coordinate.getLocation());
-                                GenomicFeature genomicFeature = new GenomicFeature(region.toString(), "REGION",
-                                        ct.getEnsemblTranscriptId(), ct.getGeneName(), Collections.emptyList(), panelRegion.getXrefs());
-
-                                int overlapPercentage = getOverlapPercentage(region, variant);
-                                if (overlapPercentage >= panelRegion.getRequiredOverlapPercentage()) {
-                                    for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, genePanel.getId(),
-                                                ModeOfInheritance.UNKNOWN, penetrance, TIER_1, variant));
-                                    }
-                                } else {
-                                    for (SequenceOntologyTerm soTerm : ct.getSequenceOntologyTerms()) {
-                                        clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, genePanel.getId(),
-                                                ModeOfInheritance.UNKNOWN, penetrance, TIER_2, variant));
-                                    }
-                                }
-                            }
-                        }
-                    }
+    /**
+     * Return the index built from the current disease panels, rebuilding it if the panels have been replaced.
+     *
+     * @return Disease panel index
+     */
+    protected DiseasePanelIndex getPanelIndex() {
+        if (panelIndex == null || panelIndex.getPanels() != diseasePanels) {
+            panelIndex = new DiseasePanelIndex(diseasePanels, assembly, extendedLof, TIER_1_CONSEQUENCE_TYPES_SET,
+                    TIER_2_CONSEQUENCE_TYPES_SET);
+        }
+        return panelIndex;
+    }
+
+    private void addLofEvidences(Variant variant, ConsequenceType ct, GenomicFeature genomicFeature, String panelId,
+                                 ModeOfInheritance moi, String tier, SoTermTier[] soTermTiers,
+                                 List<ClinicalVariantEvidence> clinicalVariantEvidences, boolean debug) {
+        for (int j = 0; j < soTermTiers.length; j++) {
+            // Only LOF extended SO terms are reported
+            if (soTermTiers[j] == SoTermTier.DISCARDED) {
+                if (debug) {
+                    logger.debug("{}: {}, discarded, LOF: {}", variant.toStringSimple(), ct.getEnsemblTranscriptId(),
+                            ct.getSequenceOntologyTerms().get(j).getName());
                 }
+                continue;
+            }
+            if (debug) {
+                logger.debug("{}: {}, reported, {}, LOF: {}", variant.toStringSimple(), ct.getEnsemblTranscriptId(),
+                        StringUtils.isEmpty(tier) ? "UNTIERED" : tier, ct.getSequenceOntologyTerms().get(j).getName());
+            }
+            clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, panelId, moi, penetrance, tier, variant));
+        }
+    }
+
+    private void processPanelRegion(DiseasePanelIndex panelIndex, int panelIdx, ConsequenceType ct, Variant variant,
+                                    List<ClinicalVariantEvidence> clinicalVariantEvidences) {
+        DiseasePanelIndex.PanelRegion[] panelRegions = panelIndex.getPanelRegions(panelIdx);
+        if (panelRegions.length == 0 || CollectionUtils.isEmpty(ct.getSequenceOntologyTerms())) {
+            return;
+        }
+        String panelId = panelIndex.getPanel(panelIdx).getId();
+        int numSoTerms = ct.getSequenceOntologyTerms().size();
+        for (DiseasePanelIndex.PanelRegion panelRegion : panelRegions) {
+            Region region = panelRegion.getRegion();
+            GenomicFeature genomicFeature = new GenomicFeature(region.toString(), "REGION", ct.getEnsemblTranscriptId(),
+                    ct.getGeneName(), Collections.emptyList(), panelRegion.getRegionPanel().getXrefs());
+
+            int overlapPercentage = getOverlapPercentage(region, variant);
+            String tier = overlapPercentage >= panelRegion.getRegionPanel().getRequiredOverlapPercentage() ? TIER_1 : TIER_2;
+            for (int i = 0; i < numSoTerms; i++) {
+                clinicalVariantEvidences.add(createClinicalVariantEvidence(genomicFeature, panelId, ModeOfInheritance.UNKNOWN,
+                        penetrance, tier, variant));
             }
         }
     }
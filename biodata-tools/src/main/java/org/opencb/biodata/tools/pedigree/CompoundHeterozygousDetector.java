@@ -0,0 +1,381 @@
+package org.opencb.biodata.tools.pedigree;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Streaming compound heterozygous detector for one or more trios of the same study.
+ *
+ * Variants must be sorted by chromosome and position. Candidate variants are grouped by transcript, and each transcript
+ * group is emitted and evicted as soon as the iterator moves past the transcript end, or to another chromosome when
+ * transcript ends are not provided. Genotypes are decoded once per variant and sample into integer flags, so variants
+ * that are not candidates for any trio are discarded without looking at their annotation.
+ */
+public class CompoundHeterozygousDetector {
+
+    static final int HAS_REF = 1;
+    static final int HAS_ALT = 2;
+    static final int HET = HAS_REF | HAS_ALT;
+
+    private static final int NONE = 0;
+    private static final int MATERNAL = 1;
+    private static final int PATERNAL = 2;
+
+    private final Trio[] trios;
+    private final Set<String> acceptedSoTerms;
+    private final Set<String> acceptedBiotypes;
+    private final ToIntFunction<String> transcriptEnd;
+
+    // Samples used by any trio, decoded once per variant
+    private final int[] samples;
+    private final int[] sampleGenotypes;
+    private final int[] trioOrigins;
+
+    private final Map<String, TranscriptGroup> transcriptGroups;
+    private final PriorityQueue<TranscriptGroup> transcriptGroupsByEnd;
+    private String chromosome;
+    private int groupCounter;
+
+    private int variantsRetrieved;
+    private int groupsEmitted;
+
+    private final Logger logger = LoggerFactory.getLogger(CompoundHeterozygousDetector.class);
+
+    public static class CompoundHeterozygousGroup {
+
+        private final Trio trio;
+        private final String transcriptId;
+        private final List<Variant> maternalVariants;
+        private final List<Variant> paternalVariants;
+
+        public CompoundHeterozygousGroup(Trio trio, String transcriptId, List<Variant> maternalVariants,
+                                         List<Variant> paternalVariants) {
+            this.trio = trio;
+            this.transcriptId = transcriptId;
+            this.maternalVariants = maternalVariants;
+            this.paternalVariants = paternalVariants;
+        }
+
+        public List<Variant> getVariants() {
+            List<Variant> variants = new ArrayList<>(maternalVariants.size() + paternalVariants.size());
+            variants.addAll(maternalVariants);
+            variants.addAll(paternalVariants);
+            return variants;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("CompoundHeterozygousGroup{");
+            sb.append("trio=").append(trio.getId());
+            sb.append(", transcriptId='").append(transcriptId).append('\'');
+            sb.append(", maternalVariants=").append(maternalVariants);
+            sb.append(", paternalVariants=").append(paternalVariants);
+            sb.append('}');
+            return sb.toString();
+        }
+
+        public Trio getTrio() {
+            return trio;
+        }
+
+        public String getTranscriptId() {
+            return transcriptId;
+        }
+
+        public List<Variant> getMaternalVariants() {
+            return maternalVariants;
+        }
+
+        public List<Variant> getPaternalVariants() {
+            return paternalVariants;
+        }
+    }
+
+    private static class TranscriptGroup {
+        private final String transcriptId;
+        private final int end;
+        private final int order;
+        // Trio index -> candidate variants
+        private final Map<Integer, List<Variant>> maternal = new HashMap<>(4);
+        private final Map<Integer, List<Variant>> paternal = new HashMap<>(4);
+
+        TranscriptGroup(String transcriptId, int end, int order) {
+            this.transcriptId = transcriptId;
+            this.end = end;
+            this.order = order;
+        }
+
+        void add(int trioIdx, int origin, Variant variant) {
+            List<Variant> list = (origin == MATERNAL ? maternal : paternal).computeIfAbsent(trioIdx, k -> new ArrayList<>(2));
+            // The same transcript may be listed more than once in the annotation
+            if (list.isEmpty() || list.get(list.size() - 1) != variant) {
+                list.add(variant);
+            }
+        }
+    }
+
+    public CompoundHeterozygousDetector(List<Trio> trios) {
+        this(trios, ModeOfInheritance.extendedLof, ModeOfInheritance.proteinCoding, null);
+    }
+
+    /**
+     * @param trios             Trios to analyse in the same pass. Trios without any parent are ignored
+     * @param acceptedSoTerms   Accepted SO term names or accessions, empty to accept all
+     * @param acceptedBiotypes  Accepted transcript biotypes, empty to accept all
+     * @param transcriptEnd     Transcript ID to transcript end, values lower than 1 for unknown transcripts. If null,
+     *                          transcript groups are emitted when the chromosome changes
+     */
+    public CompoundHeterozygousDetector(List<Trio> trios, Set<String> acceptedSoTerms, Set<String> acceptedBiotypes,
+                                        ToIntFunction<String> transcriptEnd) {
+        List<Trio> validTrios = new ArrayList<>(trios.size());
+        for (Trio trio : trios) {
+            if (trio.getMotherSampleIdx() < 0 && trio.getFatherSampleIdx() < 0) {
+                logger.warn("Missing mother and father computing CompoundHet for trio '{}'", trio.getId());
+            } else {
+                validTrios.add(trio);
+            }
+        }
+        this.trios = validTrios.toArray(new Trio[0]);
+        this.acceptedSoTerms = acceptedSoTerms == null ? Collections.emptySet() : acceptedSoTerms;
+        this.acceptedBiotypes = acceptedBiotypes == null ? Collections.emptySet() : acceptedBiotypes;
+        this.transcriptEnd = transcriptEnd;
+
+        Set<Integer> sampleSet = new TreeSet<>();
+        int maxSampleIdx = -1;
+        for (Trio trio : this.trios) {
+            for (int sampleIdx : new int[]{trio.getProbandSampleIdx(), trio.getMotherSampleIdx(), trio.getFatherSampleIdx()}) {
+                if (sampleIdx >= 0) {
+                    sampleSet.add(sampleIdx);
+                    maxSampleIdx = Math.max(maxSampleIdx, sampleIdx);
+                }
+            }
+        }
+        this.samples = sampleSet.stream().mapToInt(Integer::intValue).toArray();
+        this.sampleGenotypes = new int[maxSampleIdx + 1];
+        this.trioOrigins = new int[this.trios.length];
+
+        this.transcriptGroups = new HashMap<>();
+        this.transcriptGroupsByEnd = new PriorityQueue<>(Comparator.comparingInt((TranscriptGroup g) -> g.end)
+                .thenComparingInt(g -> g.order));
+    }
+
+    /**
+     * Process all the variants of the iterator, emitting every compound heterozygous group found.
+     *
+     * @param iterator  Variant iterator, sorted by chromosome and position
+     * @param consumer  Consumer of the compound heterozygous groups
+     */
+    public void run(Iterator<Variant> iterator, Consumer<CompoundHeterozygousGroup> consumer) {
+        while (iterator.hasNext()) {
+            add(iterator.next(), consumer);
+        }
+        flush(consumer);
+
+        logger.debug("CH - Number of variants retrieved: {}; Found {} CH groups for {} trios", variantsRetrieved,
+                groupsEmitted, trios.length);
+    }
+
+    public List<CompoundHeterozygousGroup> run(Iterator<Variant> iterator) {
+        List<CompoundHeterozygousGroup> groups = new ArrayList<>();
+        run(iterator, groups::add);
+        return groups;
+    }
+
+    /**
+     * Add the next variant. Transcript groups ending before this variant are emitted first.
+     *
+     * @param variant   Variant, not before the previous one
+     * @param consumer  Consumer of the compound heterozygous groups
+     */
+    public void add(Variant variant, Consumer<CompoundHeterozygousGroup> consumer) {
+        variantsRetrieved++;
+
+        if (!variant.getChromosome().equals(chromosome)) {
+            flush(consumer);
+            chromosome = variant.getChromosome();
+        } else {
+            while (!transcriptGroupsByEnd.isEmpty() && transcriptGroupsByEnd.peek().end < variant.getStart()) {
+                close(transcriptGroupsByEnd.poll(), consumer);
+            }
+        }
+
+        if (!computeOrigins(variant) || variant.getAnnotation() == null
+                || variant.getAnnotation().getConsequenceTypes() == null) {
+            return;
+        }
+
+        for (ConsequenceType consequenceType : variant.getAnnotation().getConsequenceTypes()) {
+            String transcriptId = consequenceType.getEnsemblTranscriptId();
+            if (StringUtils.isEmpty(transcriptId) || !isAccepted(consequenceType)) {
+                continue;
+            }
+            TranscriptGroup group = transcriptGroups.get(transcriptId);
+            if (group == null) {
+                int end = transcriptEnd == null ? Integer.MAX_VALUE : transcriptEnd.applyAsInt(transcriptId);
+                group = new TranscriptGroup(transcriptId, end > 0 ? end : Integer.MAX_VALUE, groupCounter++);
+                transcriptGroups.put(transcriptId, group);
+                transcriptGroupsByEnd.add(group);
+            }
+            for (int t = 0; t < trios.length; t++) {
+                if (trioOrigins[t] != NONE) {
+                    group.add(t, trioOrigins[t], variant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emit and evict all the open transcript groups.
+     *
+     * @param consumer  Consumer of the compound heterozygous groups
+     */
+    public void flush(Consumer<CompoundHeterozygousGroup> consumer) {
+        while (!transcriptGroupsByEnd.isEmpty()) {
+            close(transcriptGroupsByEnd.poll(), consumer);
+        }
+        chromosome = null;
+    }
+
+    private void close(TranscriptGroup group, Consumer<CompoundHeterozygousGroup> consumer) {
+        transcriptGroups.remove(group.transcriptId);
+        for (Map.Entry<Integer, List<Variant>> entry : group.maternal.entrySet()) {
+            List<Variant> paternal = group.paternal.get(entry.getKey());
+            if (paternal != null) {
+                groupsEmitted++;
+                consumer.accept(new CompoundHeterozygousGroup(trios[entry.getKey()], group.transcriptId, entry.getValue(),
+                        paternal));
+            }
+        }
+    }
+
+    private boolean isAccepted(ConsequenceType consequenceType) {
+        if (!acceptedBiotypes.isEmpty() && !acceptedBiotypes.contains(consequenceType.getBiotype())) {
+            return false;
+        }
+        if (CollectionUtils.isEmpty(consequenceType.getSequenceOntologyTerms())) {
+            return false;
+        }
+        if (acceptedSoTerms.isEmpty()) {
+            return true;
+        }
+        for (SequenceOntologyTerm soTerm : consequenceType.getSequenceOntologyTerms()) {
+            if (acceptedSoTerms.contains(soTerm.getName()) || acceptedSoTerms.contains(soTerm.getAccession())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode the genotypes of the trio samples and compute the parental origin of the variant for each trio.
+     *
+     * @param variant   Variant
+     * @return          true if the variant is a candidate for any trio
+     */
+    private boolean computeOrigins(Variant variant) {
+        StudyEntry studyEntry = variant.getStudies().get(0);
+        List<String> keys = studyEntry.getSampleDataKeys();
+        int gtIdx = keys == null || keys.isEmpty() ? -1 : ("GT".equals(keys.get(0)) ? 0 : keys.indexOf("GT"));
+        if (gtIdx < 0) {
+            return false;
+        }
+
+        for (int sampleIdx : samples) {
+            SampleEntry sampleEntry = studyEntry.getSample(sampleIdx);
+            sampleGenotypes[sampleIdx] = sampleEntry == null || sampleEntry.getData().size() <= gtIdx
+                    ? 0
+                    : decodeGenotype(sampleEntry.getData().get(gtIdx));
+        }
+
+        boolean candidate = false;
+        for (int t = 0; t < trios.length; t++) {
+            Trio trio = trios[t];
+            trioOrigins[t] = NONE;
+
+            if (sampleGenotypes[trio.getProbandSampleIdx()] != HET) {
+                continue;
+            }
+
+            int motherGenotype;
+            int fatherGenotype;
+            if (trio.getMotherSampleIdx() < 0) {
+                fatherGenotype = sampleGenotypes[trio.getFatherSampleIdx()];
+                motherGenotype = getComplementaryGenotype(fatherGenotype);
+            } else if (trio.getFatherSampleIdx() < 0) {
+                motherGenotype = sampleGenotypes[trio.getMotherSampleIdx()];
+                fatherGenotype = getComplementaryGenotype(motherGenotype);
+            } else {
+                motherGenotype = sampleGenotypes[trio.getMotherSampleIdx()];
+                fatherGenotype = sampleGenotypes[trio.getFatherSampleIdx()];
+            }
+
+            boolean motherAlt = (motherGenotype & HAS_ALT) != 0;
+            boolean fatherAlt = (fatherGenotype & HAS_ALT) != 0;
+            if (motherAlt != fatherAlt) {
+                trioOrigins[t] = motherAlt ? MATERNAL : PATERNAL;
+                candidate = true;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Decode a genotype into HAS_REF and HAS_ALT flags, for alleles 0 and 1 respectively.
+     *
+     * @param gt    Genotype, e.g. 0/1, 1|0, ./1
+     * @return      Genotype flags
+     */
+    static int decodeGenotype(String gt) {
+        int flags = 0;
+        int allele = 0;
+        int length = 0;
+        boolean numeric = true;
+        for (int i = 0; i <= gt.length(); i++) {
+            char c = i < gt.length() ? gt.charAt(i) : '/';
+            if (c == '/' || c == '|') {
+                if (length > 0 && numeric) {
+                    if (allele == 0) {
+                        flags |= HAS_REF;
+                    } else if (allele == 1) {
+                        flags |= HAS_ALT;
+                    }
+                }
+                allele = 0;
+                length = 0;
+                numeric = true;
+            } else {
+                length++;
+                if (numeric && c >= '0' && c <= '9') {
+                    allele = allele * 10 + (c - '0');
+                } else {
+                    numeric = false;
+                }
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Genotype assumed for a missing parent, so only the known parent explains the variant.
+     */
+    private static int getComplementaryGenotype(int parentGenotype) {
+        if (parentGenotype == HET) {
+            return HAS_REF;
+        } else if (parentGenotype == HAS_REF) {
+            return HET;
+        } else {
+            return HAS_ALT;
+        }
+    }
+}
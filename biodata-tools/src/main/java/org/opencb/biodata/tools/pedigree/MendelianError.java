@@ -30,6 +30,36 @@ public class MendelianError {
         HOM_REF, HOM_VAR, HET
     }
 
+    // Integer genotype codes, see getGenotypeCode
+    public static final int GT_HOM_REF = 0;
+    public static final int GT_HET = 1;
+    public static final int GT_HOM_VAR = 2;
+    public static final int GT_MISSING = 3;
+
+    // Chromosome classes, see getChromosomeClass
+    public static final int CHROMOSOME_AUTOSOMAL = 0;
+    public static final int CHROMOSOME_CLASS_X = 1;
+    public static final int CHROMOSOME_CLASS_Y = 2;
+    public static final int CHROMOSOME_CLASS_MT = 3;
+
+    // Error code for each (father, mother, child, chromosome class), precomputed from the Genotype based method
+    private static final byte[] codeTable = new byte[4 * 4 * 4 * 4];
+
+    static {
+        Genotype[] genotypes = new Genotype[]{new Genotype("0/0"), new Genotype("0/1"), new Genotype("1/1"), new Genotype("./.")};
+        String[] chromosomes = new String[]{"1", CHROMOSOME_X, CHROMOSOME_Y, "MT"};
+        for (int father = 0; father < 4; father++) {
+            for (int mother = 0; mother < 4; mother++) {
+                for (int child = 0; child < 4; child++) {
+                    for (int chrom = 0; chrom < 4; chrom++) {
+                        codeTable[tableIndex(father, mother, child, chrom)] = (byte) compute(genotypes[father], genotypes[mother],
+                                genotypes[child], chromosomes[chrom]);
+                    }
+                }
+            }
+        }
+    }
+
     public static int compute(@Nullable Genotype fatherGt, @Nullable Genotype motherGt, Genotype childGt,
                                   String chromosome) {
         // The error classification is available at:
@@ -134,6 +164,115 @@ public class MendelianError {
         return code;
     }
 
+    /**
+     * Mendelian error code from precomputed integer genotype codes. This is equivalent to the Genotype based method, but
+     * does not need to build any Genotype object.
+     *
+     * @param fatherCode        Father genotype code, GT_HET if the father is missing
+     * @param motherCode        Mother genotype code, GT_HET if the mother is missing
+     * @param childCode         Child genotype code
+     * @param chromosomeClass   Chromosome class
+     * @return Mendelian error code, 0 if there is no error
+     */
+    public static int compute(int fatherCode, int motherCode, int childCode, int chromosomeClass) {
+        return codeTable[tableIndex(fatherCode, motherCode, childCode, chromosomeClass)];
+    }
+
+    private static int tableIndex(int fatherCode, int motherCode, int childCode, int chromosomeClass) {
+        return ((fatherCode << 6) | (motherCode << 4) | (childCode << 2) | chromosomeClass);
+    }
+
+    /**
+     * Encode a genotype by its number of alternate alleles: GT_HOM_REF, GT_HET (one alternate allele), GT_HOM_VAR (two or
+     * more alternate alleles) or GT_MISSING if all the alleles are missing.
+     *
+     * @param gt    Genotype string
+     * @return Genotype code
+     */
+    public static int getGenotypeCode(String gt) {
+        switch (gt) {
+            case Genotype.HOM_REF:
+            case "0|0":
+            case "0":
+                return GT_HOM_REF;
+            case Genotype.HET_REF:
+            case "0|1":
+            case "1|0":
+            case "1":
+                return GT_HET;
+            case Genotype.HOM_VAR:
+            case "1|1":
+                return GT_HOM_VAR;
+            case Genotype.NOCALL:
+            case "./.":
+            case ".|.":
+                return GT_MISSING;
+            default:
+                break;
+        }
+
+        int altCount = 0;
+        boolean called = false;
+        int allele = 0;
+        int length = 0;
+        for (int i = 0; i <= gt.length(); i++) {
+            char c = i < gt.length() ? gt.charAt(i) : '/';
+            if (c == '/' || c == '|') {
+                if (length > 0 && allele >= 0) {
+                    called = true;
+                    if (allele > 0) {
+                        altCount++;
+                    }
+                }
+                allele = 0;
+                length = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (allele >= 0) {
+                    allele = allele * 10 + (c - '0');
+                }
+                length++;
+            } else if (c == '.' || c == '-') {
+                // Missing allele, either "." or "-1"
+                allele = -1;
+                length++;
+            } else {
+                // Not a numeric genotype
+                return getGenotypeCode(new Genotype(gt));
+            }
+        }
+        if (!called) {
+            return GT_MISSING;
+        }
+        return altCount == 0 ? GT_HOM_REF : (altCount == 1 ? GT_HET : GT_HOM_VAR);
+    }
+
+    public static int getGenotypeCode(Genotype gt) {
+        if (gt.getCode() == AllelesCode.ALLELES_MISSING) {
+            return GT_MISSING;
+        }
+        switch (getAlternateAlleleCount(gt)) {
+            case HOM_REF:
+                return GT_HOM_REF;
+            case HET:
+                return GT_HET;
+            default:
+                return GT_HOM_VAR;
+        }
+    }
+
+    public static int getChromosomeClass(String chromosome) {
+        String chrom = chromosome == null ? "" : chromosome.toUpperCase();
+        if (chrom.equals(CHROMOSOME_X)) {
+            return CHROMOSOME_CLASS_X;
+        } else if (chrom.equals(CHROMOSOME_Y)) {
+            return CHROMOSOME_CLASS_Y;
+        } else if (CHROMOSOME_MT.contains(chrom)) {
+            return CHROMOSOME_CLASS_MT;
+        } else {
+            return CHROMOSOME_AUTOSOMAL;
+        }
+    }
+
     public static boolean isDeNovo(Genotype fatherGt, Genotype motherGt, Genotype childGt, String chromosome) {
         return deNovoCodes.contains(compute(fatherGt, motherGt, childGt, chromosome));
     }
@@ -0,0 +1,164 @@
+package org.opencb.biodata.tools.pedigree;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Single pass de novo and Mendelian error scanner for many trios of the same multi-sample study.
+ *
+ * The genotype of each sample is encoded once per variant, and every trio is then evaluated with the precomputed
+ * (father, mother, child, chromosome class) lookup table of {@link MendelianError}.
+ */
+public class MendelianErrorScanner {
+
+    private static final int NUM_CODES = 13;
+
+    private final Trio[] trios;
+    private final FamilyResult[] results;
+
+    // Samples used by any trio, decoded once per variant
+    private final int[] samples;
+    private final int[] sampleGenotypes;
+
+    private String chromosome;
+    private int chromosomeClass;
+    private long variantsRetrieved;
+
+    private final Logger logger = LoggerFactory.getLogger(MendelianErrorScanner.class);
+
+    public static class FamilyResult {
+
+        private final Trio trio;
+        private final List<Variant> deNovoVariants;
+        private final long[] mendelianErrorCounts;
+
+        FamilyResult(Trio trio) {
+            this.trio = trio;
+            this.deNovoVariants = new ArrayList<>();
+            this.mendelianErrorCounts = new long[NUM_CODES];
+        }
+
+        /**
+         * @return Total number of Mendelian errors, de novo variants included
+         */
+        public long getNumMendelianErrors() {
+            long total = 0;
+            for (int code = 1; code < NUM_CODES; code++) {
+                total += mendelianErrorCounts[code];
+            }
+            return total;
+        }
+
+        public long getNumMendelianErrors(int code) {
+            return mendelianErrorCounts[code];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("FamilyResult{");
+            sb.append("trio=").append(trio.getId());
+            sb.append(", deNovoVariants=").append(deNovoVariants.size());
+            sb.append(", mendelianErrorCounts=").append(Arrays.toString(mendelianErrorCounts));
+            sb.append('}');
+            return sb.toString();
+        }
+
+        public Trio getTrio() {
+            return trio;
+        }
+
+        public List<Variant> getDeNovoVariants() {
+            return deNovoVariants;
+        }
+
+        /**
+         * @return Number of Mendelian errors indexed by error code, see {@link MendelianError#compute}
+         */
+        public long[] getMendelianErrorCounts() {
+            return mendelianErrorCounts;
+        }
+    }
+
+    public MendelianErrorScanner(List<Trio> trios) {
+        this.trios = trios.toArray(new Trio[0]);
+        this.results = new FamilyResult[this.trios.length];
+
+        Set<Integer> sampleSet = new TreeSet<>();
+        int maxSampleIdx = -1;
+        for (int t = 0; t < this.trios.length; t++) {
+            Trio trio = this.trios[t];
+            if (trio.getProbandSampleIdx() < 0) {
+                throw new IllegalArgumentException("Missing proband sample for trio '" + trio.getId() + "'");
+            }
+            results[t] = new FamilyResult(trio);
+            for (int sampleIdx : new int[]{trio.getProbandSampleIdx(), trio.getMotherSampleIdx(), trio.getFatherSampleIdx()}) {
+                if (sampleIdx >= 0) {
+                    sampleSet.add(sampleIdx);
+                    maxSampleIdx = Math.max(maxSampleIdx, sampleIdx);
+                }
+            }
+        }
+        this.samples = sampleSet.stream().mapToInt(Integer::intValue).toArray();
+        this.sampleGenotypes = new int[maxSampleIdx + 1];
+    }
+
+    /**
+     * Scan all the variants of the iterator.
+     *
+     * @param iterator  Variant iterator
+     * @return  Result for each trio, in the same order
+     */
+    public List<FamilyResult> run(Iterator<Variant> iterator) {
+        while (iterator.hasNext()) {
+            add(iterator.next());
+        }
+        logger.debug("Mendelian errors - Number of variants retrieved: {}; Number of trios: {}", variantsRetrieved, trios.length);
+        return getResults();
+    }
+
+    public void add(Variant variant) {
+        variantsRetrieved++;
+
+        if (!variant.getChromosome().equals(chromosome)) {
+            chromosome = variant.getChromosome();
+            chromosomeClass = MendelianError.getChromosomeClass(chromosome);
+        }
+
+        StudyEntry studyEntry = variant.getStudies().get(0);
+        List<String> keys = studyEntry.getSampleDataKeys();
+        int gtIdx = keys == null || keys.isEmpty() ? -1 : ("GT".equals(keys.get(0)) ? 0 : keys.indexOf("GT"));
+        if (gtIdx < 0) {
+            return;
+        }
+
+        for (int sampleIdx : samples) {
+            SampleEntry sampleEntry = studyEntry.getSample(sampleIdx);
+            sampleGenotypes[sampleIdx] = sampleEntry == null || sampleEntry.getData().size() <= gtIdx
+                    ? MendelianError.GT_MISSING
+                    : MendelianError.getGenotypeCode(sampleEntry.getData().get(gtIdx));
+        }
+
+        for (int t = 0; t < trios.length; t++) {
+            Trio trio = trios[t];
+            // A missing parent is considered heterozygous, so the error only depends on the known parent
+            int fatherCode = trio.getFatherSampleIdx() < 0 ? MendelianError.GT_HET : sampleGenotypes[trio.getFatherSampleIdx()];
+            int motherCode = trio.getMotherSampleIdx() < 0 ? MendelianError.GT_HET : sampleGenotypes[trio.getMotherSampleIdx()];
+            int code = MendelianError.compute(fatherCode, motherCode, sampleGenotypes[trio.getProbandSampleIdx()], chromosomeClass);
+            if (code != 0) {
+                results[t].mendelianErrorCounts[code]++;
+                if (MendelianError.isDeNovo(code)) {
+                    results[t].deNovoVariants.add(variant);
+                }
+            }
+        }
+    }
+
+    public List<FamilyResult> getResults() {
+        return Arrays.asList(results);
+    }
+}
@@ -618,43 +618,31 @@ public class ModeOfInheritance {
     }
 
     public static List<Variant> deNovo(Iterator<Variant> iterator, int probandSampleIdx, int motherSampleIdx, int fatherSampleIdx) {
-        List<Variant> variants = new ArrayList<>();
+        MendelianErrorScanner scanner = new MendelianErrorScanner(Collections.singletonList(
+                new Trio(String.valueOf(probandSampleIdx), probandSampleIdx, motherSampleIdx, fatherSampleIdx)));
+        List<Variant> variants = scanner.run(iterator).get(0).getDeNovoVariants();
 
-        Genotype motherGenotype;
-        Genotype fatherGenotype;
-
-        int variantsRetrieved = 0;
-        while (iterator.hasNext()) {
-            Variant variant = iterator.next();
-            variantsRetrieved += 1;
-
-            StudyEntry studyEntry = variant.getStudies().get(0);
-            int gtIdx = studyEntry.getSampleDataKeys().indexOf("GT");
-
-            Genotype probandGenotype = new Genotype(studyEntry.getSampleData(probandSampleIdx).get(gtIdx));
-
-            if (motherSampleIdx < 0 && fatherSampleIdx >= 0) {
-                fatherGenotype = new Genotype(studyEntry.getSampleData(fatherSampleIdx).get(gtIdx));
-                motherGenotype = null;
-            } else if (fatherSampleIdx < 0 && motherSampleIdx >= 0) {
-                motherGenotype = new Genotype(studyEntry.getSampleData(motherSampleIdx).get(gtIdx));
-                fatherGenotype = null;
-            } else {
-                motherGenotype = new Genotype(studyEntry.getSampleData(motherSampleIdx).get(gtIdx));
-                fatherGenotype = new Genotype(studyEntry.getSampleData(fatherSampleIdx).get(gtIdx));
-            }
-
-            if (MendelianError.isDeNovo(fatherGenotype, motherGenotype, probandGenotype, variant.getChromosome())) {
-                variants.add(variant);
-            }
-        }
-
-        logger.debug("De novo - Number of variants retrieved: {}; Number of de novo variants: {}", variantsRetrieved, variants.size());
+        logger.debug("De novo - Number of de novo variants: {}", variants.size());
 
         // Return
         return variants;
     }
 
+    /**
+     * Return the de novo variants of several trios of the same study, reading the variants only once.
+     *
+     * @param iterator  Variant iterator
+     * @param trios     Trios
+     * @return Map of trio ID - de novo variants
+     */
+    public static Map<String, List<Variant>> deNovo(Iterator<Variant> iterator, List<Trio> trios) {
+        Map<String, List<Variant>> variantMap = new LinkedHashMap<>();
+        for (MendelianErrorScanner.FamilyResult result : new MendelianErrorScanner(trios).run(iterator)) {
+            variantMap.put(result.getTrio().getId(), result.getDeNovoVariants());
+        }
+        return variantMap;
+    }
+
     private static boolean isValidModeOfInheritance(Map<String, Set<Integer>> genotypes, Pedigree pedigree,
                                                     Set<Member> affectedMembers) {
         for (Member member : pedigree.getMembers()) {
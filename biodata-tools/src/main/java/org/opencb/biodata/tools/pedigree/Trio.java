@@ -0,0 +1,86 @@
+package org.opencb.biodata.tools.pedigree;
+
+import org.opencb.biodata.models.clinical.pedigree.Member;
+import org.opencb.biodata.models.clinical.pedigree.Pedigree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Proband and parents, given by their sample positions in a multi-sample study. A missing parent has a negative position.
+ */
+public class Trio {
+
+    private final String id;
+    private final int probandSampleIdx;
+    private final int motherSampleIdx;
+    private final int fatherSampleIdx;
+
+    public Trio(String id, int probandSampleIdx, int motherSampleIdx, int fatherSampleIdx) {
+        this.id = id;
+        this.probandSampleIdx = probandSampleIdx;
+        this.motherSampleIdx = motherSampleIdx;
+        this.fatherSampleIdx = fatherSampleIdx;
+    }
+
+    /**
+     * Build a trio for each member of the pedigrees that has at least one parent with a sample in the study.
+     *
+     * @param pedigrees         Pedigrees
+     * @param samplesPosition   Map of sample ID - sample position in the study
+     * @return List of trios, the trio ID is the child ID
+     */
+    public static List<Trio> fromPedigrees(List<Pedigree> pedigrees, Map<String, Integer> samplesPosition) {
+        List<Trio> trios = new ArrayList<>();
+        for (Pedigree pedigree : pedigrees) {
+            for (Member member : pedigree.getMembers()) {
+                Integer probandIdx = samplesPosition.get(member.getId());
+                if (probandIdx == null) {
+                    continue;
+                }
+                int motherIdx = getSamplePosition(member.getMother(), samplesPosition);
+                int fatherIdx = getSamplePosition(member.getFather(), samplesPosition);
+                if (motherIdx >= 0 || fatherIdx >= 0) {
+                    trios.add(new Trio(member.getId(), probandIdx, motherIdx, fatherIdx));
+                }
+            }
+        }
+        return trios;
+    }
+
+    private static int getSamplePosition(Member member, Map<String, Integer> samplesPosition) {
+        if (member == null) {
+            return -1;
+        }
+        Integer position = samplesPosition.get(member.getId());
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Trio{");
+        sb.append("id='").append(id).append('\'');
+        sb.append(", probandSampleIdx=").append(probandSampleIdx);
+        sb.append(", motherSampleIdx=").append(motherSampleIdx);
+        sb.append(", fatherSampleIdx=").append(fatherSampleIdx);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getProbandSampleIdx() {
+        return probandSampleIdx;
+    }
+
+    public int getMotherSampleIdx() {
+        return motherSampleIdx;
+    }
+
+    public int getFatherSampleIdx() {
+        return fatherSampleIdx;
+    }
+}
@@ -25,11 +25,14 @@ import htsjdk.samtools.reference.*;
 import htsjdk.samtools.util.GZIIndex;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.StringUtil;
+import org.opencb.biodata.models.core.Region;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by imedina on 21/10/16.
@@ -37,6 +40,9 @@ import java.nio.file.Paths;
 public class FastaIndex implements SequenceAdaptor {
 
     private ReferenceSequenceFile indexedFastaSequenceFile;
+    // Only for uncompressed files
+    private FastaSequenceIndex fastaSequenceIndex;
+    private MappedFastaFile mappedFastaFile;
 
     public FastaIndex() {
     }
@@ -59,8 +65,9 @@ public class FastaIndex implements SequenceAdaptor {
     }
 
     private void init(Path fastaFile) throws IOException {
-        FastaSequenceIndex fastaSequenceIndex = getFaiIndex(fastaFile, true);
+        this.fastaSequenceIndex = getFaiIndex(fastaFile, true);
         this.indexedFastaSequenceFile = new IndexedFastaSequenceFile(fastaFile, fastaSequenceIndex);
+        this.mappedFastaFile = new MappedFastaFile(fastaFile);
     }
 
     private void initBlockCompressed(Path fastaFile) throws IOException {
@@ -108,6 +115,41 @@ public class FastaIndex implements SequenceAdaptor {
         return StringUtil.bytesToString(subsequenceAt.getBases());
     }
 
+    /**
+     * Query many regions at once. On uncompressed files the returned sequences are views over the memory mapped file,
+     * read in contig and position order, so no seek nor copy is done per region. Block compressed files are read
+     * merging overlapping or adjacent regions, see {@link SequenceAdaptor#query(List)}.
+     *
+     * @param regions Regions to query, 1-based and inclusive
+     * @return Sequences, in the same order as the regions
+     * @throws Exception If any region can not be queried
+     */
+    @Override
+    public List<CharSequence> query(List<Region> regions) throws Exception {
+        if (mappedFastaFile == null) {
+            return SequenceAdaptor.super.query(regions);
+        }
+        Integer[] order = SequenceAdaptor.sortedOrder(regions);
+        CharSequence[] sequences = new CharSequence[regions.size()];
+        FastaSequenceIndexEntry entry = null;
+        for (Integer i : order) {
+            Region region = regions.get(i);
+            if (entry == null || !entry.getContig().equals(region.getChromosome())) {
+                entry = fastaSequenceIndex.getIndexEntry(region.getChromosome());
+            }
+            if (region.getEnd() > entry.getSize()) {
+                throw new SAMException("Query asks for data past end of contig. Query contig " + region.getChromosome()
+                        + " start:" + region.getStart() + " stop:" + region.getEnd() + " contigLength:" + entry.getSize());
+            }
+            if (region.getStart() < 1 || region.getStart() > region.getEnd() + 1) {
+                throw new SAMException(String.format("Malformed query; start point %d lies after end point %d",
+                        region.getStart(), region.getEnd()));
+            }
+            sequences[i] = mappedFastaFile.sequence(entry, region.getStart() - 1, region.getEnd() - region.getStart() + 1);
+        }
+        return Arrays.asList(sequences);
+    }
+
     public ReferenceSequence queryReferenceSequence(String chromosome, int start, int end) {
         ReferenceSequence referenceSequence = indexedFastaSequenceFile.getSubsequenceAt(chromosome, start, end);
         return referenceSequence;
@@ -119,5 +161,7 @@ public class FastaIndex implements SequenceAdaptor {
 
     public void close() throws IOException {
         indexedFastaSequenceFile.close();
+        // Mapped buffers are released when garbage collected
+        mappedFastaFile = null;
     }
 }
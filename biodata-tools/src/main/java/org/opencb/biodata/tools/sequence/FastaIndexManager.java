@@ -35,6 +35,8 @@ import java.nio.file.Paths;
 
 /**
  * Created by imedina on 19/01/16.
+ *
+ * @deprecated Use {@link TwoBitSequenceAdaptor}, which needs no native library and a quarter of the disk space
  */
 @Deprecated
 public class FastaIndexManager implements SequenceAdaptor {
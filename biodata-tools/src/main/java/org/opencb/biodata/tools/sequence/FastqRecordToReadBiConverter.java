@@ -1,6 +1,7 @@
 package org.opencb.biodata.tools.sequence;
 
 import htsjdk.samtools.fastq.FastqRecord;
+import org.opencb.biodata.formats.sequence.fastq.io.FastqRecordBatch;
 import org.opencb.biodata.models.sequence.Read;
 import org.opencb.biodata.tools.commons.BiConverter;
 
@@ -13,6 +14,12 @@ public class FastqRecordToReadBiConverter implements BiConverter<FastqRecord, Re
         return new Read(obj.getReadHeader(), obj.getReadString(), obj.getBaseQualityString());
     }
 
+    public Read to(FastqRecordBatch batch, int i) {
+        // Same as FastqRecord#getReadHeader, id and description
+        String header = batch.getDescriptionLength(i) == 0 ? batch.getId(i) : batch.getId(i) + " " + batch.getDescription(i);
+        return new Read(header, batch.getSequence(i), batch.getQuality(i));
+    }
+
     @Override
     public FastqRecord from(Read obj) {
         return new FastqRecord(obj.getId().toString(), obj.getSequence().toString(), "+", obj.getQuality().toString());
@@ -0,0 +1,126 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.sequence;
+
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uncompressed FASTA file memory mapped in segments of 1 GB, so files of any size can be mapped.
+ *
+ * Sequences are returned as {@link CharSequence} views over the mapped bytes, translating every position to its file
+ * offset with the line layout of the .fai index entry. Nothing is copied until toString() is called.
+ */
+class MappedFastaFile {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final MappedByteBuffer[] segments;
+
+    MappedFastaFile(Path fastaFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(fastaFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, 1L << SEGMENT_BITS));
+            }
+        }
+    }
+
+    private byte get(long position) {
+        // Absolute get, the buffers can be shared between threads
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * @param entry Index entry of the contig
+     * @param start 0-based start of the sequence in the contig
+     * @param length Length of the sequence
+     * @return View of the sequence
+     */
+    CharSequence sequence(FastaSequenceIndexEntry entry, long start, int length) {
+        return new Sequence(entry.getLocation(), entry.getBasesPerLine(), entry.getBytesPerLine(), start, length);
+    }
+
+    private class Sequence implements CharSequence {
+        private final long location;
+        private final int basesPerLine;
+        private final int bytesPerLine;
+        private final long start;
+        private final int length;
+
+        Sequence(long location, int basesPerLine, int bytesPerLine, long start, int length) {
+            this.location = location;
+            this.basesPerLine = basesPerLine;
+            this.bytesPerLine = bytesPerLine;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+            }
+            long position = start + index;
+            return (char) (get(location + position / basesPerLine * bytesPerLine + position % basesPerLine) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length || from > to) {
+                throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length " + length);
+            }
+            return new Sequence(location, basesPerLine, bytesPerLine, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            long position = start;
+            int i = 0;
+            // Copy line by line
+            while (i < length) {
+                int column = (int) (position % basesPerLine);
+                int n = Math.min(length - i, basesPerLine - column);
+                long offset = location + position / basesPerLine * bytesPerLine + column;
+                for (int j = 0; j < n; j++) {
+                    bytes[i + j] = get(offset + j);
+                }
+                i += n;
+                position += n;
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
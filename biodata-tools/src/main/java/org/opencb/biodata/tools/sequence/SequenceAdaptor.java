@@ -1,5 +1,12 @@
 package org.opencb.biodata.tools.sequence;
 
+import org.opencb.biodata.models.core.Region;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
 /**
  * Created on 27/06/18.
  *
@@ -9,4 +16,54 @@ public interface SequenceAdaptor {
 
     String query(String contig, int start, int end) throws Exception;
 
+    /**
+     * Query many regions at once. Regions are sorted, and overlapping or adjacent regions of the same contig are merged,
+     * so every merged span is queried only once. The returned sequences are views over the span, not copies.
+     *
+     * @param regions Regions to query, 1-based and inclusive
+     * @return Sequences, in the same order as the regions
+     * @throws Exception If any region can not be queried
+     */
+    default List<CharSequence> query(List<Region> regions) throws Exception {
+        Integer[] order = sortedOrder(regions);
+        CharSequence[] sequences = new CharSequence[regions.size()];
+        int i = 0;
+        while (i < order.length) {
+            Region first = regions.get(order[i]);
+            int spanEnd = first.getEnd();
+            int j = i + 1;
+            while (j < order.length) {
+                Region next = regions.get(order[j]);
+                if (!next.getChromosome().equals(first.getChromosome()) || next.getStart() > spanEnd + 1) {
+                    break;
+                }
+                spanEnd = Math.max(spanEnd, next.getEnd());
+                j++;
+            }
+
+            String span = query(first.getChromosome(), first.getStart(), spanEnd);
+            for (int k = i; k < j; k++) {
+                Region region = regions.get(order[k]);
+                int from = region.getStart() - first.getStart();
+                sequences[order[k]] = CharBuffer.wrap(span, from, from + region.getEnd() - region.getStart() + 1);
+            }
+            i = j;
+        }
+        return Arrays.asList(sequences);
+    }
+
+    /**
+     * @param regions Regions
+     * @return Indexes of the regions sorted by contig and start
+     */
+    static Integer[] sortedOrder(List<Region> regions) {
+        Integer[] order = new Integer[regions.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer, String>comparing(i -> regions.get(i).getChromosome())
+                .thenComparingInt(i -> regions.get(i).getStart()));
+        return order;
+    }
+
 }
@@ -0,0 +1,202 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.sequence;
+
+import org.opencb.biodata.formats.sequence.twobit.TwoBitReader;
+import org.opencb.biodata.formats.sequence.twobit.TwoBitWriter;
+import org.opencb.commons.utils.FileUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reference genome stored as a UCSC .2bit file, replacing the RocksDB index of {@link FastaIndexManager}.
+ *
+ * The FASTA file is converted once into a .2bit file next to it, a quarter of the size of the FASTA, with lists of
+ * N blocks and soft-masked blocks. The packed bases are memory mapped, so any region is decoded in constant time with
+ * no native library.
+ */
+public class TwoBitSequenceAdaptor implements SequenceAdaptor, Closeable {
+
+    public static final String TWO_BIT_EXTENSION = ".2bit";
+
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final TwoBitReader reader;
+
+    public TwoBitSequenceAdaptor(Path twoBitFile) throws IOException {
+        this.reader = new TwoBitReader(twoBitFile);
+    }
+
+    /**
+     * Open the .2bit file of a FASTA file, converting the FASTA file if the .2bit file does not exist yet.
+     *
+     * @param fastaFile     FASTA file, can be gzipped
+     * @param numThreads    Number of threads encoding the chromosomes
+     * @return Sequence adaptor
+     * @throws IOException If the FASTA file can not be converted
+     */
+    public static TwoBitSequenceAdaptor fromFasta(Path fastaFile, int numThreads) throws IOException {
+        Path twoBitFile = Paths.get(fastaFile.toAbsolutePath() + TWO_BIT_EXTENSION);
+        if (!Files.exists(twoBitFile)) {
+            convert(fastaFile, twoBitFile, numThreads);
+        }
+        return new TwoBitSequenceAdaptor(twoBitFile);
+    }
+
+    /**
+     * Convert a FASTA file into a .2bit file. The FASTA file is read sequentially and every chromosome is encoded by a
+     * pool of threads. Records are written in FASTA order.
+     *
+     * The .2bit file is written to a temporary file in the same directory, and only moved to the output file once
+     * complete, so a failed conversion never leaves a truncated .2bit file behind.
+     *
+     * @param fastaFile     FASTA file, can be gzipped
+     * @param twoBitFile    Output .2bit file
+     * @param numThreads    Number of threads encoding the chromosomes
+     * @throws IOException If the FASTA file can not be read or the .2bit file written
+     */
+    public static void convert(Path fastaFile, Path twoBitFile, int numThreads) throws IOException {
+        FileUtils.checkFile(fastaFile);
+        Path directory = twoBitFile.toAbsolutePath().getParent();
+        Path tmpFile = Files.createTempFile(directory, twoBitFile.getFileName().toString(), ".tmp");
+        boolean success = false;
+        try {
+            write(fastaFile, tmpFile, numThreads);
+            try {
+                Files.move(tmpFile, twoBitFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile, twoBitFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+    }
+
+    private static void write(Path fastaFile, Path twoBitFile, int numThreads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        Deque<String> names = new ArrayDeque<>();
+        Deque<Future<byte[]>> records = new ArrayDeque<>();
+        try (InputStream inputStream = FileUtils.newInputStream(fastaFile);
+             TwoBitWriter writer = new TwoBitWriter(twoBitFile)) {
+            String name = null;
+            byte[] bases = new byte[1 << 20];
+            int length = 0;
+            boolean header = false;
+            byte[] nameBytes = new byte[256];
+            int nameLength = 0;
+            byte[] buffer = new byte[1 << 20];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (header) {
+                        // Sequence name: first word of the header line
+                        if (b == '\n') {
+                            header = false;
+                            name = new String(nameBytes, 0, nameLength, StandardCharsets.US_ASCII).trim().split("\\s+")[0];
+                        } else if (nameLength < nameBytes.length) {
+                            nameBytes[nameLength++] = b;
+                        }
+                    } else if (b == '>') {
+                        if (name != null) {
+                            submit(executor, names, records, name, bases, length, writer, Math.max(1, numThreads));
+                            bases = new byte[Math.max(1 << 20, length)];
+                        }
+                        header = true;
+                        nameLength = 0;
+                        length = 0;
+                    } else if (b > ' ') {
+                        if (length == bases.length) {
+                            if (length == MAX_LENGTH) {
+                                throw new IOException("Sequence '" + name + "' is too long");
+                            }
+                            bases = Arrays.copyOf(bases, (int) Math.min(MAX_LENGTH, length * 2L));
+                        }
+                        bases[length++] = b;
+                    }
+                }
+            }
+            if (name != null) {
+                submit(executor, names, records, name, bases, length, writer, 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error encoding FASTA file " + fastaFile, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Encode a chromosome in the executor, and write the encoded chromosomes in order until at most maxPending are left.
+     */
+    private static void submit(ExecutorService executor, Deque<String> names, Deque<Future<byte[]>> records, String name,
+                               byte[] bases, int length, TwoBitWriter writer, int maxPending)
+            throws IOException, InterruptedException, ExecutionException {
+        names.add(name);
+        records.add(executor.submit(() -> TwoBitWriter.encode(bases, length)));
+        while (records.size() > maxPending) {
+            writer.write(names.poll(), records.poll().get());
+        }
+    }
+
+    @Override
+    public String query(String contig, int start, int end) throws IOException {
+        return reader.read(contig, start, end);
+    }
+
+    public List<String> getSequenceNames() {
+        return reader.getSequenceNames();
+    }
+
+    /**
+     * @param contig Sequence name
+     * @return Length of the sequence, or -1 if the sequence does not exist
+     */
+    public int getLength(String contig) {
+        return reader.getLength(contig);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
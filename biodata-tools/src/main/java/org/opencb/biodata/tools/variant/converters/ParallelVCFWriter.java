@@ -0,0 +1,369 @@
+package org.opencb.biodata.tools.variant.converters;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.opencb.biodata.formats.variant.vcf4.VcfUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.tools.variant.converters.avro.VariantAvroToVariantContextConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Multi-threaded VCF writer.
+ *
+ * Variants are converted, encoded as VCF text and BGZF compressed in batches by a pool of workers. Each batch is
+ * compressed into its own sequence of independent BGZF blocks, so the calling thread only has to write the finished
+ * batches in submission order and, optionally, feed the tabix index with the virtual offset of each record.
+ */
+public class ParallelVCFWriter implements Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // Same as samtools: small enough to always fit in a block once stored without compression
+    private static final int BLOCK_SIZE = 0xff00;
+    private static final int MAX_BLOCK_SIZE = BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE;
+    private static final int HEADER_LENGTH = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+    private static final int FOOTER_LENGTH = BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+    private static final int MAX_DATA_LENGTH = MAX_BLOCK_SIZE - HEADER_LENGTH - FOOTER_LENGTH;
+
+    private final OutputStream outputStream;
+    private final boolean bgzip;
+    private final TabixIndexCreator indexCreator;
+    private final File indexedFile;
+    private final int batchSize;
+    private final int maxPendingBatches;
+
+    private final ExecutorService executor;
+    private final Deque<Future<EncodedBatch>> pendingBatches = new ArrayDeque<>();
+    // Converters and encoders are not thread safe, one per worker
+    private final ThreadLocal<VariantAvroToVariantContextConverter> converters;
+    private final ThreadLocal<VCFEncoder> encoders;
+    private final ThreadLocal<Deflaters> deflaters;
+    // All the deflaters created by any thread, to release them on close
+    private final List<Deflaters> allDeflaters = Collections.synchronizedList(new ArrayList<>());
+    private final boolean sitesOnly;
+
+    private List<Variant> batch;
+    // Compressed bytes written so far, used as block address for the virtual offsets
+    private long filePointer;
+
+    private final Logger logger = LoggerFactory.getLogger(ParallelVCFWriter.class);
+
+    private static class EncodedBatch {
+        private byte[] data;
+        private int length;
+        // Start of each record within the uncompressed data
+        private int[] recordOffsets;
+        private SimpleFeature[] features;
+        private int numRecords;
+        // Start of each BGZF block within the compressed data
+        private int[] blockOffsets;
+    }
+
+    private static class Deflaters {
+        private final Deflater deflater = new Deflater(BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL, true);
+        // Fallback for incompressible blocks
+        private final Deflater store = new Deflater(Deflater.NO_COMPRESSION, true);
+
+        private void end() {
+            deflater.end();
+            store.end();
+        }
+    }
+
+    /**
+     * @param outputStream  Output stream, closed with the writer
+     * @param header        VCF header
+     * @param converter     Variant converter factory, called once per worker thread
+     * @param numThreads    Number of worker threads
+     * @param batchSize     Number of variants per batch
+     * @param bgzip         Compress the output in BGZF blocks
+     * @param indexedFile   File to index with tabix, or null to skip the index. Requires bgzip
+     * @param writerOptions Writer options, as in {@link VcfUtils#createVariantContextWriter}
+     */
+    public ParallelVCFWriter(OutputStream outputStream, VCFHeader header, Supplier<VariantAvroToVariantContextConverter> converter,
+                             int numThreads, int batchSize, boolean bgzip, File indexedFile, Options... writerOptions)
+            throws IOException {
+        if (indexedFile != null && !bgzip) {
+            throw new IllegalArgumentException("Tabix index requires a BGZF compressed output");
+        }
+        this.outputStream = Objects.requireNonNull(outputStream);
+        this.bgzip = bgzip;
+        this.indexedFile = indexedFile;
+        this.indexCreator = indexedFile == null ? null : new TabixIndexCreator(header.getSequenceDictionary(), TabixFormat.VCF);
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+        this.maxPendingBatches = 2 * numThreads;
+        this.batch = new ArrayList<>(this.batchSize);
+
+        // Same encoder settings as the VCFWriter built by VcfUtils.createVariantContextWriter
+        Set<Options> options = EnumSet.of(Options.WRITE_FULL_FORMAT_FIELD);
+        if (writerOptions != null) {
+            options.addAll(Arrays.asList(writerOptions));
+        }
+        boolean allowMissingFieldsInHeader = options.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+        boolean writeFullFormatField = options.contains(Options.WRITE_FULL_FORMAT_FIELD);
+        this.sitesOnly = options.contains(Options.DO_NOT_WRITE_GENOTYPES);
+        VCFHeader encoderHeader = sitesOnly ? new VCFHeader(header.getMetaDataInSortedOrder()) : header;
+
+        this.converters = ThreadLocal.withInitial(converter);
+        this.encoders = ThreadLocal.withInitial(() -> new VCFEncoder(encoderHeader, allowMissingFieldsInHeader, writeFullFormatField));
+        this.deflaters = ThreadLocal.withInitial(() -> {
+            Deflaters deflaters = new Deflaters();
+            allDeflaters.add(deflaters);
+            return deflaters;
+        });
+        this.executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "vcf-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        writeHeader(header, writerOptions);
+    }
+
+    /**
+     * Add variants to the current batch, submitting full batches to the workers.
+     *
+     * @param iterator  Variant iterator
+     */
+    public void write(Iterator<Variant> iterator) {
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() >= batchSize) {
+                submit();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            while (!pendingBatches.isEmpty()) {
+                writeNext();
+            }
+            if (bgzip) {
+                outputStream.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            }
+            outputStream.flush();
+            if (indexCreator != null) {
+                Index index = indexCreator.finalizeIndex(filePointer << 16);
+                index.writeBasedOnFeatureFile(indexedFile);
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                // Workers may still be using their deflaters if a batch failed
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (allDeflaters) {
+                allDeflaters.forEach(Deflaters::end);
+                allDeflaters.clear();
+            }
+            outputStream.close();
+        }
+    }
+
+    private void writeHeader(VCFHeader header, Options... writerOptions) throws IOException {
+        // Let htsjdk render the header lines
+        ByteArrayOutputStream headerStream = new ByteArrayOutputStream();
+        VariantContextWriter headerWriter = VcfUtils.createVariantContextWriter(headerStream, header.getSequenceDictionary(),
+                writerOptions);
+        headerWriter.writeHeader(header);
+        headerWriter.close();
+
+        EncodedBatch encoded = new EncodedBatch();
+        encoded.data = headerStream.toByteArray();
+        encoded.length = encoded.data.length;
+        encoded.recordOffsets = new int[0];
+        encoded.features = new SimpleFeature[0];
+        if (bgzip) {
+            compress(encoded);
+        }
+        write(encoded);
+    }
+
+    private void submit() {
+        List<Variant> variants = batch;
+        batch = new ArrayList<>(batchSize);
+        pendingBatches.add(executor.submit(() -> encode(variants)));
+        // Bound the memory used by the batches waiting to be written
+        while (pendingBatches.size() > maxPendingBatches) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() {
+        try {
+            write(pendingBatches.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error exporting VCF data", e.getCause());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(EncodedBatch encoded) throws IOException {
+        if (indexCreator != null) {
+            for (int i = 0; i < encoded.numRecords; i++) {
+                int offset = encoded.recordOffsets[i];
+                long blockAddress = filePointer + encoded.blockOffsets[offset / BLOCK_SIZE];
+                indexCreator.addFeature(encoded.features[i], (blockAddress << 16) | (offset % BLOCK_SIZE));
+            }
+        }
+        outputStream.write(encoded.data, 0, encoded.length);
+        filePointer += encoded.length;
+    }
+
+    private EncodedBatch encode(List<Variant> variants) {
+        VariantAvroToVariantContextConverter converter = converters.get();
+        VCFEncoder encoder = encoders.get();
+
+        EncodedBatch encoded = new EncodedBatch();
+        encoded.recordOffsets = new int[variants.size()];
+        encoded.features = indexCreator == null ? null : new SimpleFeature[variants.size()];
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(variants.size() * 256);
+        Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+        // Each record is encoded apart, so a failure does not leave a partial line in the batch
+        StringBuilder record = new StringBuilder(256);
+        try {
+            for (Variant variant : variants) {
+                VariantContext variantContext;
+                try {
+                    variantContext = converter.convert(variant);
+                    if (sitesOnly) {
+                        variantContext = new VariantContextBuilder(variantContext).noGenotypes().make();
+                    }
+                    record.setLength(0);
+                    encoder.write(record, variantContext);
+                } catch (Exception e) {
+                    // Same as the single threaded export: log and skip the variant
+                    logger.error("Error exporting VCF data: {}", e.getMessage(), e);
+                    continue;
+                }
+                writer.flush();
+                encoded.recordOffsets[encoded.numRecords] = buffer.size();
+                if (encoded.features != null) {
+                    encoded.features[encoded.numRecords] = new SimpleFeature(variantContext.getContig(),
+                            variantContext.getStart(), variantContext.getEnd());
+                }
+                encoded.numRecords++;
+                writer.append(record).append('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // Not expected from an in-memory buffer
+            throw new UncheckedIOException(e);
+        }
+        encoded.data = buffer.toByteArray();
+        encoded.length = encoded.data.length;
+
+        if (bgzip) {
+            compress(encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * Replace the uncompressed data of the batch with a sequence of BGZF blocks of up to {@link #BLOCK_SIZE} bytes each.
+     */
+    private void compress(EncodedBatch encoded) {
+        int numBlocks = (encoded.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        byte[] compressed = new byte[numBlocks * MAX_BLOCK_SIZE];
+        int[] blockOffsets = new int[numBlocks];
+        Deflaters deflaters = this.deflaters.get();
+        CRC32 crc32 = new CRC32();
+
+        int compressedLength = 0;
+        for (int block = 0; block < numBlocks; block++) {
+            int start = block * BLOCK_SIZE;
+            int length = Math.min(BLOCK_SIZE, encoded.length - start);
+            blockOffsets[block] = compressedLength;
+
+            int dataLength = deflate(deflaters.deflater, encoded.data, start, length, compressed, compressedLength + HEADER_LENGTH);
+            if (dataLength < 0) {
+                // Incompressible data, store it as is
+                dataLength = deflate(deflaters.store, encoded.data, start, length, compressed, compressedLength + HEADER_LENGTH);
+                if (dataLength < 0) {
+                    throw new IllegalStateException("Unable to fit " + length + " bytes in a BGZF block");
+                }
+            }
+
+            crc32.reset();
+            crc32.update(encoded.data, start, length);
+            int blockLength = HEADER_LENGTH + dataLength + FOOTER_LENGTH;
+            writeBlockHeader(compressed, compressedLength, blockLength);
+            int footer = compressedLength + HEADER_LENGTH + dataLength;
+            writeInt(compressed, footer, (int) crc32.getValue());
+            writeInt(compressed, footer + 4, length);
+            compressedLength += blockLength;
+        }
+
+        encoded.data = compressed;
+        encoded.length = compressedLength;
+        encoded.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * @return  Length of the deflated data, or -1 if it does not fit in a BGZF block
+     */
+    private static int deflate(Deflater deflater, byte[] input, int start, int length, byte[] output, int offset) {
+        deflater.reset();
+        deflater.setInput(input, start, length);
+        deflater.finish();
+        int dataLength = deflater.deflate(output, offset, MAX_DATA_LENGTH);
+        return deflater.finished() ? dataLength : -1;
+    }
+
+    private static void writeBlockHeader(byte[] buffer, int offset, int blockLength) {
+        buffer[offset] = (byte) BlockCompressedStreamConstants.GZIP_ID1;
+        buffer[offset + 1] = (byte) BlockCompressedStreamConstants.GZIP_ID2;
+        buffer[offset + 2] = (byte) BlockCompressedStreamConstants.GZIP_CM_DEFLATE;
+        buffer[offset + 3] = (byte) BlockCompressedStreamConstants.GZIP_FLG;
+        // MTIME
+        writeInt(buffer, offset + 4, 0);
+        buffer[offset + 8] = (byte) BlockCompressedStreamConstants.GZIP_XFL;
+        buffer[offset + 9] = (byte) BlockCompressedStreamConstants.GZIP_OS_UNKNOWN;
+        writeShort(buffer, offset + 10, BlockCompressedStreamConstants.GZIP_XLEN);
+        buffer[offset + 12] = (byte) BlockCompressedStreamConstants.BGZF_ID1;
+        buffer[offset + 13] = (byte) BlockCompressedStreamConstants.BGZF_ID2;
+        writeShort(buffer, offset + 14, BlockCompressedStreamConstants.BGZF_LEN);
+        writeShort(buffer, offset + 16, blockLength - 1);
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+}
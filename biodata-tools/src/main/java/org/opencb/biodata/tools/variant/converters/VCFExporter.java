@@ -31,6 +31,11 @@ public class VCFExporter implements Closeable {
     private OutputStream outputStream;
     private VariantContextWriter writer;
 
+    // parallel pipeline, used instead of the writer when numThreads > 1
+    private int numThreads = 1;
+    private int batchSize = ParallelVCFWriter.DEFAULT_BATCH_SIZE;
+    private ParallelVCFWriter parallelWriter;
+
     // logger
     protected Logger logger = LoggerFactory.getLogger(this.getClass().toString());
 
@@ -76,6 +81,11 @@ public class VCFExporter implements Closeable {
      * @param iterator          Variant iterator
      */
     public void export(Iterator<Variant> iterator) {
+        if (parallelWriter != null) {
+            parallelWriter.write(iterator);
+            return;
+        }
+
         // sanity check
         if (writer == null) {
             logger.error("Error exporting VCF data: exporter must be opened");
@@ -102,8 +112,33 @@ public class VCFExporter implements Closeable {
         open(os, writerOptions);
     }
 
+    /**
+     * Open the exporter using the multi-threaded pipeline, see {@link #setNumThreads(int)}. The output is BGZF
+     * compressed when the file name ends with ".gz" or ".bgz".
+     *
+     * @param outPath   Output VCF file
+     * @param index     Write a tabix index (outPath + ".tbi") while exporting, requires a compressed output
+     * @param writerOptions Writer options
+     * @throws IOException  If the output file can not be created
+     */
+    public void open(Path outPath, boolean index, Options... writerOptions) throws IOException {
+        String fileName = outPath.getFileName().toString();
+        boolean bgzip = fileName.endsWith(".gz") || fileName.endsWith(".bgz");
+        parallelWriter = new ParallelVCFWriter(new BufferedOutputStream(new FileOutputStream(outPath.toFile())), vcfHeader,
+                this::createConverter, Math.max(1, numThreads), batchSize, bgzip, index ? outPath.toFile() : null, writerOptions);
+    }
+
     public void open(OutputStream os, Options... writerOptions) {
-        variantConverter = new VariantAvroToVariantContextConverter(metadata.getId(), sampleNames, formats, annotations);
+        if (numThreads > 1) {
+            try {
+                parallelWriter = new ParallelVCFWriter(os, vcfHeader, this::createConverter, numThreads, batchSize, false, null,
+                        writerOptions);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        variantConverter = createConverter();
 
         // create the variant context writer
         outputStream = Objects.requireNonNull(os);
@@ -114,8 +149,17 @@ public class VCFExporter implements Closeable {
         writer.writeHeader(vcfHeader);
     }
 
+    private VariantAvroToVariantContextConverter createConverter() {
+        return new VariantAvroToVariantContextConverter(metadata.getId(), sampleNames, formats, annotations);
+    }
+
     public void close() throws IOException {
         // close everything
+        if (parallelWriter != null) {
+            parallelWriter.close();
+            parallelWriter = null;
+            return;
+        }
         if (writer != null) {
             writer.close();
         }
@@ -134,6 +178,28 @@ public class VCFExporter implements Closeable {
         this.sampleNames = sampleNames;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Number of threads used to convert, encode and compress the variants. With more than one thread, variants are exported
+     * in batches (see {@link #setBatchSize(int)}) and written in the same order they were received.
+     *
+     * @param numThreads    Number of threads
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public List<String> getFormats() {
         return formats;
     }
@@ -22,6 +22,7 @@ package org.opencb.biodata.tools.variant.converters.avro;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFConstants;
+import org.opencb.biodata.models.common.StringDictionary;
 import org.opencb.biodata.models.variant.Genotype;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantBuilder;
@@ -224,7 +225,8 @@ public class VariantContextToVariantConverter implements Converter<VariantContex
                         if (genotypeValue.equals(".")) {
                             value = "./.";
                         } else {
-                            value = new Genotype(genotypeValue, reference, alternates).toString();
+                            // Only genotypes are shared, other sample values rarely repeat and would fill the dictionary
+                            value = StringDictionary.FIELDS.intern(new Genotype(genotypeValue, reference, alternates).toString());
                         }
                         break;
                     default:
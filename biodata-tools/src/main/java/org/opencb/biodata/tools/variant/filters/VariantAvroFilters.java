@@ -21,6 +21,7 @@ package org.opencb.biodata.tools.variant.filters;
 
 import htsjdk.variant.vcf.VCFConstants;
 import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.core.RegionSet;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.FileEntry;
@@ -101,17 +102,26 @@ public class VariantAvroFilters extends VariantFilters<Variant> {
 
     @Override
     public VariantAvroFilters addRegionFilter(List<Region> regions, boolean contained) {
+        if (!contained) {
+            // Overlapping any region is overlapping the merged regions, a binary search per variant
+            RegionSet regionSet = RegionSet.of(regions);
+            // An insertion (end = start - 1) overlaps a region if region.start < start <= region.end. Adjacent regions are
+            // merged, so it is checked against the regions without their first position, not to match between two of them
+            List<Region> insertionRegions = new ArrayList<>(regions.size());
+            for (Region region : regions) {
+                insertionRegions.add(new Region(region.getChromosome(), region.getStart() + 1, region.getEnd()));
+            }
+            RegionSet insertionRegionSet = RegionSet.of(insertionRegions);
+            addFilterList(Collections.singletonList(variant -> variant.getEnd() < variant.getStart()
+                    ? insertionRegionSet.contains(variant.getChromosome(), variant.getStart())
+                    : regionSet.overlaps(variant.getChromosome(), variant.getStart(), variant.getEnd())));
+            return this;
+        }
         List<Predicate<Variant>> predicates = new ArrayList<>(regions.size());
         for (Region region: regions) {
-            if (contained) {
-                predicates.add(variant -> variant.getChromosome().equals(region.getChromosome())
-                        && variant.getStart() >= region.getStart()
-                        && variant.getEnd() <= region.getEnd());
-            } else {
-                predicates.add(variant -> variant.getChromosome().equals(region.getChromosome())
-                        && variant.getStart() <= region.getEnd()
-                        && variant.getEnd() >= region.getStart());
-            }
+            predicates.add(variant -> variant.getChromosome().equals(region.getChromosome())
+                    && variant.getStart() >= region.getStart()
+                    && variant.getEnd() <= region.getEnd());
         }
         addFilterList(predicates);
         return this;
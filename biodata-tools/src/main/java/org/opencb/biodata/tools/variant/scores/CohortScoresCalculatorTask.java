@@ -0,0 +1,247 @@
+package org.opencb.biodata.tools.variant.scores;
+
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantScore;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.commons.run.Task;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes Hardy-Weinberg, inbreeding coefficient and missingness scores for all the cohorts of a study in a single pass.
+ *
+ * Hardy-Weinberg p-values come from the mid-p exact test (Wigginton et al. 2005; Graffelman and Moreno 2013), and are
+ * cached by (nAA, nAB, nBB) as the same counts are seen again and again within a study.
+ */
+public class CohortScoresCalculatorTask implements Task<Variant, Variant> {
+
+    public static final String HW_SCORE_ID = HardyWeinbergScoreCalculatorTask.SCORE_ID;
+    public static final String INBREEDING_SCORE_ID = "inbreeding";
+    public static final String MISSINGNESS_SCORE_ID = "missingness";
+
+    private static final int HOM_REF = 0;
+    private static final int HET = 1;
+    private static final int HOM_ALT = 2;
+    private static final int OTHER = -1;
+
+    private static final int DEFAULT_CACHE_SIZE = 100000;
+
+    private final String studyId;
+    private final Set<String> cohorts;
+    private final int cacheSize;
+
+    // Genotype -> HOM_REF, HET, HOM_ALT or OTHER
+    private final Map<String, Integer> genotypeClasses = new ConcurrentHashMap<>();
+    // Packed (nAA, nAB, nBB) -> mid-p value
+    private final Map<Long, Double> pValueCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param studyId   Study
+     * @param cohorts   Cohorts to score, null or empty for all the cohorts with stats
+     */
+    public CohortScoresCalculatorTask(String studyId, Collection<String> cohorts) {
+        this(studyId, cohorts, DEFAULT_CACHE_SIZE);
+    }
+
+    public CohortScoresCalculatorTask(String studyId, Collection<String> cohorts, int cacheSize) {
+        this.studyId = studyId;
+        this.cohorts = cohorts == null || cohorts.isEmpty() ? null : new HashSet<>(cohorts);
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public List<Variant> apply(List<Variant> list) throws Exception {
+        for (Variant variant : list) {
+            apply(variant);
+        }
+        return list;
+    }
+
+    public Variant apply(Variant variant) {
+        StudyEntry study = variant.getStudy(studyId);
+        if (study == null || study.getStats() == null) {
+            return variant;
+        }
+
+        for (VariantStats stats : study.getStats()) {
+            if (cohorts != null && !cohorts.contains(stats.getCohortId())) {
+                continue;
+            }
+
+            // Primitive counts from the genotype count map
+            int nAA = 0;
+            int nAB = 0;
+            int nBB = 0;
+            int nCalled = 0;
+            for (Map.Entry<String, Integer> entry : stats.getGenotypeCount().entrySet()) {
+                if (Genotype.NA.equals(entry.getKey())) {
+                    // Samples without genotype are not called
+                    continue;
+                }
+                int count = entry.getValue() == null ? 0 : entry.getValue();
+                nCalled += count;
+                switch (getGenotypeClass(entry.getKey())) {
+                    case HOM_REF:
+                        nAA += count;
+                        break;
+                    case HET:
+                        nAB += count;
+                        break;
+                    case HOM_ALT:
+                        nBB += count;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            // VariantStats defaults the missing genotype count to -1, unknown
+            int nMissing = stats.getMissingGenotypeCount() == null ? 0 : Math.max(0, stats.getMissingGenotypeCount());
+
+            String cohort = stats.getCohortId();
+            study.addScore(new VariantScore(HW_SCORE_ID, cohort, null, (float) chiSquare(nAA, nAB, nBB),
+                    (float) hweMidP(nAA, nAB, nBB)));
+            study.addScore(new VariantScore(INBREEDING_SCORE_ID, cohort, null, (float) inbreedingCoefficient(nAA, nAB, nBB), null));
+            int nTotal = nCalled + nMissing;
+            study.addScore(new VariantScore(MISSINGNESS_SCORE_ID, cohort, null, nTotal == 0 ? 0f : ((float) nMissing) / nTotal, null));
+        }
+        return variant;
+    }
+
+    /**
+     * Mid-p value of the Hardy-Weinberg exact test, cached by genotype counts.
+     *
+     * @param nAA   Number of homozygous reference genotypes
+     * @param nAB   Number of heterozygous genotypes
+     * @param nBB   Number of homozygous alternate genotypes
+     * @return      mid-p value
+     */
+    public double hweMidP(int nAA, int nAB, int nBB) {
+        // Only 21 bits per count fit in the key, bigger cohorts are not cached
+        if (nAA >= (1 << 21) || nAB >= (1 << 21) || nBB >= (1 << 21)) {
+            return computeHweMidP(nAA, nAB, nBB);
+        }
+        long key = ((long) nAA << 42) | ((long) nAB << 21) | nBB;
+        Double pValue = pValueCache.get(key);
+        if (pValue == null) {
+            pValue = computeHweMidP(nAA, nAB, nBB);
+            if (pValueCache.size() >= cacheSize) {
+                pValueCache.clear();
+            }
+            pValueCache.put(key, pValue);
+        }
+        return pValue;
+    }
+
+    static double computeHweMidP(int nAA, int nAB, int nBB) {
+        int homRare = Math.min(nAA, nBB);
+        int rareCopies = 2 * homRare + nAB;
+        int genotypes = nAA + nAB + nBB;
+        if (genotypes == 0 || rareCopies == 0) {
+            // Monomorphic, nothing to test
+            return 1.0;
+        }
+
+        // Probabilities of each number of heterozygotes, relative to the most likely one
+        double[] hetProbs = new double[rareCopies + 1];
+        int mid = (int) ((long) rareCopies * (2L * genotypes - rareCopies) / (2L * genotypes));
+        if ((mid & 1) != (rareCopies & 1)) {
+            mid++;
+        }
+        hetProbs[mid] = 1.0;
+        double sum = 1.0;
+
+        int currHomRare = (rareCopies - mid) / 2;
+        int currHomCommon = genotypes - mid - currHomRare;
+        for (int currHets = mid; currHets > 1; currHets -= 2) {
+            hetProbs[currHets - 2] = hetProbs[currHets] * currHets * (currHets - 1.0)
+                    / (4.0 * (currHomRare + 1.0) * (currHomCommon + 1.0));
+            sum += hetProbs[currHets - 2];
+            currHomRare++;
+            currHomCommon++;
+        }
+
+        currHomRare = (rareCopies - mid) / 2;
+        currHomCommon = genotypes - mid - currHomRare;
+        for (int currHets = mid; currHets <= rareCopies - 2; currHets += 2) {
+            hetProbs[currHets + 2] = hetProbs[currHets] * 4.0 * currHomRare * currHomCommon
+                    / ((currHets + 2.0) * (currHets + 1.0));
+            sum += hetProbs[currHets + 2];
+            currHomRare--;
+            currHomCommon--;
+        }
+
+        double observed = hetProbs[nAB];
+        double pValue = 0;
+        for (double hetProb : hetProbs) {
+            if (hetProb <= observed) {
+                pValue += hetProb;
+            }
+        }
+        pValue = (pValue - observed / 2) / sum;
+        return Math.min(1.0, Math.max(0.0, pValue));
+    }
+
+    static double chiSquare(int nAA, int nAB, int nBB) {
+        int n = nAA + nAB + nBB;
+        if (n == 0) {
+            return 0;
+        }
+        double p = (2.0 * nAA + nAB) / (2.0 * n);
+        double q = 1 - p;
+        double eAA = p * p * n;
+        double eAB = 2 * p * q * n;
+        double eBB = q * q * n;
+        double chi2 = 0;
+        if (eAA > 0) {
+            chi2 += (nAA - eAA) * (nAA - eAA) / eAA;
+        }
+        if (eAB > 0) {
+            chi2 += (nAB - eAB) * (nAB - eAB) / eAB;
+        }
+        if (eBB > 0) {
+            chi2 += (nBB - eBB) * (nBB - eBB) / eBB;
+        }
+        return chi2;
+    }
+
+    /**
+     * Inbreeding coefficient F = 1 - observed heterozygotes / expected heterozygotes.
+     */
+    static double inbreedingCoefficient(int nAA, int nAB, int nBB) {
+        int n = nAA + nAB + nBB;
+        if (n == 0) {
+            return 0;
+        }
+        double p = (2.0 * nAA + nAB) / (2.0 * n);
+        double expectedHets = 2 * p * (1 - p) * n;
+        return expectedHets == 0 ? 0 : 1 - nAB / expectedHets;
+    }
+
+    private int getGenotypeClass(String gt) {
+        Integer gtClass = genotypeClasses.get(gt);
+        if (gtClass == null) {
+            gtClass = computeGenotypeClass(gt);
+            genotypeClasses.put(gt, gtClass);
+        }
+        return gtClass;
+    }
+
+    /**
+     * Classify diploid genotypes with only reference and main alternate alleles. Any other genotype (haploid, secondary
+     * alternates, partially missing) is not used for Hardy-Weinberg.
+     */
+    private static int computeGenotypeClass(String gt) {
+        if (gt.length() != 3 || (gt.charAt(1) != '/' && gt.charAt(1) != '|')) {
+            return OTHER;
+        }
+        char a1 = gt.charAt(0);
+        char a2 = gt.charAt(2);
+        if ((a1 != '0' && a1 != '1') || (a2 != '0' && a2 != '1')) {
+            return OTHER;
+        }
+        return (a1 - '0') + (a2 - '0');
+    }
+}
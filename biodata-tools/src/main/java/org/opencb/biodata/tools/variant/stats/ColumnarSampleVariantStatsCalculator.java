@@ -0,0 +1,482 @@
+package org.opencb.biodata.tools.variant.stats;
+
+import htsjdk.variant.vcf.VCFConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.clinical.pedigree.Member;
+import org.opencb.biodata.models.clinical.pedigree.Pedigree;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.opencb.biodata.models.variant.metadata.SampleVariantStats;
+import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.biodata.tools.pedigree.MendelianError;
+import org.opencb.biodata.tools.variant.stats.SampleVariantStatsAccumulator.Counter;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sample stats calculator that processes each batch of variants by columns.
+ *
+ * The batch is first transposed into sample-major columns: genotypes and depths are stored per sample and variant,
+ * genotypes encoded with dictionary ids, and qualities and filters per file and variant. Each distinct genotype and
+ * each distinct key of the batch is parsed and resolved only once. Then, the samples are split in contiguous ranges
+ * that are updated in parallel, as the counters of each sample are independent of the others.
+ *
+ * Produces the same stats as {@link SampleVariantStatsCalculator}.
+ */
+public class ColumnarSampleVariantStatsCalculator extends SampleVariantStatsCalculator {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int NO_TI_TV = 0;
+    private static final int TRANSITION = 1;
+    private static final int TRANSVERSION = 2;
+    private static final int[][] NO_COLUMNS = new int[0][];
+
+    private final int numThreads;
+    private ExecutorService executor;
+
+    /**
+     * Create a columnar sample stats calculator.
+     *
+     * @param studyMetadata VariantStudyMetadata with all the study metadata.
+     * @param numThreads    Number of threads to update the samples of each batch
+     */
+    public ColumnarSampleVariantStatsCalculator(VariantStudyMetadata studyMetadata, int numThreads) {
+        super(studyMetadata);
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Create a columnar sample stats calculator for a multi-file study.
+     *
+     * @param pedigree      Pedigree with the family information
+     * @param samples       Ordered list of samples
+     * @param sampleFileMap Map with the files related to each sample
+     * @param numThreads    Number of threads to update the samples of each batch
+     */
+    public ColumnarSampleVariantStatsCalculator(Pedigree pedigree, List<String> samples, Map<String, String> sampleFileMap,
+                                                int numThreads) {
+        super(pedigree, samples, sampleFileMap);
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    @Override
+    public void pre() {
+        super.pre();
+        if (numThreads > 1 && executor == null) {
+            executor = Executors.newFixedThreadPool(numThreads - 1, r -> {
+                Thread thread = new Thread(r, "sample-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public List<Variant> apply(List<Variant> batch) {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        Batch columns = new Batch(batch);
+        int numSamples = columns.numSamples;
+        int numRanges = executor == null ? 1 : Math.min(numThreads, numSamples);
+        if (numRanges <= 1) {
+            columns.updateSamples(0, numSamples);
+        } else {
+            List<Future<?>> futures = new ArrayList<>(numRanges - 1);
+            int rangeSize = (numSamples + numRanges - 1) / numRanges;
+            for (int from = rangeSize; from < numSamples; from += rangeSize) {
+                int start = from;
+                int end = Math.min(numSamples, from + rangeSize);
+                futures.add(executor.submit(() -> columns.updateSamples(start, end)));
+            }
+            columns.updateSamples(0, Math.min(numSamples, rangeSize));
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error updating sample stats", e.getCause());
+            }
+        }
+        columns.addMendelianErrors();
+        return batch;
+    }
+
+    @Override
+    public List<SampleVariantStats> compute(Iterator<Variant> variantIterator) {
+        pre();
+        try {
+            List<Variant> batch = new ArrayList<>(DEFAULT_BATCH_SIZE);
+            while (variantIterator.hasNext()) {
+                batch.add(variantIterator.next());
+                if (batch.size() == DEFAULT_BATCH_SIZE) {
+                    apply(batch);
+                    batch.clear();
+                }
+            }
+            apply(batch);
+            post();
+        } finally {
+            close();
+        }
+        return statsList;
+    }
+
+    @Override
+    public void post() {
+        super.post();
+        close();
+    }
+
+    private void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * One batch of variants, transposed into columns.
+     */
+    private class Batch {
+        private final SampleVariantStatsAccumulator accumulator;
+        private final int numSamples;
+        private final int numVariants;
+        private final String[] chromosomes;
+
+        // Sample-major columns, one value per sample and variant
+        private final int[] gtIds;
+        private final int[] dps;
+
+        // Genotypes dictionary
+        private final Map<String, Integer> gtDictionary = new HashMap<>();
+        private final List<String> gtValues = new ArrayList<>();
+        private boolean[] mainAlternate;
+        private int[][] gtColumns;
+        private int[] gtMendelianCodes;
+
+        // Per variant values
+        private final int[][] chromosomeColumns;
+        private final int[][] typeColumns;
+        private final int[] indelLength;
+        private final int[] tiTv;
+        private final int[] chromosomeClass;
+        private final int[][][] annotationColumns;
+
+        // Per file and variant values
+        private final int numFiles;
+        private final int[] sampleFile;
+        private final boolean[] hasQual;
+        private final float[] quals;
+        private final int[][][] filterColumns;
+        private final int[][] missingFileFilterColumns;
+
+        // Family of each sample
+        private final boolean[] child;
+        private final int[] fatherPos;
+        private final int[] motherPos;
+        // Variant and error code of the mendelian errors of each sample, null if none. Each range only sets its own samples
+        private final List<List<int[]>> mendelianErrors;
+
+        Batch(List<Variant> batch) {
+            numVariants = batch.size();
+            StudyEntry firstStudy = batch.get(0).getStudies().get(0);
+            accumulator = getAccumulator(firstStudy.getSamplesPosition());
+            numSamples = accumulator.getNumSamples();
+
+            // Files of each sample
+            List<String> fileIds = new ArrayList<>();
+            sampleFile = new int[numSamples];
+            if (samplePosFileMap == null) {
+                fileIds.add(null);
+            } else {
+                Map<String, Integer> fileIdx = new HashMap<>();
+                for (int samplePos = 0; samplePos < numSamples; samplePos++) {
+                    String file = samplePosFileMap.get(samplePos);
+                    if (file == null) {
+                        sampleFile[samplePos] = -1;
+                    } else {
+                        sampleFile[samplePos] = fileIdx.computeIfAbsent(file, key -> {
+                            fileIds.add(key);
+                            return fileIds.size() - 1;
+                        });
+                    }
+                }
+            }
+            numFiles = fileIds.size();
+
+            gtIds = new int[numSamples * numVariants];
+            dps = new int[numSamples * numVariants];
+            chromosomes = new String[numVariants];
+            chromosomeColumns = new int[numVariants][];
+            typeColumns = new int[numVariants][];
+            indelLength = new int[numVariants];
+            tiTv = new int[numVariants];
+            chromosomeClass = new int[numVariants];
+            annotationColumns = new int[numVariants][][];
+            hasQual = new boolean[numVariants * numFiles];
+            quals = new float[numVariants * numFiles];
+            filterColumns = new int[numVariants * numFiles][][];
+            missingFileFilterColumns = new int[][]{accumulator.getColumn(Counter.FILTER, ".")};
+
+            for (int v = 0; v < numVariants; v++) {
+                transpose(v, batch.get(v), fileIds);
+            }
+
+            // Resolve the columns of each distinct genotype
+            gtColumns = new int[gtValues.size()][];
+            for (int gtId = 0; gtId < gtValues.size(); gtId++) {
+                String gt = gtValues.get(gtId);
+                if (mainAlternate[gtId] && StringUtils.isNotEmpty(gt)) {
+                    gtColumns[gtId] = accumulator.getColumn(Counter.GENOTYPE, gt);
+                }
+            }
+
+            // Family of each sample
+            child = new boolean[numSamples];
+            fatherPos = new int[numSamples];
+            motherPos = new int[numSamples];
+            mendelianErrors = new ArrayList<>(Collections.nCopies(numSamples, null));
+            List<String> samples = accumulator.getSamples();
+            for (int samplePos = 0; samplePos < numSamples; samplePos++) {
+                Member member = validChildren.get(samples.get(samplePos));
+                if (member != null) {
+                    child[samplePos] = true;
+                    fatherPos[samplePos] = getParentPos(member.getFather());
+                    motherPos[samplePos] = getParentPos(member.getMother());
+                    if (gtMendelianCodes == null) {
+                        gtMendelianCodes = new int[gtValues.size()];
+                        for (int gtId = 0; gtId < gtValues.size(); gtId++) {
+                            gtMendelianCodes[gtId] = MendelianError.getGenotypeCode(gtValues.get(gtId));
+                        }
+                    }
+                }
+            }
+        }
+
+        private int getParentPos(Member parent) {
+            if (parent == null) {
+                return -1;
+            }
+            Integer pos = samplesPos.get(parent.getId());
+            return pos == null ? -1 : pos;
+        }
+
+        private void transpose(int v, Variant variant, List<String> fileIds) {
+            StudyEntry studyEntry = variant.getStudies().get(0);
+            List<SampleEntry> samples = studyEntry.getSamples();
+            Integer dpPos = studyEntry.getSampleDataKeyPosition(VCFConstants.DEPTH_KEY);
+
+            // Files
+            List<Map<String, String>> filesData = new ArrayList<>(numFiles);
+            for (int f = 0; f < numFiles; f++) {
+                FileEntry fileEntry;
+                if (fileIds.get(f) == null) {
+                    fileEntry = studyEntry.getFiles().isEmpty() ? null : studyEntry.getFiles().get(0);
+                } else {
+                    fileEntry = studyEntry.getFile(fileIds.get(f));
+                }
+                Map<String, String> fileData = fileEntry == null ? Collections.emptyMap() : fileEntry.getData();
+                filesData.add(fileData);
+                int idx = v * numFiles + f;
+                String qual = fileData.get(StudyEntry.QUAL);
+                if (qual != null && !(".").equals(qual)) {
+                    hasQual[idx] = true;
+                    quals[idx] = Float.parseFloat(qual);
+                }
+                String filter = fileData.get(StudyEntry.FILTER);
+                if (filter == null || filter.isEmpty()) {
+                    filter = ".";
+                }
+                String[] subFilters = filter.split(";");
+                filterColumns[idx] = new int[subFilters.length][];
+                for (int i = 0; i < subFilters.length; i++) {
+                    filterColumns[idx][i] = accumulator.getColumn(Counter.FILTER, subFilters[i]);
+                }
+            }
+
+            // Genotypes and depths
+            for (int samplePos = 0; samplePos < numSamples; samplePos++) {
+                int idx = samplePos * numVariants + v;
+                List<String> data = samples.get(samplePos).getData();
+                String gt = data.get(0);
+                int gtId = getGtId(gt);
+                gtIds[idx] = gtId;
+                dps[idx] = -1;
+                if (gtId >= 0 && mainAlternate[gtId]) {
+                    String dp;
+                    if (dpPos != null) {
+                        dp = dpPos < data.size() ? data.get(dpPos) : null;
+                    } else if (sampleFile[samplePos] >= 0) {
+                        dp = filesData.get(sampleFile[samplePos]).get(VCFConstants.DEPTH_KEY);
+                    } else {
+                        dp = null;
+                    }
+                    if (StringUtils.isNumeric(dp)) {
+                        dps[idx] = Integer.parseInt(dp);
+                    }
+                }
+            }
+
+            // Variant values
+            String chromosome = variant.getChromosome();
+            chromosomes[v] = chromosome;
+            chromosomeColumns[v] = StringUtils.isEmpty(chromosome) ? null : accumulator.getColumn(Counter.CHROMOSOME, chromosome);
+            typeColumns[v] = accumulator.getColumn(Counter.TYPE, getTypeName(variant.getType()));
+            indelLength[v] = isIndel(variant.getType()) ? variant.getLength() : -1;
+            if (VariantStats.isTransition(variant.getReference(), variant.getAlternate())) {
+                tiTv[v] = TRANSITION;
+            } else if (VariantStats.isTransversion(variant.getReference(), variant.getAlternate())) {
+                tiTv[v] = TRANSVERSION;
+            } else {
+                tiTv[v] = NO_TI_TV;
+            }
+            chromosomeClass[v] = MendelianError.getChromosomeClass(chromosome);
+
+            Set<String> biotypes = new HashSet<>();
+            Set<String> cts = new HashSet<>();
+            Set<String> clinicalSignificance = new HashSet<>();
+            addAnnotationValues(variant.getAnnotation(), biotypes, cts, clinicalSignificance);
+            List<int[]> columns = new ArrayList<>(biotypes.size() + cts.size() + clinicalSignificance.size());
+            addColumns(columns, Counter.BIOTYPE, biotypes);
+            addColumns(columns, Counter.CONSEQUENCE_TYPE, cts);
+            addColumns(columns, Counter.CLINICAL_SIGNIFICANCE, clinicalSignificance);
+            annotationColumns[v] = columns.isEmpty() ? NO_COLUMNS : columns.toArray(new int[columns.size()][]);
+        }
+
+        private void addColumns(List<int[]> columns, Counter counter, Set<String> keys) {
+            for (String key : keys) {
+                if (StringUtils.isNotEmpty(key)) {
+                    columns.add(accumulator.getColumn(counter, key));
+                }
+            }
+        }
+
+        private int getGtId(String gt) {
+            if (gt == null) {
+                return -1;
+            }
+            Integer gtId = gtDictionary.get(gt);
+            if (gtId == null) {
+                gtId = gtValues.size();
+                gtDictionary.put(gt, gtId);
+                gtValues.add(gt);
+                if (mainAlternate == null) {
+                    mainAlternate = new boolean[16];
+                } else if (gtId == mainAlternate.length) {
+                    mainAlternate = Arrays.copyOf(mainAlternate, gtId * 2);
+                }
+                mainAlternate[gtId] = Genotype.hasMainAlternate(gt);
+            }
+            return gtId;
+        }
+
+        /**
+         * Update the counters of a range of samples. Only the columns of these samples are modified.
+         *
+         * @param from  First sample, inclusive
+         * @param to    Last sample, exclusive
+         */
+        void updateSamples(int from, int to) {
+            for (int samplePos = from; samplePos < to; samplePos++) {
+                int offset = samplePos * numVariants;
+                int file = sampleFile[samplePos];
+                for (int v = 0; v < numVariants; v++) {
+                    int gtId = gtIds[offset + v];
+                    if (gtId < 0) {
+                        continue;
+                    }
+                    if (child[samplePos]) {
+                        updateMendelianError(samplePos, v, gtId);
+                    }
+                    if (!mainAlternate[gtId]) {
+                        continue;
+                    }
+                    accumulator.addVariant(samplePos);
+                    inc(gtColumns[gtId], samplePos);
+                    inc(chromosomeColumns[v], samplePos);
+                    inc(typeColumns[v], samplePos);
+                    if (indelLength[v] >= 0) {
+                        accumulator.addIndelLength(samplePos, indelLength[v]);
+                    }
+                    accumulator.addDepth(samplePos, dps[offset + v]);
+                    if (tiTv[v] == TRANSITION) {
+                        accumulator.addTransition(samplePos);
+                    } else if (tiTv[v] == TRANSVERSION) {
+                        accumulator.addTransversion(samplePos);
+                    }
+                    int[][] filters;
+                    if (file < 0) {
+                        filters = missingFileFilterColumns;
+                    } else {
+                        int idx = v * numFiles + file;
+                        if (hasQual[idx]) {
+                            accumulator.addQual(samplePos, quals[idx]);
+                        }
+                        filters = filterColumns[idx];
+                    }
+                    for (int[] column : filters) {
+                        column[samplePos]++;
+                    }
+                    for (int[] column : annotationColumns[v]) {
+                        column[samplePos]++;
+                    }
+                }
+            }
+        }
+
+        private void updateMendelianError(int samplePos, int v, int gtId) {
+            int fatherCode = getParentCode(fatherPos[samplePos], v);
+            int motherCode = getParentCode(motherPos[samplePos], v);
+            int errorCode = MendelianError.compute(fatherCode, motherCode, gtMendelianCodes[gtId], chromosomeClass[v]);
+            if (errorCode > 0) {
+                List<int[]> errors = mendelianErrors.get(samplePos);
+                if (errors == null) {
+                    errors = new ArrayList<>();
+                    mendelianErrors.set(samplePos, errors);
+                }
+                errors.add(new int[]{v, errorCode});
+            }
+        }
+
+        private int getParentCode(int parentPos, int v) {
+            if (parentPos < 0) {
+                return MendelianError.GT_HET;
+            }
+            int gtId = gtIds[parentPos * numVariants + v];
+            return gtId < 0 ? MendelianError.GT_HET : gtMendelianCodes[gtId];
+        }
+
+        /**
+         * Add the mendelian errors found by all the ranges. Must be called from one thread, after all the ranges.
+         */
+        void addMendelianErrors() {
+            for (int samplePos = 0; samplePos < numSamples; samplePos++) {
+                List<int[]> errors = mendelianErrors.get(samplePos);
+                if (errors != null) {
+                    for (int[] error : errors) {
+                        accumulator.addMendelianError(samplePos, chromosomes[error[0]], String.valueOf(error[1]));
+                    }
+                }
+            }
+        }
+
+        private void inc(int[] column, int samplePos) {
+            if (column != null) {
+                column[samplePos]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package org.opencb.biodata.tools.variant.stats;
+
+import org.opencb.biodata.models.variant.metadata.DepthCount;
+import org.opencb.biodata.models.variant.metadata.IndelLength;
+import org.opencb.biodata.models.variant.metadata.SampleVariantStats;
+
+import java.util.*;
+
+/**
+ * Primitive counters of the {@link SampleVariantStats} of many samples.
+ *
+ * Fixed counters are stored sample-major, in one int array with a row of {@link #FIXED_COUNTERS} values per sample.
+ * Counters with a variable set of keys (genotypes, chromosomes, filters, ...) store one column of counts per key, with
+ * one value per sample. No object is created per sample until {@link #toSampleVariantStats()}.
+ *
+ * This class is not thread-safe. Use one accumulator per thread, and merge them.
+ */
+public class SampleVariantStatsAccumulator {
+
+    public enum Counter {
+        GENOTYPE,
+        CHROMOSOME,
+        TYPE,
+        FILTER,
+        BIOTYPE,
+        CONSEQUENCE_TYPE,
+        CLINICAL_SIGNIFICANCE
+    }
+
+    private static final int VARIANT_COUNT = 0;
+    private static final int INDEL_LT5 = 1;
+    private static final int INDEL_LT10 = 2;
+    private static final int INDEL_LT15 = 3;
+    private static final int INDEL_LT20 = 4;
+    private static final int INDEL_GTE20 = 5;
+    private static final int DEPTH_NA = 6;
+    private static final int DEPTH_LT5 = 7;
+    private static final int DEPTH_LT10 = 8;
+    private static final int DEPTH_LT15 = 9;
+    private static final int DEPTH_LT20 = 10;
+    private static final int DEPTH_GTE20 = 11;
+    private static final int TRANSITIONS = 12;
+    private static final int TRANSVERSIONS = 13;
+    private static final int QUAL_COUNT = 14;
+    private static final int FIXED_COUNTERS = 15;
+
+    private final List<String> samples;
+    private final int numSamples;
+    private final int[] counts;
+    private final double[] qualSum;
+    private final double[] qualSumSq;
+    private final EnumMap<Counter, Map<String, int[]>> columns;
+    // Chromosome -> error code -> counts per sample
+    private final Map<String, Map<String, int[]>> mendelianErrorCount;
+
+    public SampleVariantStatsAccumulator(List<String> samples) {
+        this.samples = samples;
+        numSamples = samples.size();
+        counts = new int[numSamples * FIXED_COUNTERS];
+        qualSum = new double[numSamples];
+        qualSumSq = new double[numSamples];
+        columns = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            columns.put(counter, new HashMap<>());
+        }
+        mendelianErrorCount = new HashMap<>();
+    }
+
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    public List<String> getSamples() {
+        return samples;
+    }
+
+    public void addVariant(int sample) {
+        counts[sample * FIXED_COUNTERS + VARIANT_COUNT]++;
+    }
+
+    public void addIndelLength(int sample, int length) {
+        int slot;
+        if (length < 5) {
+            slot = INDEL_LT5;
+        } else if (length < 10) {
+            slot = INDEL_LT10;
+        } else if (length < 15) {
+            slot = INDEL_LT15;
+        } else if (length < 20) {
+            slot = INDEL_LT20;
+        } else {
+            slot = INDEL_GTE20;
+        }
+        counts[sample * FIXED_COUNTERS + slot]++;
+    }
+
+    /**
+     * Adds the depth of one sample.
+     *
+     * @param sample    Sample position
+     * @param dp        Depth, or -1 if missing
+     */
+    public void addDepth(int sample, int dp) {
+        int slot;
+        if (dp < 0) {
+            slot = DEPTH_NA;
+        } else if (dp < 5) {
+            slot = DEPTH_LT5;
+        } else if (dp < 10) {
+            slot = DEPTH_LT10;
+        } else if (dp < 15) {
+            slot = DEPTH_LT15;
+        } else if (dp < 20) {
+            slot = DEPTH_LT20;
+        } else {
+            slot = DEPTH_GTE20;
+        }
+        counts[sample * FIXED_COUNTERS + slot]++;
+    }
+
+    public void addTransition(int sample) {
+        counts[sample * FIXED_COUNTERS + TRANSITIONS]++;
+    }
+
+    public void addTransversion(int sample) {
+        counts[sample * FIXED_COUNTERS + TRANSVERSIONS]++;
+    }
+
+    public void addQual(int sample, float qual) {
+        counts[sample * FIXED_COUNTERS + QUAL_COUNT]++;
+        qualSum[sample] += qual;
+        qualSumSq[sample] += qual * qual;
+    }
+
+    public void add(Counter counter, String key, int sample) {
+        getColumn(columns.get(counter), key)[sample]++;
+    }
+
+    /**
+     * Get the column of counts of a key, creating it if needed. Different threads may update the same column, as long
+     * as each one updates a different range of samples, but only one thread at a time may create columns.
+     *
+     * @param counter   Counter
+     * @param key       Key
+     * @return          Counts of the key, with one value per sample
+     */
+    public int[] getColumn(Counter counter, String key) {
+        return getColumn(columns.get(counter), key);
+    }
+
+    public void addMendelianError(int sample, String chromosome, String errorCode) {
+        getColumn(mendelianErrorCount.computeIfAbsent(chromosome, key -> new HashMap<>()), errorCode)[sample]++;
+    }
+
+    public int getVariantCount(int sample) {
+        return counts[sample * FIXED_COUNTERS + VARIANT_COUNT];
+    }
+
+    public int getTransitions(int sample) {
+        return counts[sample * FIXED_COUNTERS + TRANSITIONS];
+    }
+
+    public int getTransversions(int sample) {
+        return counts[sample * FIXED_COUNTERS + TRANSVERSIONS];
+    }
+
+    public int getQualCount(int sample) {
+        return counts[sample * FIXED_COUNTERS + QUAL_COUNT];
+    }
+
+    public double getQualSum(int sample) {
+        return qualSum[sample];
+    }
+
+    public double getQualSumSq(int sample) {
+        return qualSumSq[sample];
+    }
+
+    public int getCount(Counter counter, String key, int sample) {
+        int[] column = columns.get(counter).get(key);
+        return column == null ? 0 : column[sample];
+    }
+
+    public SampleVariantStatsAccumulator merge(SampleVariantStatsAccumulator other) {
+        if (other.numSamples != numSamples) {
+            throw new IllegalArgumentException("Unable to merge accumulators of " + numSamples + " and "
+                    + other.numSamples + " samples");
+        }
+        add(counts, other.counts);
+        add(qualSum, other.qualSum);
+        add(qualSumSq, other.qualSumSq);
+        for (Counter counter : Counter.values()) {
+            mergeColumns(columns.get(counter), other.columns.get(counter));
+        }
+        other.mendelianErrorCount.forEach((chromosome, otherColumns) ->
+                mergeColumns(mendelianErrorCount.computeIfAbsent(chromosome, key -> new HashMap<>()), otherColumns));
+        return this;
+    }
+
+    /**
+     * Clears all the counters, keeping the allocated columns.
+     *
+     * @return this
+     */
+    public SampleVariantStatsAccumulator reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(qualSum, 0);
+        Arrays.fill(qualSumSq, 0);
+        for (Map<String, int[]> map : columns.values()) {
+            map.values().forEach(column -> Arrays.fill(column, 0));
+        }
+        mendelianErrorCount.clear();
+        return this;
+    }
+
+    /**
+     * Builds the stats of each sample with the accumulated counters. Derived values, like the ti/tv ratio, the
+     * heterozygosity rate or the quality average, are not computed here.
+     *
+     * @return  New SampleVariantStats for each sample, in the same order as the samples
+     */
+    public List<SampleVariantStats> toSampleVariantStats() {
+        List<SampleVariantStats> statsList = new ArrayList<>(numSamples);
+        for (int sample = 0; sample < numSamples; sample++) {
+            int offset = sample * FIXED_COUNTERS;
+            SampleVariantStats stats = new SampleVariantStats(
+                    samples.get(sample),
+                    counts[offset + VARIANT_COUNT],
+                    getCounts(Counter.CHROMOSOME, sample),
+                    getCounts(Counter.TYPE, sample),
+                    getCounts(Counter.GENOTYPE, sample),
+                    new IndelLength(counts[offset + INDEL_LT5], counts[offset + INDEL_LT10], counts[offset + INDEL_LT15],
+                            counts[offset + INDEL_LT20], counts[offset + INDEL_GTE20]),
+                    getCounts(Counter.FILTER, sample),
+                    0f,
+                    0f,
+                    0f,
+                    0f,
+                    getMendelianErrorCounts(sample),
+                    new DepthCount(counts[offset + DEPTH_NA], counts[offset + DEPTH_LT5], counts[offset + DEPTH_LT10],
+                            counts[offset + DEPTH_LT15], counts[offset + DEPTH_LT20], counts[offset + DEPTH_GTE20]),
+                    getCounts(Counter.CONSEQUENCE_TYPE, sample),
+                    getCounts(Counter.BIOTYPE, sample),
+                    getCounts(Counter.CLINICAL_SIGNIFICANCE, sample)
+            );
+            statsList.add(stats);
+        }
+        return statsList;
+    }
+
+    private Map<String, Integer> getCounts(Counter counter, int sample) {
+        return getCounts(columns.get(counter), sample);
+    }
+
+    private static Map<String, Integer> getCounts(Map<String, int[]> columns, int sample) {
+        Map<String, Integer> map = new HashMap<>();
+        columns.forEach((key, column) -> {
+            if (column[sample] > 0) {
+                map.put(key, column[sample]);
+            }
+        });
+        return map;
+    }
+
+    private Map<String, Map<String, Integer>> getMendelianErrorCounts(int sample) {
+        Map<String, Map<String, Integer>> map = new HashMap<>();
+        mendelianErrorCount.forEach((chromosome, columns) -> {
+            Map<String, Integer> counts = getCounts(columns, sample);
+            if (!counts.isEmpty()) {
+                map.put(chromosome, counts);
+            }
+        });
+        return map;
+    }
+
+    private int[] getColumn(Map<String, int[]> columns, String key) {
+        int[] column = columns.get(key);
+        if (column == null) {
+            column = new int[numSamples];
+            columns.put(key, column);
+        }
+        return column;
+    }
+
+    private void mergeColumns(Map<String, int[]> columns, Map<String, int[]> otherColumns) {
+        otherColumns.forEach((key, otherColumn) -> add(getColumn(columns, key), otherColumn));
+    }
+
+    private static void add(int[] values, int[] otherValues) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] += otherValues[i];
+        }
+    }
+
+    private static void add(double[] values, double[] otherValues) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] += otherValues[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("SampleVariantStatsAccumulator{");
+        sb.append("numSamples=").append(numSamples);
+        sb.append(", keys={");
+        for (Counter counter : Counter.values()) {
+            sb.append(counter).append('=').append(columns.get(counter).size()).append(", ");
+        }
+        sb.append("MENDELIAN_ERROR=").append(mendelianErrorCount.size()).append('}');
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -14,6 +14,7 @@ import org.opencb.biodata.models.variant.avro.*;
 import org.opencb.biodata.models.variant.metadata.*;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.biodata.tools.pedigree.MendelianError;
+import org.opencb.biodata.tools.variant.stats.SampleVariantStatsAccumulator.Counter;
 import org.opencb.biodata.tools.variant.metadata.VariantMetadataManager;
 import org.opencb.commons.run.Task;
 
@@ -40,6 +41,9 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
     protected List<String> samples;
     protected LinkedHashMap<String, Integer> samplesPos;
 
+    private final List<SampleVariantStatsAccumulator> accumulators = new ArrayList<>();
+    private volatile ThreadLocal<SampleVariantStatsAccumulator> threadAccumulator;
+
     /**
      * Create a sample stats calculator.
      *
@@ -90,8 +94,15 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
         return statsList;
     }
 
+    /**
+     * Accumulates the batch into the counters of the current thread, so concurrent tasks do not block each other.
+     * Counters of all threads are merged into the {@link SampleVariantStats} at {@link #post()}.
+     *
+     * @param batch Batch of variants
+     * @return      The same batch
+     */
     @Override
-    public synchronized List<Variant> apply(List<Variant> batch) {
+    public List<Variant> apply(List<Variant> batch) {
         for (Variant variant : batch) {
             update(variant);
         }
@@ -101,6 +112,7 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
     @Override
     public void pre() {
         statsList = null;
+        threadAccumulator = null;
 
         if (pedigrees != null) {
             validChildren = new HashMap<>();
@@ -145,7 +157,10 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
         Integer dpPos = studyEntry.getSampleDataKeyPosition(VCFConstants.DEPTH_KEY);
         IntFunction<String> getDp;
         if (dpPos != null) {
-            getDp = samplePos -> samples.get(samplePos).getData().get(0);
+            getDp = samplePos -> {
+                List<String> data = samples.get(samplePos).getData();
+                return dpPos < data.size() ? data.get(dpPos) : null;
+            };
         } else {
             getDp = samplePos -> getFileAttributes(studyEntry, samplePos).get(VCFConstants.DEPTH_KEY);
         }
@@ -197,6 +212,19 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
         Set<String> biotypes = new HashSet<>();
         Set<String> cts = new HashSet<>();
         Set<String> clinicalSignificance = new HashSet<>();
+        addAnnotationValues(annotation, biotypes, cts, clinicalSignificance);
+        update(variant, gts, getDp, getQual, getFilter, samplesPos, cts, biotypes, clinicalSignificance);
+    }
+
+    /**
+     * Collect the distinct biotypes, consequence types and clinical significances of the annotation.
+     * @param annotation            Variant annotation, may be null
+     * @param biotypes              Set to add the biotypes
+     * @param cts                   Set to add the consequence types
+     * @param clinicalSignificance  Set to add the clinical significances
+     */
+    protected static void addAnnotationValues(VariantAnnotation annotation, Set<String> biotypes, Set<String> cts,
+                                              Set<String> clinicalSignificance) {
         if (annotation != null) {
             if (CollectionUtils.isNotEmpty(annotation.getConsequenceTypes())) {
                 for (ConsequenceType ct : annotation.getConsequenceTypes()) {
@@ -220,7 +248,6 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
                 }
             }
         }
-        update(variant, gts, getDp, getQual, getFilter, samplesPos, cts, biotypes, clinicalSignificance);
     }
 
     private void update(Variant variant,
@@ -230,9 +257,7 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
                         IntFunction<String> getFilter,
                         LinkedHashMap<String, Integer> samplesPos, Set<String> cts, Set<String> biotypes, Set<String> clinicalSignificance) {
         int numSamples = samplesPos.size();
-        if (statsList == null) {
-            init(new ArrayList<>(samplesPos.keySet()));
-        }
+        SampleVariantStatsAccumulator accumulator = getAccumulator(samplesPos);
 
         boolean transition = VariantStats.isTransition(variant.getReference(), variant.getAlternate());
         boolean transversion = VariantStats.isTransversion(variant.getReference(), variant.getAlternate());
@@ -243,23 +268,23 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
                 String qual = getQual.apply(samplePos);
                 String filter = getFilter.apply(samplePos);
                 String dp = getDp.apply(samplePos);
-                updateSample(variant, transition, transversion, samplePos, gts, gt, dp, qual, filter, biotypes, cts, clinicalSignificance);
+                updateSample(accumulator, variant, transition, transversion, samplePos, gts, gt, dp, qual, filter, biotypes, cts,
+                        clinicalSignificance);
             }
         }
     }
 
-    private void updateSample(Variant variant, boolean transition, boolean transversion,
+    private void updateSample(SampleVariantStatsAccumulator accumulator, Variant variant, boolean transition, boolean transversion,
                               int samplePos, IntFunction<String> gts, String gt, String dpStr,
                               String qual, String filter,
                               Set<String> biotypes, Set<String> cts, Set<String> clinicalSignificance) {
-        SampleVariantStats stats = statsList.get(samplePos);
 
 //        if (gt.contains(".")) {
 //            stats.setMissingPositions(stats.getMissingPositions() + variant.getLengthReference());
 //        }
 
         // Compute mendelian error
-        Member child = validChildren.get(stats.getId());
+        Member child = validChildren.get(accumulator.getSamples().get(samplePos));
         if (child != null) {
             Genotype childGt = new Genotype(gts.apply(samplePos));
             Genotype fatherGt = getParentGt(gts, child.getFather());
@@ -267,104 +292,81 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
 
             int errorCode = MendelianError.compute(fatherGt, motherGt, childGt, variant.getChromosome());
             if (errorCode > 0) {
-                Map<String, Map<String, Integer>> mendelianErrors = stats.getMendelianErrorCount();
-                String errorCodeKey = String.valueOf(errorCode);
-                Map<String, Integer> map = mendelianErrors.computeIfAbsent(variant.getChromosome(), (key) -> new HashMap<>());
-                incCount(map, errorCodeKey);
+                accumulator.addMendelianError(samplePos, variant.getChromosome(), String.valueOf(errorCode));
             }
         }
 
         // Only increase these counters if this sample has the mutation (i.e. has the main allele in the genotype)
         if (Genotype.hasMainAlternate(gt)) {
-            stats.setVariantCount(stats.getVariantCount() + 1);
-            incCount(stats.getGenotypeCount(), gt);
+            accumulator.addVariant(samplePos);
+            incCount(accumulator, Counter.GENOTYPE, gt, samplePos);
 
             // Chromosome counter
-            incCount(stats.getChromosomeCount(), variant.getChromosome());
+            incCount(accumulator, Counter.CHROMOSOME, variant.getChromosome(), samplePos);
 
             // Type counter
-            VariantType type = variant.getType();
-            if (type == VariantType.SNP) {
-                type = VariantType.SNV;
-            } else if (type == VariantType.MNP) {
-                type = VariantType.MNV;
-            }
-            incCount(stats.getTypeCount(), type.name());
+            incCount(accumulator, Counter.TYPE, getTypeName(variant.getType()), samplePos);
 
             // Indel length
-            if (variant.getType() == VariantType.INDEL
-                    || variant.getType() == VariantType.INSERTION
-                    || variant.getType() == VariantType.DELETION) {
-                IndelLength indel = stats.getIndelLengthCount();
-                Integer length = variant.getLength();
-                if (length < 5) {
-                    indel.setLt5(indel.getLt5() + 1);
-                } else if (length < 10) {
-                    indel.setLt10(indel.getLt10() + 1);
-                } else if (length < 15) {
-                    indel.setLt15(indel.getLt15() + 1);
-                } else if (length < 20) {
-                    indel.setLt20(indel.getLt20() + 1);
-                } else {
-                    indel.setGte20(indel.getGte20() + 1);
-                }
+            if (isIndel(variant.getType())) {
+                accumulator.addIndelLength(samplePos, variant.getLength());
             }
 
             if (StringUtils.isNumeric(dpStr)) {
-                int dp = Integer.parseInt(dpStr);
-                DepthCount dpCount = stats.getDepthCount();
-                if (dp < 5) {
-                    dpCount.setLt5(dpCount.getLt5() + 1);
-                } else if (dp < 10) {
-                    dpCount.setLt10(dpCount.getLt10() + 1);
-                } else if (dp < 15) {
-                    dpCount.setLt15(dpCount.getLt15() + 1);
-                } else if (dp < 20) {
-                    dpCount.setLt20(dpCount.getLt20() + 1);
-                } else {
-                    dpCount.setGte20(dpCount.getGte20() + 1);
-                }
+                accumulator.addDepth(samplePos, Integer.parseInt(dpStr));
             } else {
-                stats.getDepthCount().setNa(stats.getDepthCount().getNa() + 1);
+                accumulator.addDepth(samplePos, -1);
             }
 
             // Accumulate transitions and transversions in order to compute ti/tv ratio later
             if (transition) {
-                ti[samplePos]++;
+                accumulator.addTransition(samplePos);
             } else if (transversion) {
-                tv[samplePos]++;
+                accumulator.addTransversion(samplePos);
             }
 
             if (qual != null && !(".").equals(qual)) {
-                float qualValue = Float.parseFloat(qual);
-                qualCount[samplePos]++;
-                qualSum[samplePos] += qualValue;
-                qualSumSq[samplePos] += qualValue * qualValue;
+                accumulator.addQual(samplePos, Float.parseFloat(qual));
             }
             if (filter == null || filter.isEmpty()) {
                 filter = ".";
             }
             for (String subFilter : filter.split(";")) {
-                stats.getFilterCount().merge(subFilter, 1, Integer::sum);
+                accumulator.add(Counter.FILTER, subFilter, samplePos);
             }
 
             // Biotype counter
             for (String biotype : biotypes) {
-                incCount(stats.getBiotypeCount(), biotype);
+                incCount(accumulator, Counter.BIOTYPE, biotype, samplePos);
             }
 
             // ConsequenceType counter
             for (String ct : cts) {
-                incCount(stats.getConsequenceTypeCount(), ct);
+                incCount(accumulator, Counter.CONSEQUENCE_TYPE, ct, samplePos);
             }
             // ConsequenceType counter
             for (String cs : clinicalSignificance) {
-                incCount(stats.getClinicalSignificanceCount(), cs);
+                incCount(accumulator, Counter.CLINICAL_SIGNIFICANCE, cs, samplePos);
             }
 
         }
     }
 
+    protected static String getTypeName(VariantType type) {
+        if (type == VariantType.SNP) {
+            type = VariantType.SNV;
+        } else if (type == VariantType.MNP) {
+            type = VariantType.MNV;
+        }
+        return type.name();
+    }
+
+    protected static boolean isIndel(VariantType type) {
+        return type == VariantType.INDEL
+                || type == VariantType.INSERTION
+                || type == VariantType.DELETION;
+    }
+
     private Genotype getParentGt(IntFunction<String> gts, Member parent) {
         if (parent == null) {
             return null;
@@ -448,6 +450,25 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
 
     @Override
     public void post() {
+        if (threadAccumulator == null) {
+            // No samples and no variants
+            return;
+        }
+        SampleVariantStatsAccumulator accumulator = new SampleVariantStatsAccumulator(samples);
+        synchronized (accumulators) {
+            for (SampleVariantStatsAccumulator partial : accumulators) {
+                accumulator.merge(partial);
+            }
+        }
+        statsList = accumulator.toSampleVariantStats();
+        for (int i = 0; i < statsList.size(); i++) {
+            ti[i] = accumulator.getTransitions(i);
+            tv[i] = accumulator.getTransversions(i);
+            qualCount[i] = accumulator.getQualCount(i);
+            qualSum[i] = accumulator.getQualSum(i);
+            qualSumSq[i] = accumulator.getQualSumSq(i);
+        }
+
         for (int i = 0; i < statsList.size(); i++) {
             SampleVariantStats stats = statsList.get(i);
 
@@ -491,13 +512,13 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
     }
 
 
-    private void incCount(Map<String, Integer> map, String key) {
+    private static void incCount(SampleVariantStatsAccumulator accumulator, Counter counter, String key, int samplePos) {
         if (StringUtils.isEmpty(key)) {
             // Nothing to do
             return;
         }
 
-        map.merge(key, 1, Integer::sum);
+        accumulator.add(counter, key, samplePos);
     }
 
     private int getNumAltAlleles(String gt) {
@@ -558,7 +579,7 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
         }
 
         int numSamples = samples.size();
-        statsList = new ArrayList<>(numSamples);
+        statsList = null;
 
         ti = new int[numSamples];
         tv = new int[numSamples];
@@ -566,27 +587,33 @@ public class SampleVariantStatsCalculator implements Task<Variant, Variant> {
         qualSum = new double[numSamples];
         qualSumSq = new double[numSamples];
 
-        for (String sample : samples) {
-            SampleVariantStats stats = new SampleVariantStats(
-                    sample,
-                    0,
-                    new HashMap<>(),
-                    new HashMap<>(),
-                    new HashMap<>(),
-                    new IndelLength(0, 0, 0, 0, 0),
-                    new HashMap<>(),
-                    0f,
-                    0f,
-                    0f,
-                    0f,
-                    new HashMap<>(),
-                    new DepthCount(0, 0, 0, 0, 0, 0),
-                    new HashMap<>(),
-                    new HashMap<>(),
-                    new HashMap<>()
-            );
-
-            statsList.add(stats);
+        synchronized (accumulators) {
+            accumulators.clear();
+        }
+        threadAccumulator = ThreadLocal.withInitial(() -> {
+            SampleVariantStatsAccumulator accumulator = new SampleVariantStatsAccumulator(samples);
+            synchronized (accumulators) {
+                accumulators.add(accumulator);
+            }
+            return accumulator;
+        });
+    }
+
+    /**
+     * Get the accumulator of the current thread, initializing the calculator with the given samples if needed.
+     * @param samplesPos    Samples position, used only if the calculator was not initialized with a list of samples
+     * @return              Accumulator of the current thread
+     */
+    protected SampleVariantStatsAccumulator getAccumulator(LinkedHashMap<String, Integer> samplesPos) {
+        if (threadAccumulator == null) {
+            initIfNeeded(samplesPos);
+        }
+        return threadAccumulator.get();
+    }
+
+    private synchronized void initIfNeeded(LinkedHashMap<String, Integer> samplesPos) {
+        if (threadAccumulator == null) {
+            init(new ArrayList<>(samplesPos.keySet()));
         }
     }
 }
@@ -49,7 +49,7 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
     private final String studyId;
     private Set<String> files;
     private Set<String> samples;
-    private List<Integer> samplePositions;
+    private volatile List<Integer> samplePositions;
     private long sampleCount;
     private long filesCount;
     private final Map<String, Long> chrLengthMap;
@@ -63,6 +63,9 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
     protected double qualSum = 0;
     protected double qualSumSq = 0;
 
+    private final List<Partial> partials = new ArrayList<>();
+    private final ThreadLocal<Partial> threadPartial = ThreadLocal.withInitial(this::newPartial);
+
     /**
      * Calculate global statistics for the whole study. i.e. cohort ALL
      * @param metadata VariantStudyMetadata
@@ -189,37 +192,53 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
     public void pre() {
     }
 
+    /**
+     * Accumulates the batch into the counters of the current thread, so concurrent tasks do not block each other.
+     * Counters of all threads are merged into the {@link VariantSetStats} at {@link #post()}.
+     *
+     * @param batch Batch of variants
+     * @return      The same batch
+     */
     @Override
-    public synchronized List<Variant> apply(List<Variant> batch) {
+    public List<Variant> apply(List<Variant> batch) {
+        Partial partial = threadPartial.get();
         for (Variant variant : batch) {
-            updateFileEntries(variant);
+            updateFileEntries(partial, variant);
         }
         return batch;
     }
 
-    private void updateFileEntries(Variant variant) {
+    private Partial newPartial() {
+        Partial partial = new Partial();
+        synchronized (partials) {
+            partials.add(partial);
+        }
+        return partial;
+    }
+
+    private void updateFileEntries(Partial partial, Variant variant) {
         StudyEntry study = variant.getStudy(studyId);
         if (study == null) {
             return;
         }
-        int numFiles = updateFileEntries(study.getFiles());
+        int numFiles = updateFileEntries(partial, study.getFiles());
         boolean validVariant = numFiles != 0;
         if (validVariant) {
-            updateSampleEntries(study);
-            stats.setVariantCount(stats.getVariantCount() + 1);
-            stats.getChromosomeCount().merge(variant.getChromosome(), 1L, Long::sum);
-            stats.getTypeCount().merge(variant.getType().toString(), 1L, Long::sum);
+            updateSampleEntries(partial, study);
+            partial.variantCount++;
+            Partial.inc(partial.chromosomeCount, variant.getChromosome(), 1);
+            Partial.inc(partial.typeCount, variant.getType().toString(), 1);
             if (VariantStats.isTransition(variant.getReference(), variant.getAlternate())) {
-                transitionsCount++;
+                partial.transitionsCount++;
             }
             if (VariantStats.isTransversion(variant.getReference(), variant.getAlternate())) {
-                transversionsCount++;
+                partial.transversionsCount++;
             }
-            updateAnnotation(variant.getAnnotation());
+            updateAnnotation(partial, variant.getAnnotation());
         }
     }
 
-    private int updateFileEntries(List<FileEntry> files) {
+    private int updateFileEntries(Partial partial, List<FileEntry> files) {
         Iterator<FileEntry> fileEntries;
         if (this.files == null) {
             fileEntries = files.iterator();
@@ -232,14 +251,14 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
             Map<String, String> fileData = file.getData();
             if (fileData.containsKey(StudyEntry.QUAL) && !(".").equals(fileData.get(StudyEntry.QUAL))) {
                 float qual = Float.parseFloat(fileData.get(StudyEntry.QUAL));
-                qualCount++;
-                qualSum += qual;
-                qualSumSq += qual * qual;
+                partial.qualCount++;
+                partial.qualSum += qual;
+                partial.qualSumSq += qual * qual;
             }
             String filter = fileData.get(StudyEntry.FILTER);
             if (filter != null && !filter.isEmpty()) {
                 for (String f : filter.split(";")) {
-                    stats.getFilterCount().merge(f, 1L, Long::sum);
+                    Partial.inc(partial.filterCount, f, 1);
                 }
             }
             numFiles++;
@@ -247,11 +266,11 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
         return numFiles;
     }
 
-    private void updateSampleEntries(StudyEntry studyEntry) {
+    private void updateSampleEntries(Partial partial, StudyEntry studyEntry) {
         List<SampleEntry> samples = studyEntry.getSamples();
         Integer gtIdx = studyEntry.getSampleDataKeyPosition(VCFConstants.GENOTYPE_KEY);
         if (gtIdx == null) {
-            stats.getGenotypeCount().merge(Genotype.NA, sampleCount, Long::sum);
+            Partial.inc(partial.genotypeCount, Genotype.NA, sampleCount);
         } else {
             Iterator<SampleEntry> sampleEntries;
             if (this.samples == null) {
@@ -266,7 +285,7 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
             while (sampleEntries.hasNext()) {
                 SampleEntry sampleEntry = sampleEntries.next();
                 String gt = sampleEntry.getData().get(gtIdx);
-                stats.getGenotypeCount().merge(gt, 1L, Long::sum);
+                Partial.inc(partial.genotypeCount, gt, 1);
             }
         }
     }
@@ -279,16 +298,16 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
         return samplePositions;
     }
 
-    private void updateAnnotation(VariantAnnotation annotation) {
+    private void updateAnnotation(Partial partial, VariantAnnotation annotation) {
         if (annotation != null) {
             for (ConsequenceType consequenceType : annotation.getConsequenceTypes()) {
                 String biotype = consequenceType.getBiotype();
                 if (StringUtils.isNotEmpty(biotype)) {
-                    stats.getBiotypeCount().merge(biotype, 1L, Long::sum);
+                    Partial.inc(partial.biotypeCount, biotype, 1);
                 }
                 if (consequenceType.getSequenceOntologyTerms() != null) {
                     for (SequenceOntologyTerm term : consequenceType.getSequenceOntologyTerms()) {
-                        stats.getConsequenceTypeCount().merge(term.getName(), 1L, Long::sum);
+                        Partial.inc(partial.consequenceTypeCount, term.getName(), 1);
                     }
                 }
             }
@@ -297,6 +316,11 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
 
     @Override
     public synchronized void post() {
+        synchronized (partials) {
+            for (Partial partial : partials) {
+                mergePartial(partial);
+            }
+        }
         stats.setSampleCount(sampleCount);
         stats.setFilesCount(filesCount);
         float qualityAvg = (float) (qualSum / qualCount);
@@ -312,6 +336,68 @@ public class VariantSetStatsCalculator implements Task<Variant, Variant> {
         });
     }
 
+    private void mergePartial(Partial partial) {
+        stats.setVariantCount(stats.getVariantCount() + partial.variantCount);
+        transitionsCount += partial.transitionsCount;
+        transversionsCount += partial.transversionsCount;
+        qualCount += partial.qualCount;
+        qualSum += partial.qualSum;
+        qualSumSq += partial.qualSumSq;
+        Partial.mergeCounts(stats.getChromosomeCount(), partial.chromosomeCount);
+        Partial.mergeCounts(stats.getTypeCount(), partial.typeCount);
+        Partial.mergeCounts(stats.getFilterCount(), partial.filterCount);
+        Partial.mergeCounts(stats.getGenotypeCount(), partial.genotypeCount);
+        Partial.mergeCounts(stats.getBiotypeCount(), partial.biotypeCount);
+        Partial.mergeCounts(stats.getConsequenceTypeCount(), partial.consequenceTypeCount);
+        partial.clear();
+    }
+
+    /**
+     * Counters of one thread, with primitive values. Only accessed by its thread until merged.
+     */
+    private static class Partial {
+        private long variantCount;
+        private int transitionsCount;
+        private int transversionsCount;
+        private double qualCount;
+        private double qualSum;
+        private double qualSumSq;
+        private final Map<String, long[]> chromosomeCount = new HashMap<>();
+        private final Map<String, long[]> typeCount = new HashMap<>();
+        private final Map<String, long[]> filterCount = new HashMap<>();
+        private final Map<String, long[]> genotypeCount = new HashMap<>();
+        private final Map<String, long[]> biotypeCount = new HashMap<>();
+        private final Map<String, long[]> consequenceTypeCount = new HashMap<>();
+
+        private static void inc(Map<String, long[]> map, String key, long count) {
+            long[] counter = map.get(key);
+            if (counter == null) {
+                counter = new long[1];
+                map.put(key, counter);
+            }
+            counter[0] += count;
+        }
+
+        private static void mergeCounts(Map<String, Long> map, Map<String, long[]> partialMap) {
+            partialMap.forEach((key, counter) -> map.merge(key, counter[0], Long::sum));
+        }
+
+        private void clear() {
+            variantCount = 0;
+            transitionsCount = 0;
+            transversionsCount = 0;
+            qualCount = 0;
+            qualSum = 0;
+            qualSumSq = 0;
+            chromosomeCount.clear();
+            typeCount.clear();
+            filterCount.clear();
+            genotypeCount.clear();
+            biotypeCount.clear();
+            consequenceTypeCount.clear();
+        }
+    }
+
     public VariantSetStats getStats() {
         return stats;
     }
@@ -0,0 +1,275 @@
+/*
+ * <!--
+ *   ~ Copyright 2015-2017 OpenCB
+ *   ~
+ *   ~ Licensed under the Apache License, Version 2.0 (the "License");
+ *   ~ you may not use this file except in compliance with the License.
+ *   ~ You may obtain a copy of the License at
+ *   ~
+ *   ~     http://www.apache.org/licenses/LICENSE-2.0
+ *   ~
+ *   ~ Unless required by applicable law or agreed to in writing, software
+ *   ~ distributed under the License is distributed on an "AS IS" BASIS,
+ *   ~ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   ~ See the License for the specific language governing permissions and
+ *   ~ limitations under the License.
+ *   -->
+ *
+ */
+
+package org.opencb.biodata.tools.variant.stats;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumulates the genotypes, filters and qualities of a variant into primitive counters, to build the
+ * {@link VariantStats} only once all the samples and files have been added.
+ *
+ * Biallelic diploid and haploid genotypes, phased or not, use fixed slots. Any other genotype is counted by its string
+ * in an overflow table, which is only created if needed. Accumulators of different shards of samples or files can be
+ * merged with {@link #merge(VariantStatsAccumulator)}.
+ *
+ * The result is the same as {@link VariantStatsCalculator#calculate(Variant, org.opencb.biodata.models.variant.StudyEntry)}.
+ *
+ * This class is not thread-safe. Use one accumulator per thread, and merge them.
+ */
+public class VariantStatsAccumulator {
+
+    private static final int HOM_REF = 0;
+    private static final int HET = 1;
+    private static final int HOM_ALT = 2;
+    private static final int MISSING = 3;
+    private static final int HAPLOID_REF = 4;
+    private static final int HAPLOID_ALT = 5;
+    private static final int HAPLOID_MISSING = 6;
+    private static final int NA = 7;
+    private static final String[] SLOT_GENOTYPES = {"0/0", "0/1", "1/1", "./.", "0", "1", "."};
+
+    private static final String PASS = "PASS";
+
+    private final int[] genotypeCounts = new int[NA + 1];
+    private Map<String, Integer> otherGenotypeCounts;
+
+    private int passCount;
+    private Map<String, Integer> otherFilterCounts;
+    private int numFilterFiles;
+    private double qualSum;
+    private int numQualFiles;
+
+    public VariantStatsAccumulator() {
+    }
+
+    /**
+     * Adds the genotype of one sample.
+     *
+     * @param genotype  Genotype, or null if the sample has no genotype
+     * @return this
+     */
+    public VariantStatsAccumulator addGenotype(String genotype) {
+        return addGenotype(genotype, 1);
+    }
+
+    public VariantStatsAccumulator addGenotype(String genotype, int count) {
+        int slot = getSlot(genotype);
+        if (slot >= 0) {
+            genotypeCounts[slot] += count;
+        } else {
+            if (otherGenotypeCounts == null) {
+                otherGenotypeCounts = new HashMap<>();
+            }
+            otherGenotypeCounts.merge(genotype, count, Integer::sum);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the FILTER and QUAL of one file.
+     *
+     * @param filter    FILTER value, null or empty if missing
+     * @param qual      QUAL value, null, empty or "." if missing
+     * @return this
+     */
+    public VariantStatsAccumulator addFile(String filter, String qual) {
+        if (StringUtils.isNotEmpty(filter)) {
+            if (filter.equals(PASS)) {
+                passCount++;
+            } else {
+                if (otherFilterCounts == null) {
+                    otherFilterCounts = new HashMap<>();
+                }
+                VariantStatsCalculator.addFileFilter(filter, otherFilterCounts);
+            }
+            numFilterFiles++;
+        }
+        if (StringUtils.isNotEmpty(qual) && !qual.equals(".")) {
+            qualSum += Double.parseDouble(qual);
+            numQualFiles++;
+        }
+        return this;
+    }
+
+    public VariantStatsAccumulator merge(VariantStatsAccumulator other) {
+        for (int i = 0; i < genotypeCounts.length; i++) {
+            genotypeCounts[i] += other.genotypeCounts[i];
+        }
+        if (other.otherGenotypeCounts != null) {
+            if (otherGenotypeCounts == null) {
+                otherGenotypeCounts = new HashMap<>();
+            }
+            other.otherGenotypeCounts.forEach((genotype, count) -> otherGenotypeCounts.merge(genotype, count, Integer::sum));
+        }
+        passCount += other.passCount;
+        if (other.otherFilterCounts != null) {
+            if (otherFilterCounts == null) {
+                otherFilterCounts = new HashMap<>();
+            }
+            other.otherFilterCounts.forEach((filter, count) -> otherFilterCounts.merge(filter, count, Integer::sum));
+        }
+        numFilterFiles += other.numFilterFiles;
+        qualSum += other.qualSum;
+        numQualFiles += other.numQualFiles;
+        return this;
+    }
+
+    /**
+     * Clears all the counters, to reuse this accumulator with another variant.
+     *
+     * @return this
+     */
+    public VariantStatsAccumulator reset() {
+        for (int i = 0; i < genotypeCounts.length; i++) {
+            genotypeCounts[i] = 0;
+        }
+        if (otherGenotypeCounts != null) {
+            otherGenotypeCounts.clear();
+        }
+        passCount = 0;
+        if (otherFilterCounts != null) {
+            otherFilterCounts.clear();
+        }
+        numFilterFiles = 0;
+        qualSum = 0;
+        numQualFiles = 0;
+        return this;
+    }
+
+    public VariantStats toVariantStats(Variant variant) {
+        return toVariantStats(variant.getReference(), variant.getAlternate(), true);
+    }
+
+    /**
+     * Builds the stats from the accumulated values.
+     *
+     * @param refAllele     Reference allele
+     * @param altAllele     Alternate allele
+     * @param multiAllelic  Keep genotypes with secondary alternates, instead of merging them into "*"
+     * @return              New VariantStats
+     */
+    public VariantStats toVariantStats(String refAllele, String altAllele, boolean multiAllelic) {
+        Map<Genotype, Integer> gtCount = new HashMap<>();
+        for (int slot = 0; slot < NA; slot++) {
+            if (genotypeCounts[slot] > 0) {
+                gtCount.put(new Genotype(SLOT_GENOTYPES[slot]), genotypeCounts[slot]);
+            }
+        }
+        if (genotypeCounts[NA] > 0) {
+            gtCount.put(null, genotypeCounts[NA]);
+        }
+        if (otherGenotypeCounts != null) {
+            otherGenotypeCounts.forEach((genotype, count) -> gtCount.merge(new Genotype(genotype), count, Integer::sum));
+        }
+
+        VariantStats variantStats = new VariantStats();
+        VariantStatsCalculator.calculate(gtCount, variantStats, refAllele, altAllele, multiAllelic);
+
+        Map<String, Integer> filterCount = variantStats.getFilterCount();
+        if (otherFilterCounts != null) {
+            filterCount.putAll(otherFilterCounts);
+        }
+        if (passCount > 0) {
+            filterCount.merge(PASS, passCount, Integer::sum);
+        }
+        VariantStatsCalculator.calculateFilterFreq(variantStats, numFilterFiles, filterCount);
+        variantStats.setQualityAvg((float) (qualSum / numQualFiles));
+        variantStats.setQualityCount(numQualFiles);
+        return variantStats;
+    }
+
+    public int getGenotypeCount(String genotype) {
+        int slot = getSlot(genotype);
+        if (slot >= 0) {
+            return genotypeCounts[slot];
+        }
+        return otherGenotypeCounts == null ? 0 : otherGenotypeCounts.getOrDefault(genotype, 0);
+    }
+
+    /**
+     * Slot of the biallelic genotypes, without parsing them. Phased genotypes share the slot of the unphased one.
+     *
+     * @param genotype  Genotype
+     * @return          The slot, or -1 if the genotype goes to the overflow table
+     */
+    private static int getSlot(String genotype) {
+        if (genotype == null) {
+            return NA;
+        }
+        switch (genotype.length()) {
+            case 1:
+                switch (genotype.charAt(0)) {
+                    case '0':
+                        return HAPLOID_REF;
+                    case '1':
+                        return HAPLOID_ALT;
+                    case '.':
+                        return HAPLOID_MISSING;
+                    default:
+                        return -1;
+                }
+            case 3:
+                char a1 = genotype.charAt(0);
+                char separator = genotype.charAt(1);
+                char a2 = genotype.charAt(2);
+                if (separator == '/') {
+                    // Unphased genotypes are not sorted, "1/0" is not "0/1"
+                    if (a1 == a2) {
+                        return a1 == '0' ? HOM_REF : a1 == '1' ? HOM_ALT : a1 == '.' ? MISSING : -1;
+                    } else if (a1 == '0' && a2 == '1') {
+                        return HET;
+                    }
+                } else if (separator == '|') {
+                    if (a1 == a2) {
+                        return a1 == '0' ? HOM_REF : a1 == '1' ? HOM_ALT : a1 == '.' ? MISSING : -1;
+                    } else if (a1 == '0' && a2 == '1' || a1 == '1' && a2 == '0') {
+                        return HET;
+                    }
+                }
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("VariantStatsAccumulator{");
+        sb.append("genotypeCounts={");
+        for (int slot = 0; slot < NA; slot++) {
+            sb.append(SLOT_GENOTYPES[slot]).append('=').append(genotypeCounts[slot]).append(", ");
+        }
+        sb.append(Genotype.NA).append('=').append(genotypeCounts[NA]).append('}');
+        sb.append(", otherGenotypeCounts=").append(otherGenotypeCounts);
+        sb.append(", passCount=").append(passCount);
+        sb.append(", otherFilterCounts=").append(otherFilterCounts);
+        sb.append(", numFilterFiles=").append(numFilterFiles);
+        sb.append(", qualSum=").append(qualSum);
+        sb.append(", numQualFiles=").append(numQualFiles);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -44,51 +44,28 @@ public class VariantStatsCalculator {
     }
 
     public static VariantStats calculate(Variant variant, StudyEntry study, Collection<String> sampleNames) {
-        VariantStats variantStats = new VariantStats();
+        VariantStatsAccumulator accumulator = new VariantStatsAccumulator();
 
         Integer gtIdx = study.getSampleDataKeyPosition("GT");
         LinkedHashMap<String, Integer> samplesPosition = study.getSamplesPosition();
 
-        Map<Genotype, Integer> gtCount = new HashMap<>();
-        Map<String, Genotype> gts = new TreeMap<>(String::compareTo);
         for (String sampleName : sampleNames) {
             Integer sampleIdx = samplesPosition.get(sampleName);
             if (sampleIdx == null) {
                 continue;
             }
-            Genotype genotype;
             if (gtIdx != null) {
-                String g = study.getSamples().get(sampleIdx).getData().get(gtIdx);
-                genotype = gts.computeIfAbsent(g, key -> new Genotype(g));
+                accumulator.addGenotype(study.getSamples().get(sampleIdx).getData().get(gtIdx));
             } else {
-                genotype = null;
+                accumulator.addGenotype(null);
             }
-            gtCount.merge(genotype, 1, Integer::sum);
-
         }  // Finish all samples loop
 
-        calculate(gtCount, variantStats, variant.getReference(), variant.getAlternate());
-
-        int numFilterFiles = 0;
-        int numQualFiles = 0;
-        double qualSum = 0;
         for (FileEntry file : study.getFiles()) {
-            String filter = file.getData().get(StudyEntry.FILTER);
-            if (StringUtils.isNotEmpty(filter)) {
-                addFileFilter(filter, variantStats.getFilterCount());
-                numFilterFiles++;
-            }
-            String qual = file.getData().get(StudyEntry.QUAL);
-            if (StringUtils.isNotEmpty(qual) && !qual.equals(".")) {
-                qualSum += Double.parseDouble(qual);
-                numQualFiles++;
-            }
+            accumulator.addFile(file.getData().get(StudyEntry.FILTER), file.getData().get(StudyEntry.QUAL));
         }
-        calculateFilterFreq(variantStats, numFilterFiles, variantStats.getFilterCount());
-        variantStats.setQualityAvg((float) (qualSum / numQualFiles));
-        variantStats.setQualityCount(numQualFiles);
 
-        return variantStats;
+        return accumulator.toVariantStats(variant.getReference(), variant.getAlternate(), true);
     }
 
     public static VariantStats calculate(Variant variant, int homRefCount, int hetCount, int homAltCount, int missingCount) {
@@ -17,6 +17,7 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -90,6 +91,28 @@ public class BamManagerTest {
         assertEquals(3, query.size());
     }
 
+    @Test
+    public void testQueryAll() throws Exception {
+        List<Region> regions = new ArrayList<>();
+        for (int start = 60000; start < 70000; start += 1000) {
+            regions.add(new Region("20", start, start + 999));
+        }
+        AlignmentOptions options = new AlignmentOptions().setContained(false);
+
+        try (BamManager bamManager = new BamManager(inputPath);
+             BamManager pooledBamManager = new BamManager(inputPath, null, 4)) {
+            List<List<SAMRecord>> results = pooledBamManager.queryAll(regions, options).get();
+            assertEquals(regions.size(), results.size());
+            for (int i = 0; i < regions.size(); i++) {
+                List<SAMRecord> expected = bamManager.query(regions.get(i), options);
+                assertEquals(expected.size(), results.get(i).size());
+                for (int j = 0; j < expected.size(); j++) {
+                    assertEquals(expected.get(j).getSAMString(), results.get(i).get(j).getSAMString());
+                }
+            }
+        }
+    }
+
     @Test
     public void testQueryBigWigCoverage() throws Exception {
         if (!bwPath.toFile().exists()) {
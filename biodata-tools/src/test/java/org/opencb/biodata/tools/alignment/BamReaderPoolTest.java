@@ -0,0 +1,66 @@
+package org.opencb.biodata.tools.alignment;
+
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class BamReaderPoolTest {
+
+    private Path bamPath;
+
+    @Before
+    public void setUp() throws Exception {
+        bamPath = Paths.get(getClass().getResource("/HG00096.chrom20.small.bam").toURI());
+    }
+
+    @Test
+    public void testBorrowRelease() throws Exception {
+        try (BamReaderPool pool = new BamReaderPool(SamReaderFactory.make(), bamPath, 2)) {
+            try (SAMRecordIterator iterator = pool.iterator()) {
+                assertTrue(iterator.hasNext());
+                try (SAMRecordIterator other = pool.iterator()) {
+                    assertTrue(other.hasNext());
+                }
+            }
+            assertEquals(2, pool.getNumOpenReaders());
+            // Released readers are reused
+            try (SAMRecordIterator iterator = pool.iterator()) {
+                assertTrue(iterator.hasNext());
+            }
+            assertEquals(2, pool.getNumOpenReaders());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseWakesWaiters() throws Exception {
+        BamReaderPool pool = new BamReaderPool(SamReaderFactory.make(), bamPath, 1);
+        SamReader samReader = pool.borrow();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Waits for the only reader of the pool
+            Future<SamReader> waiting = executor.submit(pool::borrow);
+            Thread.sleep(200);
+            assertFalse(waiting.isDone());
+
+            pool.close();
+            try {
+                waiting.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            pool.release(samReader);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
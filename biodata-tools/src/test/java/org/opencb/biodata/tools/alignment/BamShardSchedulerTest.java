@@ -0,0 +1,96 @@
+package org.opencb.biodata.tools.alignment;
+
+import htsjdk.samtools.SAMRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.alignment.RegionCoverage;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.alignment.iterators.BamIterator;
+import org.opencb.biodata.tools.alignment.coverage.SamRecordRegionCoverageCalculator;
+import org.opencb.biodata.tools.alignment.stats.AlignmentGlobalStats;
+import org.opencb.biodata.tools.alignment.stats.SamRecordAlignmentGlobalStatsCalculator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BamShardSchedulerTest {
+
+    private Path inputPath;
+
+    @Before
+    public void setUp() throws Exception {
+        inputPath = Paths.get(getClass().getResource("/HG00096.chrom20.small.bam").toURI());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        BamShardScheduler scheduler = new BamShardScheduler(inputPath, 4);
+        List<BamShardScheduler.Shard> shards = scheduler.getShards(8);
+        assertTrue(shards.size() > 1);
+        assertTrue(shards.get(shards.size() - 1).isUnmapped());
+
+        // Every read is processed once
+        long numReads = 0;
+        for (int count : scheduler.map(shards, (shard, reads) -> {
+            int n = 0;
+            while (reads.hasNext()) {
+                reads.next();
+                n++;
+            }
+            return n;
+        })) {
+            numReads += count;
+        }
+
+        AlignmentGlobalStats expected;
+        long expectedNumReads = 0;
+        try (BamManager bamManager = new BamManager(inputPath)) {
+            expected = bamManager.stats();
+            try (BamIterator<SAMRecord> iterator = bamManager.iterator()) {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    expectedNumReads++;
+                }
+            }
+        }
+        assertEquals(expectedNumReads, numReads);
+
+        AlignmentGlobalStats stats = scheduler.stats(shards, new SamRecordAlignmentGlobalStatsCalculator(), null);
+        assertEquals(expected.numMapped, stats.numMapped);
+        assertEquals(expected.numUnmapped, stats.numUnmapped);
+        assertEquals(expected.accMappingQuality, stats.accMappingQuality);
+        assertEquals(expected.mappingQualityMap, stats.mappingQualityMap);
+        assertEquals(expected.insertMap, stats.insertMap);
+        assertEquals(expected.numPaired, stats.numPaired);
+        assertEquals(expected.NM, stats.NM);
+    }
+
+    @Test
+    public void testCoverage() throws Exception {
+        Region region = new Region("20", 60000, 69999);
+        BamShardScheduler scheduler = new BamShardScheduler(inputPath, 4);
+        RegionCoverage coverage = scheduler.coverage(region, new SamRecordRegionCoverageCalculator(), null);
+
+        try (BamManager bamManager = new BamManager(inputPath)) {
+            RegionCoverage expected = bamManager.coverage(region, null, new AlignmentOptions().setContained(false));
+            assertArrayEquals(expected.getValues(), coverage.getValues(), 0);
+        }
+    }
+
+    @Test
+    public void testBreakpoints() throws Exception {
+        try (BamManager bamManager = new BamManager(inputPath)) {
+            List<String> breakpoints = bamManager.getBreakpoints(new Region("20", 60000, 69999));
+            assertTrue(breakpoints.size() > 0);
+            for (String breakpoint : breakpoints) {
+                String[] range = breakpoint.split("-");
+                assertTrue(Long.parseLong(range[0]) <= Long.parseLong(range[1]));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.opencb.biodata.tools.alignment;
+
+import ga4gh.Reads;
+import htsjdk.samtools.*;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.ga4gh.models.ReadAlignment;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.alignment.converters.SAMRecordToAvroReadAlignmentBiConverter;
+import org.opencb.biodata.tools.alignment.converters.SAMRecordToProtoReadAlignmentBiConverter;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadAlignmentExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path inputPath;
+    private List<SAMRecord> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        inputPath = Paths.get(getClass().getResource("/HG00096.chrom20.small.bam").toURI());
+
+        expected = new ArrayList<>();
+        SamReaderFactory srf = SamReaderFactory.make().validationStringency(ValidationStringency.LENIENT);
+        try (SamReader reader = srf.open(SamInputResource.of(inputPath.toFile()));
+             SAMRecordIterator iterator = reader.query("20", 60000, 70000, false)) {
+            iterator.forEachRemaining(expected::add);
+        }
+        assertTrue(expected.size() > 0);
+    }
+
+    @Test
+    public void testConverterReuse() {
+        SAMRecordToAvroReadAlignmentBiConverter converter = new SAMRecordToAvroReadAlignmentBiConverter();
+        ReadAlignment reused = null;
+        for (SAMRecord samRecord : expected) {
+            reused = converter.to(samRecord, reused);
+            assertEquals(converter.to(samRecord).toString(), reused.toString());
+        }
+    }
+
+    @Test
+    public void testExportAvro() throws Exception {
+        Path output = temporaryFolder.getRoot().toPath().resolve("reads.avro");
+        ReadAlignmentExporter exporter = new ReadAlignmentExporter(inputPath, 4).setShardSize(1000);
+        long numReads = exporter.export(Collections.singletonList(new Region("20", 60000, 70000)), output,
+                ReadAlignmentExporter.Format.AVRO);
+        assertEquals(expected.size(), numReads);
+
+        SAMRecordToAvroReadAlignmentBiConverter converter = new SAMRecordToAvroReadAlignmentBiConverter();
+        try (DataFileReader<ReadAlignment> reader = new DataFileReader<>(output.toFile(),
+                new SpecificDatumReader<>(ReadAlignment.class))) {
+            for (SAMRecord samRecord : expected) {
+                assertEquals(converter.to(samRecord).toString(), reader.next().toString());
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testExportProto() throws Exception {
+        Path output = temporaryFolder.getRoot().toPath().resolve("reads.pb.gz");
+        ReadAlignmentExporter exporter = new ReadAlignmentExporter(inputPath, 4).setShardSize(1000);
+        long numReads = exporter.export(Collections.singletonList(new Region("20", 60000, 70000)), output,
+                ReadAlignmentExporter.Format.PROTO);
+        assertEquals(expected.size(), numReads);
+
+        SAMRecordToProtoReadAlignmentBiConverter converter = new SAMRecordToProtoReadAlignmentBiConverter();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(output))) {
+            for (SAMRecord samRecord : expected) {
+                assertEquals(converter.to(samRecord), Reads.ReadAlignment.parseDelimitedFrom(inputStream));
+            }
+            assertNull(Reads.ReadAlignment.parseDelimitedFrom(inputStream));
+        }
+    }
+}
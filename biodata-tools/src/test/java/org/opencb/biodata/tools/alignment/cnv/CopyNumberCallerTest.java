@@ -0,0 +1,178 @@
+package org.opencb.biodata.tools.alignment.cnv;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.sequence.GenomeSequenceReader;
+import org.opencb.biodata.models.core.Region;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CopyNumberCallerTest {
+
+    private static final int WINDOW_SIZE = 10000;
+
+    @Test
+    public void testSegments() throws Exception {
+        Random random = new Random(1);
+        DepthSource normal = (region, windowSize) -> depths(region, windowSize, random, w -> 30);
+        DepthSource tumour = (region, windowSize) -> depths(region, windowSize, random, w -> {
+            if (w >= 40 && w < 60) {
+                return 60;
+            } else if (w >= 80 && w < 90) {
+                return 15;
+            } else if (w >= 95) {
+                return 0;
+            }
+            return 30;
+        });
+
+        Region chromosome = new Region("1", 1, 995000);
+        List<CopyNumberProfile> profiles = new CopyNumberCaller(tumour, normal)
+                .setWindowSize(WINDOW_SIZE)
+                .setNumThreads(2)
+                .call(Collections.singletonList(chromosome));
+
+        assertEquals(1, profiles.size());
+        assertEquals(100, profiles.get(0).getLog2Ratios().getValues().length);
+        List<CopyNumberSegment> segments = profiles.get(0).getSegments();
+        assertEquals(segments.toString(), 6, segments.size());
+        assertSegment(segments.get(0), 1, 400000, 2);
+        assertSegment(segments.get(1), 400001, 600000, 4);
+        assertSegment(segments.get(2), 600001, 800000, 2);
+        assertSegment(segments.get(3), 800001, 900000, 1);
+        assertSegment(segments.get(4), 900001, 950000, 2);
+        assertSegment(segments.get(5), 950001, 995000, 0);
+        assertEquals(1, segments.get(1).getMeanLog2Ratio(), 0.1);
+    }
+
+    @Test
+    public void testGcNormalization() throws Exception {
+        Random random = new Random(2);
+        // GC content of the windows cycles between 30%, 50% and 70%, and tumour depth is biased by it
+        DepthSource normal = (region, windowSize) -> depths(region, windowSize, random, w -> 30);
+        DepthSource tumour = (region, windowSize) -> depths(region, windowSize, random, w -> 30 * (0.5 + gcContent(w)));
+        GenomeSequenceReader genome = new GenomeSequenceReader() {
+            @Override
+            public List<String> getSequenceNames() {
+                return Collections.singletonList("1");
+            }
+
+            @Override
+            public int getLength(String sequenceName) {
+                return 3000000;
+            }
+
+            @Override
+            public String read(String sequenceName, int start, int end) {
+                StringBuilder sb = new StringBuilder(end - start + 1);
+                for (int position = start; position <= end; position++) {
+                    int window = (position - 1) / WINDOW_SIZE;
+                    int offset = (position - 1) % WINDOW_SIZE;
+                    sb.append(offset < gcContent(window) * WINDOW_SIZE ? 'G' : 'A');
+                }
+                return sb.toString();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        Region chromosome = new Region("1", 1, 3000000);
+        double[] gcContent = CopyNumberCaller.getGcContent(genome, chromosome, WINDOW_SIZE);
+        assertEquals(0.3, gcContent[0], 1e-9);
+        assertEquals(0.7, gcContent[299], 1e-9);
+
+        List<CopyNumberProfile> profiles = new CopyNumberCaller(tumour, normal)
+                .setWindowSize(WINDOW_SIZE)
+                .setGenome(genome)
+                .call(Collections.singletonList(chromosome));
+        List<CopyNumberSegment> segments = profiles.get(0).getSegments();
+        assertEquals(segments.toString(), 1, segments.size());
+        assertSegment(segments.get(0), 1, 3000000, 2);
+        for (double log2Ratio : profiles.get(0).getLog2Ratios().getValues()) {
+            assertTrue(Math.abs(log2Ratio) < 0.3);
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        double[][] depths = {{10, 20, 30, 1000}, {40}};
+        boolean[][] valid = {{true, true, true, false}, {true}};
+        CopyNumberCaller.normalize(depths, new double[2][], valid);
+        // Median of the valid windows only
+        assertEquals(0.4, depths[0][0], 1e-9);
+        assertEquals(1.6, depths[1][0], 1e-9);
+        assertTrue(valid[0][0] && valid[1][0] && !valid[0][3]);
+
+        // No reads: windows are invalidated instead of divided by zero
+        depths = new double[][]{{0, 0, 5}, {0}};
+        valid = new boolean[][]{{true, true, true}, {true}};
+        CopyNumberCaller.normalize(depths, new double[2][], valid);
+        assertFalse(valid[0][0] || valid[0][1] || valid[0][2] || valid[1][0]);
+        assertEquals(5, depths[0][2], 1e-9);
+
+        // No valid window
+        valid = new boolean[][]{{false, false, false}, {false}};
+        CopyNumberCaller.normalize(depths, new double[2][], valid);
+        assertFalse(valid[0][2]);
+    }
+
+    @Test
+    public void testNoTumourReads() throws Exception {
+        Random random = new Random(3);
+        DepthSource normal = (region, windowSize) -> depths(region, windowSize, random, w -> 30);
+        DepthSource tumour = (region, windowSize) -> new double[DepthSource.getNumWindows(region, windowSize)];
+
+        List<CopyNumberProfile> profiles = new CopyNumberCaller(tumour, normal)
+                .setWindowSize(WINDOW_SIZE)
+                .call(Collections.singletonList(new Region("1", 1, 500000)));
+        for (double log2Ratio : profiles.get(0).getLog2Ratios().getValues()) {
+            assertTrue(Double.isNaN(log2Ratio));
+        }
+        assertTrue(profiles.get(0).getSegments().isEmpty());
+    }
+
+    @Test
+    public void testHmm() {
+        CopyNumberHmm hmm = new CopyNumberHmm().setPurity(0.5);
+        // 50% purity, a homozygous deletion halves the coverage
+        assertEquals(-1, hmm.getExpectedLog2Ratio(0), 1e-9);
+        assertEquals(0, hmm.getExpectedLog2Ratio(2), 1e-9);
+
+        double[] values = {0, 0.02, Double.NaN, -0.01, -1, -0.98, -1.02, Double.NaN, -1, 0.01, 0};
+        int[] copyNumbers = new CopyNumberHmm().setTransitionProbability(0.01).segment(values, 0.05);
+        int[] expected = {2, 2, -1, 2, 1, 1, 1, -1, 1, 2, 2};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(expected[i], copyNumbers[i]);
+        }
+    }
+
+    private interface WindowDepth {
+        double depth(int window);
+    }
+
+    private static double gcContent(int window) {
+        return 0.3 + 0.2 * (window % 3);
+    }
+
+    private static double[] depths(Region region, int windowSize, Random random, WindowDepth windowDepth) {
+        double[] depths = new double[DepthSource.getNumWindows(region, windowSize)];
+        for (int w = 0; w < depths.length; w++) {
+            double depth = windowDepth.depth(w);
+            depths[w] = Math.max(0, depth + random.nextGaussian() * Math.sqrt(depth) / 10);
+        }
+        return depths;
+    }
+
+    private static void assertSegment(CopyNumberSegment segment, int start, int end, int copyNumber) {
+        assertEquals(segment.toString(), start, segment.getStart());
+        assertEquals(segment.toString(), end, segment.getEnd());
+        assertEquals(segment.toString(), copyNumber, segment.getCopyNumber());
+    }
+}
@@ -0,0 +1,69 @@
+package org.opencb.biodata.tools.clinical;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.clinical.ClinicalProperty.ModeOfInheritance;
+import org.opencb.biodata.models.clinical.interpretation.DiseasePanel;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.tools.clinical.DiseasePanelIndex.SoTermTier;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.opencb.biodata.tools.pedigree.ModeOfInheritance.extendedLof;
+
+public class DiseasePanelIndexTest {
+
+    private DiseasePanelIndex panelIndex;
+
+    @Before
+    public void setUp() {
+        DiseasePanel panel1 = new DiseasePanel("panel1", "panel1")
+                .setGenes(Arrays.asList(genePanel("ENSG01", ModeOfInheritance.AUTOSOMAL_DOMINANT), genePanel("ENSG02", null)));
+        DiseasePanel panel2 = new DiseasePanel("panel2", "panel2")
+                .setGenes(Collections.singletonList(genePanel("ENSG01", ModeOfInheritance.AUTOSOMAL_RECESSIVE)));
+
+        panelIndex = new DiseasePanelIndex(Arrays.asList(panel1, panel2), "GRCh38", extendedLof,
+                TieringClinicalVariantCreator.TIER_1_CONSEQUENCE_TYPES_SET,
+                Collections.singleton("SO:0001583"));
+    }
+
+    @Test
+    public void testGenePanels() {
+        assertEquals(2, panelIndex.getNumGenes());
+        assertEquals(-1, panelIndex.getGeneIndex("ENSG03"));
+        assertEquals(-1, panelIndex.getGeneIndex(null));
+
+        int gene1 = panelIndex.getGeneIndex("ENSG01");
+        assertArrayEquals(new int[]{0, 1}, panelIndex.getGenePanels(gene1));
+        assertArrayEquals(new ModeOfInheritance[]{ModeOfInheritance.AUTOSOMAL_DOMINANT, ModeOfInheritance.AUTOSOMAL_RECESSIVE},
+                panelIndex.getGenePanelModeOfInheritances(gene1));
+        assertTrue(panelIndex.hasModeOfInheritance(gene1));
+
+        int gene2 = panelIndex.getGeneIndex("ENSG02");
+        assertArrayEquals(new int[]{0}, panelIndex.getGenePanels(gene2));
+        assertFalse(panelIndex.hasModeOfInheritance(gene2));
+        assertEquals("panel1", panelIndex.getPanel(panelIndex.getGenePanels(gene2)[0]).getId());
+    }
+
+    @Test
+    public void testSoTermTiers() {
+        assertEquals(SoTermTier.TIER_1, panelIndex.getSoTermTier(new SequenceOntologyTerm("SO:0001587", "stop_gained")));
+        assertEquals(SoTermTier.TIER_2, panelIndex.getSoTermTier(new SequenceOntologyTerm("SO:0001583", "missense_variant")));
+        assertEquals(SoTermTier.TIER_3, panelIndex.getSoTermTier(new SequenceOntologyTerm("SO:0001821", "inframe_insertion")));
+        assertEquals(SoTermTier.TIER_3, panelIndex.getSoTermTier(new SequenceOntologyTerm(null, "stop_gained")));
+        assertEquals(SoTermTier.DISCARDED, panelIndex.getSoTermTier(new SequenceOntologyTerm("SO:0001627", "intron_variant")));
+        assertEquals(SoTermTier.DISCARDED, panelIndex.getSoTermTier(new SequenceOntologyTerm("", "stop_gained")));
+
+        assertEquals(0, panelIndex.getSoTermTiers(null).length);
+        assertArrayEquals(new SoTermTier[]{SoTermTier.TIER_1, SoTermTier.DISCARDED},
+                panelIndex.getSoTermTiers(Arrays.asList(new SequenceOntologyTerm("SO:0001589", "frameshift_variant"),
+                        new SequenceOntologyTerm("SO:0001819", "synonymous_variant"))));
+    }
+
+    private DiseasePanel.GenePanel genePanel(String id, ModeOfInheritance moi) {
+        return new DiseasePanel.GenePanel(id, id, Collections.emptyList(), moi, null, null, null, Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), null);
+    }
+}
@@ -0,0 +1,96 @@
+package org.opencb.biodata.tools.pedigree;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantTestUtils;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.tools.pedigree.CompoundHeterozygousDetector.CompoundHeterozygousGroup;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompoundHeterozygousDetectorTest {
+
+    @Test
+    public void decodeGenotypeTest() {
+        assertEquals(CompoundHeterozygousDetector.HAS_REF, CompoundHeterozygousDetector.decodeGenotype("0/0"));
+        assertEquals(CompoundHeterozygousDetector.HET, CompoundHeterozygousDetector.decodeGenotype("0/1"));
+        assertEquals(CompoundHeterozygousDetector.HET, CompoundHeterozygousDetector.decodeGenotype("1|0"));
+        assertEquals(CompoundHeterozygousDetector.HAS_ALT, CompoundHeterozygousDetector.decodeGenotype("1"));
+        assertEquals(CompoundHeterozygousDetector.HAS_ALT, CompoundHeterozygousDetector.decodeGenotype("./1"));
+        assertEquals(CompoundHeterozygousDetector.HAS_REF, CompoundHeterozygousDetector.decodeGenotype("0/2"));
+        assertEquals(0, CompoundHeterozygousDetector.decodeGenotype("./."));
+        assertEquals(0, CompoundHeterozygousDetector.decodeGenotype("10/11"));
+    }
+
+    @Test
+    public void compoundHeterozygousTest() {
+        List<Variant> variants = Arrays.asList(
+                annotate(VariantTestUtils.generateVariant("2:20:A:T", "NA12877", "0/1", "NA12878", "0/0", "NA12879", "0/1"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:30:A:T", "NA12877", "0/0", "NA12878", "0/1", "NA12879", "0/1"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:40:A:T", "NA12877", "0/1", "NA12878", "0/1", "NA12879", "0/1"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:50:A:T", "NA12877", "0/0", "NA12878", "0/1", "NA12879", "0/0"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:200:A:T", "NA12877", "0/1", "NA12878", "0/0", "NA12879", "0/1"), "T2"),
+                annotate(VariantTestUtils.generateVariant("3:10:A:T", "NA12877", "0/1", "NA12878", "0/0", "NA12879", "0/1"), "T3"),
+                annotate(VariantTestUtils.generateVariant("3:20:A:T", "NA12877", "0/0", "NA12878", "1/1", "NA12879", "0/1"), "T3")
+        );
+
+        Map<String, Integer> transcriptEnds = new HashMap<>();
+        transcriptEnds.put("T1", 100);
+        transcriptEnds.put("T2", 300);
+        CompoundHeterozygousDetector detector = new CompoundHeterozygousDetector(
+                Collections.singletonList(new Trio("NA12879", 2, 1, 0)), ModeOfInheritance.extendedLof,
+                ModeOfInheritance.proteinCoding, transcriptId -> transcriptEnds.getOrDefault(transcriptId, -1));
+
+        List<CompoundHeterozygousGroup> groups = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            detector.add(variants.get(i), groups::add);
+        }
+        // T1 is emitted as soon as the variant at position 200 is added
+        assertEquals(1, groups.size());
+        assertEquals("T1", groups.get(0).getTranscriptId());
+        assertEquals("2:30:A:T", groups.get(0).getMaternalVariants().get(0).toString());
+        assertEquals("2:20:A:T", groups.get(0).getPaternalVariants().get(0).toString());
+        assertEquals(2, groups.get(0).getVariants().size());
+
+        for (int i = 5; i < variants.size(); i++) {
+            detector.add(variants.get(i), groups::add);
+        }
+        detector.flush(groups::add);
+        assertEquals(2, groups.size());
+        assertEquals("T3", groups.get(1).getTranscriptId());
+    }
+
+    @Test
+    public void missingParentTest() {
+        List<Variant> variants = Arrays.asList(
+                annotate(VariantTestUtils.generateVariant("2:20:A:T", "NA12878", "0/0", "NA12879", "0/1"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:30:A:T", "NA12878", "0/1", "NA12879", "0/1"), "T1"),
+                annotate(VariantTestUtils.generateVariant("2:40:A:T", "NA12878", "1/1", "NA12879", "0/1"), "T1")
+        );
+
+        List<CompoundHeterozygousGroup> groups = new CompoundHeterozygousDetector(Arrays.asList(new Trio("NA12879", 1, 0, -1),
+                new Trio("orphan", 1, -1, -1))).run(variants.iterator());
+        assertEquals(1, groups.size());
+        assertEquals("NA12879", groups.get(0).getTrio().getId());
+        assertEquals("2:30:A:T", groups.get(0).getMaternalVariants().get(0).toString());
+        assertEquals("2:20:A:T", groups.get(0).getPaternalVariants().get(0).toString());
+        assertTrue(groups.get(0).getVariants().stream().noneMatch(v -> v.getStart() == 40));
+    }
+
+    private Variant annotate(Variant variant, String transcriptId) {
+        ConsequenceType consequenceType = new ConsequenceType();
+        consequenceType.setEnsemblTranscriptId(transcriptId);
+        consequenceType.setBiotype("protein_coding");
+        consequenceType.setSequenceOntologyTerms(Collections.singletonList(new SequenceOntologyTerm("SO:0001583", "missense_variant")));
+
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setConsequenceTypes(Collections.singletonList(consequenceType));
+        variant.setAnnotation(annotation);
+        return variant;
+    }
+}
@@ -0,0 +1,64 @@
+package org.opencb.biodata.tools.pedigree;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantTestUtils;
+import org.opencb.biodata.tools.pedigree.MendelianErrorScanner.FamilyResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MendelianErrorScannerTest {
+
+    @Test
+    public void genotypeCodeTest() {
+        for (String gt : Arrays.asList("0/0", "0|1", "1/1", "./.", ".", "0", "1", "./1", "0/.", "1/2", "2/2", "0/10", "-1/-1", "0|0|1")) {
+            Genotype genotype = new Genotype(gt);
+            assertEquals(gt, MendelianError.getGenotypeCode(genotype), MendelianError.getGenotypeCode(gt));
+        }
+    }
+
+    @Test
+    public void lookupTableTest() {
+        List<String> genotypes = Arrays.asList("0/0", "0/1", "1/1", "./.", "1/2", "0|1");
+        for (String chromosome : Arrays.asList("1", "x", "Y", "MT", "chrX")) {
+            for (String father : genotypes) {
+                for (String mother : genotypes) {
+                    for (String child : genotypes) {
+                        int expected = MendelianError.compute(new Genotype(father), new Genotype(mother), new Genotype(child), chromosome);
+                        int code = MendelianError.compute(MendelianError.getGenotypeCode(father), MendelianError.getGenotypeCode(mother),
+                                MendelianError.getGenotypeCode(child), MendelianError.getChromosomeClass(chromosome));
+                        assertEquals(father + " " + mother + " " + child + " " + chromosome, expected, code);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void multipleTriosTest() {
+        List<Variant> variants = Arrays.asList(
+                VariantTestUtils.generateVariant("1:10:A:T", "F1", "0/0", "M1", "0/0", "C1", "0/1", "F2", "0/1", "M2", "0/0", "C2", "0/1"),
+                VariantTestUtils.generateVariant("1:20:A:T", "F1", "0/0", "M1", "0/1", "C1", "1/1", "F2", "0/0", "M2", "0/0", "C2", "1/1"),
+                VariantTestUtils.generateVariant("1:30:A:T", "F1", "1/1", "M1", "1/1", "C1", "0/0", "F2", "0/1", "M2", "0/1", "C2", "0/1"),
+                VariantTestUtils.generateVariant("X:10:A:T", "F1", "0/0", "M1", "0/0", "C1", "1/1", "F2", "0/0", "M2", "1/1", "C2", "0/0")
+        );
+
+        List<FamilyResult> results = new MendelianErrorScanner(Arrays.asList(new Trio("C1", 2, 1, 0), new Trio("C2", 5, 4, 3)))
+                .run(variants.iterator());
+
+        assertEquals("C1", results.get(0).getTrio().getId());
+        assertEquals(3, results.get(0).getDeNovoVariants().size());
+        assertEquals(4, results.get(0).getNumMendelianErrors());
+        assertEquals(1, results.get(0).getNumMendelianErrors(8));
+
+        assertEquals("C2", results.get(1).getTrio().getId());
+        assertEquals(1, results.get(1).getDeNovoVariants().size());
+        assertEquals("1:20:A:T", results.get(1).getDeNovoVariants().get(0).toString());
+        assertEquals(2, results.get(1).getNumMendelianErrors());
+        assertEquals(1, results.get(1).getNumMendelianErrors(9));
+    }
+}
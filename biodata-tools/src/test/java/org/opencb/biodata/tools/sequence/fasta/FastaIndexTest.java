@@ -6,6 +6,7 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.tools.sequence.FastaIndex;
 import org.opencb.biodata.tools.sequence.SamtoolsFastaIndex;
 import org.opencb.biodata.tools.sequence.SequenceAdaptor;
@@ -15,6 +16,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -79,6 +82,37 @@ public class FastaIndexTest {
         assertEquals("CTAACCCTAAC", samtoolsFastaIndex.query("10", 10001, 10011));
     }
 
+    @Test
+    public void testBatchQuery() throws Exception {
+        Path rootDir = Paths.get("target/test-data", "junit-" + RandomStringUtils.randomAlphabetic(5));
+        Files.createDirectories(rootDir);
+        Path fastaFile = rootDir.resolve("tricky.fasta");
+        Files.copy(FastaIndexTest.class.getResourceAsStream("/tricky.fasta"), fastaFile);
+        Files.copy(FastaIndexTest.class.getResourceAsStream("/tricky.fasta.fai"), rootDir.resolve("tricky.fasta.fai"));
+        Path blockCompressedFile = Paths.get(getClass().getResource("/homo_sapiens_grch38_small.fa.gz").toURI());
+
+        List<Region> regions = Arrays.asList(new Region("5", 55, 130), new Region("1", 1, 40), new Region("5", 1, 60),
+                new Region("3", 3, 6), new Region("5", 61, 61), new Region("5", 120, 360));
+        List<Region> blockCompressedRegions = Arrays.asList(new Region("21", 10001, 10011), new Region("10", 10001, 10011),
+                new Region("21", 10005, 10020), new Region("10", 10030, 10040));
+
+        for (Path file : Arrays.asList(fastaFile, blockCompressedFile)) {
+            FastaIndex fastaIndex = new FastaIndex(file);
+            List<Region> queries = file == fastaFile ? regions : blockCompressedRegions;
+            List<CharSequence> sequences = fastaIndex.query(queries);
+            assertEquals(queries.size(), sequences.size());
+            for (int i = 0; i < queries.size(); i++) {
+                Region region = queries.get(i);
+                String expected = fastaIndex.query(region.getChromosome(), region.getStart(), region.getEnd());
+                assertEquals(expected, sequences.get(i).toString());
+                if (expected.length() >= 3) {
+                    assertEquals(expected.substring(1, 3), sequences.get(i).subSequence(1, 3).toString());
+                }
+            }
+            fastaIndex.close();
+        }
+    }
+
     @Test
     public void testGenomicSequenceChromosomeNotPresent() throws Exception {
         Path referenceGenome = Paths.get(
@@ -0,0 +1,92 @@
+package org.opencb.biodata.tools.sequence.fasta;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.tools.sequence.TwoBitSequenceAdaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TwoBitSequenceAdaptorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testConvert() throws Exception {
+        Path fastaFile = temporaryFolder.getRoot().toPath().resolve("tricky.fasta");
+        Files.copy(getClass().getResourceAsStream("/tricky.fasta"), fastaFile);
+        // Soft-masked and ambiguous bases, and CRLF line endings
+        Files.write(fastaFile, ">6 masked\r\nACGTacgtNNnnRYACGT\r\nacgTTT\r\n".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+        Map<String, String> expected = readFasta(fastaFile);
+
+        try (TwoBitSequenceAdaptor adaptor = TwoBitSequenceAdaptor.fromFasta(fastaFile, 3)) {
+            assertTrue(Files.exists(temporaryFolder.getRoot().toPath().resolve("tricky.fasta.2bit")));
+            assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), adaptor.getSequenceNames());
+            for (Map.Entry<String, String> entry : expected.entrySet()) {
+                String sequence = entry.getValue();
+                assertEquals(sequence.length(), adaptor.getLength(entry.getKey()));
+                assertEquals(sequence, adaptor.query(entry.getKey(), 1, sequence.length()));
+                for (int start = 1; start < sequence.length(); start += 7) {
+                    int end = Math.min(sequence.length(), start + 13);
+                    assertEquals(sequence.substring(start - 1, end), adaptor.query(entry.getKey(), start, end));
+                }
+            }
+            assertEquals("ACGTacgtNNnnNNACGTacgTTT", adaptor.query("6", 1, 24));
+
+            List<CharSequence> sequences = adaptor.query(Arrays.asList(new Region("6", 5, 12), new Region("3", 1, 6)));
+            assertEquals("acgtNNnn", sequences.get(0).toString());
+            assertEquals("NNNNCT", sequences.get(1).toString());
+        }
+    }
+
+    @Test
+    public void testConvertFailure() throws Exception {
+        Path fastaFile = temporaryFolder.getRoot().toPath().resolve("invalid.fasta");
+        // The second sequence name is too long for a .2bit file
+        Files.write(fastaFile, (">1\nACGT\n>" + StringUtils.repeat('A', 300) + "\nACGT\n").getBytes(StandardCharsets.US_ASCII));
+
+        try {
+            TwoBitSequenceAdaptor.fromFasta(fastaFile, 2).close();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Sequence name longer than 255 characters"));
+        }
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            assertEquals(Collections.singletonList(fastaFile), files.collect(Collectors.toList()));
+        }
+    }
+
+    private static Map<String, String> readFasta(Path fastaFile) throws Exception {
+        Map<String, String> sequences = new LinkedHashMap<>();
+        String name = null;
+        for (String line : Files.readAllLines(fastaFile)) {
+            line = line.trim();
+            if (line.startsWith(">")) {
+                name = line.substring(1).trim().split("\\s+")[0];
+                sequences.put(name, "");
+            } else {
+                // Ambiguous bases are stored as N
+                sequences.put(name, sequences.get(name) + line.replaceAll("[^ACGTNacgtn]", "N"));
+            }
+        }
+        return sequences;
+    }
+}
@@ -32,6 +32,8 @@ import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Cristina Yenyxe Gonzalez Garcia &lt;cyenyxe@ebi.ac.uk&gt;
@@ -494,6 +496,21 @@ public class VariantVcfFactoryTest {
         assertEquals(".", study.getSampleData("NA004", "PL"));
     }
 
+    @Test
+    public void testCreateVariant_SharedSampleData() {
+        fileMetadata.setSampleIds(Arrays.asList("NA001", "NA002"));
+        String line = "1\t10040\trs123\tT\tC\t.\t.\t.\tDP:GT\t987654321:0/1\t987654321:1/1";
+
+        StudyEntry study = factory.create(metadata, line).get(0).getStudy(metadata.getId());
+        assertSame("DP", study.getSampleDataKeys().get(0));
+        assertSame("GT", study.getSampleDataKeys().get(1));
+        assertSame("0/1", study.getSamples().get(0).getData().get(1));
+        assertSame("1/1", study.getSamples().get(1).getData().get(1));
+        // Other sample values are not interned
+        assertEquals("987654321", study.getSamples().get(0).getData().get(0));
+        assertNotSame(study.getSamples().get(0).getData().get(0), study.getSamples().get(1).getData().get(0));
+    }
+
     @Test
     public void testParseInfo() {
         List<String> sampleNames = Arrays.asList("NA001", "NA002", "NA003", "NA004");
@@ -1,18 +1,30 @@
 package org.opencb.biodata.tools.variant.converters;
 
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.vcf.VCFFileReader;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.tools.variant.VariantVcfHtsjdkReader;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class VCFExporterTest {
 
@@ -50,6 +62,116 @@ public class VCFExporterTest {
 
     }
 
+    @Test
+    public void exportParallel() throws Exception {
+        VariantStudyMetadata metadata = new VariantFileMetadata("1", "test.vcf").toVariantStudyMetadata("study");
+        List<Variant> variants = readVariants(metadata);
+
+        VCFExporter exporter = new VCFExporter(metadata);
+        exporter.open(outPath);
+        exporter.export(variants);
+        exporter.close();
+
+        Path gzPath = outPath.getParent().resolve("out.vcf.gz");
+        exporter = new VCFExporter(metadata);
+        exporter.setNumThreads(3);
+        exporter.setBatchSize(1);
+        exporter.open(gzPath, true);
+        exporter.export(variants);
+        exporter.close();
+
+        List<String> expected = Files.readAllLines(outPath);
+        List<String> actual;
+        try (BufferedReader gzReader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(gzPath))))) {
+            actual = gzReader.lines().collect(Collectors.toList());
+        }
+        assertEquals(expected, actual);
+
+        try (VCFFileReader vcfFileReader = new VCFFileReader(gzPath.toFile(), true)) {
+            VariantContext first = vcfFileReader.iterator().next();
+            try (CloseableIterator<VariantContext> iterator = vcfFileReader.query(first.getContig(), first.getStart(), first.getEnd())) {
+                assertTrue(iterator.hasNext());
+                assertEquals(first.getStart(), iterator.next().getStart());
+            }
+        }
+    }
+
+    @Test
+    public void exportParallelWriterOptions() throws Exception {
+        VariantStudyMetadata metadata = new VariantFileMetadata("1", "test.vcf").toVariantStudyMetadata("study");
+        List<Variant> variants = readVariants(metadata);
+
+        VCFExporter exporter = new VCFExporter(metadata);
+        exporter.open(outPath, Options.DO_NOT_WRITE_GENOTYPES);
+        exporter.export(variants);
+        exporter.close();
+
+        Path parallelPath = outPath.getParent().resolve("out.parallel.vcf");
+        exporter = new VCFExporter(metadata);
+        exporter.setNumThreads(2);
+        exporter.setBatchSize(3);
+        exporter.open(Files.newOutputStream(parallelPath), Options.DO_NOT_WRITE_GENOTYPES);
+        exporter.export(variants);
+        exporter.close();
+
+        List<String> expected = Files.readAllLines(outPath);
+        assertEquals(expected, Files.readAllLines(parallelPath));
+        String columns = expected.stream().filter(line -> line.startsWith("#CHROM")).findFirst().orElse("");
+        assertEquals(8, columns.split("\t").length);
+    }
+
+    @Test
+    public void exportParallelMultipleBlocks() throws Exception {
+        VariantStudyMetadata metadata = new VariantFileMetadata("1", "test.vcf").toVariantStudyMetadata("study");
+        List<Variant> variants = readVariants(metadata);
+        // Batches larger than a BGZF block. Each copy is shifted past the previous one, so the output stays sorted for the index
+        List<Variant> repeated = new ArrayList<>();
+        int span = variants.stream().mapToInt(Variant::getEnd).max().getAsInt() - variants.get(0).getStart() + 1;
+        for (int i = 0; i < 200; i++) {
+            for (Variant variant : variants) {
+                Variant copy = new Variant(VariantAvro.newBuilder(variant.getImpl()).build());
+                copy.setStart(variant.getStart() + i * span);
+                copy.setEnd(variant.getEnd() + i * span);
+                repeated.add(copy);
+            }
+        }
+
+        VCFExporter exporter = new VCFExporter(metadata);
+        exporter.open(outPath);
+        exporter.export(repeated);
+        exporter.close();
+
+        Path gzPath = outPath.getParent().resolve("out.vcf.gz");
+        exporter = new VCFExporter(metadata);
+        exporter.setNumThreads(2);
+        exporter.setBatchSize(repeated.size() / 2);
+        exporter.open(gzPath, true);
+        exporter.export(repeated);
+        exporter.close();
+
+        List<String> actual;
+        try (BufferedReader gzReader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(gzPath))))) {
+            actual = gzReader.lines().collect(Collectors.toList());
+        }
+        assertEquals(Files.readAllLines(outPath), actual);
+        assertTrue(Files.exists(Paths.get(gzPath + ".tbi")));
+    }
+
+    private List<Variant> readVariants(VariantStudyMetadata metadata) throws Exception {
+        VariantVcfHtsjdkReader reader = new VariantVcfHtsjdkReader(getClass().getResourceAsStream("/test.vcf"), metadata);
+        reader.open();
+        reader.pre();
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> read = reader.read();
+        while (read != null && !read.isEmpty()) {
+            variants.addAll(read);
+            read = reader.read();
+        }
+        reader.post();
+        reader.close();
+        return variants;
+    }
+
 }
 
 /*
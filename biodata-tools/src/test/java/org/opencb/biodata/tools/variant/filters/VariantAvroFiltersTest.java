@@ -2,6 +2,7 @@ package org.opencb.biodata.tools.variant.filters;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantType;
 
@@ -84,6 +85,28 @@ public class VariantAvroFiltersTest {
 
     }
 
+    @Test
+    public void testRegionFilter() {
+        List<Variant> variants = Arrays.asList(
+                Variant.newBuilder("1:100:-:T").setId("ins100").build(),
+                Variant.newBuilder("1:101:-:T").setId("ins101").build(),
+                Variant.newBuilder("1:150:-:T").setId("ins150").build(),
+                Variant.newBuilder("1:151:-:T").setId("ins151").build(),
+                Variant.newBuilder("1:150:A:T").setId("snv150").build(),
+                Variant.newBuilder("1:151:A:T").setId("snv151").build(),
+                Variant.newBuilder("1:150:AC:-").setId("del150").build());
+        List<Region> regions = Arrays.asList(new Region("1", 100, 150), new Region("1", 151, 200));
+
+        // Insertions only overlap a region after its first position, also between two adjacent regions
+        VariantAvroFilters filters = new VariantAvroFilters().addRegionFilter(regions, false);
+        assertEquals(Arrays.asList("ins101", "ins150", "snv150", "snv151", "del150"),
+                variants.stream().filter(filters).map(Variant::getId).collect(Collectors.toList()));
+
+        filters = new VariantAvroFilters().addRegionFilter(new Region("1", 100, 200), false);
+        assertEquals(Arrays.asList("ins101", "ins150", "ins151", "snv150", "snv151", "del150"),
+                variants.stream().filter(filters).map(Variant::getId).collect(Collectors.toList()));
+    }
+
     private List<String> filter(Predicate<Variant> variantAvroFilters) {
         return variants.stream().filter(variantAvroFilters).map(Variant::getId).collect(Collectors.toList());
     }
@@ -0,0 +1,67 @@
+package org.opencb.biodata.tools.variant.scores;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
+import org.opencb.biodata.models.variant.avro.VariantScore;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class CohortScoresCalculatorTaskTest {
+
+    public static final String STUDY = "study";
+
+    @Test
+    public void testHweMidP() {
+        assertEquals(0.10667717746767, CohortScoresCalculatorTask.computeHweMidP(50, 20, 5), 1e-9);
+        assertEquals(6.7015107881e-7, CohortScoresCalculatorTask.computeHweMidP(10, 0, 10), 1e-15);
+        assertEquals(0.96223383081, CohortScoresCalculatorTask.computeHweMidP(1000, 400, 40), 1e-9);
+        assertEquals(0.5, CohortScoresCalculatorTask.computeHweMidP(0, 1, 0), 1e-9);
+        assertEquals(1.0, CohortScoresCalculatorTask.computeHweMidP(100, 0, 0), 0);
+    }
+
+    @Test
+    public void testInbreedingCoefficient() {
+        assertEquals(0, CohortScoresCalculatorTask.inbreedingCoefficient(25, 50, 25), 1e-9);
+        assertEquals(1, CohortScoresCalculatorTask.inbreedingCoefficient(10, 0, 10), 1e-9);
+        assertEquals(0, CohortScoresCalculatorTask.inbreedingCoefficient(100, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void testAllCohorts() throws Exception {
+        Variant variant = new VariantBuilder("1:100:A:C")
+                .setStudyId(STUDY)
+                .build();
+
+        variant.getStudy(STUDY).setStats(Arrays.asList(
+                new VariantStats().setCohortId("ALL")
+                        .addGenotype("0/0", 40).addGenotype("0|0", 10).addGenotype("0/1", 20).addGenotype("1/1", 5)
+                        .addGenotype("1/2", 3),
+                new VariantStats().setCohortId("EUR")
+                        .addGenotype("0/0", 10).addGenotype("1/1", 10)
+        ));
+        variant.getStudy(STUDY).getStats("ALL").setMissingGenotypeCount(22);
+        // Samples without genotype are neither called nor missing
+        variant.getStudy(STUDY).getStats("ALL").getGenotypeCount().put(Genotype.NA, 5);
+        // EUR keeps the default missing genotype count, -1
+
+        CohortScoresCalculatorTask task = new CohortScoresCalculatorTask(STUDY, null);
+        task.apply(Arrays.asList(variant));
+
+        Map<String, VariantScore> scores = variant.getStudy(STUDY).getScores().stream()
+                .collect(Collectors.toMap(s -> s.getId() + "_" + s.getCohort1(), s -> s));
+        assertEquals(6, scores.size());
+
+        assertEquals(0.10667717746767, scores.get(CohortScoresCalculatorTask.HW_SCORE_ID + "_ALL").getPValue(), 1e-6);
+        assertEquals(0.22, scores.get(CohortScoresCalculatorTask.MISSINGNESS_SCORE_ID + "_ALL").getScore(), 1e-6);
+        assertEquals(6.7015107881e-7, scores.get(CohortScoresCalculatorTask.HW_SCORE_ID + "_EUR").getPValue(), 1e-12);
+        assertEquals(1, scores.get(CohortScoresCalculatorTask.INBREEDING_SCORE_ID + "_EUR").getScore(), 1e-6);
+        assertEquals(0, scores.get(CohortScoresCalculatorTask.MISSINGNESS_SCORE_ID + "_EUR").getScore(), 1e-6);
+    }
+}
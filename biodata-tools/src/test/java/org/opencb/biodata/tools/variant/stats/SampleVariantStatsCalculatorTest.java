@@ -9,11 +9,20 @@ import org.opencb.biodata.models.clinical.pedigree.Member;
 import org.opencb.biodata.models.clinical.pedigree.Pedigree;
 import org.opencb.biodata.models.core.SexOntologyTermAnnotation;
 import org.opencb.biodata.models.pedigree.IndividualProperty;
+import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
+import org.opencb.biodata.models.variant.avro.ClinicalSignificance;
 import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.EvidenceEntry;
+import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.avro.SampleEntry;
 import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.biodata.models.variant.avro.VariantClassification;
+import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.biodata.models.variant.metadata.DepthCount;
 import org.opencb.biodata.models.variant.metadata.SampleVariantStats;
 import org.opencb.biodata.models.variant.metadata.VariantMetadata;
 import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
@@ -22,6 +31,9 @@ import org.opencb.biodata.tools.variant.algorithm.IdentityByStateClusteringTest;
 import org.opencb.biodata.tools.variant.metadata.VariantMetadataManager;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SampleVariantStatsCalculatorTest {
 
@@ -106,6 +118,228 @@ public class SampleVariantStatsCalculatorTest {
         checkStats(sampleStats);
     }
 
+    @Test
+    public void testParallel() throws Exception {
+        List<SampleVariantStats> expected = new SampleVariantStatsCalculator(pedigree, samples).compute(variants);
+
+        SampleVariantStatsCalculator calculator = new SampleVariantStatsCalculator(pedigree, samples);
+        calculator.pre();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Variant variant : variants) {
+            futures.add(executor.submit(() -> calculator.apply(Collections.singletonList(variant))));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        calculator.post();
+        List<SampleVariantStats> sampleStats = calculator.getSampleVariantStats();
+
+        checkStats(sampleStats);
+        Assert.assertEquals(expected, sampleStats);
+    }
+
+    @Test
+    public void testColumnar() {
+        List<SampleVariantStats> expected = new SampleVariantStatsCalculator(pedigree, samples).compute(variants);
+
+        for (int numThreads = 1; numThreads <= 4; numThreads++) {
+            SampleVariantStatsCalculator calculator = new ColumnarSampleVariantStatsCalculator(pedigree, samples, null, numThreads);
+            List<SampleVariantStats> sampleStats = calculator.compute(variants);
+
+            checkStats(sampleStats);
+            Assert.assertEquals(expected, sampleStats);
+        }
+    }
+
+    @Test
+    public void testColumnarBatches() throws Exception {
+        List<SampleVariantStats> expected = new SampleVariantStatsCalculator(pedigree, samples).compute(variants);
+
+        SampleVariantStatsCalculator calculator = new ColumnarSampleVariantStatsCalculator(pedigree, samples, null, 3);
+        calculator.pre();
+        calculator.apply(variants.subList(0, 1));
+        calculator.apply(variants.subList(1, variants.size()));
+        calculator.post();
+
+        Assert.assertEquals(expected, calculator.getSampleVariantStats());
+    }
+
+    @Test
+    public void testColumnarMultipleFiles() {
+        // s5 has no file
+        Map<String, String> sampleFileMap = new HashMap<>();
+        sampleFileMap.put("s0", "F1");
+        sampleFileMap.put("s1", "F1");
+        sampleFileMap.put("s2", "F2");
+        sampleFileMap.put("s3", "F2");
+        sampleFileMap.put("s4", "F3");
+        List<Variant> variants = Arrays.asList(
+                variant("1:100:A:C", Arrays.asList(file("F1", "PASS", "10", "5"), file("F2", "LowQual;LowDP", "30", "25")),
+                        "0/1", "1/1", "0/1", "0/1", "0/1", "0/1"),
+                variant("1:200:T:C", Arrays.asList(file("F2", "PASS", ".", null), file("F3", null, "20", "12")),
+                        "0/1", "0/1", "1/1", "0/0", "0/1", "0/1"));
+
+        List<SampleVariantStats> expected = new SampleVariantStatsCalculator(pedigree, samples, sampleFileMap).compute(variants);
+        // Missing files count as no filter, no quality and no depth
+        Assert.assertEquals(1, expected.get(0).getFilterCount().get("PASS").intValue());
+        Assert.assertEquals(1, expected.get(0).getFilterCount().get(".").intValue());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("LowQual", "LowDP", "PASS")), expected.get(2).getFilterCount().keySet());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("LowQual", "LowDP")), expected.get(3).getFilterCount().keySet());
+        Assert.assertEquals(Collections.singletonMap(".", 2), expected.get(4).getFilterCount());
+        Assert.assertEquals(Collections.singletonMap(".", 2), expected.get(5).getFilterCount());
+        Assert.assertEquals(20, expected.get(4).getQualityAvg(), 1e-6);
+        assertDepthCount(expected.get(0), 1, 0, 1, 0, 0, 0);
+        assertDepthCount(expected.get(4), 1, 0, 0, 1, 0, 0);
+
+        for (int numThreads = 1; numThreads <= 3; numThreads++) {
+            Assert.assertEquals(expected,
+                    new ColumnarSampleVariantStatsCalculator(pedigree, samples, sampleFileMap, numThreads).compute(variants));
+        }
+    }
+
+    @Test
+    public void testColumnarRandom() throws Exception {
+        String[] gts = {"0/0", "0/1", "1/1", "./.", "0|1", "1|0", "1|1", "0/2", "1/2", "./1", ".", "1", "0", null};
+        String[] chromosomes = {"1", "2", "X", "Y", "MT"};
+        String[] bases = {"A", "C", "G", "T"};
+        VariantType[] types = {VariantType.SNV, VariantType.SNP, VariantType.MNV, VariantType.MNP, VariantType.INDEL,
+                VariantType.INSERTION, VariantType.DELETION};
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int seed = 0; seed < 20; seed++) {
+                Random random = new Random(seed);
+                List<String> samples = new ArrayList<>();
+                List<Member> members = new ArrayList<>();
+                for (int i = random.nextInt(20); i >= 0; i--) {
+                    String id = "s" + samples.size();
+                    IndividualProperty.Sex sex = random.nextBoolean() ? IndividualProperty.Sex.MALE : IndividualProperty.Sex.FEMALE;
+                    Member member = new Member(id, id, new SexOntologyTermAnnotation().setId(sex.name()));
+                    if (members.size() >= 2) {
+                        member.setFather(random.nextBoolean() ? members.get(random.nextInt(members.size())) : null);
+                        member.setMother(random.nextBoolean() ? members.get(random.nextInt(members.size())) : null);
+                    }
+                    samples.add(member.getId());
+                    members.add(member);
+                }
+                Pedigree pedigree = new Pedigree().setMembers(members);
+
+                // Single file, or several files with samples without file and variants without some files
+                boolean multiFile = random.nextBoolean();
+                List<String> fileIds = multiFile ? Arrays.asList("F1", "F2", "F3") : Collections.singletonList("F1");
+                Map<String, String> sampleFileMap = null;
+                if (multiFile || random.nextBoolean()) {
+                    sampleFileMap = new HashMap<>();
+                    for (String sample : samples) {
+                        if (random.nextInt(10) > 0) {
+                            sampleFileMap.put(sample, fileIds.get(random.nextInt(fileIds.size())));
+                        }
+                    }
+                }
+
+                List<Variant> variants = new ArrayList<>();
+                for (int v = random.nextInt(100); v > 0; v--) {
+                    List<FileEntry> files = new ArrayList<>();
+                    for (String fileId : fileIds) {
+                        if (!multiFile || random.nextInt(6) > 0) {
+                            String qual = random.nextBoolean() ? null : random.nextBoolean() ? "." : String.valueOf(random.nextInt(200));
+                            String filter = new String[]{null, "PASS", "LowQual;LowDP", ""}[random.nextInt(4)];
+                            files.add(file(fileId, filter, qual, random.nextBoolean() ? String.valueOf(random.nextInt(30)) : null));
+                        }
+                    }
+                    boolean dpKey = random.nextBoolean();
+                    List<List<String>> sampleData = new ArrayList<>();
+                    for (int i = 0; i < samples.size(); i++) {
+                        String gt = gts[random.nextInt(gts.length)];
+                        String dp = random.nextInt(5) == 0 ? "." : String.valueOf(random.nextInt(30));
+                        sampleData.add(dpKey ? Arrays.asList(gt, dp) : Collections.singletonList(gt));
+                    }
+                    Variant variant = variant(chromosomes[random.nextInt(chromosomes.length)] + ":" + (1 + random.nextInt(1000)) + ":"
+                            + bases[v % 4] + ":" + bases[(v + 1 + random.nextInt(3)) % 4], samples, files,
+                            dpKey ? Arrays.asList("GT", "DP") : Collections.singletonList("GT"), sampleData);
+                    variant.setType(types[random.nextInt(types.length)]);
+                    variant.setLength(1 + random.nextInt(30));
+                    if (random.nextInt(4) > 0) {
+                        variant.setAnnotation(annotation(random));
+                    }
+                    variants.add(variant);
+                }
+
+                List<SampleVariantStats> expected = new SampleVariantStatsCalculator(pedigree, samples, sampleFileMap)
+                        .compute(variants);
+                Assert.assertEquals("Seed " + seed, expected,
+                        new ColumnarSampleVariantStatsCalculator(pedigree, samples, sampleFileMap, 1 + random.nextInt(4))
+                                .compute(variants));
+
+                // Concurrent batches, with one accumulator per thread, sharing the executor of the calculator
+                for (SampleVariantStatsCalculator calculator : Arrays.asList(
+                        new SampleVariantStatsCalculator(pedigree, samples, sampleFileMap),
+                        new ColumnarSampleVariantStatsCalculator(pedigree, samples, sampleFileMap, 3))) {
+                    calculator.pre();
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int i = 0; i < variants.size(); i += 7) {
+                        List<Variant> batch = variants.subList(i, Math.min(variants.size(), i + 7));
+                        futures.add(executor.submit(() -> calculator.apply(batch)));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                    calculator.post();
+                    Assert.assertEquals("Seed " + seed + " " + calculator.getClass().getSimpleName(), expected,
+                            calculator.getSampleVariantStats());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDepthCount() {
+        List<Variant> variants = Arrays.asList(
+                variant("1:100:A:C", "1/1:3", "0/1:7", "0/1:12", "1/1:17", "0/1:25", "0/1:."),
+                variant("1:200:T:C", "0/1:4", "0/0:30", "1/1:9", "0/1:.", "0/1:20", "./.:."));
+
+        for (SampleVariantStatsCalculator calculator : Arrays.asList(new SampleVariantStatsCalculator(pedigree, samples),
+                new ColumnarSampleVariantStatsCalculator(pedigree, samples, null, 2))) {
+            List<SampleVariantStats> sampleStats = calculator.compute(variants);
+            // Only the depths of the samples with the main alternate are counted
+            assertDepthCount(sampleStats.get(0), 0, 2, 0, 0, 0, 0);
+            assertDepthCount(sampleStats.get(1), 0, 0, 1, 0, 0, 0);
+            assertDepthCount(sampleStats.get(2), 0, 0, 1, 1, 0, 0);
+            assertDepthCount(sampleStats.get(3), 1, 0, 0, 0, 1, 0);
+            assertDepthCount(sampleStats.get(4), 0, 0, 0, 0, 0, 2);
+            assertDepthCount(sampleStats.get(5), 1, 0, 0, 0, 0, 0);
+        }
+    }
+
+    @Test
+    public void testAccumulatorMerge() {
+        SampleVariantStatsAccumulator all = new SampleVariantStatsAccumulator(samples);
+        SampleVariantStatsAccumulator first = new SampleVariantStatsAccumulator(samples);
+        SampleVariantStatsAccumulator second = new SampleVariantStatsAccumulator(samples);
+        for (int sample = 0; sample < samples.size(); sample++) {
+            for (SampleVariantStatsAccumulator accumulator : Arrays.asList(all, sample % 2 == 0 ? first : second)) {
+                accumulator.addVariant(sample);
+                accumulator.addIndelLength(sample, sample * 4);
+                accumulator.addDepth(sample, sample == 0 ? -1 : sample * 5);
+                accumulator.addQual(sample, 10 * sample);
+                accumulator.add(SampleVariantStatsAccumulator.Counter.GENOTYPE, sample % 2 == 0 ? "0/1" : "1/1", sample);
+                accumulator.add(SampleVariantStatsAccumulator.Counter.FILTER, "PASS", sample);
+                accumulator.addMendelianError(sample, "1", "2");
+            }
+        }
+        Assert.assertEquals(all.toSampleVariantStats(), first.merge(second).toSampleVariantStats());
+        Assert.assertEquals(1, all.getCount(SampleVariantStatsAccumulator.Counter.GENOTYPE, "0/1", 0));
+        Assert.assertEquals(0, all.getCount(SampleVariantStatsAccumulator.Counter.GENOTYPE, "0/1", 1));
+        Assert.assertEquals(1, all.toSampleVariantStats().get(0).getDepthCount().getNa().intValue());
+        Assert.assertEquals(1, all.toSampleVariantStats().get(5).getIndelLengthCount().getGte20().intValue());
+
+        all.reset();
+        Assert.assertEquals(new SampleVariantStatsAccumulator(samples).toSampleVariantStats(), all.toSampleVariantStats());
+    }
+
     private void checkStats(List<SampleVariantStats> sampleStats) {
         Assert.assertTrue(sampleStats.get(0).getMendelianErrorCount().isEmpty());
         Assert.assertTrue(sampleStats.get(1).getMendelianErrorCount().isEmpty());
@@ -120,6 +354,87 @@ public class SampleVariantStatsCalculatorTest {
         }
     }
 
+    private static void assertDepthCount(SampleVariantStats stats, int na, int lt5, int lt10, int lt15, int lt20, int gte20) {
+        DepthCount depthCount = stats.getDepthCount();
+        Assert.assertEquals(stats.getId(), Arrays.asList(na, lt5, lt10, lt15, lt20, gte20), Arrays.asList(
+                depthCount.getNa(), depthCount.getLt5(), depthCount.getLt10(), depthCount.getLt15(), depthCount.getLt20(),
+                depthCount.getGte20()));
+    }
+
+    private Variant variant(String v, List<FileEntry> files, String... gts) {
+        List<List<String>> sampleData = new ArrayList<>();
+        for (String gt : gts) {
+            sampleData.add(Collections.singletonList(gt));
+        }
+        return variant(v, samples, files, Collections.singletonList("GT"), sampleData);
+    }
+
+    private static Variant variant(String v, List<String> samples, List<FileEntry> files, List<String> sampleDataKeys,
+                                   List<List<String>> sampleData) {
+        StudyEntry study = new StudyEntry("study", new ArrayList<>(), sampleDataKeys);
+        LinkedHashMap<String, Integer> samplesPosition = new LinkedHashMap<>();
+        List<SampleEntry> sampleEntries = new ArrayList<>(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            samplesPosition.put(samples.get(i), i);
+            sampleEntries.add(new SampleEntry(null, null, sampleData.get(i)));
+        }
+        study.setSortedSamplesPosition(samplesPosition);
+        study.setSamples(sampleEntries);
+        study.setFiles(files);
+        Variant variant = new Variant(v);
+        variant.setStudies(Collections.singletonList(study));
+        return variant;
+    }
+
+    private static FileEntry file(String fileId, String filter, String qual, String dp) {
+        Map<String, String> data = new HashMap<>();
+        if (filter != null) {
+            data.put(StudyEntry.FILTER, filter);
+        }
+        if (qual != null) {
+            data.put(StudyEntry.QUAL, qual);
+        }
+        if (dp != null) {
+            data.put("DP", dp);
+        }
+        return new FileEntry(fileId, null, data);
+    }
+
+    private static VariantAnnotation annotation(Random random) {
+        List<ConsequenceType> consequenceTypes = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            ConsequenceType ct = new ConsequenceType();
+            ct.setBiotype(random.nextBoolean() ? "protein_coding" : "lncRNA");
+            String so = random.nextBoolean() ? "missense_variant" : "stop_lost";
+            ct.setSequenceOntologyTerms(Collections.singletonList(new SequenceOntologyTerm(so, so)));
+            consequenceTypes.add(ct);
+        }
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setConsequenceTypes(consequenceTypes);
+        if (random.nextBoolean()) {
+            EvidenceEntry evidenceEntry = new EvidenceEntry();
+            evidenceEntry.setVariantClassification(new VariantClassification());
+            evidenceEntry.getVariantClassification().setClinicalSignificance(ClinicalSignificance.benign);
+            annotation.setTraitAssociation(Collections.singletonList(evidenceEntry));
+        }
+        return annotation;
+    }
+
+    /**
+     * Variant with GT:DP sample data, one "GT:DP" value per sample.
+     */
+    private Variant variant(String v, String... sampleData) {
+        VariantBuilder builder = Variant.newBuilder(v)
+                .setStudyId("study")
+                .setFileId("file")
+                .setSampleDataKeys("GT", "DP")
+                .setSampleNames(samples);
+        for (int i = 0; i < sampleData.length; i++) {
+            builder.addSample(samples.get(i), sampleData[i].split(":"));
+        }
+        return builder.build();
+    }
+
     private Variant variant(String v, double qual, String filter,
                                    String s0Gt,
                                    String s1Gt,
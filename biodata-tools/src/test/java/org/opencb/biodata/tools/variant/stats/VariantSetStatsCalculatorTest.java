@@ -17,6 +17,9 @@ import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.commons.run.ParallelTaskRunner;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
@@ -31,6 +34,7 @@ public class VariantSetStatsCalculatorTest {
 
     protected static final String STUDY_ID = "Study";
     private VariantReader reader;
+    private List<Variant> variantList;
     private VariantStudyMetadata studyMetadata;
 
     private int samplesPerFile = 5;
@@ -59,6 +63,7 @@ public class VariantSetStatsCalculatorTest {
         variants.add(variant("chr1:3000:C:T", file("F1", "PASS", 90F), file("F2", "PASS", 100F)));
         variants.add(variant("chr1:4000:G:A", file("F1", "PASS", 100F), file("F2", "PASS", 100F)));
 
+        variantList = variants;
         reader = new VariantReader() {
             private Iterator<Variant> iterator = variants.iterator();
 
@@ -166,6 +171,41 @@ public class VariantSetStatsCalculatorTest {
 
     }
 
+    @Test
+    public void testParallelStats() throws Exception {
+        VariantSetStatsCalculator expectedTask = new VariantSetStatsCalculator(studyMetadata);
+        expectedTask.pre();
+        expectedTask.apply(variantList);
+        expectedTask.post();
+        VariantSetStats expected = expectedTask.getStats();
+
+        VariantSetStatsCalculator statsTask = new VariantSetStatsCalculator(studyMetadata);
+        statsTask.pre();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Variant variant : variantList) {
+            futures.add(executor.submit(() -> statsTask.apply(Collections.singletonList(variant))));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        statsTask.post();
+        VariantSetStats stats = statsTask.getStats();
+
+        assertEquals(expected.getVariantCount(), stats.getVariantCount());
+        assertEquals(expected.getFilterCount(), stats.getFilterCount());
+        assertEquals(expected.getGenotypeCount(), stats.getGenotypeCount());
+        assertEquals(expected.getChromosomeCount(), stats.getChromosomeCount());
+        assertEquals(expected.getChromosomeDensity(), stats.getChromosomeDensity());
+        assertEquals(expected.getTypeCount(), stats.getTypeCount());
+        assertEquals(expected.getBiotypeCount(), stats.getBiotypeCount());
+        assertEquals(expected.getConsequenceTypeCount(), stats.getConsequenceTypeCount());
+        assertEquals(expected.getQualityAvg(), stats.getQualityAvg(), 0.000001);
+        assertEquals(expected.getQualityStdDev(), stats.getQualityStdDev(), 0.000001);
+        assertEquals(expected.getTiTvRatio(), stats.getTiTvRatio(), 0.000001);
+    }
+
     protected VariantSetStats calculateStats(VariantSetStatsCalculator statsTask) throws java.util.concurrent.ExecutionException {
         Config config = Config.builder().setNumTasks(1).build();
 
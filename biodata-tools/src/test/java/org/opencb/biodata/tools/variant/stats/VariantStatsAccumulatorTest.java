@@ -0,0 +1,83 @@
+package org.opencb.biodata.tools.variant.stats;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class VariantStatsAccumulatorTest {
+
+    private static final List<String> GENOTYPES = Arrays.asList(
+            "0/0", "0/1", "1/1", "./.", "0|0", "0|1", "1|0", "1|1", ".|.", "1/0", "0/2", "1/2", "./0", "0/.",
+            "0", "1", ".", "2", "0/0/1", null);
+
+    @Test
+    public void testSameAsCalculator() {
+        Variant variant = new Variant("1:100:A:C");
+        Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            VariantStatsAccumulator accumulator = new VariantStatsAccumulator();
+            Map<Genotype, Integer> gtCount = new HashMap<>();
+            for (int sample = 0; sample < 100; sample++) {
+                String gt = GENOTYPES.get(random.nextInt(GENOTYPES.size()));
+                accumulator.addGenotype(gt);
+                gtCount.merge(gt == null ? null : new Genotype(gt), 1, Integer::sum);
+            }
+
+            VariantStats expected = VariantStatsCalculator.calculate(variant, gtCount);
+            VariantStatsCalculator.calculateFilterFreq(expected, 0);
+            expected.setQualityAvg(Float.NaN);
+            expected.setQualityCount(0);
+            assertEquals(expected, accumulator.toVariantStats(variant));
+        }
+    }
+
+    @Test
+    public void testFiles() {
+        VariantStats stats = new VariantStatsAccumulator()
+                .addFile("PASS", "10")
+                .addFile("LowQual;LowDP", "20")
+                .addFile("PASS", ".")
+                .addFile("", null)
+                .toVariantStats(new Variant("1:100:A:C"));
+
+        assertEquals(3, stats.getFileCount().intValue());
+        assertEquals(2, stats.getFilterCount().get("PASS").intValue());
+        assertEquals(1, stats.getFilterCount().get("LowDP").intValue());
+        assertEquals(2 / 3f, stats.getFilterFreq().get("PASS"), 1e-6);
+        assertEquals(15, stats.getQualityAvg(), 1e-6);
+        assertEquals(2, stats.getQualityCount().intValue());
+    }
+
+    @Test
+    public void testMerge() {
+        Variant variant = new Variant("1:100:A:C");
+        VariantStatsAccumulator all = new VariantStatsAccumulator();
+        List<VariantStatsAccumulator> shards = Arrays.asList(
+                new VariantStatsAccumulator(), new VariantStatsAccumulator(), new VariantStatsAccumulator());
+        Random random = new Random(2);
+        for (int sample = 0; sample < 300; sample++) {
+            String gt = GENOTYPES.get(random.nextInt(GENOTYPES.size()));
+            all.addGenotype(gt);
+            shards.get(sample % shards.size()).addGenotype(gt);
+        }
+        all.addFile("PASS", "5").addFile("LowQual", "15");
+        shards.get(0).addFile("PASS", "5");
+        shards.get(2).addFile("LowQual", "15");
+
+        VariantStatsAccumulator merged = new VariantStatsAccumulator();
+        for (VariantStatsAccumulator shard : shards) {
+            merged.merge(shard);
+        }
+        assertEquals(all.toVariantStats(variant), merged.toVariantStats(variant));
+        assertEquals(all.getGenotypeCount("0/1"), merged.getGenotypeCount("0|1"));
+        assertEquals(all.getGenotypeCount("1/0"), merged.getGenotypeCount("1/0"));
+
+        merged.reset();
+        assertEquals(new VariantStatsAccumulator().toVariantStats(variant), merged.toVariantStats(variant));
+    }
+}